@@ -0,0 +1,78 @@
+package com.lauriethefish.betterportals.benchmarks;
+
+import com.lauriethefish.betterportals.bukkit.config.RenderConfig;
+import com.lauriethefish.betterportals.shared.logging.Logger;
+import com.lauriethefish.betterportals.shared.logging.OverrideLogger;
+import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.configuration.file.YamlConfiguration;
+
+import java.util.logging.Level;
+
+/**
+ * Synthetic fixtures shared between the benchmarks, so that none of them need a running server.
+ */
+public class BenchmarkFixtures {
+    /**
+     * @return A logger which only prints warnings, so that debug logging doesn't end up in the results
+     */
+    public static Logger createLogger() {
+        Logger logger = new OverrideLogger(java.util.logging.Logger.getAnonymousLogger());
+        logger.setLevel(Level.WARNING);
+        return logger;
+    }
+
+    /**
+     * Creates a render config with the default values, apart from the portal effect size.
+     * The values are set here instead of being loaded from <code>config.yml</code>, since parsing background blocks requires a server.
+     * @param effectSizeXZ Value of <code>portalEffectSizeXZ</code>
+     * @param effectSizeY Value of <code>portalEffectSizeY</code>
+     * @return The loaded config
+     */
+    public static RenderConfig createRenderConfig(int effectSizeXZ, int effectSizeY) {
+        YamlConfiguration file = new YamlConfiguration();
+        file.set("portalEffectSizeXZ", effectSizeXZ);
+        file.set("portalEffectSizeY", effectSizeY);
+        file.set("lightBlockInterval", 0);
+        file.set("forceLightLevel", -1);
+        file.set("portalBlockUpdateInterval", 20);
+        file.set("blockStateRefreshInterval", 40);
+        file.set("entityMetadataUpdateInterval", 6);
+        file.set("entityMetadataResyncInterval", 200);
+        file.set("hidePortalBlocks", true);
+        file.set("backgroundBlock", "");
+        file.createSection("worldBackgroundBlocks");
+
+        ConfigurationSection collisionBox = file.createSection("portalCollisionBox");
+        collisionBox.set("x", 0.5);
+        collisionBox.set("y", 0.5);
+        collisionBox.set("z", 0.5);
+
+        ConfigurationSection entityLod = file.createSection("entityLevelOfDetail");
+        entityLod.set("fullRateDistance", 16);
+        entityLod.set("reducedRateDistance", 48);
+        entityLod.set("reducedRateInterval", 4);
+
+        ConfigurationSection renderBudget = file.createSection("renderBudget");
+        renderBudget.set("enable", false);
+        renderBudget.set("maxMillisPerTick", 10.0);
+        renderBudget.set("evaluationInterval", 100);
+        renderBudget.set("reducedUpdateRateMultiplier", 4);
+        renderBudget.set("reducedRenderRadius", 0.5);
+
+        ConfigurationSection adaptiveQuality = file.createSection("adaptiveQuality");
+        adaptiveQuality.set("enable", false);
+        adaptiveQuality.set("degradeMspt", 40.0);
+        adaptiveQuality.set("recoverMspt", 30.0);
+        adaptiveQuality.set("adjustInterval", 100);
+        adaptiveQuality.set("step", 0.1);
+        adaptiveQuality.set("minPortalEffectSizeXZ", 8);
+        adaptiveQuality.set("minPortalEffectSizeY", 5);
+        adaptiveQuality.set("maxPortalBlockUpdateInterval", 80);
+        adaptiveQuality.set("maxBlockStateRefreshInterval", 160);
+        adaptiveQuality.set("maxEntityMetadataUpdateInterval", 20);
+
+        RenderConfig renderConfig = new RenderConfig(createLogger());
+        renderConfig.load(file);
+        return renderConfig;
+    }
+}
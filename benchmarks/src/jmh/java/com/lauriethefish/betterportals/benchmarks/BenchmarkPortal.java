@@ -0,0 +1,129 @@
+package com.lauriethefish.betterportals.benchmarks;
+
+import com.lauriethefish.betterportals.api.PortalDirection;
+import com.lauriethefish.betterportals.api.PortalPosition;
+import com.lauriethefish.betterportals.bukkit.block.IBlockMap;
+import com.lauriethefish.betterportals.bukkit.config.RenderConfig;
+import com.lauriethefish.betterportals.bukkit.entity.IPortalEntityManager;
+import com.lauriethefish.betterportals.bukkit.math.PortalTransformations;
+import com.lauriethefish.betterportals.bukkit.portal.IPortal;
+import org.bukkit.util.Vector;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.UUID;
+
+/**
+ * A portal between two worlds that don't need to exist, for benchmarking things that only need the positions and transformations of a portal.
+ * {@link PortalTransformations} looks up the worlds, so a mock server must be running when this is created.
+ */
+public class BenchmarkPortal implements IPortal {
+    private final UUID id = UUID.randomUUID();
+    private final PortalPosition originPos;
+    private final PortalPosition destPos;
+    private final Vector size = new Vector(2.0, 3.0, 0.0);
+    private final PortalTransformations transformations;
+
+    public BenchmarkPortal(PortalDirection originDirection, PortalDirection destDirection, RenderConfig renderConfig) {
+        this.originPos = new PortalPosition(new Vector(0.5, 64.5, 0.5), originDirection, null, "world");
+        this.destPos = new PortalPosition(new Vector(1000.5, 70.5, -1000.5), destDirection, null, "world_nether");
+        this.transformations = new PortalTransformations(this, renderConfig);
+    }
+
+    @Override
+    public @NotNull UUID getId() {
+        return id;
+    }
+
+    @Override
+    public @Nullable UUID getOwnerId() {
+        return null;
+    }
+
+    @Override
+    public @Nullable String getName() {
+        return null;
+    }
+
+    @Override
+    public void setName(@Nullable String name) { }
+
+    @Override
+    public @NotNull PortalPosition getOriginPos() {
+        return originPos;
+    }
+
+    @Override
+    public @NotNull PortalPosition getDestPos() {
+        return destPos;
+    }
+
+    @Override
+    public @NotNull Vector getSize() {
+        return size;
+    }
+
+    @Override
+    public boolean isCrossServer() {
+        return false;
+    }
+
+    @Override
+    public boolean isCustom() {
+        return false;
+    }
+
+    @Override
+    public void remove(boolean removeOtherDirection) { }
+
+    @Override
+    public void onUpdate() { }
+
+    @Override
+    public void onViewUpdate() { }
+
+    @Override
+    public void onActivate() { }
+
+    @Override
+    public void onDeactivate() { }
+
+    @Override
+    public void onViewActivate() { }
+
+    @Override
+    public void onViewDeactivate() { }
+
+    @Override
+    public @NotNull PortalTransformations getTransformations() {
+        return transformations;
+    }
+
+    @Override
+    public @NotNull IBlockMap getViewableBlocks() {
+        throw new UnsupportedOperationException("Benchmark portals do not have a block map");
+    }
+
+    @Override
+    public @NotNull IPortalEntityManager getEntityList() {
+        throw new UnsupportedOperationException("Benchmark portals do not have an entity list");
+    }
+
+    @Override
+    public String getPermissionPath() {
+        return "";
+    }
+
+    @Override
+    public boolean isRegistered() {
+        return false;
+    }
+
+    @Override
+    public boolean allowsNonPlayerTeleportation() {
+        return false;
+    }
+
+    @Override
+    public void setAllowsNonPlayerTeleportation(boolean allow) { }
+}
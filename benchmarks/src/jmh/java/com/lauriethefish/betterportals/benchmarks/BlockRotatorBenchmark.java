@@ -0,0 +1,65 @@
+package com.lauriethefish.betterportals.benchmarks;
+
+import com.lauriethefish.betterportals.api.PortalDirection;
+import com.lauriethefish.betterportals.bukkit.block.rotation.ModernBlockRotator;
+import com.lauriethefish.betterportals.bukkit.math.Matrix;
+import org.bukkit.Axis;
+import org.bukkit.Material;
+import org.bukkit.block.BlockFace;
+import org.bukkit.block.data.BlockData;
+import org.bukkit.block.data.Directional;
+import org.bukkit.block.data.Orientable;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link ModernBlockRotator#rotateByMatrix(Matrix, BlockData)}, which is called for every block found by the flood fill of a portal between two differently facing portals.
+ * The block data is synthetic (see {@link SyntheticBlockData}), so this measures the rotation logic rather than the server's block data implementation.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class BlockRotatorBenchmark {
+    private final ModernBlockRotator blockRotator = new ModernBlockRotator();
+    private Matrix rotation;
+
+    private BlockData stairs;
+    private BlockData log;
+    private BlockData stone;
+
+    @Setup
+    public void setUp() {
+        rotation = Matrix.makeRotation(PortalDirection.NORTH, PortalDirection.EAST);
+
+        stairs = SyntheticBlockData.create(Directional.class, Map.of(
+                "Material", Material.OAK_STAIRS,
+                "Facing", BlockFace.NORTH,
+                "Faces", EnumSet.of(BlockFace.NORTH, BlockFace.EAST, BlockFace.SOUTH, BlockFace.WEST)
+        ));
+        log = SyntheticBlockData.create(Orientable.class, Map.of(
+                "Material", Material.OAK_LOG,
+                "Axis", Axis.X,
+                "Axes", EnumSet.allOf(Axis.class)
+        ));
+        stone = SyntheticBlockData.create(BlockData.class, Map.of("Material", Material.STONE));
+    }
+
+    @Benchmark
+    public BlockData rotateDirectional() {
+        return blockRotator.rotateByMatrix(rotation, stairs);
+    }
+
+    @Benchmark
+    public BlockData rotateOrientable() {
+        return blockRotator.rotateByMatrix(rotation, log);
+    }
+
+    // Most blocks can't be rotated, so this is the most common case
+    @Benchmark
+    public BlockData rotateNonRotatable() {
+        return blockRotator.rotateByMatrix(rotation, stone);
+    }
+}
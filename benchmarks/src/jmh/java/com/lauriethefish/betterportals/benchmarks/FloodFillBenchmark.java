@@ -0,0 +1,174 @@
+package com.lauriethefish.betterportals.benchmarks;
+
+import be.seeseemelk.mockbukkit.MockBukkit;
+import com.lauriethefish.betterportals.api.IntVector;
+import com.lauriethefish.betterportals.api.PortalDirection;
+import com.lauriethefish.betterportals.bukkit.block.FloodFillBlockMap;
+import com.lauriethefish.betterportals.bukkit.block.IViewableBlockInfo;
+import com.lauriethefish.betterportals.bukkit.config.RenderConfig;
+import com.lauriethefish.betterportals.bukkit.portal.IPortal;
+import com.lauriethefish.betterportals.bukkit.portal.RenderBudget;
+import com.lauriethefish.betterportals.bukkit.portal.RenderQualityController;
+import com.lauriethefish.betterportals.bukkit.util.performance.OperationRegistry;
+import com.lauriethefish.betterportals.shared.logging.Logger;
+import org.jetbrains.annotations.Nullable;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the flood fill of {@link FloodFillBlockMap} at different portal effect sizes.
+ * Fetching block data and wrapping it with ProtocolLib needs a real server, so the destination is a synthetic terrain of solid ground with scattered occluding blocks.
+ * The traversal is the same as in <code>BukkitBlockMap</code>, so this measures the cost of the fill itself: decoding positions, transforming them to the destination and maintaining the state lists.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class FloodFillBenchmark {
+    @Param({"7", "13", "21"})
+    private int portalEffectSize;
+
+    private SyntheticBlockMap blockMap;
+
+    /**
+     * Block info that only stores its position, since the data is never sent anywhere.
+     */
+    private static class SyntheticBlockInfo implements IViewableBlockInfo {
+        private final IntVector originPos;
+
+        private SyntheticBlockInfo(IntVector originPos) {
+            this.originPos = originPos;
+        }
+
+        @Override
+        public IntVector getOriginPos() {
+            return originPos;
+        }
+    }
+
+    private static class SyntheticBlockMap extends FloodFillBlockMap {
+        // Percentage of blocks above the ground that are occluding
+        private static final int OCCLUDING_PERCENTAGE = 15;
+        private static final int GROUND_DEPTH = 3;
+
+        private int lastOccludingCount = 0;
+
+        private SyntheticBlockMap(IPortal portal, Logger logger, RenderConfig renderConfig) {
+            this(portal, logger, renderConfig, new OperationRegistry());
+        }
+
+        private SyntheticBlockMap(IPortal portal, Logger logger, RenderConfig renderConfig, OperationRegistry operationRegistry) {
+            super(portal, logger, renderConfig, operationRegistry, new RenderBudget(renderConfig, operationRegistry, logger), new RenderQualityController(renderConfig, operationRegistry, logger));
+        }
+
+        // Deterministic, so that every iteration fills the same area
+        private boolean isOccluding(IntVector destPos) {
+            if(destPos.getY() < portalDestPos.getY() - GROUND_DEPTH) {return true;}
+
+            int hash = destPos.hashCode() * 0x9E3779B9;
+            return Math.floorMod(hash ^ (hash >>> 16), 100) < OCCLUDING_PERCENTAGE;
+        }
+
+        @Override
+        protected void searchFromBlock(IntVector start, List<IViewableBlockInfo> statesOutput, @Nullable IViewableBlockInfo firstBlockInfo) {
+            int[] stack = new int[firstUpdate ? renderConfig.getTotalArrayLength() : 16];
+            stack[0] = getArrayMapIndex(start.subtract(centerPos));
+            int stackPos = 0;
+            while(stackPos >= 0) {
+                int positionInt = stack[stackPos];
+                stackPos--;
+
+                int relX = (positionInt % renderConfig.getZMultip());
+                int relY = Math.floorDiv(positionInt, renderConfig.getYMultip());
+                int relZ = Math.floorDiv(positionInt - relY * renderConfig.getYMultip(), renderConfig.getZMultip());
+
+                relX -= renderConfig.getMaxXZ();
+                relY -= renderConfig.getMaxY();
+                relZ -= renderConfig.getMaxXZ();
+
+                IntVector originPos = new IntVector(relX + portalOriginPos.getX(), relY + portalOriginPos.getY(), relZ + portalOriginPos.getZ());
+                IntVector destRelPos = rotateOriginToDest.transform(relX, relY, relZ);
+                boolean isOccluding = isOccluding(destRelPos.add(portalDestPos));
+
+                IViewableBlockInfo blockInfo = firstBlockInfo == null ? new SyntheticBlockInfo(originPos) : firstBlockInfo;
+                if(firstBlockInfo == null) {
+                    nonObscuredStates.add(blockInfo);
+                }
+                firstBlockInfo = null;
+
+                boolean isEdge = isOutsideBounds(relX, relY, relZ);
+                if(alreadyReachedMap[positionInt] < 2 && !isInLine(destRelPos)) {
+                    alreadyReachedMap[positionInt] = 2;
+                    statesOutput.add(blockInfo);
+                }
+
+                if(isOccluding || isEdge) {continue;}
+
+                if(!firstUpdate && (stack.length - (stackPos + 1) < 5)) {
+                    int[] newStack = new int[stack.length * 2];
+                    System.arraycopy(stack, 0, newStack, 0, stack.length);
+                    stack = newStack;
+                }
+
+                for(int offset : renderConfig.getIntOffsets()) {
+                    int newPos = positionInt + offset;
+                    if(alreadyReachedMap[newPos] == 0) {
+                        alreadyReachedMap[newPos] = 1;
+
+                        stackPos += 1;
+                        stack[stackPos] = newPos;
+                    }
+                }
+            }
+        }
+
+        // The synthetic terrain never changes, so this measures the cost of checking every reached block
+        @Override
+        protected void checkForChanges() {
+            int occludingCount = 0;
+            int statesLength = nonObscuredStates.size();
+            for(int i = 0; i < statesLength; i++) {
+                IViewableBlockInfo blockInfo = nonObscuredStates.get(i);
+
+                IntVector destPos = rotateOriginToDest.transform(blockInfo.getOriginPos().subtract(portalOriginPos)).add(portalDestPos);
+                if(isOccluding(destPos)) {
+                    occludingCount++;
+                }
+            }
+            lastOccludingCount = occludingCount;
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        MockBukkit.mock();
+
+        RenderConfig renderConfig = BenchmarkFixtures.createRenderConfig(portalEffectSize, Math.max(portalEffectSize / 2, 1));
+        IPortal portal = new BenchmarkPortal(PortalDirection.NORTH, PortalDirection.EAST, renderConfig);
+        blockMap = new SyntheticBlockMap(portal, BenchmarkFixtures.createLogger(), renderConfig);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        MockBukkit.unmock();
+    }
+
+    @Benchmark
+    public int initialFill() {
+        blockMap.reset();
+        blockMap.prepare();
+        return blockMap.getViewableBlockCount();
+    }
+
+    @Benchmark
+    public int checkForChanges() {
+        if(!blockMap.isPrepared()) {
+            blockMap.prepare();
+        }
+
+        // Zero is always a multiple of the update interval
+        blockMap.update(0);
+        return blockMap.lastOccludingCount;
+    }
+}
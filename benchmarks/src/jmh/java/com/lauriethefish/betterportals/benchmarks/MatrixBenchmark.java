@@ -0,0 +1,47 @@
+package com.lauriethefish.betterportals.benchmarks;
+
+import com.lauriethefish.betterportals.api.IntVector;
+import com.lauriethefish.betterportals.api.PortalDirection;
+import com.lauriethefish.betterportals.bukkit.math.Matrix;
+import org.bukkit.util.Vector;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link Matrix#transform(Vector)} and {@link Matrix#transform(int, int, int)}, which are called for every block in the flood fill and every replicated entity movement.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class MatrixBenchmark {
+    private Matrix rotation;
+    private Matrix originToDestination;
+    private Vector position;
+    private int x;
+    private int y;
+    private int z;
+
+    @Setup
+    public void setUp() {
+        rotation = Matrix.makeRotation(PortalDirection.NORTH, PortalDirection.EAST);
+        originToDestination = Matrix.makeTranslation(new Vector(1000.5, 70.5, -1000.5))
+                .multiply(rotation)
+                .multiply(Matrix.makeTranslation(new Vector(-0.5, -64.5, -0.5)));
+
+        position = new Vector(12.25, 65.5, -3.75);
+        x = 7;
+        y = -3;
+        z = 11;
+    }
+
+    @Benchmark
+    public Vector transformVector() {
+        return originToDestination.transform(position);
+    }
+
+    @Benchmark
+    public IntVector transformInts() {
+        return rotation.transform(x, y, z);
+    }
+}
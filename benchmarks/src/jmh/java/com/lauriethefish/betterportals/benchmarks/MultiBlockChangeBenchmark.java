@@ -0,0 +1,51 @@
+package com.lauriethefish.betterportals.benchmarks;
+
+import com.lauriethefish.betterportals.bukkit.block.bukkit.MultiBlockChangeManager_1_16_2;
+import com.lauriethefish.betterportals.bukkit.util.performance.OperationRegistry;
+import org.bukkit.util.Vector;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures grouping block changes into chunk sections in {@link MultiBlockChangeManager_1_16_2}, which happens for every changed block before the packets are built.
+ * Building and sending the packets themselves needs ProtocolLib to be running on a real server, so that part isn't covered.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class MultiBlockChangeBenchmark {
+    @Param({"7", "13", "21"})
+    private int portalEffectSize;
+
+    private final OperationRegistry operationRegistry = new OperationRegistry();
+    private Vector[] positions;
+
+    @Setup
+    public void setUp() {
+        // Every block in the area around a portal, as in the first update after activating it
+        int width = portalEffectSize * 2 + 1;
+        int height = Math.max(portalEffectSize / 2, 1) * 2 + 1;
+        positions = new Vector[width * width * height];
+
+        int i = 0;
+        for(int x = 0; x < width; x++) {
+            for(int y = 0; y < height; y++) {
+                for(int z = 0; z < width; z++) {
+                    positions[i] = new Vector(x - portalEffectSize, y + 60, z - portalEffectSize);
+                    i++;
+                }
+            }
+        }
+    }
+
+    @Benchmark
+    public MultiBlockChangeManager_1_16_2 addChanges() {
+        // The player is only used when sending the packets
+        MultiBlockChangeManager_1_16_2 changeManager = new MultiBlockChangeManager_1_16_2(null, -4, 19, operationRegistry);
+        for(Vector position : positions) {
+            changeManager.addChange(position, null);
+        }
+        return changeManager;
+    }
+}
@@ -0,0 +1,46 @@
+package com.lauriethefish.betterportals.benchmarks;
+
+import com.lauriethefish.betterportals.bukkit.math.PlaneIntersectionChecker;
+import org.bukkit.util.Vector;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures how many blocks per second {@link PlaneIntersectionChecker} can check, which is done for every viewable block of every viewed portal each tick.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class PlaneIntersectionBenchmark {
+    private static final int POSITION_COUNT = 4096;
+    private static final Vector MAX_DEV = new Vector(1.5, 2.5, 0.5);
+
+    private PlaneIntersectionChecker checker;
+    private final Vector[] positions = new Vector[POSITION_COUNT];
+
+    @Setup
+    public void setUp() {
+        // A player standing a few blocks in front of a portal facing along the Z axis
+        checker = new PlaneIntersectionChecker(new Vector(0.5, 65.5, 0.5), new Vector(0.0, 0.0, 1.0), new Vector(1.2, 66.1, 4.7), MAX_DEV);
+
+        // Fixed seed so that the same proportion of blocks is visible between runs
+        Random random = new Random(1234);
+        for(int i = 0; i < POSITION_COUNT; i++) {
+            positions[i] = new Vector(random.nextInt(27) - 13 + 0.5, random.nextInt(15) + 58.5, random.nextInt(27) - 13 + 0.5);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(POSITION_COUNT)
+    public int checkIntersections() {
+        int visibleCount = 0;
+        for(Vector position : positions) {
+            if(checker.checkIfIntersects(position)) {
+                visibleCount++;
+            }
+        }
+        return visibleCount;
+    }
+}
@@ -0,0 +1,102 @@
+package com.lauriethefish.betterportals.benchmarks;
+
+import com.comphenix.protocol.wrappers.WrappedBlockData;
+import com.lauriethefish.betterportals.api.IntVector;
+import com.lauriethefish.betterportals.bukkit.block.IMultiBlockChangeManager;
+import com.lauriethefish.betterportals.bukkit.block.IViewableBlockInfo;
+import com.lauriethefish.betterportals.bukkit.player.view.block.PlayerBlockStates;
+import org.bukkit.util.Vector;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures setting every block around a portal as viewable in {@link PlayerBlockStates}, then resetting them as happens when a player stops viewing a portal.
+ * The changes are collected by a manager that doesn't send anything, since that needs a real server.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class PlayerBlockStatesBenchmark {
+    @Param({"1000", "10000"})
+    private int blockCount;
+
+    private PlayerBlockStates blockStates;
+    private Vector[] positions;
+    private IViewableBlockInfo[] blockInfos;
+
+    private static class CountingMultiBlockChangeManager implements IMultiBlockChangeManager {
+        private int changeCount = 0;
+
+        @Override
+        public void addChangeOrigin(Vector position, IViewableBlockInfo newData) {
+            changeCount++;
+        }
+
+        @Override
+        public void addChangeDestination(Vector position, IViewableBlockInfo newData) {
+            changeCount++;
+        }
+
+        @Override
+        public void addChange(Vector position, WrappedBlockData newData) {
+            changeCount++;
+        }
+
+        @Override
+        public void sendChanges() { }
+
+        @Override
+        public int getPacketsSent() {
+            return 0;
+        }
+
+        @Override
+        public long getBytesSent() {
+            return 0;
+        }
+    }
+
+    @Setup
+    public void setUp() {
+        // The player is only passed on to the change manager, which doesn't use it
+        blockStates = new PlayerBlockStates(null, (player, minChunkY, maxChunkY) -> new CountingMultiBlockChangeManager(), BenchmarkFixtures.createLogger());
+
+        positions = new Vector[blockCount];
+        blockInfos = new IViewableBlockInfo[blockCount];
+        int sideLength = (int) Math.ceil(Math.cbrt(blockCount));
+        for(int i = 0; i < blockCount; i++) {
+            IntVector position = new IntVector(i % sideLength, 64 + (i / sideLength) % sideLength, i / (sideLength * sideLength));
+            positions[i] = position.toVector();
+            blockInfos[i] = () -> position;
+        }
+    }
+
+    @Benchmark
+    public int setAndReset() {
+        int newlyViewable = 0;
+        for(int i = 0; i < blockCount; i++) {
+            if(blockStates.setViewable(positions[i], blockInfos[i])) {
+                newlyViewable++;
+            }
+        }
+
+        blockStates.resetAndUpdate(-4, 19);
+        return newlyViewable;
+    }
+
+    @Benchmark
+    public int setAndSetNonViewable() {
+        for(int i = 0; i < blockCount; i++) {
+            blockStates.setViewable(positions[i], blockInfos[i]);
+        }
+
+        int removed = 0;
+        for(int i = 0; i < blockCount; i++) {
+            if(blockStates.setNonViewable(positions[i], blockInfos[i])) {
+                removed++;
+            }
+        }
+        return removed;
+    }
+}
@@ -0,0 +1,58 @@
+package com.lauriethefish.betterportals.benchmarks;
+
+import org.bukkit.block.data.BlockData;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Creates block data without a server, by implementing the block data interfaces with a proxy that stores each property in a map.
+ * Getters and setters are mapped to the property after the <code>get</code>/<code>set</code> prefix, e.g. <code>getFacing</code> reads the <code>Facing</code> property.
+ */
+public class SyntheticBlockData implements InvocationHandler {
+    private final Class<? extends BlockData> type;
+    private final Map<String, Object> properties;
+
+    private SyntheticBlockData(Class<? extends BlockData> type, Map<String, Object> properties) {
+        this.type = type;
+        this.properties = properties;
+    }
+
+    /**
+     * @param type Block data interface to implement, e.g. {@link org.bukkit.block.data.Directional}
+     * @param properties Initial properties, keyed by the name after <code>get</code>/<code>set</code>
+     * @return The new block data
+     */
+    public static <T extends BlockData> T create(Class<T> type, Map<String, Object> properties) {
+        return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, new SyntheticBlockData(type, new HashMap<>(properties))));
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) {
+        String name = method.getName();
+        switch(name) {
+            case "clone":
+                return create(type, properties);
+            case "equals":
+                return proxy == args[0];
+            case "hashCode":
+                return System.identityHashCode(proxy);
+            case "toString":
+                return type.getSimpleName() + properties;
+        }
+
+        if(name.startsWith("get") && (args == null || args.length == 0)) {
+            return properties.get(name.substring(3));
+        }
+
+        if(name.startsWith("set") && args != null && args.length == 1) {
+            properties.put(name.substring(3), args[0]);
+            return null;
+        }
+
+        throw new UnsupportedOperationException("Synthetic block data does not support " + name);
+    }
+}
@@ -0,0 +1,87 @@
+package com.lauriethefish.betterportals.benchmarks.net;
+
+import com.lauriethefish.betterportals.bukkit.net.requests.GetBlockDataChangesRequest;
+import com.lauriethefish.betterportals.shared.net.encryption.CipherManager;
+import com.lauriethefish.betterportals.shared.net.encryption.EncryptedObjectStream;
+import com.lauriethefish.betterportals.shared.net.requests.RelayRequest;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the serialization, encryption and compression of single messages with {@link EncryptedObjectStream}, without any sockets.
+ * Add JMH's GC profiler (<code>-prof gc</code>) to see the allocation per message.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class EncryptedObjectStreamBenchmark {
+    public enum Message {
+        /**
+         * The first response to a block change poll, with every block in the area
+         */
+        BLOCK_CHANGES_FULL,
+        /**
+         * A later response to a block change poll, with a few changed blocks
+         */
+        BLOCK_CHANGES_INCREMENTAL,
+        /**
+         * A block change poll, wrapped to be relayed by the proxy
+         */
+        RELAYED_POLL,
+        TELEPORT
+    }
+
+    @Param({"BLOCK_CHANGES_FULL", "BLOCK_CHANGES_INCREMENTAL", "RELAYED_POLL", "TELEPORT"})
+    private Message message;
+
+    private Object messageObject;
+    private CipherManager cipherManager;
+    private byte[] encodedMessage;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        cipherManager = new CipherManager();
+        cipherManager.init(UUID.randomUUID());
+
+        Random random = new Random(1);
+        GetBlockDataChangesRequest pollRequest = TrafficPayloads.createBlockChangesRequest(0);
+        switch(message) {
+            case BLOCK_CHANGES_FULL:
+                messageObject = TrafficPayloads.createBlockChangesResponse(pollRequest, true, 0, random);
+                break;
+            case BLOCK_CHANGES_INCREMENTAL:
+                messageObject = TrafficPayloads.createBlockChangesResponse(pollRequest, false, 4, random);
+                break;
+            case RELAYED_POLL:
+                RelayRequest relayRequest = new RelayRequest();
+                relayRequest.setInnerRequest(pollRequest);
+                relayRequest.setDestination("server-1");
+                messageObject = relayRequest;
+                break;
+            case TELEPORT:
+                messageObject = TrafficPayloads.createTeleportRequest("server-1", random);
+                break;
+        }
+
+        encodedMessage = write();
+    }
+
+    @Benchmark
+    public byte[] write() throws Exception {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        new EncryptedObjectStream(InputStream.nullInputStream(), outputStream, cipherManager).writeObject(messageObject);
+        return outputStream.toByteArray();
+    }
+
+    @Benchmark
+    public Object read() throws Exception {
+        return new EncryptedObjectStream(new ByteArrayInputStream(encodedMessage), OutputStream.nullOutputStream(), cipherManager).readObject();
+    }
+}
@@ -0,0 +1,285 @@
+package com.lauriethefish.betterportals.benchmarks.net;
+
+import com.lauriethefish.betterportals.bukkit.util.performance.LatencyHistogram;
+import com.lauriethefish.betterportals.shared.net.*;
+import com.lauriethefish.betterportals.shared.net.encryption.CipherManager;
+import com.lauriethefish.betterportals.shared.net.encryption.EncryptedObjectStream;
+import com.lauriethefish.betterportals.shared.net.encryption.IEncryptedObjectStream;
+import com.lauriethefish.betterportals.shared.net.requests.RelayRequest;
+import com.lauriethefish.betterportals.shared.net.requests.Request;
+import lombok.Getter;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.*;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.security.GeneralSecurityException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Speaks the same protocol as <code>PortalClient</code>, without needing a Bukkit server.
+ * <code>PortalClient</code> hands requests and responses to the main thread using the scheduler, but here they're handled directly on the read thread.
+ * Everything written to and read from the socket is counted, so that the size of the encrypted messages can be measured.
+ */
+public class LoopbackClient {
+    private static final int CONNECT_ATTEMPTS = 50;
+    private static final long CONNECT_RETRY_DELAY = 100;
+
+    @Getter private final String serverName;
+    private final CipherManager cipherManager;
+    private final Function<Request, Response> requestHandler;
+    private final LatencyHistogram roundTripTimes;
+
+    private Socket socket;
+    private IEncryptedObjectStream objectStream;
+    private volatile boolean isRunning = false;
+
+    private final AtomicInteger currentRequestId = new AtomicInteger();
+    private final ConcurrentMap<Integer, Consumer<Response>> waitingRequests = new ConcurrentHashMap<>();
+    // The System.nanoTime() that each waiting request was sent at
+    private final ConcurrentMap<Integer, Long> requestSendTimes = new ConcurrentHashMap<>();
+
+    @Getter private final LongAdder bytesSent = new LongAdder();
+    @Getter private final LongAdder bytesReceived = new LongAdder();
+    @Getter private final LongAdder messagesSent = new LongAdder();
+    @Getter private final LongAdder messagesReceived = new LongAdder();
+
+    /**
+     * @param serverName Name of the server that this client registers as
+     * @param cipherManager Initialised with the same key as the proxy
+     * @param requestHandler Handles requests from the proxy or other clients. Relayed requests are unwrapped before being passed to this, and their responses wrapped in the same way as <code>ClientRequestHandler</code>.
+     * @param roundTripTimes Records the time between sending each request and receiving its response
+     */
+    public LoopbackClient(String serverName, CipherManager cipherManager, Function<Request, Response> requestHandler, LatencyHistogram roundTripTimes) {
+        this.serverName = serverName;
+        this.cipherManager = cipherManager;
+        this.requestHandler = requestHandler;
+        this.roundTripTimes = roundTripTimes;
+    }
+
+    /**
+     * Connects to the proxy and runs the handshake, then starts the read thread.
+     * @param proxyAddress Address that the portal server is bound to. It is started on another thread, so connecting is retried for a few seconds.
+     * @throws IllegalStateException If the proxy rejected the handshake
+     */
+    public void connect(InetSocketAddress proxyAddress) throws IOException, GeneralSecurityException, ClassNotFoundException, InterruptedException {
+        for(int attempt = 1; socket == null; attempt++) {
+            try {
+                socket = new Socket(proxyAddress.getAddress(), proxyAddress.getPort());
+            }   catch(IOException ex) {
+                if(attempt == CONNECT_ATTEMPTS) {throw ex;}
+                Thread.sleep(CONNECT_RETRY_DELAY);
+            }
+        }
+
+        objectStream = new EncryptedObjectStream(new CountingInputStream(socket.getInputStream(), bytesReceived), new CountingOutputStream(socket.getOutputStream(), bytesSent), cipherManager);
+
+        Handshake handshake = new Handshake();
+        handshake.setPluginVersion(LoopbackProxy.PLUGIN_VERSION);
+        handshake.setGameVersion("loopback");
+        handshake.setOverrideServerName(serverName);
+        send(handshake);
+
+        HandshakeResponse response = (HandshakeResponse) objectStream.readObject();
+        messagesReceived.increment();
+        if(response.getStatus() != HandshakeResponse.Result.SUCCESS) {
+            throw new IllegalStateException(String.format("Proxy rejected handshake for %s: %s", serverName, response.getStatus()));
+        }
+
+        isRunning = true;
+        Thread readThread = new Thread(this::run, "Loopback client " + serverName);
+        readThread.setDaemon(true);
+        readThread.start();
+    }
+
+    private void run() {
+        try {
+            while(isRunning) {
+                Object next = objectStream.readObject();
+                messagesReceived.increment();
+                if (next instanceof DisconnectNotice) {
+                    return;
+                } else if (next instanceof Response) {
+                    processResponse((Response) next);
+                } else if (next instanceof Request) {
+                    processRequest((Request) next);
+                }
+            }
+        }   catch(IOException ex) {
+            // An IOException gets thrown if another thread shuts down this connection
+            if(isRunning) {
+                ex.printStackTrace();
+            }
+        }   catch(Exception ex) {
+            ex.printStackTrace();
+        }   finally     {
+            disconnect();
+        }
+    }
+
+    private void processRequest(Request request) throws IOException, GeneralSecurityException {
+        Response response;
+        try {
+            if(request instanceof RelayRequest) {
+                response = wrapResponse(requestHandler.apply(((RelayRequest) request).getInnerRequest()));
+            }   else    {
+                response = requestHandler.apply(request);
+            }
+        }   catch(Exception ex) {
+            response = new Response();
+            response.setError(new RequestException(ex, "Internal error occurred on a loopback client while processing request"));
+        }
+
+        response.setId(request.getId());
+        send(response);
+    }
+
+    // Wraps the response as a byte array, just like ClientRequestHandler, so that the proxy doesn't need to deserialize it
+    private Response wrapResponse(Response response) throws IOException {
+        ByteArrayOutputStream byteOutputStream = new ByteArrayOutputStream();
+        new ObjectOutputStream(byteOutputStream).writeObject(response);
+
+        Response wrappedResponse = new Response();
+        wrappedResponse.setResult(byteOutputStream.toByteArray());
+        return wrappedResponse;
+    }
+
+    private void processResponse(Response response) {
+        Consumer<Response> waiter = waitingRequests.remove(response.getId());
+        if(waiter == null) {
+            throw new IllegalStateException("Received response for request that didn't exist");
+        }
+
+        Long sendTime = requestSendTimes.remove(response.getId());
+        if(sendTime != null) {
+            roundTripTimes.record(System.nanoTime() - sendTime);
+        }
+        waiter.accept(response);
+    }
+
+    public void sendRequestToProxy(@NotNull Request request, @NotNull Consumer<Response> onFinish) {
+        int requestId = currentRequestId.getAndIncrement();
+        request.setId(requestId);
+        waitingRequests.put(requestId, onFinish);
+        requestSendTimes.put(requestId, System.nanoTime());
+
+        try {
+            send(request);
+        }   catch(IOException | GeneralSecurityException ex) {
+            disconnect();
+        }
+    }
+
+    public void sendRequestToServer(@NotNull Request request, @NotNull String destinationServer, @NotNull Consumer<Response> onFinish) {
+        RelayRequest relayRequest = new RelayRequest();
+        relayRequest.setInnerRequest(request);
+        relayRequest.setDestination(destinationServer);
+
+        sendRequestToProxy(relayRequest, (response) -> {
+            try {
+                byte[] responseData = (byte[]) response.getResult();
+                onFinish.accept((Response) new ObjectInputStream(new ByteArrayInputStream(responseData)).readObject());
+            }   catch(RequestException ex) {
+                Response eResponse = new Response();
+                eResponse.setError(ex);
+                onFinish.accept(eResponse);
+            }   catch(IOException | ClassNotFoundException ex) {
+                disconnect();
+            }
+        });
+    }
+
+    public void shutDown() {
+        if(!isRunning) {return;}
+
+        try {
+            send(new DisconnectNotice());
+        }   catch(IOException | GeneralSecurityException ex) {
+            // The proxy may have already shut down
+        }
+        disconnect();
+    }
+
+    /**
+     * Closes the socket. Any waiting requests will receive an error.
+     */
+    private void disconnect() {
+        isRunning = false;
+        try {
+            if(socket != null) {
+                socket.close();
+            }
+        }   catch(IOException ex) {
+            ex.printStackTrace();
+        }
+
+        Response disconnectResponse = new Response();
+        disconnectResponse.setError(new RequestException("Loopback client disconnected while sending the request"));
+        for(Integer requestId : waitingRequests.keySet()) {
+            Consumer<Response> waiter = waitingRequests.remove(requestId);
+            if(waiter != null) {
+                waiter.accept(disconnectResponse);
+            }
+        }
+        requestSendTimes.clear();
+    }
+
+    private synchronized void send(Object obj) throws IOException, GeneralSecurityException {
+        objectStream.writeObject(obj);
+        messagesSent.increment();
+    }
+
+    private static class CountingInputStream extends FilterInputStream {
+        private final LongAdder count;
+
+        private CountingInputStream(InputStream in, LongAdder count) {
+            super(in);
+            this.count = count;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int value = super.read();
+            if(value >= 0) {
+                count.increment();
+            }
+            return value;
+        }
+
+        @Override
+        public int read(byte @NotNull [] b, int off, int len) throws IOException {
+            int read = super.read(b, off, len);
+            if(read > 0) {
+                count.add(read);
+            }
+            return read;
+        }
+    }
+
+    private static class CountingOutputStream extends FilterOutputStream {
+        private final LongAdder count;
+
+        private CountingOutputStream(OutputStream out, LongAdder count) {
+            super(out);
+            this.count = count;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count.increment();
+        }
+
+        // FilterOutputStream writes arrays one byte at a time, which would change the write pattern on the socket
+        @Override
+        public void write(byte @NotNull [] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count.add(len);
+        }
+    }
+}
@@ -0,0 +1,248 @@
+package com.lauriethefish.betterportals.benchmarks.net;
+
+import com.lauriethefish.betterportals.bukkit.net.requests.CheckDestinationValidityRequest;
+import com.lauriethefish.betterportals.bukkit.net.requests.GetBlockDataChangesRequest;
+import com.lauriethefish.betterportals.bukkit.util.performance.LatencyHistogram;
+import com.lauriethefish.betterportals.shared.net.RequestException;
+import com.lauriethefish.betterportals.shared.net.Response;
+import com.lauriethefish.betterportals.shared.net.encryption.CipherManager;
+import com.lauriethefish.betterportals.shared.net.requests.Request;
+import com.lauriethefish.betterportals.shared.net.requests.TeleportRequest;
+import lombok.Getter;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.ToLongFunction;
+
+/**
+ * A {@link LoopbackProxy} with a number of {@link LoopbackClient}s connected to it.
+ * Each client acts as a server with cross-server portals leading to the next client, so every relayed request crosses the proxy twice.
+ */
+public class LoopbackCluster {
+    private static final long REGISTRATION_TIMEOUT = 5000; // Milliseconds
+    private static final long ROUND_TIMEOUT = 30; // Seconds
+
+    public enum TrafficMix {
+        /**
+         * Every portal on every client polls its destination for block changes
+         */
+        BLOCK_CHANGE_POLLS,
+        /**
+         * Every client relays a request to every other client
+         */
+        RELAY_FAN_OUT,
+        /**
+         * Every client sends a burst of teleport requests to the proxy
+         */
+        TELEPORT_BURST
+    }
+
+    @Getter private final LoopbackProxy proxy;
+    @Getter private final List<LoopbackClient> clients = new ArrayList<>();
+    private final List<List<GetBlockDataChangesRequest>> portalRequests = new ArrayList<>();
+    private final int changesPerPoll;
+    private final int teleportBurstSize;
+
+    // Change set IDs that the destination has already sent the full area for, like the watchers in ExternalBlockWatcherManager
+    private final Set<UUID> knownChangeSets = ConcurrentHashMap.newKeySet();
+
+    @Getter private final LatencyHistogram roundTripTimes = new LatencyHistogram();
+    @Getter private final LongAdder requestsSent = new LongAdder();
+    @Getter private final LongAdder requestsCompleted = new LongAdder();
+    @Getter private final LongAdder requestsFailed = new LongAdder();
+
+    /**
+     * @param clientCount Number of clients to connect, at least two so that requests can be relayed
+     * @param portalsPerClient Number of cross-server portals on each client
+     * @param changesPerPoll Number of blocks that change between each block change poll
+     * @param teleportBurstSize Number of teleport requests that each client sends in a burst
+     */
+    public LoopbackCluster(int clientCount, int portalsPerClient, int changesPerPoll, int teleportBurstSize) throws Exception {
+        if(clientCount < 2) {
+            throw new IllegalArgumentException("A loopback cluster needs at least two clients");
+        }
+        this.changesPerPoll = changesPerPoll;
+        this.teleportBurstSize = teleportBurstSize;
+
+        Set<String> serverNames = new HashSet<>();
+        for(int i = 0; i < clientCount; i++) {
+            serverNames.add("server-" + i);
+        }
+        this.proxy = new LoopbackProxy(serverNames);
+
+        for(int i = 0; i < clientCount; i++) {
+            CipherManager cipherManager = new CipherManager();
+            cipherManager.init(proxy.getKey());
+            clients.add(new LoopbackClient("server-" + i, cipherManager, this::handleRequest, roundTripTimes));
+
+            List<GetBlockDataChangesRequest> requests = new ArrayList<>();
+            for(int portal = 0; portal < portalsPerClient; portal++) {
+                requests.add(TrafficPayloads.createBlockChangesRequest(portal));
+            }
+            portalRequests.add(requests);
+        }
+    }
+
+    public void startUp() throws Exception {
+        proxy.startUp();
+        for(LoopbackClient client : clients) {
+            client.connect(proxy.getBindAddress());
+        }
+
+        long deadline = System.currentTimeMillis() + REGISTRATION_TIMEOUT;
+        for(LoopbackClient client : clients) {
+            while(!proxy.isRegistered(client.getServerName())) {
+                if(System.currentTimeMillis() > deadline) {
+                    throw new IllegalStateException(String.format("Proxy did not register %s in time", client.getServerName()));
+                }
+                Thread.sleep(10);
+            }
+        }
+    }
+
+    public void shutDown() {
+        for(LoopbackClient client : clients) {
+            client.shutDown();
+        }
+        proxy.shutDown();
+    }
+
+    // Handles requests on the destination client, like ClientRequestHandler
+    private Response handleRequest(Request request) {
+        if(request instanceof GetBlockDataChangesRequest) {
+            GetBlockDataChangesRequest changesRequest = (GetBlockDataChangesRequest) request;
+            boolean fullArea = knownChangeSets.add(changesRequest.getChangeSetId());
+            return TrafficPayloads.createBlockChangesResponse(changesRequest, fullArea, changesPerPoll, ThreadLocalRandom.current());
+        }   else if(request instanceof CheckDestinationValidityRequest || request instanceof TeleportRequest) {
+            return new Response();
+        }   else    {
+            throw new IllegalStateException("Received request of unknown type");
+        }
+    }
+
+    private String getDestinationServer(int clientIndex) {
+        return clients.get((clientIndex + 1) % clients.size()).getServerName();
+    }
+
+    private void onResponse(Response response, Runnable onFinish) {
+        try {
+            response.checkForErrors();
+            requestsCompleted.increment();
+        }   catch(RequestException ex) {
+            requestsFailed.increment();
+        }
+        onFinish.run();
+    }
+
+    /**
+     * Polls the destination of a portal for block changes.
+     * The first poll for each portal returns the full area.
+     */
+    public void pollBlockChanges(int clientIndex, int portalIndex, Runnable onFinish) {
+        requestsSent.increment();
+        GetBlockDataChangesRequest request = portalRequests.get(clientIndex).get(portalIndex);
+        clients.get(clientIndex).sendRequestToServer(request, getDestinationServer(clientIndex), response -> onResponse(response, onFinish));
+    }
+
+    public int getPortalsPerClient() {
+        return portalRequests.get(0).size();
+    }
+
+    /**
+     * Relays a destination validity check to every other client.
+     * @return The number of requests sent
+     */
+    public int fanOut(int clientIndex, Runnable onFinish) {
+        LoopbackClient client = clients.get(clientIndex);
+        int sent = 0;
+        for(LoopbackClient destination : clients) {
+            if(destination == client) {continue;}
+
+            requestsSent.increment();
+            client.sendRequestToServer(TrafficPayloads.createDestinationValidityRequest(), destination.getServerName(), response -> onResponse(response, onFinish));
+            sent++;
+        }
+        return sent;
+    }
+
+    /**
+     * Sends a burst of teleport requests to the proxy, which forwards each of them to the destination before moving the player.
+     * @return The number of requests sent
+     */
+    public int teleportBurst(int clientIndex, Runnable onFinish) {
+        String destination = getDestinationServer(clientIndex);
+        for(int i = 0; i < teleportBurstSize; i++) {
+            requestsSent.increment();
+            TeleportRequest request = TrafficPayloads.createTeleportRequest(destination, ThreadLocalRandom.current());
+            clients.get(clientIndex).sendRequestToProxy(request, response -> onResponse(response, onFinish));
+        }
+        return teleportBurstSize;
+    }
+
+    /**
+     * Sends one round of <code>mix</code> from every client, then waits for all the responses.
+     * @return The number of requests in the round
+     * @throws IllegalStateException If the responses took too long
+     */
+    public int runRound(TrafficMix mix) throws InterruptedException {
+        int clientCount = clients.size();
+        int requestCount;
+        switch(mix) {
+            case BLOCK_CHANGE_POLLS:
+                requestCount = clientCount * getPortalsPerClient();
+                break;
+            case RELAY_FAN_OUT:
+                requestCount = clientCount * (clientCount - 1);
+                break;
+            case TELEPORT_BURST:
+                requestCount = clientCount * teleportBurstSize;
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown traffic mix " + mix);
+        }
+
+        CountDownLatch latch = new CountDownLatch(requestCount);
+        for(int i = 0; i < clientCount; i++) {
+            switch(mix) {
+                case BLOCK_CHANGE_POLLS:
+                    for(int portal = 0; portal < getPortalsPerClient(); portal++) {
+                        pollBlockChanges(i, portal, latch::countDown);
+                    }
+                    break;
+                case RELAY_FAN_OUT:
+                    fanOut(i, latch::countDown);
+                    break;
+                case TELEPORT_BURST:
+                    teleportBurst(i, latch::countDown);
+                    break;
+            }
+        }
+
+        if(!latch.await(ROUND_TIMEOUT, TimeUnit.SECONDS)) {
+            throw new IllegalStateException(String.format("Timed out waiting for %d of %d responses", latch.getCount(), requestCount));
+        }
+        return requestCount;
+    }
+
+    /**
+     * @return Requests that have been sent, but haven't received a response
+     */
+    public long getOutstandingRequests() {
+        return requestsSent.sum() - requestsCompleted.sum() - requestsFailed.sum();
+    }
+
+    /**
+     * Sums a counter over all of the clients, e.g. <code>sumClients(client -> client.getBytesSent().sum())</code>
+     */
+    public long sumClients(ToLongFunction<LoopbackClient> counter) {
+        long total = 0;
+        for(LoopbackClient client : clients) {
+            total += counter.applyAsLong(client);
+        }
+        return total;
+    }
+}
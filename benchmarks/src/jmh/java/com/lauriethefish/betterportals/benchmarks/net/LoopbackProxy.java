@@ -0,0 +1,107 @@
+package com.lauriethefish.betterportals.benchmarks.net;
+
+import com.google.inject.AbstractModule;
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import com.lauriethefish.betterportals.benchmarks.BenchmarkFixtures;
+import com.lauriethefish.betterportals.proxy.IProxy;
+import com.lauriethefish.betterportals.proxy.IProxyConfig;
+import com.lauriethefish.betterportals.proxy.net.IPortalServer;
+import com.lauriethefish.betterportals.proxy.net.ProxyModule;
+import com.lauriethefish.betterportals.shared.logging.Logger;
+import lombok.Getter;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Runs the real {@link IPortalServer} from the proxy module on loopback.
+ * BungeeCord and Velocity are replaced with a proxy that knows a fixed set of server names, and where every player exists.
+ */
+public class LoopbackProxy implements IProxy, IProxyConfig {
+    public static final String PLUGIN_VERSION = "loopback";
+
+    @Getter private final InetSocketAddress bindAddress;
+    @Getter private final UUID key = UUID.randomUUID();
+    private final Set<String> serverNames;
+
+    /**
+     * Number of times that a player was moved to another server after a teleport request
+     */
+    @Getter private final LongAdder serverChanges = new LongAdder();
+
+    private IPortalServer portalServer;
+
+    public LoopbackProxy(Set<String> serverNames) throws IOException {
+        this.serverNames = new HashSet<>(serverNames);
+
+        // The portal server doesn't expose its socket, so find a free port first instead of binding to port 0
+        InetAddress loopback = InetAddress.getLoopbackAddress();
+        try(ServerSocket socket = new ServerSocket(0, 0, loopback)) {
+            this.bindAddress = new InetSocketAddress(loopback, socket.getLocalPort());
+        }
+    }
+
+    public void startUp() {
+        Logger logger = BenchmarkFixtures.createLogger();
+        Injector injector = Guice.createInjector(new ProxyModule(), new AbstractModule() {
+            @Override
+            protected void configure() {
+                bind(Logger.class).toInstance(logger);
+                bind(IProxy.class).toInstance(LoopbackProxy.this);
+                bind(IProxyConfig.class).toInstance(LoopbackProxy.this);
+            }
+        });
+
+        portalServer = injector.getInstance(IPortalServer.class);
+        portalServer.startUp();
+    }
+
+    public void shutDown() {
+        if(portalServer != null) {
+            portalServer.shutDown();
+        }
+    }
+
+    /**
+     * The portal server registers a client after sending its handshake response, so clients must wait for this before relaying requests to each other.
+     * @param serverName Name of the server to check
+     * @return Whether the portal server has finished registering the server
+     */
+    public boolean isRegistered(String serverName) {
+        return portalServer.getServer(serverName) != null;
+    }
+
+    @Override
+    public String getPluginVersion() {
+        return PLUGIN_VERSION;
+    }
+
+    @Override
+    @Deprecated
+    public @Nullable String findServer(InetSocketAddress clientAddress) {
+        return null;
+    }
+
+    @Override
+    public boolean serverExists(String serverName) {
+        return serverNames.contains(serverName);
+    }
+
+    @Override
+    public boolean playerExists(UUID uid) {
+        return true;
+    }
+
+    @Override
+    public void changePlayerServer(UUID uid, String destinationServer) {
+        serverChanges.increment();
+    }
+}
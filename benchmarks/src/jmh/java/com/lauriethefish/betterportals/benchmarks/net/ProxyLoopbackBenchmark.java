@@ -0,0 +1,45 @@
+package com.lauriethefish.betterportals.benchmarks.net;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures rounds of traffic between {@link LoopbackClient}s through a real portal server, including serialization, encryption, compression and the loopback sockets.
+ * Run with <code>-Pbenchmarks=ProxyLoopback</code>, and add JMH's GC profiler (<code>-prof gc</code>) to see the allocation rate.
+ * Use the <code>proxySoak</code> task for round trip percentiles and bytes per message under sustained traffic.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ProxyLoopbackBenchmark {
+    @Param({"BLOCK_CHANGE_POLLS", "RELAY_FAN_OUT", "TELEPORT_BURST"})
+    private LoopbackCluster.TrafficMix mix;
+
+    @Param({"4"})
+    private int clients;
+
+    @Param({"10", "50"})
+    private int portalsPerClient;
+
+    private LoopbackCluster cluster;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        cluster = new LoopbackCluster(clients, portalsPerClient, 4, 20);
+        cluster.startUp();
+
+        // Block change polls only send the full area the first time, which isn't the steady state being measured
+        cluster.runRound(LoopbackCluster.TrafficMix.BLOCK_CHANGE_POLLS);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        cluster.shutDown();
+    }
+
+    @Benchmark
+    public int round() throws InterruptedException {
+        return cluster.runRound(mix);
+    }
+}
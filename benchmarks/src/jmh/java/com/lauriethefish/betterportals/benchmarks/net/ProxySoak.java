@@ -0,0 +1,187 @@
+package com.lauriethefish.betterportals.benchmarks.net;
+
+import lombok.Getter;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+
+/**
+ * Replays a realistic mix of cross-server traffic through a {@link LoopbackCluster} for a while, then reports throughput, round trip times, bytes per message and GC pressure.
+ * Traffic is sent on a 20 tick per second schedule, like the plugin would:
+ * every portal polls for block changes each <code>pollInterval</code> ticks, each client fans out a relayed request each <code>fanOutInterval</code> ticks,
+ * and one client sends a teleport burst each <code>teleportBurstInterval</code> ticks.
+ * Exits with status 1 if any request failed, or if responses were still outstanding after the run, so it can be used as a soak test.
+ */
+public class ProxySoak {
+    private static final long DRAIN_TIMEOUT = 10_000; // Milliseconds
+    // Only applies if tickMillis is 0, to avoid queueing requests faster than they can be sent
+    private static final long MAX_OUTSTANDING_REQUESTS = 2000;
+
+    @Getter
+    public static class Settings {
+        private final int clients = Integer.getInteger("proxySoak.clients", 4);
+        private final int portals = Integer.getInteger("proxySoak.portals", 20);
+        private final int durationSeconds = Integer.getInteger("proxySoak.durationSeconds", 60);
+        private final int reportIntervalSeconds = Integer.getInteger("proxySoak.reportIntervalSeconds", 10);
+        // 0 sends each tick as soon as the previous one is sent, to find the maximum throughput
+        private final int tickMillis = Integer.getInteger("proxySoak.tickMillis", 50);
+        // The default portalBlockUpdateInterval in config.yml
+        private final int pollInterval = Integer.getInteger("proxySoak.pollInterval", 20);
+        private final int changesPerPoll = Integer.getInteger("proxySoak.changesPerPoll", 4);
+        private final int fanOutInterval = Integer.getInteger("proxySoak.fanOutInterval", 100);
+        private final int teleportBurstInterval = Integer.getInteger("proxySoak.teleportBurstInterval", 200);
+        private final int teleportBurstSize = Integer.getInteger("proxySoak.teleportBurstSize", 20);
+        private final long seed = Long.getLong("proxySoak.seed", 1);
+    }
+
+    private static class Snapshot {
+        private final long time = System.nanoTime();
+        private final long requests;
+        private final long bytes;
+        private final long messages;
+        private final long gcCount;
+        private final long gcTime;
+        private final long allocatedBytes;
+
+        private Snapshot(LoopbackCluster cluster) {
+            requests = cluster.getRequestsCompleted().sum() + cluster.getRequestsFailed().sum();
+            bytes = cluster.sumClients(client -> client.getBytesSent().sum() + client.getBytesReceived().sum());
+            messages = cluster.sumClients(client -> client.getMessagesSent().sum() + client.getMessagesReceived().sum());
+
+            long count = 0;
+            long collectionTime = 0;
+            for(GarbageCollectorMXBean bean : ManagementFactory.getGarbageCollectorMXBeans()) {
+                count += Math.max(bean.getCollectionCount(), 0);
+                collectionTime += Math.max(bean.getCollectionTime(), 0);
+            }
+            gcCount = count;
+            gcTime = collectionTime;
+            allocatedBytes = getAllocatedBytes();
+        }
+    }
+
+    // Sums the allocation of every live thread, which includes the proxy and client threads since they live for the whole run
+    private static long getAllocatedBytes() {
+        if(!(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean)) {return 0;}
+
+        com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long total = 0;
+        for(long allocated : threadBean.getThreadAllocatedBytes(threadBean.getAllThreadIds())) {
+            total += Math.max(allocated, 0);
+        }
+        return total;
+    }
+
+    private final Settings settings;
+    private final LoopbackCluster cluster;
+    private final Random random;
+
+    public ProxySoak(Settings settings) throws Exception {
+        this.settings = settings;
+        this.cluster = new LoopbackCluster(settings.getClients(), settings.getPortals(), settings.getChangesPerPoll(), settings.getTeleportBurstSize());
+        this.random = new Random(settings.getSeed());
+    }
+
+    private void sendTick(long tick) {
+        Runnable ignore = () -> {};
+        int clientCount = settings.getClients();
+        for(int client = 0; client < clientCount; client++) {
+            // Spread the polls over the interval, like portals which were activated at different times
+            for(int portal = 0; portal < settings.getPortals(); portal++) {
+                if((tick + portal + client) % settings.getPollInterval() == 0) {
+                    cluster.pollBlockChanges(client, portal, ignore);
+                }
+            }
+
+            if((tick + client) % settings.getFanOutInterval() == 0) {
+                cluster.fanOut(client, ignore);
+            }
+        }
+
+        if(tick % settings.getTeleportBurstInterval() == 0) {
+            cluster.teleportBurst(random.nextInt(clientCount), ignore);
+        }
+    }
+
+    private void report(String label, Snapshot from, Snapshot to) {
+        double seconds = (to.time - from.time) / 1_000_000_000.0;
+        long requests = to.requests - from.requests;
+        long messages = to.messages - from.messages;
+        long allocated = to.allocatedBytes - from.allocatedBytes;
+
+        System.out.printf("[%s] %.0f requests/s, %d failed, %d outstanding%n", label, requests / seconds, cluster.getRequestsFailed().sum(), cluster.getOutstandingRequests());
+        System.out.printf("[%s] Round trip p50 %.2f ms, p99 %.2f ms, p99.9 %.2f ms (since start)%n", label,
+                cluster.getRoundTripTimes().getValueAtPercentile(50) / 1_000_000.0,
+                cluster.getRoundTripTimes().getValueAtPercentile(99) / 1_000_000.0,
+                cluster.getRoundTripTimes().getValueAtPercentile(99.9) / 1_000_000.0);
+        System.out.printf("[%s] %d messages, %.0f bytes/message on the client sockets%n", label, messages, messages == 0 ? 0.0 : (double) (to.bytes - from.bytes) / messages);
+        System.out.printf("[%s] GC: %d collections, %d ms. Allocated %.1f MB/s, %.1f kB/request%n", label,
+                to.gcCount - from.gcCount, to.gcTime - from.gcTime,
+                allocated / seconds / (1024.0 * 1024.0),
+                requests == 0 ? 0.0 : allocated / 1024.0 / requests);
+    }
+
+    /**
+     * @return Whether the run finished without any failed or lost requests
+     */
+    public boolean run() throws Exception {
+        try {
+            return runTraffic();
+        }   finally     {
+            cluster.shutDown();
+        }
+    }
+
+    private boolean runTraffic() throws Exception {
+        cluster.startUp();
+        System.out.printf("Started proxy with %d clients and %d portals per client%n", settings.getClients(), settings.getPortals());
+
+        // The first poll of each portal sends the full area, which isn't representative of the rest of the run
+        cluster.runRound(LoopbackCluster.TrafficMix.BLOCK_CHANGE_POLLS);
+        cluster.getRoundTripTimes().reset();
+
+        Snapshot start = new Snapshot(cluster);
+        Snapshot lastReport = start;
+        long tickNanos = settings.getTickMillis() * 1_000_000L;
+        long endTime = start.time + settings.getDurationSeconds() * 1_000_000_000L;
+        long nextReport = start.time + settings.getReportIntervalSeconds() * 1_000_000_000L;
+
+        for(long tick = 0; System.nanoTime() < endTime; tick++) {
+            sendTick(tick);
+
+            if(tickNanos > 0) {
+                long sleepNanos = start.time + (tick + 1) * tickNanos - System.nanoTime();
+                if(sleepNanos > 0) {
+                    Thread.sleep(sleepNanos / 1_000_000, (int) (sleepNanos % 1_000_000));
+                }
+            }   else    {
+                while(cluster.getOutstandingRequests() > MAX_OUTSTANDING_REQUESTS) {
+                    Thread.onSpinWait();
+                }
+            }
+
+            if(System.nanoTime() > nextReport) {
+                Snapshot now = new Snapshot(cluster);
+                report(String.format("%ds", (now.time - start.time) / 1_000_000_000L), lastReport, now);
+                lastReport = now;
+                nextReport += settings.getReportIntervalSeconds() * 1_000_000_000L;
+            }
+        }
+
+        long drainDeadline = System.currentTimeMillis() + DRAIN_TIMEOUT;
+        while(cluster.getOutstandingRequests() > 0 && System.currentTimeMillis() < drainDeadline) {
+            Thread.sleep(10);
+        }
+
+        report("total", start, new Snapshot(cluster));
+        System.out.printf("Players moved between servers: %d%n", cluster.getProxy().getServerChanges().sum());
+
+        return cluster.getRequestsFailed().sum() == 0 && cluster.getOutstandingRequests() == 0;
+    }
+
+    public static void main(String[] args) throws Exception {
+        boolean successful = new ProxySoak(new Settings()).run();
+        System.exit(successful ? 0 : 1);
+    }
+}
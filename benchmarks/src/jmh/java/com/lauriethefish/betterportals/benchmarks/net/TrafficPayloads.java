@@ -0,0 +1,111 @@
+package com.lauriethefish.betterportals.benchmarks.net;
+
+import com.lauriethefish.betterportals.api.IntVector;
+import com.lauriethefish.betterportals.bukkit.math.Matrix;
+import com.lauriethefish.betterportals.bukkit.net.requests.CheckDestinationValidityRequest;
+import com.lauriethefish.betterportals.bukkit.net.requests.GetBlockDataChangesRequest;
+import com.lauriethefish.betterportals.shared.net.Response;
+import com.lauriethefish.betterportals.shared.net.requests.TeleportRequest;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+
+/**
+ * Creates the requests and responses that are sent between servers with cross-server portals, with the same types and sizes as the real ones.
+ */
+public class TrafficPayloads {
+    // The default portalEffectSizeXZ and portalEffectSizeY in config.yml
+    public static final int X_AND_Z_RADIUS = 13;
+    public static final int Y_RADIUS = 7;
+
+    // Combined block data IDs are spread over a range similar to the real block state IDs, so that they don't compress unrealistically well
+    private static final int MAX_COMBINED_ID = 20_000;
+
+    /**
+     * Creates the request sent by <code>ExternalBlockDataFetcher</code> for one portal.
+     * The same request is sent every poll, since the destination uses the change set ID to only send the blocks that changed.
+     * @param portalIndex Used to give each portal a different destination
+     * @return The request
+     */
+    public static GetBlockDataChangesRequest createBlockChangesRequest(int portalIndex) {
+        GetBlockDataChangesRequest request = new GetBlockDataChangesRequest();
+        request.setChangeSetId(UUID.randomUUID());
+        request.setPosition(new IntVector(portalIndex * 64, 70, -portalIndex * 64));
+        request.setRotateOriginToDest(Matrix.makeIdentity());
+        request.setWorldId(UUID.randomUUID());
+        request.setWorldName("world");
+        request.setXAndZRadius(X_AND_Z_RADIUS);
+        request.setYRadius(Y_RADIUS);
+        return request;
+    }
+
+    /**
+     * Creates the response that <code>BlockChangeWatcher</code> would send.
+     * @param request The request being answered
+     * @param fullArea Whether this is the first poll with this change set ID, where every block in the area is sent
+     * @param changeCount Number of changed blocks if this isn't the first poll
+     * @param random Used to pick the changed blocks and their data
+     * @return A response with a map of changed positions to combined block IDs
+     */
+    public static Response createBlockChangesResponse(GetBlockDataChangesRequest request, boolean fullArea, int changeCount, Random random) {
+        int xAndZRadius = request.getXAndZRadius();
+        int yRadius = request.getYRadius();
+        IntVector center = request.getPosition();
+
+        Map<IntVector, Integer> changes = new HashMap<>();
+        if(fullArea) {
+            for(int x = -xAndZRadius; x <= xAndZRadius; x++) {
+                for(int z = -xAndZRadius; z <= xAndZRadius; z++) {
+                    for(int y = -yRadius; y <= yRadius; y++) {
+                        changes.put(center.add(x, y, z), random.nextInt(MAX_COMBINED_ID));
+                    }
+                }
+            }
+        }   else    {
+            for(int i = 0; i < changeCount; i++) {
+                int x = random.nextInt(xAndZRadius * 2 + 1) - xAndZRadius;
+                int y = random.nextInt(yRadius * 2 + 1) - yRadius;
+                int z = random.nextInt(xAndZRadius * 2 + 1) - xAndZRadius;
+                changes.put(center.add(x, y, z), random.nextInt(MAX_COMBINED_ID));
+            }
+        }
+
+        Response response = new Response();
+        response.setResult(changes);
+        return response;
+    }
+
+    /**
+     * @return The request sent to check a cross-server portal's destination before activating it
+     */
+    public static CheckDestinationValidityRequest createDestinationValidityRequest() {
+        CheckDestinationValidityRequest request = new CheckDestinationValidityRequest();
+        request.setDestinationWorldName("world");
+        request.setDestinationWorldId(UUID.randomUUID());
+        request.setOriginGameVersion("loopback");
+        return request;
+    }
+
+    /**
+     * @param destServer The server that the player is moving to
+     * @param random Used for the player's position and velocity
+     * @return The request sent to the proxy when a player walks through a cross-server portal
+     */
+    public static TeleportRequest createTeleportRequest(String destServer, Random random) {
+        TeleportRequest request = new TeleportRequest();
+        request.setPlayerId(UUID.randomUUID());
+        request.setDestServer(destServer);
+        request.setDestWorldId(UUID.randomUUID());
+        request.setDestWorldName("world");
+        request.setDestX(random.nextDouble() * 1000.0);
+        request.setDestY(70.0);
+        request.setDestZ(random.nextDouble() * 1000.0);
+        request.setDestPitch(random.nextFloat() * 90.0f);
+        request.setDestYaw(random.nextFloat() * 360.0f);
+        request.setDestVelX(random.nextDouble() * 0.2);
+        request.setDestVelZ(random.nextDouble() * 0.2);
+        return request;
+    }
+}
@@ -10,11 +10,14 @@ import com.lauriethefish.betterportals.bukkit.config.ProxyConfig;
 import com.lauriethefish.betterportals.bukkit.events.IEventRegistrar;
 import com.lauriethefish.betterportals.bukkit.net.IPortalClient;
 import com.lauriethefish.betterportals.bukkit.player.IPlayerDataManager;
+import com.lauriethefish.betterportals.bukkit.player.IPlayerPreferenceStore;
 import com.lauriethefish.betterportals.bukkit.portal.IPortalManager;
+import com.lauriethefish.betterportals.bukkit.portal.spawning.IPortalSpawner;
 import com.lauriethefish.betterportals.bukkit.portal.storage.IPortalStorage;
 import com.lauriethefish.betterportals.bukkit.tasks.BlockUpdateFinisher;
 import com.lauriethefish.betterportals.bukkit.tasks.MainUpdate;
 import com.lauriethefish.betterportals.bukkit.util.performance.OperationTimer;
+import com.lauriethefish.betterportals.bukkit.util.performance.PhaseTracer;
 import com.lauriethefish.betterportals.shared.logging.Logger;
 import org.bukkit.command.Command;
 import org.bukkit.command.CommandSender;
@@ -31,6 +34,9 @@ public class BetterPortals extends JavaPlugin {
     @Inject private CommandTree commandTree;
     @Inject private IPortalStorage portalStorage;
     @Inject private IPlayerDataManager playerDataManager;
+    @Inject private IPlayerPreferenceStore playerPreferenceStore;
+    @Inject private MetricsExporter metricsExporter;
+    @Inject private PhaseTracer phaseTracer;
     @Inject private UpdateManager updateManager;
     @Inject private MiscConfig miscConfig;
     @Inject private ProxyConfig proxyConfig;
@@ -38,6 +44,7 @@ public class BetterPortals extends JavaPlugin {
     @Inject private MainUpdate mainUpdate;
     @Inject private BlockUpdateFinisher blockUpdateFinisher;
     @Inject private IPortalManager portalManager;
+    @Inject private IPortalSpawner portalSpawner;
     @Inject private IEventRegistrar eventRegistrar;
     @Inject private API apiImplementation;
 
@@ -74,6 +81,8 @@ public class BetterPortals extends JavaPlugin {
         blockUpdateFinisher.start();
         mainUpdate.start();
         portalStorage.start();
+        playerPreferenceStore.start();
+        metricsExporter.start();
 
         apiImplementation.onEnable();
         firstEnable = false;
@@ -109,7 +118,7 @@ public class BetterPortals extends JavaPlugin {
         try {
             portalStorage.loadPortals();
         } catch(IOException | RuntimeException ex) {
-            getLogger().severe("Failed to load the portals from portals.yml. Did you modify it with an incorrect format?");
+            getLogger().severe("Failed to load the saved portals. Did you modify the portals file with an incorrect format?");
             ex.printStackTrace();
             didEnableFail = true;
             return;
@@ -133,6 +142,10 @@ public class BetterPortals extends JavaPlugin {
             return;
         }
 
+        // Restarted so that changes to the port or interval are picked up
+        metricsExporter.stop();
+        metricsExporter.start();
+
         playerDataManager.onPluginDisable();
         portalManager.onReload();
 
@@ -155,11 +168,16 @@ public class BetterPortals extends JavaPlugin {
         }
 
         blockUpdateFinisher.stop();
+        portalSpawner.stop();
+        playerPreferenceStore.stop();
+        metricsExporter.stop();
+        phaseTracer.shutDown();
 
         try {
             portalStorage.savePortals();
+            portalStorage.stop();
         }   catch(RuntimeException | IOException ex) {
-            logger.severe("Error occurred while saving the portals to portals.yml. Check your file permissions!");
+            logger.severe("Error occurred while saving the portals. Check your file permissions!");
             ex.printStackTrace();
         }
 
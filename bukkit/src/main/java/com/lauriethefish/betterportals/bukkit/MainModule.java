@@ -6,7 +6,9 @@ import com.lauriethefish.betterportals.bukkit.block.BlockModule;
 import com.lauriethefish.betterportals.bukkit.block.rotation.IBlockRotator;
 import com.lauriethefish.betterportals.bukkit.block.rotation.ModernBlockRotator;
 import com.lauriethefish.betterportals.bukkit.chunk.chunkloading.IChunkLoader;
+import com.lauriethefish.betterportals.bukkit.chunk.chunkloading.IPortalChunkLoader;
 import com.lauriethefish.betterportals.bukkit.chunk.chunkloading.ModernChunkLoader;
+import com.lauriethefish.betterportals.bukkit.chunk.chunkloading.PortalChunkLoader;
 import com.lauriethefish.betterportals.bukkit.chunk.generation.IChunkGenerationChecker;
 import com.lauriethefish.betterportals.bukkit.chunk.generation.ModernChunkGenerationChecker;
 import com.lauriethefish.betterportals.bukkit.command.CommandsModule;
@@ -44,6 +46,7 @@ public class MainModule extends AbstractModule {
         bind(BetterPortals.class).toInstance(pl);
         bind(Logger.class).toInstance(new OverrideLogger(pl.getLogger()));
         bind(IChunkLoader.class).to(ModernChunkLoader.class);
+        bind(IPortalChunkLoader.class).to(PortalChunkLoader.class);
         bind(IBlockRotator.class).to(ModernBlockRotator.class);
         bind(IChunkGenerationChecker.class).to(ModernChunkGenerationChecker.class);
 
@@ -0,0 +1,242 @@
+package com.lauriethefish.betterportals.bukkit;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.lauriethefish.betterportals.bukkit.config.MiscConfig;
+import com.lauriethefish.betterportals.bukkit.entity.faking.EntityTrackingManager;
+import com.lauriethefish.betterportals.bukkit.net.IPortalClient;
+import com.lauriethefish.betterportals.bukkit.portal.IPortal;
+import com.lauriethefish.betterportals.bukkit.portal.IPortalActivityManager;
+import com.lauriethefish.betterportals.bukkit.portal.IPortalManager;
+import com.lauriethefish.betterportals.bukkit.tasks.BlockUpdateFinisher;
+import com.lauriethefish.betterportals.bukkit.util.performance.AllocationProfiler;
+import com.lauriethefish.betterportals.bukkit.util.performance.Operation;
+import com.lauriethefish.betterportals.bukkit.util.performance.OperationRegistry;
+import com.lauriethefish.betterportals.shared.logging.Logger;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.bukkit.plugin.java.JavaPlugin;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Exports the state of the plugin and the timings in the {@link OperationRegistry} in the Prometheus text format.
+ * The metrics are gathered on the main thread every few ticks, then served from a small HTTP server and/or written to a file, so scrapes never touch the portals directly.
+ * <br>Counters are exported as totals, so rates (e.g. packets per second) should be worked out with <code>rate()</code> on the Prometheus side.
+ * <br>Allocation counts are only exported while the {@link AllocationProfiler} has results, and are reset each time it is started.
+ */
+@Singleton
+public class MetricsExporter implements Runnable {
+    private static final String PREFIX = "betterportals_";
+    private static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+    private static final double[] QUANTILES = new double[]{0.5, 0.9, 0.99};
+
+    private final JavaPlugin pl;
+    private final Logger logger;
+    private final MiscConfig miscConfig;
+    private final OperationRegistry operationRegistry;
+    private final IPortalManager portalManager;
+    private final IPortalActivityManager activityManager;
+    private final EntityTrackingManager entityTrackingManager;
+    private final BlockUpdateFinisher blockUpdateFinisher;
+    private final IPortalClient portalClient;
+
+    private volatile String latestMetrics = "";
+    private BukkitTask task = null;
+    private HttpServer server = null;
+
+    @Inject
+    public MetricsExporter(JavaPlugin pl, Logger logger, MiscConfig miscConfig, OperationRegistry operationRegistry,
+                           IPortalManager portalManager, IPortalActivityManager activityManager, EntityTrackingManager entityTrackingManager,
+                           BlockUpdateFinisher blockUpdateFinisher, IPortalClient portalClient) {
+        this.pl = pl;
+        this.logger = logger;
+        this.miscConfig = miscConfig;
+        this.operationRegistry = operationRegistry;
+        this.portalManager = portalManager;
+        this.activityManager = activityManager;
+        this.entityTrackingManager = entityTrackingManager;
+        this.blockUpdateFinisher = blockUpdateFinisher;
+        this.portalClient = portalClient;
+    }
+
+    /**
+     * Starts gathering metrics and the HTTP server, if enabled in the config.
+     */
+    public void start() {
+        if(!miscConfig.isMetricsExportEnabled() || task != null) {return;}
+
+        run();
+        int interval = miscConfig.getMetricsExportInterval();
+        task = pl.getServer().getScheduler().runTaskTimer(pl, this, interval, interval);
+
+        int port = miscConfig.getMetricsExportPort();
+        if(port == -1) {return;}
+
+        try {
+            server = HttpServer.create(new InetSocketAddress(miscConfig.getMetricsExportBindAddress(), port), 0);
+            server.createContext("/metrics", this::handleScrape);
+            server.start();
+            logger.fine("Serving metrics on %s:%d", miscConfig.getMetricsExportBindAddress(), port);
+        }   catch(IOException | IllegalArgumentException ex) {
+            logger.warning("Failed to start the metrics server on port %d: %s", port, ex.getMessage());
+            server = null;
+        }
+    }
+
+    /**
+     * Stops gathering metrics and shuts down the HTTP server.
+     */
+    public void stop() {
+        if(task != null) {
+            task.cancel();
+            task = null;
+        }
+
+        if(server != null) {
+            server.stop(0);
+            server = null;
+        }
+    }
+
+    private void handleScrape(HttpExchange exchange) throws IOException {
+        byte[] response = latestMetrics.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE);
+        exchange.sendResponseHeaders(200, response.length);
+        try(OutputStream outputStream = exchange.getResponseBody()) {
+            outputStream.write(response);
+        }
+    }
+
+    @Override
+    public void run() {
+        String metrics = gatherMetrics();
+        latestMetrics = metrics;
+
+        String fileName = miscConfig.getMetricsExportFile();
+        if(fileName.isEmpty()) {return;}
+
+        Path path = pl.getDataFolder().toPath().resolve(fileName);
+        pl.getServer().getScheduler().runTaskAsynchronously(pl, () -> writeFile(path, metrics));
+    }
+
+    // Writes to a temporary file first, so that whatever is reading the file never sees half of it
+    private void writeFile(Path path, String metrics) {
+        try {
+            Path tempPath = path.resolveSibling(path.getFileName() + ".tmp");
+            Files.write(tempPath, metrics.getBytes(StandardCharsets.UTF_8));
+            Files.move(tempPath, path, StandardCopyOption.REPLACE_EXISTING);
+        }   catch(IOException ex) {
+            logger.warning("Failed to write metrics file: %s", ex.getMessage());
+        }
+    }
+
+    private String gatherMetrics() {
+        StringBuilder builder = new StringBuilder();
+
+        long blockCount = 0;
+        long viewableBlockCount = 0;
+        for(IPortal portal : portalManager.getLoadedPortals()) {
+            if(!activityManager.isActive(portal)) {continue;}
+
+            blockCount += portal.getViewableBlocks().getBlockCount();
+            viewableBlockCount += portal.getViewableBlocks().getViewableBlockCount();
+        }
+
+        writeGauge(builder, "portals", "Number of portals, including unloaded ones", portalManager.getPortalCount());
+        writeGauge(builder, "portals_loaded", "Number of loaded portals", portalManager.getLoadedPortals().size());
+        writeGauge(builder, "portals_active", "Number of portals that are activated by a nearby player", activityManager.getActivePortalCount());
+        writeGauge(builder, "portals_viewed", "Number of portals that are viewed by a player", activityManager.getViewedPortalCount());
+        writeGauge(builder, "block_map_blocks", "Number of non-obscured blocks found around the destinations of active portals", blockCount);
+        writeGauge(builder, "block_map_viewable_blocks", "Number of blocks queued to be shown through active portals", viewableBlockCount);
+        writeGauge(builder, "replicated_entities", "Number of entities replicated through portals", entityTrackingManager.getTrackerCount());
+        writeGauge(builder, "block_update_queue_depth", "Number of block view updates waiting to be finished", blockUpdateFinisher.getQueueSize());
+        writeGauge(builder, "proxy_connected", "Whether the plugin is connected to the proxy", portalClient.isConnectionOpen() ? 1 : 0);
+
+        for(Map.Entry<String, LongAdder> entry : operationRegistry.getCounters().entrySet()) {
+            String name = PREFIX + entry.getKey() + "_total";
+            builder.append("# TYPE ").append(name).append(" counter\n");
+            builder.append(name).append(' ').append(entry.getValue().sum()).append('\n');
+        }
+
+        writeOperations(builder, operationRegistry.getOperations());
+        writeAllocations(builder, operationRegistry.getAllocationProfiler());
+        return builder.toString();
+    }
+
+    private void writeGauge(StringBuilder builder, String name, String help, long value) {
+        builder.append("# HELP ").append(PREFIX).append(name).append(' ').append(help).append('\n');
+        builder.append("# TYPE ").append(PREFIX).append(name).append(" gauge\n");
+        builder.append(PREFIX).append(name).append(' ').append(value).append('\n');
+    }
+
+    private void writeOperations(StringBuilder builder, Map<String, Operation> operations) {
+        String summaryName = PREFIX + "operation_seconds";
+        builder.append("# HELP ").append(summaryName).append(" Time taken by each timed section of the plugin\n");
+        builder.append("# TYPE ").append(summaryName).append(" summary\n");
+        for(Map.Entry<String, Operation> entry : operations.entrySet()) {
+            Operation operation = entry.getValue();
+            String label = "operation=\"" + escapeLabel(entry.getKey()) + "\"";
+
+            for(double quantile : QUANTILES) {
+                builder.append(summaryName).append('{').append(label).append(",quantile=\"").append(quantile).append("\"} ")
+                        .append(toSeconds(operation.getPercentile(quantile * 100.0))).append('\n');
+            }
+            builder.append(summaryName).append("_sum{").append(label).append("} ").append(toSeconds(operation.getTotalTime())).append('\n');
+            builder.append(summaryName).append("_count{").append(label).append("} ").append(operation.getInvocationTimes()).append('\n');
+        }
+
+        String maxName = PREFIX + "operation_max_seconds";
+        builder.append("# HELP ").append(maxName).append(" Longest time taken by each timed section of the plugin\n");
+        builder.append("# TYPE ").append(maxName).append(" gauge\n");
+        for(Map.Entry<String, Operation> entry : operations.entrySet()) {
+            builder.append(maxName).append("{operation=\"").append(escapeLabel(entry.getKey())).append("\"} ")
+                    .append(toSeconds(entry.getValue().getHighestTime())).append('\n');
+        }
+    }
+
+    private void writeAllocations(StringBuilder builder, AllocationProfiler allocationProfiler) {
+        if(allocationProfiler.getTicks() == 0) {return;}
+
+        String ticksName = PREFIX + "allocation_profiled_ticks_total";
+        builder.append("# HELP ").append(ticksName).append(" Number of ticks since allocation profiling was started\n");
+        builder.append("# TYPE ").append(ticksName).append(" counter\n");
+        builder.append(ticksName).append(' ').append(allocationProfiler.getTicks()).append('\n');
+
+        String sectionName = PREFIX + "allocated_bytes_total";
+        builder.append("# HELP ").append(sectionName).append(" Bytes allocated by each profiled section of the plugin\n");
+        builder.append("# TYPE ").append(sectionName).append(" counter\n");
+        for(Map.Entry<String, Long> entry : allocationProfiler.getSectionBytes().entrySet()) {
+            builder.append(sectionName).append("{operation=\"").append(escapeLabel(entry.getKey())).append("\"} ")
+                    .append(entry.getValue()).append('\n');
+        }
+
+        String portalName = PREFIX + "portal_allocated_bytes_total";
+        builder.append("# HELP ").append(portalName).append(" Bytes allocated while rendering each portal\n");
+        builder.append("# TYPE ").append(portalName).append(" counter\n");
+        for(Map.Entry<UUID, Long> entry : allocationProfiler.getPortalBytes().entrySet()) {
+            builder.append(portalName).append("{portal=\"").append(entry.getKey()).append("\"} ")
+                    .append(entry.getValue()).append('\n');
+        }
+    }
+
+    // Double.toString is used since it doesn't depend on the locale of the server
+    private static String toSeconds(Duration duration) {
+        return Double.toString(duration.toNanos() / 1_000_000_000d);
+    }
+
+    private static String escapeLabel(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+}
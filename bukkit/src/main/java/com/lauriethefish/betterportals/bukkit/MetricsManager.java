@@ -41,7 +41,7 @@ public class MetricsManager {
     private void addCharts() {
         logger.fine("Adding charts . . .");
         metrics.addCustomChart(new SingleLineChart("portals_active", () -> {
-            return portalManager.getAllPortals().size() / 2; // Divide by 2, since each portal is 2 list items
+            return portalManager.getPortalCount() / 2; // Divide by 2, since each portal is 2 list items
         }));
 
         metrics.addCustomChart(new SimplePie("render_distance_xz", () -> String.valueOf(renderConfig.getMaxXZ())));
@@ -10,6 +10,8 @@ import com.lauriethefish.betterportals.bukkit.block.external.IExternalBlockWatch
 import com.lauriethefish.betterportals.bukkit.block.lighting.DummyLightDataManager;
 import com.lauriethefish.betterportals.bukkit.block.lighting.ILightDataManager;
 import com.lauriethefish.betterportals.bukkit.block.lighting.LightDataManger;
+import com.lauriethefish.betterportals.bukkit.block.write.BlockWriter;
+import com.lauriethefish.betterportals.bukkit.block.write.IBlockWriter;
 import com.lauriethefish.betterportals.bukkit.player.view.ViewFactory;
 import com.lauriethefish.betterportals.bukkit.player.view.block.IPlayerBlockView;
 import com.lauriethefish.betterportals.bukkit.player.view.block.PlayerBlockView;
@@ -37,6 +39,7 @@ public class BlockModule extends AbstractModule {
         );
 
         bind(IExternalBlockWatcherManager.class).to(ExternalBlockWatcherManager.class);
+        bind(IBlockWriter.class).to(BlockWriter.class);
 
         try {
             Class.forName("org.bukkit.block.data.type.Light");
@@ -8,7 +8,13 @@ import com.lauriethefish.betterportals.bukkit.config.RenderConfig;
 import com.lauriethefish.betterportals.bukkit.math.MathUtil;
 import com.lauriethefish.betterportals.bukkit.math.Matrix;
 import com.lauriethefish.betterportals.bukkit.portal.IPortal;
-import com.lauriethefish.betterportals.bukkit.util.performance.OperationTimer;
+import com.lauriethefish.betterportals.bukkit.portal.RenderBudget;
+import com.lauriethefish.betterportals.bukkit.portal.RenderDegradation;
+import com.lauriethefish.betterportals.bukkit.portal.RenderQualityController;
+import com.lauriethefish.betterportals.bukkit.util.performance.Operation;
+import com.lauriethefish.betterportals.bukkit.util.performance.OperationRegistry;
+import com.lauriethefish.betterportals.bukkit.util.performance.TickPhase;
+import com.lauriethefish.betterportals.bukkit.util.performance.TickPhaseEvent;
 import com.lauriethefish.betterportals.shared.logging.Logger;
 import org.bukkit.util.Vector;
 import org.jetbrains.annotations.NotNull;
@@ -17,6 +23,7 @@ import org.jetbrains.annotations.Nullable;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
 
 /**
  * Abstract viewable block map that is intended to have the update functions perform a flood fill to find which blocks are viewable.
@@ -25,6 +32,12 @@ public abstract class FloodFillBlockMap implements IBlockMap {
     protected final Logger logger;
     protected final RenderConfig renderConfig;
 
+    private final OperationRegistry operationRegistry;
+    private final RenderBudget renderBudget;
+    private final RenderQualityController qualityController;
+    private final Operation floodFillOperation;
+    private final Operation checkForChangesOperation;
+
     protected final ConcurrentHashMap<IntVector, PacketContainer> originTileStates = new ConcurrentHashMap<>();
     protected final ConcurrentHashMap<IntVector, PacketContainer> destTileStates = new ConcurrentHashMap<>();
 
@@ -33,6 +46,10 @@ public abstract class FloodFillBlockMap implements IBlockMap {
     protected List<IViewableBlockInfo> nonObscuredStates = new ArrayList<>();
 
     protected byte[] alreadyReachedMap;
+    // The effect size is taken from the quality controller on the initial update, and kept until the map is reset.
+    // The map is always sized for the full effect size in the config, so this can't be larger than that
+    private int effectSizeXZ;
+    private int effectSizeY;
 
     protected final IPortal portal;
     protected final Matrix rotateOriginToDest;
@@ -43,10 +60,16 @@ public abstract class FloodFillBlockMap implements IBlockMap {
     protected final PortalDirection destDirection;
     protected boolean firstUpdate;
 
-    public FloodFillBlockMap(IPortal portal, Logger logger, RenderConfig renderConfig) {
+    public FloodFillBlockMap(IPortal portal, Logger logger, RenderConfig renderConfig, OperationRegistry operationRegistry, RenderBudget renderBudget,
+                             RenderQualityController qualityController) {
         this.portal = portal;
         this.logger = logger;
         this.renderConfig = renderConfig;
+        this.operationRegistry = operationRegistry;
+        this.renderBudget = renderBudget;
+        this.qualityController = qualityController;
+        this.floodFillOperation = operationRegistry.getOperation(OperationRegistry.FLOOD_FILL);
+        this.checkForChangesOperation = operationRegistry.getOperation(OperationRegistry.CHECK_FOR_CHANGES);
         this.centerPos = new IntVector(portal.getOriginPos().getVector());
         this.rotateOriginToDest = portal.getTransformations().getRotateToDestination();
         this.destDirection = portal.getDestPos().getDirection();
@@ -70,6 +93,17 @@ public abstract class FloodFillBlockMap implements IBlockMap {
         return destDirection.swapVector(relPos).getZ() == 0;
     }
 
+    /**
+     * Finds if a position is at or past the edge of the area filled by this map. Blocks at the edge are shown, but the fill doesn't continue past them.
+     * @param relX X coordinate relative to the portal origin
+     * @param relY Y coordinate relative to the portal origin
+     * @param relZ Z coordinate relative to the portal origin
+     * @return Whether the position is at or outside the edge
+     */
+    protected final boolean isOutsideBounds(int relX, int relY, int relZ) {
+        return Math.abs(relX) >= effectSizeXZ || Math.abs(relY) >= effectSizeY || Math.abs(relZ) >= effectSizeXZ;
+    }
+
     protected final int getArrayMapIndex(IntVector relPos) {
         return ((relPos.getX() + (int) renderConfig.getMaxXZ()) + (relPos.getZ() + (int) renderConfig.getMaxXZ()) * renderConfig.getZMultip() + (relPos.getY() + (int) renderConfig.getMaxY()) * renderConfig.getYMultip());
     }
@@ -97,7 +131,15 @@ public abstract class FloodFillBlockMap implements IBlockMap {
 
     @Override
     public void update(int ticksSinceActivated) {
-        if(ticksSinceActivated % renderConfig.getBlockUpdateInterval() != 0) {return;}
+        RenderDegradation degradation = renderBudget.getDegradation(portal.getId());
+        // Static portals keep the blocks from their last update, but still need the initial flood fill if they were reset
+        if(degradation.isStatic() && !firstUpdate) {return;}
+
+        int updateInterval = qualityController.getBlockUpdateInterval();
+        if(degradation.hasReducedUpdateRate()) {
+            updateInterval *= renderConfig.getReducedUpdateRateMultiplier();
+        }
+        if(ticksSinceActivated % updateInterval != 0) {return;}
 
         updateInternal();
     }
@@ -107,16 +149,46 @@ public abstract class FloodFillBlockMap implements IBlockMap {
             alreadyReachedMap = new byte[renderConfig.getTotalArrayLength()];
         }
 
-        OperationTimer timer = new OperationTimer();
+        long startTime = System.nanoTime();
+        long startBytes = operationRegistry.getAllocationProfiler().begin();
+        TickPhaseEvent event = TickPhaseEvent.begin(firstUpdate ? TickPhase.FLOOD_FILL : TickPhase.CHANGE_CHECK);
         if(firstUpdate) {
+            effectSizeXZ = qualityController.getEffectSizeXZ();
+            effectSizeY = qualityController.getEffectSizeY();
+
             List<IViewableBlockInfo> initialStates = new ArrayList<>();
             searchFromBlock(centerPos, initialStates, null);
             stateQueue.addStatesInitially(initialStates);
         }   else    {
             checkForChanges();
         }
+
+        long timeTaken = System.nanoTime() - startTime;
+        event.finish(portal.getId(), null, nonObscuredStates.size());
+        operationRegistry.recordPortal(portal.getId(), timeTaken);
+        if(firstUpdate) {
+            floodFillOperation.record(timeTaken);
+            operationRegistry.getPortalCost(portal.getId()).recordFloodFill(timeTaken);
+            operationRegistry.getAllocationProfiler().record(OperationRegistry.FLOOD_FILL, portal.getId(), startBytes);
+        }   else    {
+            checkForChangesOperation.record(timeTaken);
+            operationRegistry.getPortalCost(portal.getId()).recordChangeCheck(timeTaken);
+            operationRegistry.getAllocationProfiler().record(OperationRegistry.CHECK_FOR_CHANGES, portal.getId(), startBytes);
+        }
         firstUpdate = false;
-        logger.fine("Viewable block array update took: %.3f ms. Block count: %d. Viewable count: %d", timer.getTimeTakenMillis(), nonObscuredStates.size(), stateQueue.stateCount());
+        if(logger.isLoggable(Level.FINE)) {
+            logger.fine("Viewable block array update took: %.3f ms. Block count: %d. Viewable count: %d", timeTaken / 1_000_000d, nonObscuredStates.size(), stateQueue.stateCount());
+        }
+    }
+
+    @Override
+    public int getBlockCount() {
+        return nonObscuredStates.size();
+    }
+
+    @Override
+    public int getViewableBlockCount() {
+        return stateQueue.stateCount();
     }
 
     @Override
@@ -131,6 +203,19 @@ public abstract class FloodFillBlockMap implements IBlockMap {
         alreadyReachedMap = null;
     }
 
+    @Override
+    public void prepare() {
+        if(!firstUpdate) {return;}
+
+        logger.finer("Preparing block array before activation");
+        updateInternal();
+    }
+
+    @Override
+    public boolean isPrepared() {
+        return !firstUpdate;
+    }
+
     @Override
     public List<IViewableBlockInfo> getViewableStates() {
         if(stateQueue == null) {
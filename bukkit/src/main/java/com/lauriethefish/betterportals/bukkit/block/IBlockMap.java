@@ -28,6 +28,16 @@ public interface IBlockMap {
      */
     @Nullable List<IViewableBlockInfo> getViewableStates();
 
+    /**
+     * @return The number of blocks reached by the last update, including those that aren't currently viewable
+     */
+    int getBlockCount();
+
+    /**
+     * @return The number of blocks in {@link #getViewableStates()}
+     */
+    int getViewableBlockCount();
+
 
     /**
      * Finds if the origin block stored at <code>position</code> is mapped as a tile entity.
@@ -55,6 +65,18 @@ public interface IBlockMap {
      */
     void reset();
 
+    /**
+     * Does the initial update before the portal is viewed, so that the map is ready as soon as it activates.
+     * Does nothing if the initial update has already been done since the map was last reset.
+     * The destination chunks should be loaded before calling this.
+     */
+    void prepare();
+
+    /**
+     * @return Whether the initial update has been done since the map was last reset, either by {@link IBlockMap#update(int)} or {@link IBlockMap#prepare()}
+     */
+    boolean isPrepared();
+
     interface Factory {
         IBlockMap create(IPortal portal);
     }
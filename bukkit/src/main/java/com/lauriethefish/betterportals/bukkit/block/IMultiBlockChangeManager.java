@@ -36,6 +36,16 @@ public interface IMultiBlockChangeManager {
      */
     void sendChanges();
 
+    /**
+     * @return The number of packets sent by {@link #sendChanges()}, for accounting the cost of each portal
+     */
+    int getPacketsSent();
+
+    /**
+     * @return The estimated size in bytes of the packets sent by {@link #sendChanges()}
+     */
+    long getBytesSent();
+
     interface Factory {
         IMultiBlockChangeManager create(Player player, @Assisted("minChunkY") int minChunkY, @Assisted("maxChunkY") int maxChunkY);
     }
@@ -15,7 +15,10 @@ import com.lauriethefish.betterportals.bukkit.config.RenderConfig;
 import com.lauriethefish.betterportals.bukkit.math.Matrix;
 import com.lauriethefish.betterportals.bukkit.nms.BlockDataUtil;
 import com.lauriethefish.betterportals.bukkit.portal.IPortal;
+import com.lauriethefish.betterportals.bukkit.portal.RenderBudget;
+import com.lauriethefish.betterportals.bukkit.portal.RenderQualityController;
 import com.lauriethefish.betterportals.bukkit.util.MaterialUtil;
+import com.lauriethefish.betterportals.bukkit.util.performance.OperationRegistry;
 import com.lauriethefish.betterportals.shared.logging.Logger;
 import org.bukkit.Material;
 import org.bukkit.World;
@@ -45,8 +48,8 @@ public class BukkitBlockMap extends FloodFillBlockMap {
     private WrappedBlockData wrappedLightData;
 
     @Inject
-    public BukkitBlockMap(@Assisted IPortal portal, Logger logger, RenderConfig renderConfig, IBlockRotator blockRotator, BlockDataFetcherFactory dataFetcherFactory, ILightDataManager lightDataManager) {
-        super(portal, logger, renderConfig);
+    public BukkitBlockMap(@Assisted IPortal portal, Logger logger, RenderConfig renderConfig, IBlockRotator blockRotator, BlockDataFetcherFactory dataFetcherFactory, ILightDataManager lightDataManager, OperationRegistry operationRegistry, RenderBudget renderBudget, RenderQualityController qualityController) {
+        super(portal, logger, renderConfig, operationRegistry, renderBudget, qualityController);
         this.blockRotator = blockRotator;
         this.dataFetcherFactory = dataFetcherFactory;
         this.rotateDestToOrigin = portal.getTransformations().getRotateToOrigin();
@@ -135,7 +138,7 @@ public class BukkitBlockMap extends FloodFillBlockMap {
 
             // Use the existing first block if given, otherwise make a new block info
             BukkitBlockInfo blockInfo = firstBlockInfo == null ? new BukkitBlockInfo(originPos, originData, destData) : (BukkitBlockInfo) firstBlockInfo;
-            boolean isEdge = renderConfig.isOutsideBounds(relX, relY, relZ);
+            boolean isEdge = isOutsideBounds(relX, relY, relZ);
 
             // If we're on a block on the edge of the portal view, and it is not a fully occluding material, then we must set it to the portal background
             // This avoids the real-world being visible through the edge of the projection
@@ -9,15 +9,27 @@ import com.google.inject.Inject;
 import com.google.inject.assistedinject.Assisted;
 import com.lauriethefish.betterportals.bukkit.block.IMultiBlockChangeManager;
 import com.lauriethefish.betterportals.bukkit.block.IViewableBlockInfo;
+import com.lauriethefish.betterportals.bukkit.util.performance.OperationRegistry;
+import lombok.Getter;
 import org.bukkit.entity.Player;
 import org.bukkit.util.Vector;
 
 import java.lang.reflect.InvocationTargetException;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
 
 public class MultiBlockChangeManager_1_16_2 implements IMultiBlockChangeManager {
+    // Approximate size of the section position, the flag for trusting edges and the array length
+    private static final int PACKET_HEADER_BYTES = 11;
+    // Each block is sent as a VarLong of its combined ID and position, which is usually 4 bytes
+    private static final int BYTES_PER_BLOCK = 4;
+
     private final Player player;
+    private final LongAdder packetCounter;
+    private final LongAdder byteCounter;
+    @Getter private int packetsSent = 0;
+    @Getter private long bytesSent = 0;
 
     private final int minChunkY;
     private final int maxChunkY;
@@ -26,8 +38,10 @@ public class MultiBlockChangeManager_1_16_2 implements IMultiBlockChangeManager
     private final HashMap<BlockPosition, Map<Vector, WrappedBlockData>> changes = new HashMap<>();
 
     @Inject
-    public MultiBlockChangeManager_1_16_2(@Assisted Player player, @Assisted("minChunkY") int minChunkY, @Assisted("maxChunkY") int maxChunkY) {
+    public MultiBlockChangeManager_1_16_2(@Assisted Player player, @Assisted("minChunkY") int minChunkY, @Assisted("maxChunkY") int maxChunkY, OperationRegistry operationRegistry) {
         this.player = player;
+        this.packetCounter = operationRegistry.getCounter(OperationRegistry.MULTI_BLOCK_CHANGE_PACKETS);
+        this.byteCounter = operationRegistry.getCounter(OperationRegistry.MULTI_BLOCK_CHANGE_BYTES);
         this.minChunkY = minChunkY;
         this.maxChunkY = maxChunkY;
     }
@@ -92,6 +106,11 @@ public class MultiBlockChangeManager_1_16_2 implements IMultiBlockChangeManager
 
             try {
                 ProtocolLibrary.getProtocolManager().sendServerPacket(player, packet);
+                long bytes = PACKET_HEADER_BYTES + (long) blockCount * BYTES_PER_BLOCK;
+                packetCounter.increment();
+                byteCounter.add(bytes);
+                packetsSent++;
+                bytesSent += bytes;
             }   catch(InvocationTargetException ex) {
                 ex.printStackTrace();
             }
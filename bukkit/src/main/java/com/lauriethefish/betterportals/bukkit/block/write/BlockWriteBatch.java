@@ -0,0 +1,101 @@
+package com.lauriethefish.betterportals.bukkit.block.write;
+
+import lombok.Getter;
+import org.bukkit.World;
+import org.bukkit.block.data.BlockData;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A set of block changes in one world, grouped by the 16x16x16 chunk section that they are in.
+ * Each section is then written in one go by the {@link IBlockWriter}, so the chunk only has to be looked up once per section.
+ * <br>Batches aren't thread safe, but can be built on any thread before being passed to the {@link IBlockWriter} on the main thread.
+ */
+public class BlockWriteBatch {
+    @Getter private final World world;
+    private final Map<Long, Section> sections = new LinkedHashMap<>();
+    @Getter private int size = 0;
+
+    /**
+     * The changes in one chunk section.
+     */
+    public static class Section {
+        @Getter private final int chunkX;
+        @Getter private final int chunkZ;
+        // Packed as x | z << 4 | y << 8, relative to the chunk
+        private int[] positions = new int[16];
+        private final List<BlockData> data = new ArrayList<>();
+
+        private Section(int chunkX, int chunkZ) {
+            this.chunkX = chunkX;
+            this.chunkZ = chunkZ;
+        }
+
+        private void add(int x, int y, int z, BlockData blockData) {
+            int index = data.size();
+            if(index == positions.length) {
+                int[] newPositions = new int[positions.length * 2];
+                System.arraycopy(positions, 0, newPositions, 0, positions.length);
+                positions = newPositions;
+            }
+
+            positions[index] = (x & 15) | (z & 15) << 4 | y << 8;
+            data.add(blockData);
+        }
+
+        public int size() {
+            return data.size();
+        }
+
+        public int getX(int index) {
+            return positions[index] & 15;
+        }
+
+        public int getZ(int index) {
+            return (positions[index] >> 4) & 15;
+        }
+
+        // Sign extended, since worlds can go below Y 0
+        public int getY(int index) {
+            return positions[index] >> 8;
+        }
+
+        public BlockData getData(int index) {
+            return data.get(index);
+        }
+    }
+
+    public BlockWriteBatch(@NotNull World world) {
+        this.world = world;
+    }
+
+    private static long getSectionKey(int sectionX, int sectionY, int sectionZ) {
+        return ((long) (sectionX & 0x3FFFFF) << 42) | ((long) (sectionZ & 0x3FFFFF) << 20) | (sectionY & 0xFFFFF);
+    }
+
+    /**
+     * Adds a block change. If the same block is changed twice, both changes are applied in order.
+     * @param x Block X coordinate
+     * @param y Block Y coordinate
+     * @param z Block Z coordinate
+     * @param blockData The new data of the block
+     */
+    public void add(int x, int y, int z, @NotNull BlockData blockData) {
+        long key = getSectionKey(x >> 4, y >> 4, z >> 4);
+        sections.computeIfAbsent(key, k -> new Section(x >> 4, z >> 4)).add(x, y, z, blockData);
+        size++;
+    }
+
+    public @NotNull Collection<Section> getSections() {
+        return sections.values();
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+}
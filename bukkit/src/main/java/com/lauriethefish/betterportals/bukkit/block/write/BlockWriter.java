@@ -0,0 +1,103 @@
+package com.lauriethefish.betterportals.bukkit.block.write;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.lauriethefish.betterportals.bukkit.config.PortalSpawnConfig;
+import com.lauriethefish.betterportals.bukkit.portal.spawning.PortalBlockIndex;
+import com.lauriethefish.betterportals.bukkit.util.performance.OperationTimer;
+import com.lauriethefish.betterportals.shared.logging.Logger;
+import org.bukkit.Chunk;
+import org.bukkit.World;
+import org.bukkit.plugin.java.JavaPlugin;
+import org.bukkit.scheduler.BukkitTask;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.logging.Level;
+
+/**
+ * Writes blocks with {@link org.bukkit.block.Block#setBlockData(org.bukkit.block.data.BlockData, boolean)} without applying physics.
+ * This is the fastest way of setting blocks that works on every supported version, and avoids creating a {@link org.bukkit.block.BlockState} for each block.
+ * No block events are called, so the chunks written to are removed from the {@link PortalBlockIndex} instead.
+ * Queued batches are applied by a task that only runs while there is something to write, and stops each tick once {@link PortalSpawnConfig#getAllowedSpawnTimePerTick()} is used up.
+ */
+@Singleton
+public class BlockWriter implements IBlockWriter, Runnable {
+    private final JavaPlugin pl;
+    private final Logger logger;
+    private final PortalSpawnConfig spawnConfig;
+    private final PortalBlockIndex blockIndex;
+
+    private final Deque<QueuedSection> queuedSections = new ArrayDeque<>();
+    private BukkitTask task = null;
+
+    private static class QueuedSection {
+        private final World world;
+        private final BlockWriteBatch.Section section;
+
+        private QueuedSection(World world, BlockWriteBatch.Section section) {
+            this.world = world;
+            this.section = section;
+        }
+    }
+
+    @Inject
+    public BlockWriter(JavaPlugin pl, Logger logger, PortalSpawnConfig spawnConfig, PortalBlockIndex blockIndex) {
+        this.pl = pl;
+        this.logger = logger;
+        this.spawnConfig = spawnConfig;
+        this.blockIndex = blockIndex;
+    }
+
+    @Override
+    public void writeNow(@NotNull BlockWriteBatch batch) {
+        for(BlockWriteBatch.Section section : batch.getSections()) {
+            writeSection(batch.getWorld(), section);
+        }
+    }
+
+    @Override
+    public void queue(@NotNull BlockWriteBatch batch) {
+        if(batch.isEmpty()) {return;}
+
+        if(logger.isLoggable(Level.FINER)) {
+            logger.finer("Queueing %d block writes in %d sections", batch.getSize(), batch.getSections().size());
+        }
+        for(BlockWriteBatch.Section section : batch.getSections()) {
+            queuedSections.add(new QueuedSection(batch.getWorld(), section));
+        }
+
+        if(task == null) {
+            task = pl.getServer().getScheduler().runTaskTimer(pl, this, 0L, 1L);
+        }
+    }
+
+    @Override
+    public void run() {
+        OperationTimer timer = new OperationTimer();
+
+        // At least one section is always written, so that a low time limit can't stop the queue from progressing
+        do {
+            QueuedSection queued = queuedSections.poll();
+            if(queued == null) {break;}
+
+            writeSection(queued.world, queued.section);
+        }   while(timer.getTimeTakenMillis() < spawnConfig.getAllowedSpawnTimePerTick());
+
+        if(queuedSections.isEmpty()) {
+            task.cancel();
+            task = null;
+        }
+    }
+
+    private void writeSection(World world, BlockWriteBatch.Section section) {
+        Chunk chunk = world.getChunkAt(section.getChunkX(), section.getChunkZ());
+        for(int i = 0; i < section.size(); i++) {
+            chunk.getBlock(section.getX(i), section.getY(i), section.getZ(i)).setBlockData(section.getData(i), false);
+        }
+
+        // Obsidian or portal blocks may have been written or overwritten, e.g. by the frame of a new portal
+        blockIndex.invalidate(world, section.getChunkX(), section.getChunkZ());
+    }
+}
@@ -0,0 +1,23 @@
+package com.lauriethefish.betterportals.bukkit.block.write;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Applies {@link BlockWriteBatch}es to the world without updating physics.
+ * Both methods must be called on the main thread.
+ */
+public interface IBlockWriter {
+    /**
+     * Applies every change in <code>batch</code> immediately.
+     * Should only be used for small batches which need to be in the world before continuing, e.g. a portal frame.
+     * @param batch The changes to apply
+     */
+    void writeNow(@NotNull BlockWriteBatch batch);
+
+    /**
+     * Queues <code>batch</code> to be applied section by section over the next ticks, within the allowed time per tick.
+     * Batches are applied in the order that they're queued.
+     * @param batch The changes to apply
+     */
+    void queue(@NotNull BlockWriteBatch batch);
+}
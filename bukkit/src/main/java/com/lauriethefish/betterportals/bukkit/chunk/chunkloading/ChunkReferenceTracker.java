@@ -0,0 +1,122 @@
+package com.lauriethefish.betterportals.bukkit.chunk.chunkloading;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.function.UnaryOperator;
+
+/**
+ * Counts the references to each chunk kept loaded by the {@link ModernChunkLoader}, and decides when their tickets are added and removed.
+ * Chunks keep their ticket for a linger time after their last reference is removed, and get it back without reloading if they are referenced again in that time.
+ * This is kept separate from adding the tickets to the world so that it can be tested without a server.
+ * @param <T> Type used to identify chunks
+ */
+public class ChunkReferenceTracker<T> {
+    private final Map<T, Integer> referenceCounts = new HashMap<>();
+    // Chunks that we currently have a ticket for, used to only unforceload chunks if they are *loaded by the plugin*
+    private final Set<T> ticketedChunks = new HashSet<>();
+    // Chunks with no references, and the tick that their ticket will be removed at
+    private final Map<T, Long> lingeringChunks = new HashMap<>();
+
+    private final UnaryOperator<T> keyCopier;
+    private long currentTick = 0;
+
+    /**
+     * @param keyCopier Copies a chunk passed to {@link #release(Object, int)} when it is kept as a lingering chunk, for chunk types that can be modified
+     */
+    public ChunkReferenceTracker(@NotNull UnaryOperator<T> keyCopier) {
+        this.keyCopier = keyCopier;
+    }
+
+    /**
+     * Adds a reference to a chunk.
+     * @param chunk The chunk to reference
+     * @return Whether the chunk needs a ticket to be added
+     */
+    public boolean acquire(@NotNull T chunk) {
+        referenceCounts.merge(chunk, 1, Integer::sum);
+
+        // Chunks that are lingering still have their ticket
+        lingeringChunks.remove(chunk);
+        return !ticketedChunks.contains(chunk);
+    }
+
+    /**
+     * Removes a reference to a chunk.
+     * @param chunk The chunk to release
+     * @param lingerTime Ticks to keep the ticket for after the last reference is removed
+     * @return Whether the chunk's ticket must be removed now
+     */
+    public boolean release(@NotNull T chunk, int lingerTime) {
+        Integer count = referenceCounts.get(chunk);
+        if(count == null) {return false;}
+
+        if(count > 1) {
+            referenceCounts.put(chunk, count - 1);
+            return false;
+        }
+
+        referenceCounts.remove(chunk);
+        if(!ticketedChunks.contains(chunk)) {return false;} // Still being loaded asynchronously
+
+        if(lingerTime > 0) {
+            lingeringChunks.put(keyCopier.apply(chunk), currentTick + lingerTime);
+            return false;
+        }
+
+        ticketedChunks.remove(chunk);
+        return true;
+    }
+
+    /**
+     * Records that a ticket has been added for a chunk.
+     * @param chunk The chunk given a ticket
+     */
+    public void onTicketAdded(@NotNull T chunk) {
+        ticketedChunks.add(chunk);
+    }
+
+    /**
+     * @param chunk The chunk to check
+     * @return Whether the chunk is referenced, but doesn't have a ticket yet. Used once a chunk has finished loading asynchronously
+     */
+    public boolean needsTicket(@NotNull T chunk) {
+        return referenceCounts.containsKey(chunk) && !ticketedChunks.contains(chunk);
+    }
+
+    /**
+     * @param chunk The chunk to check
+     * @return The number of references to the chunk
+     */
+    public int getReferenceCount(@NotNull T chunk) {
+        return referenceCounts.getOrDefault(chunk, 0);
+    }
+
+    /**
+     * @param chunk The chunk to check
+     * @return Whether the chunk currently has a ticket, including while it is lingering
+     */
+    public boolean hasTicket(@NotNull T chunk) {
+        return ticketedChunks.contains(chunk);
+    }
+
+    /**
+     * Advances the current tick, and removes the tickets of chunks that have finished lingering.
+     * @param removeTicket Called for each chunk whose ticket must be removed
+     */
+    public void tick(@NotNull Consumer<T> removeTicket) {
+        currentTick++;
+
+        lingeringChunks.entrySet().removeIf(entry -> {
+            if(entry.getValue() > currentTick) {return false;}
+
+            ticketedChunks.remove(entry.getKey());
+            removeTicket.accept(entry.getKey());
+            return true;
+        });
+    }
+}
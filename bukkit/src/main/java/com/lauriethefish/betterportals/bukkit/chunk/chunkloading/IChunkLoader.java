@@ -8,10 +8,18 @@ import java.util.Iterator;
 
 /**
  * Allows different implementations of chunk loading to be used
+ * Chunks are reference counted, so a chunk force loaded twice must also be unforceloaded twice before it is allowed to unload.
  */
 public interface IChunkLoader {
     void setForceLoaded(Chunk chunk);
 
+    /**
+     * Force loads the chunk without blocking the main thread if the server supports it.
+     * Otherwise, this is the same as {@link #setForceLoaded(ChunkPosition)}.
+     * @param chunk The chunk to load
+     */
+    void setForceLoadedAsync(@NotNull ChunkPosition chunk);
+
     default void setForceLoaded(ChunkPosition chunk) {
         setForceLoaded(chunk.getChunk());
     }
@@ -30,6 +38,7 @@ public interface IChunkLoader {
 
     /**
      * Unforceloading uses the ChunkCoordIntPair since otherwise you'd be forced to get the chunk, reloading the chunk in the case that it were unloaded
+     * The chunk may stay loaded for a while afterwards, in case it is needed again soon.
      * @param chunk The chunk position to unforceload
      */
     void setNotForceLoaded(@NotNull ChunkPosition chunk);
@@ -62,4 +71,9 @@ public interface IChunkLoader {
     default boolean isForceLoaded(@NotNull Chunk chunk) {
         return isForceLoaded(new ChunkPosition(chunk));
     }
+
+    /**
+     * Called every tick to allow chunks that are no longer needed to unload.
+     */
+    void update();
 }
@@ -6,4 +6,23 @@ import org.jetbrains.annotations.NotNull;
 public interface IPortalChunkLoader {
     void forceloadPortalChunks(@NotNull PortalPosition destPosition);
     void unforceloadPortalChunks(@NotNull PortalPosition destPosition);
+
+    /**
+     * Starts loading the destination chunks of a portal without blocking the main thread, so that they are already loaded once it activates.
+     * Each call must be matched by a call to {@link #releasePreloadedChunks(PortalPosition)}.
+     * @param destPosition Destination of the portal
+     */
+    void preloadPortalChunks(@NotNull PortalPosition destPosition);
+
+    /**
+     * Allows chunks loaded by {@link #preloadPortalChunks(PortalPosition)} to unload, if nothing else is using them.
+     * @param destPosition Destination of the portal
+     */
+    void releasePreloadedChunks(@NotNull PortalPosition destPosition);
+
+    /**
+     * @param destPosition Destination of the portal
+     * @return Whether all of the destination chunks of the portal are currently loaded. Always true for cross-server portals
+     */
+    boolean arePortalChunksLoaded(@NotNull PortalPosition destPosition);
 }
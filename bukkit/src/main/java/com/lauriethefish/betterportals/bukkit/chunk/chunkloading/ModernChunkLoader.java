@@ -1,34 +1,102 @@
 package com.lauriethefish.betterportals.bukkit.chunk.chunkloading;
 
 import com.lauriethefish.betterportals.bukkit.chunk.chunkpos.ChunkPosition;
+import com.lauriethefish.betterportals.bukkit.config.MiscConfig;
+import com.lauriethefish.betterportals.bukkit.util.ChunkLoadUtil;
+import com.lauriethefish.betterportals.bukkit.util.VersionUtil;
+import com.lauriethefish.betterportals.shared.logging.Logger;
 import org.bukkit.Chunk;
+import org.bukkit.World;
+import org.bukkit.plugin.java.JavaPlugin;
 import org.jetbrains.annotations.NotNull;
 
+import javax.inject.Inject;
 import javax.inject.Singleton;
-import java.util.HashSet;
-import java.util.Set;
 
+/**
+ * Keeps chunks loaded using plugin chunk tickets, or by force loading them on versions without tickets.
+ * Each chunk is reference counted, so that it stays loaded while anything still needs it.
+ * Chunks also stay loaded for the configured linger time after their last reference is removed, which avoids reloading chunks when portals are repeatedly activated and deactivated.
+ * The counting is done by a {@link ChunkReferenceTracker}.
+ */
 @Singleton
 public class ModernChunkLoader implements IChunkLoader {
-    // Used to only unforceload chunks if they are *loaded by the plugin*
-    private final Set<ChunkPosition> loadedChunks = new HashSet<>();
+    private static final boolean USE_TICKETS = VersionUtil.isMcVersionAtLeast("1.14.0");
+
+    private final JavaPlugin pl;
+    private final MiscConfig miscConfig;
+    private final Logger logger;
+
+    private final ChunkReferenceTracker<ChunkPosition> references = new ChunkReferenceTracker<>(ChunkPosition::clone);
+
+    @Inject
+    public ModernChunkLoader(JavaPlugin pl, MiscConfig miscConfig, Logger logger) {
+        this.pl = pl;
+        this.miscConfig = miscConfig;
+        this.logger = logger;
+    }
 
     @Override
     public void setForceLoaded(Chunk chunk) {
-        chunk.setForceLoaded(true);
-        loadedChunks.add(new ChunkPosition(chunk));
+        ChunkPosition position = new ChunkPosition(chunk);
+        if(references.acquire(position)) {
+            addTicket(position);
+        }
+    }
+
+    @Override
+    public void setForceLoadedAsync(@NotNull ChunkPosition chunk) {
+        ChunkPosition position = chunk.clone();
+        if(!references.acquire(position)) {return;}
+
+        // Adding the ticket would load the chunk on the main thread if it wasn't already loaded
+        ChunkLoadUtil.loadChunk(position.getWorld(), position.getX(), position.getZ()).whenComplete((loadedChunk, error) -> {
+            if(error != null) {
+                logger.warning("Failed to preload chunk at %s: %s", position, error);
+                return;
+            }
+
+            // The chunk may have been released while it was loading, or added synchronously in the meantime
+            if(references.needsTicket(position)) {
+                addTicket(position);
+            }
+        });
     }
 
     @Override
     public void setNotForceLoaded(@NotNull ChunkPosition chunk) {
-        if(loadedChunks.remove(chunk)) {
-            // Do it this way to avoid loading the chunk by calling getChunk
-            chunk.getWorld().setChunkForceLoaded(chunk.x, chunk.z, false);
+        if(references.release(chunk, miscConfig.getChunkLingerTime())) {
+            removeTicket(chunk);
         }
     }
 
     @Override
     public boolean isForceLoaded(@NotNull ChunkPosition chunk) {
-        return loadedChunks.contains(chunk);
-    }   
+        return references.getReferenceCount(chunk) > 0;
+    }
+
+    @Override
+    public void update() {
+        references.tick(this::removeTicket);
+    }
+
+    private void addTicket(ChunkPosition chunk) {
+        World world = chunk.getWorld();
+        if(USE_TICKETS) {
+            world.addPluginChunkTicket(chunk.getX(), chunk.getZ(), pl);
+        }   else    {
+            world.setChunkForceLoaded(chunk.getX(), chunk.getZ(), true);
+        }
+        references.onTicketAdded(chunk);
+    }
+
+    private void removeTicket(ChunkPosition chunk) {
+        // Do it this way to avoid loading the chunk by calling getChunk
+        World world = chunk.getWorld();
+        if(USE_TICKETS) {
+            world.removePluginChunkTicket(chunk.getX(), chunk.getZ(), pl);
+        }   else    {
+            world.setChunkForceLoaded(chunk.getX(), chunk.getZ(), false);
+        }
+    }
 }
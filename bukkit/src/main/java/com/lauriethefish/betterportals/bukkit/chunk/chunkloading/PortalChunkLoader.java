@@ -12,6 +12,7 @@ import javax.inject.Singleton;
 
 /**
  * Used to load the destination chunks of a portal, this is done to make entities move
+ * Chunks are reference counted by the {@link IChunkLoader}, so unloading the chunks of one portal won't unload chunks still used by other portals.
  */
 @Singleton
 public class PortalChunkLoader implements IPortalChunkLoader   {
@@ -46,4 +47,27 @@ public class PortalChunkLoader implements IPortalChunkLoader   {
 
         chunkLoader.unForceLoadAllPos(getAreaIterator(destPosition));
     }
+
+    @Override
+    public void preloadPortalChunks(@NotNull PortalPosition destPosition) {
+        if(destPosition.isExternal()) {return;}
+
+        getAreaIterator(destPosition).forEachRemaining(chunkLoader::setForceLoadedAsync);
+    }
+
+    @Override
+    public void releasePreloadedChunks(@NotNull PortalPosition destPosition) {
+        unforceloadPortalChunks(destPosition);
+    }
+
+    @Override
+    public boolean arePortalChunksLoaded(@NotNull PortalPosition destPosition) {
+        if(destPosition.isExternal()) {return true;}
+
+        SquareChunkAreaIterator iterator = getAreaIterator(destPosition);
+        while(iterator.hasNext()) {
+            if(!iterator.next().isLoaded()) {return false;}
+        }
+        return true;
+    }
 }
@@ -0,0 +1,87 @@
+package com.lauriethefish.betterportals.bukkit.chunk.chunkloading;
+
+import com.lauriethefish.betterportals.bukkit.config.MiscConfig;
+import com.lauriethefish.betterportals.bukkit.portal.IPortal;
+import com.lauriethefish.betterportals.bukkit.portal.IPortalManager;
+import com.lauriethefish.betterportals.bukkit.portal.PortalPrewarmer;
+import org.bukkit.Bukkit;
+import org.bukkit.entity.Player;
+
+import org.jetbrains.annotations.NotNull;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Preloads the destination chunks of portals when a player gets close to them, so that they are already loaded when the portal activates.
+ * The chunks of the portals being prepared by the {@link PortalPrewarmer} are also preloaded here, so that each portal's chunks are only referenced once.
+ */
+@Singleton
+public class PortalChunkPreloader {
+    // Players don't move very far in this time, so there's no need to check every tick
+    private static final int UPDATE_INTERVAL = 10;
+
+    private final IPortalManager portalManager;
+    private final IPortalChunkLoader chunkLoader;
+    private final MiscConfig miscConfig;
+
+    private final Set<IPortal> preloadedPortals = new HashSet<>();
+    private Set<IPortal> prewarmingPortals = Collections.emptySet();
+    private int ticksSinceUpdate = 0;
+
+    @Inject
+    public PortalChunkPreloader(IPortalManager portalManager, IPortalChunkLoader chunkLoader, MiscConfig miscConfig) {
+        this.portalManager = portalManager;
+        this.chunkLoader = chunkLoader;
+        this.miscConfig = miscConfig;
+    }
+
+    /**
+     * Sets the portals that the {@link PortalPrewarmer} is preparing, so that their chunks are preloaded along with those of the portals near players.
+     * Newly added portals are preloaded straight away, and removed ones are released on the next update.
+     * @param portals The portals being prepared
+     */
+    public void setPrewarmingPortals(@NotNull Collection<IPortal> portals) {
+        prewarmingPortals = new HashSet<>(portals);
+        prewarmingPortals.forEach(this::preload);
+    }
+
+    private void preload(IPortal portal) {
+        if(preloadedPortals.add(portal)) {
+            chunkLoader.preloadPortalChunks(portal.getDestPos());
+        }
+    }
+
+    public void update() {
+        ticksSinceUpdate++;
+        if(ticksSinceUpdate < UPDATE_INTERVAL) {return;}
+        ticksSinceUpdate = 0;
+
+        double preloadDistance = miscConfig.getChunkPreloadDistance();
+        Set<IPortal> nearbyPortals = new HashSet<>(prewarmingPortals);
+        if(preloadDistance > 0) {
+            for(Player player : Bukkit.getOnlinePlayers()) {
+                // Only the portals near the player are checked, so this doesn't grow with the number of portals
+                for(IPortal portal : portalManager.findLoadedPortalsInRange(player.getLocation(), preloadDistance)) {
+                    if(!portal.isCrossServer()) {
+                        nearbyPortals.add(portal);
+                    }
+                }
+            }
+        }
+
+        nearbyPortals.forEach(this::preload);
+
+        // Also releases the chunks of portals that have been removed
+        preloadedPortals.removeIf(portal -> {
+            if(nearbyPortals.contains(portal)) {return false;}
+
+            chunkLoader.releasePreloadedChunks(portal.getDestPos());
+            return true;
+        });
+    }
+}
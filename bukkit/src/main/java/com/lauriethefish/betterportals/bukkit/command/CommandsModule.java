@@ -7,5 +7,7 @@ public class CommandsModule extends AbstractModule {
     public void configure() {
         bind(MainCommands.class).asEagerSingleton();
         bind(CustomPortalCommands.class).asEagerSingleton();
+        bind(PerformanceCommands.class).asEagerSingleton();
+        bind(TraceCommands.class).asEagerSingleton();
     }
 }
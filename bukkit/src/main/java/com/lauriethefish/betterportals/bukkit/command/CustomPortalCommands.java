@@ -59,6 +59,7 @@ public class CustomPortalCommands {
     @Argument(name = "portalName")
     @Aliases("deletename")
     public boolean removePortalsByName(CommandSender sender, String portalName) throws CommandException {
+        // Also finds portals with this name that haven't been loaded yet
         List<IPortal> toRemove = portalManager
                 .getAllPortals()
                 .stream()
@@ -358,15 +359,12 @@ public class CustomPortalCommands {
     @Argument(name = "seethroughportal")
     public boolean setSeeThroughPortal(IPlayerData playerData, boolean seeThroughPortal) {
         Player player = playerData.getPlayer();
+        playerData.getPreferences().setSeeThroughPortal(seeThroughPortal);
         if (seeThroughPortal) {
-            playerData.getPermanentData().set("seeThroughPortal", true);
-            playerData.savePermanentData();
             player.sendMessage(messageConfig.getChatMessage("seeThroughPortalEnabled"));
         }
 
         else {
-            playerData.getPermanentData().set("seeThroughPortal", false);
-            playerData.savePermanentData();
             player.sendMessage(messageConfig.getChatMessage("seeThroughPortalDisabled"));
         }
 
@@ -380,7 +378,7 @@ public class CustomPortalCommands {
     @Aliases("togglevanillaview")
     @Description("Toggles whether or not the current player is able to see what's on the other side of a portal.")
     public boolean toggleSeeThroughPortal(IPlayerData playerData) {
-        setSeeThroughPortal(playerData, !playerData.getPermanentData().getBoolean("seeThroughPortal"));
+        setSeeThroughPortal(playerData, !playerData.getPreferences().isSeeThroughPortal());
 
         return true;
     }
@@ -0,0 +1,284 @@
+package com.lauriethefish.betterportals.bukkit.command;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.lauriethefish.betterportals.bukkit.command.framework.CommandException;
+import com.lauriethefish.betterportals.bukkit.command.framework.CommandTree;
+import com.lauriethefish.betterportals.bukkit.command.framework.annotations.Argument;
+import com.lauriethefish.betterportals.bukkit.command.framework.annotations.Command;
+import com.lauriethefish.betterportals.bukkit.command.framework.annotations.Description;
+import com.lauriethefish.betterportals.bukkit.command.framework.annotations.Path;
+import com.lauriethefish.betterportals.bukkit.command.framework.annotations.RequiresPermissions;
+import com.lauriethefish.betterportals.bukkit.command.framework.annotations.RequiresPlayer;
+import com.lauriethefish.betterportals.bukkit.config.MessageConfig;
+import com.lauriethefish.betterportals.bukkit.config.RenderConfig;
+import com.lauriethefish.betterportals.bukkit.portal.IPortal;
+import com.lauriethefish.betterportals.bukkit.portal.IPortalManager;
+import com.lauriethefish.betterportals.bukkit.portal.RenderBudget;
+import com.lauriethefish.betterportals.bukkit.portal.RenderDegradation;
+import com.lauriethefish.betterportals.bukkit.portal.RenderQualityController;
+import com.lauriethefish.betterportals.bukkit.util.performance.AllocationProfiler;
+import com.lauriethefish.betterportals.bukkit.util.performance.Operation;
+import com.lauriethefish.betterportals.bukkit.util.performance.OperationRegistry;
+import com.lauriethefish.betterportals.bukkit.util.performance.PortalCost;
+import org.bukkit.Bukkit;
+import org.bukkit.ChatColor;
+import org.bukkit.OfflinePlayer;
+import org.bukkit.command.CommandSender;
+import org.bukkit.entity.Player;
+import org.bukkit.util.Vector;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.function.Function;
+
+/**
+ * Shows the timings recorded by the {@link OperationRegistry}, and the decisions made by the {@link RenderBudget} and {@link RenderQualityController}.
+ * Also starts and stops the {@link AllocationProfiler}, and shows its results.
+ */
+@Singleton
+public class PerformanceCommands {
+    // Number of portals and players shown in each breakdown
+    private static final int BREAKDOWN_SIZE = 5;
+    private static final double OVERRIDE_DISTANCE = 20.0;
+
+    private final OperationRegistry operationRegistry;
+    private final IPortalManager portalManager;
+    private final RenderBudget renderBudget;
+    private final RenderQualityController qualityController;
+    private final RenderConfig renderConfig;
+    private final MessageConfig messageConfig;
+
+    @Inject
+    public PerformanceCommands(CommandTree commandTree, OperationRegistry operationRegistry, IPortalManager portalManager,
+                               RenderBudget renderBudget, RenderQualityController qualityController, RenderConfig renderConfig, MessageConfig messageConfig) {
+        this.operationRegistry = operationRegistry;
+        this.portalManager = portalManager;
+        this.renderBudget = renderBudget;
+        this.qualityController = qualityController;
+        this.renderConfig = renderConfig;
+        this.messageConfig = messageConfig;
+
+        commandTree.registerCommands(this);
+    }
+
+    @Command
+    @Path("betterportals/perf")
+    @RequiresPermissions("betterportals.perf")
+    @Description("Shows how long each part of the plugin takes, and the portals and players that take the longest. Use \"reset\" to clear the timings")
+    @Argument(name = "reset?", defaultValue = "show")
+    public boolean showPerformance(CommandSender sender, String action) {
+        if(action.equalsIgnoreCase("reset")) {
+            operationRegistry.reset();
+            sender.sendMessage(ChatColor.GREEN + "Cleared performance timings");
+            return true;
+        }
+
+        sender.sendMessage(ChatColor.GOLD + "Section timings (count, avg, p50, p99, max):");
+        for(Map.Entry<String, Operation> entry : operationRegistry.getOperations().entrySet()) {
+            Operation operation = entry.getValue();
+            if(operation.getInvocationTimes() == 0) {continue;}
+
+            sender.sendMessage(String.format("%s%s%s: %d, %s, %s, %s, %s", ChatColor.YELLOW, entry.getKey(), ChatColor.WHITE,
+                    operation.getInvocationTimes(),
+                    formatDuration(operation.getAverageTime()),
+                    formatDuration(operation.getPercentile(50.0)),
+                    formatDuration(operation.getPercentile(99.0)),
+                    formatDuration(operation.getHighestTime())
+            ));
+        }
+
+        // Timings are removed when a portal is unloaded, so only loaded portals need to be described
+        Map<UUID, IPortal> portals = new HashMap<>();
+        for(IPortal portal : portalManager.getLoadedPortals()) {
+            portals.put(portal.getId(), portal);
+        }
+        sendBreakdown(sender, "portals", operationRegistry.getPortalOperations(), id -> describePortal(id, portals.get(id)));
+        sendBreakdown(sender, "players", operationRegistry.getPlayerOperations(), this::describePlayer);
+        sendPortalCosts(sender, portals);
+        sendRenderBudget(sender, portals);
+        sendRenderQuality(sender);
+        return true;
+    }
+
+    @Command
+    @Path("betterportals/perfoverride")
+    @RequiresPermissions("betterportals.perf")
+    @RequiresPlayer
+    @Description("Sets how much the rendering of the nearest portal is reduced, instead of the render budget deciding. Use \"auto\" to let the budget decide again")
+    @Argument(name = "none|reduced_update_rate|reduced_radius|static|auto")
+    public boolean overrideDegradation(Player player, String level) throws CommandException {
+        IPortal portal = portalManager.findClosestPortal(player.getLocation(), OVERRIDE_DISTANCE);
+        if(portal == null) {
+            throw new CommandException(messageConfig.getErrorMessage("noPortalCloseEnough"));
+        }
+
+        if(level.equalsIgnoreCase("auto")) {
+            renderBudget.setOverride(portal.getId(), null);
+            player.sendMessage(ChatColor.GREEN + "The render budget now decides the rendering of this portal");
+            return true;
+        }
+
+        RenderDegradation degradation;
+        try {
+            degradation = RenderDegradation.valueOf(level.toUpperCase(Locale.ROOT));
+        }   catch(IllegalArgumentException ex) {
+            throw new CommandException(String.format("Unknown level \"%s\"", level));
+        }
+
+        renderBudget.setOverride(portal.getId(), degradation);
+        player.sendMessage(String.format("%sSet the rendering of this portal to %s", ChatColor.GREEN, degradation));
+        return true;
+    }
+
+    @Command
+    @Path("betterportals/perfalloc")
+    @RequiresPermissions("betterportals.perf")
+    @Description("Counts the memory allocated by each part of the plugin and each portal. Use \"start\" and \"stop\" to control profiling, since it slows down the plugin slightly")
+    @Argument(name = "start|stop|show?", defaultValue = "show")
+    public boolean profileAllocations(CommandSender sender, String action) throws CommandException {
+        AllocationProfiler allocationProfiler = operationRegistry.getAllocationProfiler();
+        if(action.equalsIgnoreCase("start")) {
+            if(!allocationProfiler.start()) {
+                throw new CommandException("This JVM doesn't support counting allocations");
+            }
+            sender.sendMessage(ChatColor.GREEN + "Started allocation profiling");
+            return true;
+        }   else if(action.equalsIgnoreCase("stop")) {
+            allocationProfiler.stop();
+            sender.sendMessage(ChatColor.GREEN + "Stopped allocation profiling");
+        }   else if(!action.equalsIgnoreCase("show")) {
+            throw new CommandException(String.format("Unknown action \"%s\"", action));
+        }
+
+        long ticks = allocationProfiler.getTicks();
+        sender.sendMessage(String.format("%sAllocation profiling: %s%s, %d ticks", ChatColor.GOLD, ChatColor.WHITE,
+                allocationProfiler.isEnabled() ? "running" : "stopped",
+                ticks
+        ));
+        if(ticks == 0) {return true;}
+
+        sender.sendMessage(ChatColor.GOLD + "Allocations by section (KB per tick, total MB):");
+        for(Map.Entry<String, Long> entry : allocationProfiler.getSectionBytes().entrySet()) {
+            sender.sendMessage(String.format("%s%s%s: %.1f, %.1f", ChatColor.YELLOW, entry.getKey(), ChatColor.WHITE,
+                    entry.getValue() / 1000d / ticks,
+                    entry.getValue() / 1_000_000d
+            ));
+        }
+
+        Map<UUID, Long> portalBytes = allocationProfiler.getPortalBytes();
+        if(portalBytes.isEmpty()) {return true;}
+
+        // Portals unloaded since they were profiled are shown by their ID, rather than loading every portal
+        Map<UUID, IPortal> portals = new HashMap<>();
+        for(IPortal portal : portalManager.getLoadedPortals()) {
+            portals.put(portal.getId(), portal);
+        }
+
+        List<Map.Entry<UUID, Long>> sorted = new ArrayList<>(portalBytes.entrySet());
+        sorted.sort(Map.Entry.<UUID, Long>comparingByValue().reversed());
+
+        sender.sendMessage(ChatColor.GOLD + "Most allocating portals (KB per tick, total MB):");
+        for(Map.Entry<UUID, Long> entry : sorted.subList(0, Math.min(BREAKDOWN_SIZE, sorted.size()))) {
+            sender.sendMessage(String.format("%s%s%s: %.1f, %.1f", ChatColor.YELLOW, describePortal(entry.getKey(), portals.get(entry.getKey())), ChatColor.WHITE,
+                    entry.getValue() / 1000d / ticks,
+                    entry.getValue() / 1_000_000d
+            ));
+        }
+        return true;
+    }
+
+    private void sendBreakdown(CommandSender sender, String type, Map<UUID, Operation> operations, Function<UUID, String> describer) {
+        if(operations.isEmpty()) {return;}
+
+        List<Map.Entry<UUID, Operation>> sorted = new ArrayList<>(operations.entrySet());
+        sorted.sort(Comparator.comparing((Map.Entry<UUID, Operation> entry) -> entry.getValue().getTotalTime()).reversed());
+
+        sender.sendMessage(String.format("%sMost expensive %s (total, count, avg, max):", ChatColor.GOLD, type));
+        for(Map.Entry<UUID, Operation> entry : sorted.subList(0, Math.min(BREAKDOWN_SIZE, sorted.size()))) {
+            Operation operation = entry.getValue();
+            sender.sendMessage(String.format("%s%s%s: %s, %d, %s, %s", ChatColor.YELLOW, describer.apply(entry.getKey()), ChatColor.WHITE,
+                    formatDuration(operation.getTotalTime()),
+                    operation.getInvocationTimes(),
+                    formatDuration(operation.getAverageTime()),
+                    formatDuration(operation.getHighestTime())
+            ));
+        }
+    }
+
+    private void sendPortalCosts(CommandSender sender, Map<UUID, IPortal> portals) {
+        Map<UUID, PortalCost> costs = operationRegistry.getPortalCosts();
+        if(costs.isEmpty()) {return;}
+
+        List<Map.Entry<UUID, PortalCost>> sorted = new ArrayList<>(costs.entrySet());
+        sorted.sort(Comparator.comparing((Map.Entry<UUID, PortalCost> entry) -> entry.getValue().getTotalTime()).reversed());
+
+        sender.sendMessage(ChatColor.GOLD + "Portal costs (flood fill, change checks, visibility, packets, KB sent, blocks viewable/reached):");
+        for(Map.Entry<UUID, PortalCost> entry : sorted.subList(0, Math.min(BREAKDOWN_SIZE, sorted.size()))) {
+            PortalCost cost = entry.getValue();
+            IPortal portal = portals.get(entry.getKey());
+            // Unloaded portals don't have a block map anymore
+            String blocks = portal == null ? "-" : String.format("%d/%d", portal.getViewableBlocks().getViewableBlockCount(), portal.getViewableBlocks().getBlockCount());
+
+            sender.sendMessage(String.format("%s%s%s: %s, %s, %s, %d, %.1f, %s", ChatColor.YELLOW, describePortal(entry.getKey(), portal), ChatColor.WHITE,
+                    formatDuration(cost.getFloodFillTime()),
+                    formatDuration(cost.getChangeCheckTime()),
+                    formatDuration(cost.getVisibilityTime()),
+                    cost.getPacketsSent(),
+                    cost.getBytesSent() / 1000d,
+                    blocks
+            ));
+        }
+    }
+
+    private void sendRenderBudget(CommandSender sender, Map<UUID, IPortal> portals) {
+        sender.sendMessage(String.format("%sRender budget: %s%.3fms of %.3fms per tick%s", ChatColor.GOLD, ChatColor.WHITE,
+                renderBudget.getLastTotalCost(),
+                renderConfig.getRenderBudgetMillis(),
+                renderConfig.isRenderBudgetEnabled() ? "" : " (disabled)"
+        ));
+
+        for(Map.Entry<UUID, RenderDegradation> entry : renderBudget.getDegradedPortals().entrySet()) {
+            UUID id = entry.getKey();
+            sender.sendMessage(String.format("%s%s%s: %s (%s), %.3fms per tick", ChatColor.YELLOW, describePortal(id, portals.get(id)), ChatColor.WHITE,
+                    entry.getValue(),
+                    renderBudget.isOverridden(id) ? "override" : "budget",
+                    renderBudget.getLastCost(id)
+            ));
+        }
+    }
+
+    private void sendRenderQuality(CommandSender sender) {
+        sender.sendMessage(String.format("%sRender quality: %s%.0f%% at %.2f MSPT (%s)%s", ChatColor.GOLD, ChatColor.WHITE,
+                qualityController.getQuality() * 100.0,
+                qualityController.getLastMspt(),
+                qualityController.isMsptFromServer() ? "server" : "estimated",
+                renderConfig.isAdaptiveQualityEnabled() ? "" : " (disabled)"
+        ));
+        sender.sendMessage(String.format("%sEffect size %d/%d, block update interval %d, refresh interval %d, metadata interval %d", ChatColor.WHITE,
+                qualityController.getEffectSizeXZ(),
+                qualityController.getEffectSizeY(),
+                qualityController.getBlockUpdateInterval(),
+                qualityController.getBlockStateRefreshInterval(),
+                qualityController.getEntityMetadataUpdateInterval()
+        ));
+    }
+
+    private String describePortal(UUID id, IPortal portal) {
+        // The portal may have been removed or unloaded since it was timed
+        if(portal == null) {return id.toString();}
+
+        Vector position = portal.getOriginPos().getVector();
+        String location = String.format("%s (%d, %d, %d)", portal.getOriginPos().getWorldName(), position.getBlockX(), position.getBlockY(), position.getBlockZ());
+        return portal.getName() == null ? location : String.format("%s at %s", portal.getName(), location);
+    }
+
+    private String describePlayer(UUID id) {
+        OfflinePlayer player = Bukkit.getOfflinePlayer(id);
+        return player.getName() == null ? id.toString() : player.getName();
+    }
+
+    private static String formatDuration(Duration duration) {
+        return String.format("%.3fms", duration.toNanos() / 1_000_000d);
+    }
+}
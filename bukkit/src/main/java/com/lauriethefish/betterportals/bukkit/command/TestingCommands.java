@@ -15,6 +15,7 @@ import com.lauriethefish.betterportals.bukkit.util.MaterialUtil;
 import com.lauriethefish.betterportals.bukkit.util.performance.OperationTimer;
 import com.lauriethefish.betterportals.shared.net.RequestException;
 import org.bukkit.Chunk;
+import org.bukkit.Location;
 import org.bukkit.block.BlockState;
 import org.bukkit.block.data.BlockData;
 import org.bukkit.command.CommandSender;
@@ -63,7 +64,12 @@ public class TestingCommands {
     @RequiresPlayer
     public boolean testIsValidSpawnPos(Player player, PortalDirection direction, int sizeX, int sizeY) {
         Vector size = new Vector(sizeX, sizeY, 0.0);
-        player.sendMessage(String.valueOf(spawnChecker.isValidPortalSpawnPosition(player.getLocation().subtract(0.0, 1.0, 0.0), direction, size)));
+        Location location = player.getLocation().subtract(0.0, 1.0, 0.0);
+
+        // Also check the accelerated checks used when searching chunks, since these should always give the same result
+        boolean isValid = spawnChecker.isValidPortalSpawnPosition(location, direction, size);
+        boolean isValidAccelerated = spawnChecker.isValidPortalSpawnPositionAccelerated(location, direction, size);
+        player.sendMessage(String.format("%s (accelerated: %s)", isValid, isValidAccelerated));
 
         return true;
     }
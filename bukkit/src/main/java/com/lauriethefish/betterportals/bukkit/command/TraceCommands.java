@@ -0,0 +1,64 @@
+package com.lauriethefish.betterportals.bukkit.command;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.lauriethefish.betterportals.bukkit.command.framework.CommandException;
+import com.lauriethefish.betterportals.bukkit.command.framework.CommandTree;
+import com.lauriethefish.betterportals.bukkit.command.framework.annotations.Command;
+import com.lauriethefish.betterportals.bukkit.command.framework.annotations.Description;
+import com.lauriethefish.betterportals.bukkit.command.framework.annotations.Path;
+import com.lauriethefish.betterportals.bukkit.command.framework.annotations.RequiresPermissions;
+import com.lauriethefish.betterportals.bukkit.util.performance.PhaseTracer;
+import org.bukkit.ChatColor;
+import org.bukkit.command.CommandSender;
+
+import java.io.IOException;
+
+/**
+ * Starts and stops the {@link PhaseTracer}.
+ */
+@Singleton
+public class TraceCommands {
+    private final PhaseTracer phaseTracer;
+
+    @Inject
+    public TraceCommands(CommandTree commandTree, PhaseTracer phaseTracer) {
+        this.phaseTracer = phaseTracer;
+
+        commandTree.registerCommands(this);
+    }
+
+    @Command
+    @Path("betterportals/trace/start")
+    @RequiresPermissions("betterportals.perf")
+    @Description("Starts recording how long each phase of rendering portals takes, to a JFR file")
+    public boolean startTrace(CommandSender sender) throws CommandException {
+        if(!phaseTracer.isAvailable()) {
+            throw new CommandException("JFR is not available on this server");
+        }
+        if(phaseTracer.isTracing()) {
+            throw new CommandException("A trace is already running");
+        }
+
+        phaseTracer.start();
+        sender.sendMessage(ChatColor.GREEN + "Started tracing. Use /bp trace stop to save the trace");
+        return true;
+    }
+
+    @Command
+    @Path("betterportals/trace/stop")
+    @RequiresPermissions("betterportals.perf")
+    @Description("Stops recording and saves the trace, which can be opened in JDK Mission Control")
+    public boolean stopTrace(CommandSender sender) throws CommandException {
+        if(!phaseTracer.isTracing()) {
+            throw new CommandException("No trace is running");
+        }
+
+        try {
+            sender.sendMessage(ChatColor.GREEN + "Saved the trace to " + phaseTracer.stop());
+        }   catch(IOException ex) {
+            throw new CommandException("Failed to save the trace: " + ex.getMessage());
+        }
+        return true;
+    }
+}
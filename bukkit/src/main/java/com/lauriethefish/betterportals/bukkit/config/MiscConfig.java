@@ -2,8 +2,10 @@ package com.lauriethefish.betterportals.bukkit.config;
 
 import com.google.inject.Inject;
 import com.google.inject.Singleton;
+import com.lauriethefish.betterportals.bukkit.portal.storage.FsyncPolicy;
 import com.lauriethefish.betterportals.shared.logging.Logger;
 import lombok.Getter;
+import org.bukkit.configuration.ConfigurationSection;
 import org.bukkit.configuration.file.FileConfiguration;
 
 import java.util.Objects;
@@ -14,6 +16,10 @@ public class MiscConfig {
     private final Logger logger;
 
     @Getter private double portalActivationDistance;
+    @Getter private double chunkPreloadDistance;
+    @Getter private int chunkLingerTime;
+    @Getter private int prewarmLookaheadTime;
+    @Getter private int maxConcurrentPrewarms;
 
     @Getter private boolean entitySupportEnabled;
     @Getter private int entityCheckInterval;
@@ -24,6 +30,14 @@ public class MiscConfig {
     @Getter private boolean testingCommandsEnabled;
 
     @Getter private int portalSaveInterval;
+    @Getter private int portalUnloadTime;
+    @Getter private FsyncPolicy portalStorageFsync;
+
+    @Getter private boolean metricsExportEnabled;
+    @Getter private int metricsExportPort;
+    @Getter private String metricsExportBindAddress;
+    @Getter private String metricsExportFile;
+    @Getter private int metricsExportInterval;
 
     @Inject
     public MiscConfig(Logger logger) {
@@ -32,6 +46,10 @@ public class MiscConfig {
 
     public void load(FileConfiguration config) {
         portalActivationDistance = config.getDouble("portalActivationDistance");
+        chunkPreloadDistance = config.getDouble("portalChunkPreloadDistance");
+        chunkLingerTime = config.getInt("portalChunkLingerTime");
+        prewarmLookaheadTime = config.getInt("portalPrewarmLookaheadTime");
+        maxConcurrentPrewarms = config.getInt("maxConcurrentPortalPrewarms");
         entitySupportEnabled = config.getBoolean("enableEntitySupport");
 
         boolean disableEntityCheckInterval = config.getBoolean("checkForEntitiesEveryTick");
@@ -51,5 +69,21 @@ public class MiscConfig {
         teleportCooldown = config.getInt("teleportCooldown");
         testingCommandsEnabled = config.getBoolean("enableTestingCommands");
         portalSaveInterval = config.getInt("portalSaveInterval");
+        portalUnloadTime = config.getInt("portalUnloadTime");
+
+        try {
+            portalStorageFsync = FsyncPolicy.valueOf(Objects.requireNonNull(config.getString("portalStorageFsync"), "Portal storage fsync policy missing"));
+        }   catch(IllegalArgumentException | NullPointerException ex) {
+            logger.warning("Invalid portal storage fsync policy found in the config");
+            logger.warning("Defaulting to ALWAYS");
+            portalStorageFsync = FsyncPolicy.ALWAYS;
+        }
+
+        ConfigurationSection metricsSection = Objects.requireNonNull(config.getConfigurationSection("metricsExport"), "Metrics export section missing");
+        metricsExportEnabled = metricsSection.getBoolean("enable");
+        metricsExportPort = metricsSection.getInt("port");
+        metricsExportBindAddress = metricsSection.getString("bindAddress", "127.0.0.1");
+        metricsExportFile = metricsSection.getString("file", "");
+        metricsExportInterval = Math.max(1, metricsSection.getInt("interval"));
     }
 }
@@ -51,6 +51,31 @@ public class RenderConfig {
     private int blockStateRefreshInterval;
 
     private int entityMetadataUpdateInterval;
+    private int entityMetadataResyncInterval;
+
+    private double entityFullRateDistance;
+    private double entityReducedRateDistance;
+    private int entityReducedRateInterval;
+    private double entityMinAngularSize;
+    private int maxReplicatedEntities;
+    private int maxEntityPacketsPerSecond;
+
+    private boolean renderBudgetEnabled;
+    private double renderBudgetMillis;
+    private int renderBudgetInterval;
+    private int reducedUpdateRateMultiplier;
+    private double reducedRenderRadius;
+
+    private boolean adaptiveQualityEnabled;
+    private double qualityDegradeMspt;
+    private double qualityRecoverMspt;
+    private int qualityAdjustInterval;
+    private double qualityStep;
+    private int minEffectSizeXZ;
+    private int minEffectSizeY;
+    private int maxBlockUpdateInterval;
+    private int maxBlockStateRefreshInterval;
+    private int maxEntityMetadataUpdateInterval;
 
     private int lightSimulationInterval;
     private int forceLightLevel;
@@ -102,11 +127,56 @@ public class RenderConfig {
         }
 
         entityMetadataUpdateInterval = file.getInt("entityMetadataUpdateInterval");
+        entityMetadataResyncInterval = file.getInt("entityMetadataResyncInterval");
+
+        ConfigurationSection entityLodSection = Objects.requireNonNull(file.getConfigurationSection("entityLevelOfDetail"), "Entity level of detail section missing");
+        entityFullRateDistance = entityLodSection.getDouble("fullRateDistance");
+        entityReducedRateDistance = entityLodSection.getDouble("reducedRateDistance");
+        entityReducedRateInterval = entityLodSection.getInt("reducedRateInterval");
+        if(entityReducedRateInterval <= 0) {
+            throw new IllegalArgumentException("Reduced entity update interval must be at least 1");
+        }
+        entityMinAngularSize = entityLodSection.getDouble("minAngularSize");
+        maxReplicatedEntities = entityLodSection.getInt("maxEntitiesPerPlayer");
+        maxEntityPacketsPerSecond = entityLodSection.getInt("maxPacketsPerSecond");
+
+        ConfigurationSection budgetSection = Objects.requireNonNull(file.getConfigurationSection("renderBudget"), "Render budget section missing");
+        renderBudgetEnabled = budgetSection.getBoolean("enable");
+        renderBudgetMillis = budgetSection.getDouble("maxMillisPerTick");
+        renderBudgetInterval = budgetSection.getInt("evaluationInterval");
+        reducedUpdateRateMultiplier = budgetSection.getInt("reducedUpdateRateMultiplier");
+        reducedRenderRadius = budgetSection.getDouble("reducedRenderRadius");
+        if(renderBudgetInterval <= 0 || reducedUpdateRateMultiplier <= 0) {
+            throw new IllegalArgumentException("Render budget intervals must be at least 1");
+        }
+        if(reducedRenderRadius <= 0.0 || reducedRenderRadius > 1.0) {
+            throw new IllegalArgumentException("Reduced render radius must be greater than 0 and at most 1");
+        }
 
         worldSwitchWaitTime = file.getInt("waitTimeAfterSwitchingWorlds"); // TODO: implement or yeet
         portalBlocksHidden = file.getBoolean("hidePortalBlocks");
         blockStateRefreshInterval = file.getInt("blockStateRefreshInterval");
 
+        ConfigurationSection qualitySection = Objects.requireNonNull(file.getConfigurationSection("adaptiveQuality"), "Adaptive quality section missing");
+        adaptiveQualityEnabled = qualitySection.getBoolean("enable");
+        qualityDegradeMspt = qualitySection.getDouble("degradeMspt");
+        qualityRecoverMspt = qualitySection.getDouble("recoverMspt");
+        qualityAdjustInterval = qualitySection.getInt("adjustInterval");
+        qualityStep = qualitySection.getDouble("step");
+        if(qualityRecoverMspt >= qualityDegradeMspt) {
+            throw new IllegalArgumentException("Adaptive quality recover MSPT must be lower than degrade MSPT");
+        }
+        if(qualityAdjustInterval <= 0 || qualityStep <= 0.0) {
+            throw new IllegalArgumentException("Adaptive quality adjust interval and step must be greater than 0");
+        }
+
+        // The limits can't go past the full quality values, since block maps are sized from the portal effect size
+        minEffectSizeXZ = Math.max(1, Math.min((int) maxXZ, qualitySection.getInt("minPortalEffectSizeXZ")));
+        minEffectSizeY = Math.max(1, Math.min((int) maxY, qualitySection.getInt("minPortalEffectSizeY")));
+        maxBlockUpdateInterval = Math.max(blockUpdateInterval, qualitySection.getInt("maxPortalBlockUpdateInterval"));
+        maxBlockStateRefreshInterval = Math.max(blockStateRefreshInterval, qualitySection.getInt("maxBlockStateRefreshInterval"));
+        maxEntityMetadataUpdateInterval = Math.max(entityMetadataUpdateInterval, qualitySection.getInt("maxEntityMetadataUpdateInterval"));
+
         String bgBlockString = file.getString("backgroundBlock", "");
 
         if(bgBlockString.isEmpty()) {
@@ -141,10 +211,6 @@ public class RenderConfig {
         };
     }
 
-    public boolean isOutsideBounds(int x, int y, int z) {
-        return x <= minXZ || x >= maxXZ || y <= minY || y >= maxY || z <= minXZ || z >= maxXZ;
-    }
-
     public WrappedBlockData findBackgroundData(PortalPosition destPosition) {
         if(backgroundBlockData != null) {
             return backgroundBlockData;
@@ -26,6 +26,7 @@ import org.jetbrains.annotations.Nullable;
 import javax.inject.Inject;
 import java.util.*;
 import java.util.function.Consumer;
+import java.util.logging.Level;
 
 // Stores the two lists of entities at the origin and destination of a portal
 // (or only 1 if specified)
@@ -177,7 +178,9 @@ public class PortalEntityManager implements IPortalEntityManager {
         if(blockOffset.getX() < 0.4 && preferred.clone().add(-1.0, 0.0, 0.0).getBlock().getType().isSolid()) {
             blockOffset.setX(0.4);
         }
-        logger.finer("Fixing position. Floored pos: %s. Block offset: %s", flooredPos.toVector(), blockOffset.toVector());
+        if(logger.isLoggable(Level.FINER)) {
+            logger.finer("Fixing position. Floored pos: %s. Block offset: %s", flooredPos.toVector(), blockOffset.toVector());
+        }
 
         return blockOffset.add(flooredPos);
     }
@@ -206,7 +209,9 @@ public class PortalEntityManager implements IPortalEntityManager {
         Vector velocity = entity.getVelocity();
         velocity = transformations.rotateToDestination(velocity);
 
-        logger.fine("Teleporting entity with ID %d and of type %s to position %s", entity.getEntityId(), entity.getType(), destPos.toVector());
+        if(logger.isLoggable(Level.FINE)) {
+            logger.fine("Teleporting entity with ID %d and of type %s to position %s", entity.getEntityId(), entity.getType(), destPos.toVector());
+        }
 
         boolean handlePassengers = entity.getWorld() != destPos.getWorld();
         List<Entity> passengers = entity.getPassengers();
@@ -0,0 +1,228 @@
+package com.lauriethefish.betterportals.bukkit.entity.faking;
+
+import lombok.Getter;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * Sends packets to recipients either immediately, or collected into a {@link PacketBatch} between {@link #startBatch()} and {@link #flushBatch()}.
+ * Each call to the sender writes and flushes one packet, so when a bundler is available each recipient's batch is wrapped in as few bundles as possible, giving one flush per recipient each tick.
+ * <br>If a {@link PreEncoder} is given, packets that it allows are serialized once per flush, and the same bytes are written to every recipient the packet was queued for.
+ * @param <R> Type of the recipients, usually a player
+ * @param <P> Type of the packets being sent
+ */
+public class BatchedPacketSender<R, P> {
+    private final BiConsumer<R, P> sender;
+    private final Predicate<R> isConnected;
+    private final @Nullable Function<List<P>, P> bundler;
+    private final int maxBundleSize;
+    private final @Nullable PreEncoder<R, P, ?> preEncoder;
+
+    private final PacketBatch<R, P> batch = new PacketBatch<>();
+    private boolean batching = false;
+
+    // Number of times the sender was called, each of which writes and flushes a packet
+    @Getter private long sends = 0;
+    // Number of times a packet was serialized by the pre-encoder
+    @Getter private long encodes = 0;
+
+    /**
+     * Serializes packets so that the result can be written to several recipients without being encoded again.
+     * Pre-encoded packets skip any processing that the sender would normally do per recipient, so they are only used when nothing needs to see or modify them.
+     * @param <R> Type of the recipients
+     * @param <P> Type of the packets being sent
+     * @param <E> Type of the serialized packets
+     */
+    public interface PreEncoder<R, P, E> {
+        /**
+         * Called at the start of each flush.
+         * @return Whether a packet can be pre-encoded for this flush
+         */
+        @NotNull Predicate<P> startFlush();
+
+        @NotNull E encode(@NotNull P packet);
+
+        /**
+         * Writes and flushes a pre-encoded packet to a recipient.
+         */
+        void send(@NotNull R recipient, @NotNull E packet);
+
+        /**
+         * @return Pre-encoded packet written before and after a group of packets to bundle them, or null if bundles aren't supported
+         */
+        @Nullable E getBundleDelimiter();
+    }
+
+    /**
+     * @param sender Writes and flushes one packet to a recipient
+     * @param isConnected Whether a recipient can still be sent packets, since they may have left while packets were queued
+     * @param bundler Wraps several packets into one bundle packet, or null if bundles aren't supported
+     * @param maxBundleSize Largest number of packets the recipient accepts in one bundle
+     */
+    public BatchedPacketSender(@NotNull BiConsumer<R, P> sender, @NotNull Predicate<R> isConnected, @Nullable Function<List<P>, P> bundler, int maxBundleSize) {
+        this(sender, isConnected, bundler, maxBundleSize, null);
+    }
+
+    /**
+     * @param preEncoder Used to serialize batched packets once for all of their recipients, or null to always use <code>sender</code>
+     */
+    public BatchedPacketSender(@NotNull BiConsumer<R, P> sender, @NotNull Predicate<R> isConnected, @Nullable Function<List<P>, P> bundler, int maxBundleSize, @Nullable PreEncoder<R, P, ?> preEncoder) {
+        this.sender = sender;
+        this.isConnected = isConnected;
+        this.bundler = bundler;
+        this.maxBundleSize = maxBundleSize;
+        this.preEncoder = preEncoder;
+    }
+
+    public void startBatch() {
+        batching = true;
+    }
+
+    /**
+     * Sends the packets collected since {@link #startBatch()}, and stops batching.
+     */
+    public void flushBatch() {
+        batching = false;
+
+        if(preEncoder == null) {
+            batch.flush(this::sendQueued);
+        }   else    {
+            flushPreEncoded(preEncoder);
+        }
+    }
+
+    private void sendQueued(R recipient, List<P> packets) {
+        if(!isConnected.test(recipient)) {return;}
+
+        if(bundler == null || packets.size() == 1) {
+            packets.forEach(packet -> sendImmediately(recipient, packet));
+            return;
+        }
+
+        for(int start = 0; start < packets.size(); start += maxBundleSize) {
+            sendImmediately(recipient, bundler.apply(packets.subList(start, Math.min(packets.size(), start + maxBundleSize))));
+        }
+    }
+
+    private <E> void flushPreEncoded(PreEncoder<R, P, E> preEncoder) {
+        Predicate<P> canEncode = preEncoder.startFlush();
+        E bundleDelimiter = preEncoder.getBundleDelimiter();
+
+        // Trackers send the same packet to every recipient viewing them, so each packet is only serialized once
+        Map<P, E> encodedPackets = new IdentityHashMap<>();
+        batch.flush((recipient, packets) -> {
+            if(!isConnected.test(recipient)) {return;}
+
+            // Pre-encoded packets can't be put in a bundle packet, so the recipient's packets are all sent normally if any of them can't be pre-encoded
+            for(P packet : packets) {
+                if(!canEncode.test(packet)) {
+                    sendQueued(recipient, packets);
+                    return;
+                }
+            }
+
+            boolean useBundle = bundleDelimiter != null && packets.size() > 1;
+            for(int i = 0; i < packets.size(); i++) {
+                if(useBundle && i % maxBundleSize == 0) {
+                    if(i > 0) {sendEncoded(preEncoder, recipient, bundleDelimiter);}
+                    sendEncoded(preEncoder, recipient, bundleDelimiter);
+                }
+
+                sendEncoded(preEncoder, recipient, encodedPackets.computeIfAbsent(packets.get(i), packet -> {
+                    encodes++;
+                    return preEncoder.encode(packet);
+                }));
+            }
+
+            if(useBundle) {
+                sendEncoded(preEncoder, recipient, bundleDelimiter);
+            }
+        });
+    }
+
+    private <E> void sendEncoded(PreEncoder<R, P, E> preEncoder, R recipient, E packet) {
+        preEncoder.send(recipient, packet);
+        sends++;
+    }
+
+    /**
+     * @return The batch used to collect packets, for finding how many were replaced
+     */
+    public @NotNull PacketBatch<R, P> getBatch() {
+        return batch;
+    }
+
+    /**
+     * Sends a packet that is never replaced by later packets.
+     * @param packet The packet to send
+     * @param recipients Recipients of the packet
+     */
+    public void send(@NotNull P packet, @NotNull Collection<R> recipients) {
+        if(batching) {
+            recipients.forEach(recipient -> batch.add(recipient, packet));
+            return;
+        }
+
+        recipients.forEach(recipient -> sendImmediately(recipient, packet));
+    }
+
+    /**
+     * Sends a packet that spawns or removes an entity, which state packets must not be moved across.
+     * @param packet The packet to send
+     * @param entityId The entity spawned or removed
+     * @param recipients Recipients of the packet
+     */
+    public void sendBarrier(@NotNull P packet, int entityId, @NotNull Collection<R> recipients) {
+        if(batching) {
+            recipients.forEach(recipient -> batch.addBarrier(recipient, entityId, packet));
+            return;
+        }
+
+        recipients.forEach(recipient -> sendImmediately(recipient, packet));
+    }
+
+    /**
+     * Sends a packet that only sets the latest state of an entity, so replaces any queued packet for the same state.
+     * @param packet The packet to send
+     * @param entityId The entity updated
+     * @param stateType Identifies the state that the packet sets
+     * @param recipients Recipients of the packet
+     */
+    public void sendState(@NotNull P packet, int entityId, int stateType, @NotNull Collection<R> recipients) {
+        if(batching) {
+            recipients.forEach(recipient -> batch.addState(recipient, entityId, stateType, packet));
+            return;
+        }
+
+        recipients.forEach(recipient -> sendImmediately(recipient, packet));
+    }
+
+    /**
+     * Sends a packet that changes only part of a state, so is never replaced.
+     * @param packet The packet to send
+     * @param entityId The entity updated
+     * @param stateType Identifies the state that the packet changes part of
+     * @param recipients Recipients of the packet
+     */
+    public void sendStateChange(@NotNull P packet, int entityId, int stateType, @NotNull Collection<R> recipients) {
+        if(batching) {
+            recipients.forEach(recipient -> batch.addStateChange(recipient, entityId, stateType, packet));
+            return;
+        }
+
+        recipients.forEach(recipient -> sendImmediately(recipient, packet));
+    }
+
+    private void sendImmediately(R recipient, P packet) {
+        sender.accept(recipient, packet);
+        sends++;
+    }
+}
@@ -0,0 +1,91 @@
+package com.lauriethefish.betterportals.bukkit.entity.faking;
+
+import com.comphenix.protocol.wrappers.WrappedDataWatcher;
+import com.comphenix.protocol.wrappers.WrappedWatchableObject;
+import com.lauriethefish.betterportals.bukkit.nms.CraftBukkitClassUtil;
+import com.lauriethefish.betterportals.bukkit.nms.EntityUtil;
+import com.lauriethefish.betterportals.bukkit.util.MaterialUtil;
+import com.lauriethefish.betterportals.shared.util.ReflectionUtil;
+import org.bukkit.entity.Entity;
+import org.bukkit.inventory.ItemStack;
+
+import java.lang.reflect.Method;
+import java.util.*;
+
+/**
+ * NMS clears the dirty flags of an entity's data watcher once it has sent the changes to its own trackers, so we can't use them to find what changed.
+ * Instead, this keeps a snapshot of the values last sent, and compares the current values against it.
+ * Item stacks are changed in place rather than replaced, so a copy of them is kept in the snapshot.
+ */
+public class EntityMetadataWatcher {
+    private static final Class<?> ITEM_STACK;
+    private static final Method AS_BUKKIT_COPY;
+    private static final Method AS_CRAFT_MIRROR;
+
+    static {
+        Class<?> CRAFT_ITEM_STACK = CraftBukkitClassUtil.findCraftBukkitClass("inventory.CraftItemStack");
+        ITEM_STACK = ReflectionUtil.findClass("net.minecraft.world.item.ItemStack");
+
+        AS_BUKKIT_COPY = ReflectionUtil.findMethod(CRAFT_ITEM_STACK, "asBukkitCopy", ITEM_STACK);
+        AS_CRAFT_MIRROR = ReflectionUtil.findMethod(CRAFT_ITEM_STACK, "asCraftMirror", ITEM_STACK);
+    }
+
+    private final WrappedDataWatcher dataWatcher;
+    private final Map<Integer, Object> lastValues = new HashMap<>();
+
+    public EntityMetadataWatcher(Entity entity) {
+        // The entity's data watcher instance never changes, so we only need to find it once
+        this.dataWatcher = EntityUtil.getActualDataWatcher(entity);
+    }
+
+    /**
+     * Checks for any metadata values that changed since the last check.
+     * Will return every value the first time.
+     * @return The changed values, or an empty list if nothing changed
+     */
+    public List<WrappedWatchableObject> checkForChanges() {
+        List<WrappedWatchableObject> result = Collections.emptyList();
+
+        for(WrappedWatchableObject object : dataWatcher.getWatchableObjects()) {
+            // Compare the NMS values directly to avoid converting them to their bukkit equivalents
+            Object value = object.getRawValue();
+            Integer index = object.getIndex();
+            if(lastValues.containsKey(index) && isUnchanged(lastValues.get(index), value)) {
+                continue;
+            }
+
+            lastValues.put(index, copyIfMutable(value));
+            if(result.isEmpty()) {
+                result = new ArrayList<>();
+            }
+            result.add(object);
+        }
+
+        return result;
+    }
+
+    private static boolean isUnchanged(Object lastValue, Object value) {
+        // Item stacks are compared by their contents, using a mirror to avoid copying them each check
+        if(ITEM_STACK.isInstance(value)) {
+            if(!(lastValue instanceof ItemStack)) {return false;}
+
+            ItemStack current = (ItemStack) ReflectionUtil.invokeMethod(null, AS_CRAFT_MIRROR, value);
+            ItemStack last = (ItemStack) lastValue;
+            // Empty stacks are copied as a single air item, but mirrored with an amount of zero
+            if(MaterialUtil.isAir(current.getType())) {
+                return MaterialUtil.isAir(last.getType());
+            }
+            return last.equals(current);
+        }
+
+        return Objects.equals(lastValue, value);
+    }
+
+    private static Object copyIfMutable(Object value) {
+        if(ITEM_STACK.isInstance(value)) {
+            return ReflectionUtil.invokeMethod(null, AS_BUKKIT_COPY, value);
+        }
+
+        return value;
+    }
+}
@@ -4,6 +4,8 @@ import com.comphenix.protocol.PacketType;
 import com.comphenix.protocol.ProtocolLibrary;
 import com.comphenix.protocol.ProtocolManager;
 import com.comphenix.protocol.events.PacketContainer;
+import com.comphenix.protocol.events.PacketListener;
+import com.comphenix.protocol.injector.netty.WirePacket;
 import com.comphenix.protocol.reflect.StructureModifier;
 import com.comphenix.protocol.wrappers.*;
 import com.google.inject.Singleton;
@@ -12,14 +14,20 @@ import com.lauriethefish.betterportals.bukkit.nms.AnimationType;
 import com.lauriethefish.betterportals.bukkit.nms.EntityUtil;
 import com.lauriethefish.betterportals.bukkit.nms.RotationUtil;
 import com.lauriethefish.betterportals.bukkit.util.VersionUtil;
+import com.lauriethefish.betterportals.shared.util.ReflectionException;
+import com.lauriethefish.betterportals.shared.util.ReflectionUtil;
 import org.bukkit.Location;
 import org.bukkit.Material;
 import org.bukkit.entity.*;
 import org.bukkit.inventory.ItemStack;
 import org.bukkit.util.Vector;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
+import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
 import java.util.*;
+import java.util.function.Predicate;
 
 
 /**
@@ -32,6 +40,114 @@ public class EntityPacketManipulator implements IEntityPacketManipulator {
     private static final boolean useHideEntityList = VersionUtil.isMcVersionAtLeast("1.17.1");
     private static final int entityDataFieldIndex = VersionUtil.isMcVersionAtLeast("1.19.0") ? 4 : 6;
     private static final boolean useNewEntityRotationFields = VersionUtil.isMcVersionAtLeast("1.19.0");
+    private static final Constructor<?> bundlePacketCtor = findBundlePacketConstructor();
+    private static final PacketType bundlePacketType = findBundlePacketType();
+    // Starts and ends a bundle of pre-encoded packets, since they can't be put inside a bundle packet
+    private static final WirePacket bundleDelimiter = bundlePacketType == null ? null : new WirePacket(bundlePacketType.getCurrentId(), new byte[0]);
+
+    /**
+     * The client refuses bundles with more packets than this
+     */
+    private static final int maxBundleSize = 4096;
+
+    // Identify the kinds of packets that can replace older queued packets for the same entity in the batch
+    private static final int headRotationState = 0;
+    private static final int metadataState = 1;
+    private static final int velocityState = 2;
+    private static final int mountState = 3;
+
+    private final BatchedPacketSender<Player, PacketContainer> sender = new BatchedPacketSender<>(
+            EntityPacketManipulator::sendPacketImmediately,
+            Player::isOnline,
+            bundlePacketCtor == null ? null : EntityPacketManipulator::createBundle,
+            maxBundleSize,
+            new WirePacketEncoder()
+    );
+
+    private static Constructor<?> findBundlePacketConstructor() {
+        if(!VersionUtil.isMcVersionAtLeast("1.19.4")) {return null;}
+
+        // Fall back to sending the packets separately if the bundle packet can't be found
+        try {
+            Class<?> bundlePacket = ReflectionUtil.findClass("net.minecraft.network.protocol.game.ClientboundBundlePacket");
+            return ReflectionUtil.findConstructor(bundlePacket, Iterable.class);
+        }   catch(ReflectionException ex) {
+            return null;
+        }
+    }
+
+    private static PacketType findBundlePacketType() {
+        if(bundlePacketCtor == null) {return null;}
+
+        try {
+            return PacketType.fromClass(bundlePacketCtor.getDeclaringClass());
+        }   catch(IllegalArgumentException ex) {
+            return null;
+        }
+    }
+
+    /**
+     * Serializes each batched packet once into a {@link WirePacket}, and writes the same bytes to every player it was queued for.
+     * Wire packets skip ProtocolLib's packet listeners, so this is only used while no plugin listens for the types of packets being sent.
+     * Otherwise, the packets go through {@link ProtocolManager#sendServerPacket(Player, PacketContainer)} as normal.
+     */
+    private static class WirePacketEncoder implements BatchedPacketSender.PreEncoder<Player, PacketContainer, WirePacket> {
+        private final Set<PacketType> listenedTypes = new HashSet<>();
+
+        @Override
+        public @NotNull Predicate<PacketContainer> startFlush() {
+            // Listeners can be registered or removed at any time, so are found again for each flush
+            listenedTypes.clear();
+            for(PacketListener listener : ProtocolLibrary.getProtocolManager().getPacketListeners()) {
+                listenedTypes.addAll(listener.getSendingWhitelist().getTypes());
+            }
+
+            // The bundle delimiter is also written as a wire packet, so would hide the bundle from its listeners
+            if(bundlePacketType != null && listenedTypes.contains(bundlePacketType)) {
+                return packet -> false;
+            }
+            return packet -> !listenedTypes.contains(packet.getType());
+        }
+
+        @Override
+        public @NotNull WirePacket encode(@NotNull PacketContainer packet) {
+            return WirePacket.fromPacket(packet);
+        }
+
+        @Override
+        public void send(@NotNull Player player, @NotNull WirePacket packet) {
+            try {
+                ProtocolLibrary.getProtocolManager().sendWirePacket(player, packet);
+            }   catch(InvocationTargetException ex) {
+                throw new RuntimeException("Failed to send packet", ex);
+            }
+        }
+
+        @Override
+        public @Nullable WirePacket getBundleDelimiter() {
+            return bundleDelimiter;
+        }
+    }
+
+    // The bundle is sent through ProtocolLib like any other packet, so packet listeners and version translators still see it
+    private static PacketContainer createBundle(List<PacketContainer> packets) {
+        List<Object> handles = new ArrayList<>(packets.size());
+        for(PacketContainer packet : packets) {
+            handles.add(packet.getHandle());
+        }
+
+        return PacketContainer.fromPacket(ReflectionUtil.invokeConstructor(bundlePacketCtor, handles));
+    }
+
+    @Override
+    public void startBatch() {
+        sender.startBatch();
+    }
+
+    @Override
+    public void flushBatch() {
+        sender.flushBatch();
+    }
 
     @Override
     public void showEntity(EntityInfo tracker, Collection<Player> players) {
@@ -56,7 +172,7 @@ public class EntityPacketManipulator implements IEntityPacketManipulator {
         writePositionToSpawnPacket(spawnPacket, renderedPos);
         setSpawnRotation(spawnPacket, tracker);
 
-        sendPacket(spawnPacket, players);
+        sendBarrierPacket(spawnPacket, tracker.getEntityId(), players);
 
         // Living Entities also require us to handle entity equipment
         if(tracker.getEntity() instanceof LivingEntity) {
@@ -160,7 +276,7 @@ public class EntityPacketManipulator implements IEntityPacketManipulator {
         } else  {
             packet.getIntegers().write(0, tracker.getEntityId());
         }
-        sendPacket(packet, players);
+        sendBarrierPacket(packet, tracker.getEntityId(), players);
     }
 
     @Override
@@ -239,6 +355,8 @@ public class EntityPacketManipulator implements IEntityPacketManipulator {
         bytes.write(1, (byte) (int) (entityPos.getPitch() * 256.0f / 360.0f));
 
         packet.getBooleans().write(0, tracker.getEntity().isOnGround());
+
+        sendPacket(packet, players);
     }
 
     @Override
@@ -252,7 +370,7 @@ public class EntityPacketManipulator implements IEntityPacketManipulator {
         PacketContainer packet = new PacketContainer(PacketType.Play.Server.ENTITY_HEAD_ROTATION);
         packet.getIntegers().write(0, tracker.getEntityId());
         packet.getBytes().write(0, headRotation);
-        sendPacket(packet, players);
+        sendStatePacket(packet, tracker.getEntityId(), headRotationState, players);
     }
 
     @Override
@@ -269,7 +387,7 @@ public class EntityPacketManipulator implements IEntityPacketManipulator {
         packet.getIntegers().write(0, tracker.getEntityId());
         packet.getIntegerArrays().write(0, ridingIds);
 
-        sendPacket(packet, players);
+        sendStatePacket(packet, tracker.getEntityId(), mountState, players);
     }
 
     @Override
@@ -293,7 +411,18 @@ public class EntityPacketManipulator implements IEntityPacketManipulator {
         WrappedDataWatcher dataWatcher = EntityUtil.getActualDataWatcher(tracker.getEntity()); // Use the Entity's actual data watcher, not ProtocolLib's method which gives us a dummy
         packet.getWatchableCollectionModifier().write(0, dataWatcher.getWatchableObjects());
 
-        sendPacket(packet, players);
+        sendStatePacket(packet, tracker.getEntityId(), metadataState, players);
+    }
+
+    @Override
+    public void sendMetadata(EntityInfo tracker, List<WrappedWatchableObject> changes, Collection<Player> players) {
+        PacketContainer packet = new PacketContainer(PacketType.Play.Server.ENTITY_METADATA);
+
+        packet.getIntegers().write(0, tracker.getEntityId());
+        packet.getWatchableCollectionModifier().write(0, changes);
+
+        // A partial update can't replace a queued full update, or the other values in it would be lost
+        sender.sendStateChange(packet, tracker.getEntityId(), metadataState, players);
     }
 
     @Override
@@ -312,7 +441,7 @@ public class EntityPacketManipulator implements IEntityPacketManipulator {
         integers.write(2, (int) (entityVelocity.getY() * 8000.0D));
         integers.write(3, (int) (entityVelocity.getZ() * 8000.0D));
 
-        sendPacket(packet, players);
+        sendStatePacket(packet, tracker.getEntityId(), velocityState, players);
     }
 
     @Override
@@ -381,11 +510,23 @@ public class EntityPacketManipulator implements IEntityPacketManipulator {
     }
 
     private void sendPacket(PacketContainer packet, Collection<Player> players) {
+        sender.send(packet, players);
+    }
+
+    // Used for packets that spawn or remove the entity, which must not be reordered with state packets
+    private void sendBarrierPacket(PacketContainer packet, int entityId, Collection<Player> players) {
+        sender.sendBarrier(packet, entityId, players);
+    }
+
+    // Used for packets that only set the latest state of the entity, so can replace an older packet of the same state in the batch
+    private void sendStatePacket(PacketContainer packet, int entityId, int stateType, Collection<Player> players) {
+        sender.sendState(packet, entityId, stateType, players);
+    }
+
+    private static void sendPacketImmediately(Player player, PacketContainer packet) {
         ProtocolManager protocolManager = ProtocolLibrary.getProtocolManager();
         try {
-            for (Player player : players) {
-                protocolManager.sendServerPacket(player, packet);
-            }
+            protocolManager.sendServerPacket(player, packet);
         }   catch(InvocationTargetException ex) {
             throw new RuntimeException("Failed to send packet", ex);
         }
@@ -1,11 +1,13 @@
 package com.lauriethefish.betterportals.bukkit.entity.faking;
 
 import com.comphenix.protocol.wrappers.EnumWrappers;
+import com.comphenix.protocol.wrappers.WrappedWatchableObject;
 import com.google.inject.Inject;
 import com.google.inject.assistedinject.Assisted;
 import com.lauriethefish.betterportals.bukkit.config.RenderConfig;
 import com.lauriethefish.betterportals.bukkit.nms.AnimationType;
 import com.lauriethefish.betterportals.bukkit.portal.IPortal;
+import com.lauriethefish.betterportals.bukkit.portal.RenderQualityController;
 import lombok.Getter;
 import org.bukkit.Bukkit;
 import org.bukkit.entity.Entity;
@@ -30,30 +32,43 @@ public class EntityTracker implements IEntityTracker    {
     private final IEntityPacketManipulator packetManipulator;
     private final EntityTrackingManager entityTrackingManager;
     private final JavaPlugin pl;
+    private final RenderQualityController qualityController;
 
     private final Set<Player> trackingPlayers = new HashSet<>();
 
+    // Players further away are updated less often, see PlayerEntityView
+    private final Set<Player> fullRatePlayers = new HashSet<>();
+    private final Map<Player, Integer> reducedRateIntervals = new HashMap<>();
+
     private final EntityEquipmentWatcher equipmentWatcher;
+    private final EntityMetadataWatcher metadataWatcher;
     private Vector lastPosition;
     private Vector lastDirection;
     private Vector lastVelocity;
     private float lastHeadRotation;
     private List<Entity> lastMounts;
+    private int lastMovedTick = -1;
 
-    private final int metadataUpdateInterval;
+    private final int metadataResyncInterval;
     private int ticksSinceCreated = 0;
 
     @Inject
-    public EntityTracker(@Assisted Entity entity, @Assisted IPortal portal, IEntityPacketManipulator packetManipulator, EntityTrackingManager entityTrackingManager, RenderConfig renderConfig, JavaPlugin pl) {
+    public EntityTracker(@Assisted Entity entity, @Assisted IPortal portal, IEntityPacketManipulator packetManipulator, EntityTrackingManager entityTrackingManager, RenderConfig renderConfig, JavaPlugin pl,
+                         RenderQualityController qualityController) {
         // Non-living entities don't have equipment
         this.equipmentWatcher = entity instanceof LivingEntity ? new EntityEquipmentWatcher((LivingEntity) entity) : null;
+        this.metadataWatcher = new EntityMetadataWatcher(entity);
+        // The spawn packets already contain the full metadata, so the first check shouldn't send it again
+        metadataWatcher.checkForChanges();
+
         this.entity = entity;
         this.entityTrackingManager = entityTrackingManager;
         this.portal = portal;
         this.entityInfo = new EntityInfo(portal.getTransformations(), entity);
         this.packetManipulator = packetManipulator;
-        this.metadataUpdateInterval = renderConfig.getEntityMetadataUpdateInterval();
+        this.metadataResyncInterval = renderConfig.getEntityMetadataResyncInterval();
         this.pl = pl;
+        this.qualityController = qualityController;
     }
 
     public void update() {
@@ -83,13 +98,21 @@ public class EntityTracker implements IEntityTracker    {
         }
 
         // The metadata packet contains tons of stuff, e.g. sneaking and beds on newer versions
-        // It's quite expensive to send a full update, so we only do this every N ticks
+        // We only send the values that changed, and only check for changes every N ticks
+        // N goes up when the render quality is lowered, so this is read every update
+        int metadataUpdateInterval = qualityController.getEntityMetadataUpdateInterval();
         if(ticksSinceCreated % metadataUpdateInterval == 0) {
-            packetManipulator.sendMetadata(entityInfo, trackingPlayers);
+            List<WrappedWatchableObject> metadataChanges = metadataWatcher.checkForChanges();
+
+            // A full update is still sent every so often, in case a change was missed
+            boolean shouldResync = metadataResyncInterval > 0 && ticksSinceCreated > 0 && ticksSinceCreated % metadataResyncInterval < metadataUpdateInterval;
+            if(shouldResync) {
+                packetManipulator.sendMetadata(entityInfo, trackingPlayers);
+            }   else if(metadataChanges.size() > 0) {
+                packetManipulator.sendMetadata(entityInfo, metadataChanges, trackingPlayers);
+            }
         }
 
-        packetManipulator.sendEntityHeadRotation(entityInfo, trackingPlayers);
-
         Vector velocity = entity.getVelocity();
         if(lastVelocity != null && !velocity.equals(lastVelocity)) {
             packetManipulator.sendEntityVelocity(entityInfo, velocity, trackingPlayers);
@@ -111,6 +134,25 @@ public class EntityTracker implements IEntityTracker    {
 
     // Handles sending all movement and looking packets
     private void sendMovementUpdates() {
+        sendFullRateMovementUpdates();
+
+        if(reducedRateIntervals.isEmpty()) {return;}
+
+        // Reduced rate players have missed some movement packets, so we send them the absolute position if the entity moved since their last update
+        List<Player> dueUpdate = new ArrayList<>();
+        reducedRateIntervals.forEach((player, interval) -> {
+            if(ticksSinceCreated % interval == 0 && lastMovedTick > ticksSinceCreated - interval) {
+                dueUpdate.add(player);
+            }
+        });
+
+        if(dueUpdate.size() > 0) {
+            packetManipulator.sendEntityTeleport(entityInfo, dueUpdate);
+            packetManipulator.sendEntityHeadRotation(entityInfo, dueUpdate);
+        }
+    }
+
+    private void sendFullRateMovementUpdates() {
         Vector currentPosition = entity.getLocation().toVector();
         Vector currentDirection = entity.getLocation().getDirection();
 
@@ -120,25 +162,29 @@ public class EntityTracker implements IEntityTracker    {
 
         lastPosition = currentPosition;
         lastDirection = currentDirection;
+        if(positionChanged || rotationChanged) {
+            lastMovedTick = ticksSinceCreated;
+        }
 
         // Relative move packets have a limit of 8 blocks before we have to just send a teleport packet
         boolean canUseRelativeMove = posOffset.getX() < 8 && posOffset.getY() < 8 && posOffset.getZ() < 8;
         // We must combine the move and look to avoid issues on newer versions
         if (positionChanged && !canUseRelativeMove) {
-            packetManipulator.sendEntityTeleport(entityInfo, trackingPlayers);
+            packetManipulator.sendEntityTeleport(entityInfo, fullRatePlayers);
         } else if (positionChanged && rotationChanged) {
-            packetManipulator.sendEntityMoveLook(entityInfo, posOffset, trackingPlayers);
+            packetManipulator.sendEntityMoveLook(entityInfo, posOffset, fullRatePlayers);
         } else if (positionChanged) {
-            packetManipulator.sendEntityMove(entityInfo, posOffset, trackingPlayers);
+            packetManipulator.sendEntityMove(entityInfo, posOffset, fullRatePlayers);
         } else if (rotationChanged) {
-            packetManipulator.sendEntityLook(entityInfo, trackingPlayers);
+            packetManipulator.sendEntityLook(entityInfo, fullRatePlayers);
         }
 
         // Bukkit uses the yaw as the head rotation for some reason, so we do it with that
         float headRotation = entity.getLocation().getYaw();
         if(lastHeadRotation != headRotation) {
             lastHeadRotation = headRotation;
-            packetManipulator.sendEntityHeadRotation(entityInfo, trackingPlayers);
+            lastMovedTick = ticksSinceCreated;
+            packetManipulator.sendEntityHeadRotation(entityInfo, fullRatePlayers);
         }
     }
 
@@ -146,6 +192,7 @@ public class EntityTracker implements IEntityTracker    {
         if(trackingPlayers.contains(player)) {throw new IllegalArgumentException("Player is already tracking this entity");}
 
         trackingPlayers.add(player);
+        fullRatePlayers.add(player);
 
         // If the tracker's entity UID is different, and they are a player, we must send a player info packet to add their profile to the server
         boolean sendingPlayerProfile = !entityInfo.getEntityUniqueId().equals(entityInfo.getEntity().getUniqueId()) && entityInfo.getEntity() instanceof Player;
@@ -164,11 +211,31 @@ public class EntityTracker implements IEntityTracker    {
         if(!trackingPlayers.contains(player)) {throw new IllegalArgumentException("Cannot stop player from tracking entity, they weren't viewing in the first place");}
 
         trackingPlayers.remove(player);
+        fullRatePlayers.remove(player);
+        reducedRateIntervals.remove(player);
         if(sendPackets) {
             packetManipulator.hideEntity(entityInfo, player);
         }
     }
 
+    @Override
+    public void setUpdateInterval(@NotNull Player player, int interval) {
+        if(!trackingPlayers.contains(player)) {throw new IllegalArgumentException("Cannot set the update interval of a player that isn't tracking this entity");}
+
+        if(interval > 1) {
+            fullRatePlayers.remove(player);
+            reducedRateIntervals.put(player, interval);
+            return;
+        }
+
+        // Relative moves only work if the client knows the latest position, so we must send it when switching back to full rate
+        if(reducedRateIntervals.remove(player) != null) {
+            fullRatePlayers.add(player);
+            packetManipulator.sendEntityTeleport(entityInfo, Collections.singleton(player));
+            packetManipulator.sendEntityHeadRotation(entityInfo, Collections.singleton(player));
+        }
+    }
+
     public int getTrackingPlayerCount() {
         return trackingPlayers.size();
     }
@@ -90,6 +90,17 @@ public abstract class EntityTrackingManager {
         trackersByPortal.values().forEach((map) -> map.values().forEach(IEntityTracker::update));
     }
 
+    /**
+     * @return The number of entities currently being replicated, counted once for each portal that they're replicated through
+     */
+    public int getTrackerCount() {
+        int count = 0;
+        for(Map<Entity, IEntityTracker> portalTrackers : trackersByPortal.values()) {
+            count += portalTrackers.size();
+        }
+        return count;
+    }
+
     /**
      * Returns the tracker of <code>entity</code> on <code>portal</code>, or null if there is none.
      * @param portal The portal to check for trackers
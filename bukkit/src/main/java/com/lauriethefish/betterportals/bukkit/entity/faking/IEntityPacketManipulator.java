@@ -1,6 +1,7 @@
 package com.lauriethefish.betterportals.bukkit.entity.faking;
 
 import com.comphenix.protocol.wrappers.EnumWrappers;
+import com.comphenix.protocol.wrappers.WrappedWatchableObject;
 import com.lauriethefish.betterportals.bukkit.nms.AnimationType;
 import org.bukkit.entity.Player;
 import org.bukkit.inventory.ItemStack;
@@ -8,6 +9,7 @@ import org.bukkit.util.Vector;
 
 import java.util.Collection;
 import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -17,6 +19,21 @@ import java.util.Map;
  * They must be in the destination "coordinate space"
  */
 public interface IEntityPacketManipulator {
+    /**
+     * Starts collecting the packets sent by this manipulator into a batch for each player, instead of sending them immediately.
+     * Packets which only update the latest state of an entity, e.g. head rotation or metadata, replace any earlier queued packet of the same kind.
+     * Must be followed by {@link #flushBatch()} in the same tick.
+     */
+    void startBatch();
+
+    /**
+     * Sends all packets collected since {@link #startBatch()} and stops batching.
+     * Each packet is built and serialized once, then the same bytes are written to every player it is sent to.
+     * If another plugin listens for any of a player's packets, that player's packets are instead sent through ProtocolLib as normal, so that the listeners still see them.
+     * On 1.19.4 and above, each player's packets are wrapped in a bundle so that the client applies them in the same frame.
+     */
+    void flushBatch();
+
     /**
      * Shows the entity represented by <code>tracker</code>, sending all necessary spawning packets.
      * This includes head rotation, metadata, etc.
@@ -99,14 +116,21 @@ public interface IEntityPacketManipulator {
     /**
      * Sends a metadata packet for <code>tracker</code>.
      * This packet stores whether a mob is burning, dropped item type/count, item frame type, painting type, etc..
-     * Unfortunately we're forced to do a full entity metadata update every time
-     * The problem is that NMS's DataWatcher may have already been updated for players already viewing the entity on the other side
-     * This means that we can't use the method of only sending the changed data :/
+     * This sends every metadata value, which is needed when spawning the entity.
      * @param tracker Entity to update the metadata of
      * @param players Players to send the update to
      */
     void sendMetadata(EntityInfo tracker, Collection<Player> players);
 
+    /**
+     * Sends a metadata packet for <code>tracker</code> containing only <code>changes</code>.
+     * NMS's DataWatcher dirty flags are cleared once it updates the players viewing the entity on the other side, so the changes must be found by {@link EntityMetadataWatcher} instead.
+     * @param tracker Entity to update the metadata of
+     * @param changes The changed metadata values
+     * @param players Players to send the update to
+     */
+    void sendMetadata(EntityInfo tracker, List<WrappedWatchableObject> changes, Collection<Player> players);
+
     /**
      * Sends an entity velocity update packet for <code>tracker</code> to <code>players</code>.
      * This automatically rotates the entity velocity based on the matrices in {@link EntityInfo}.
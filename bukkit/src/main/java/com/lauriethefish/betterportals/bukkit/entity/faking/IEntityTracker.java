@@ -33,6 +33,14 @@ public interface IEntityTracker {
      */
     void removeTracking(@NotNull Player player, boolean sendPackets);
 
+    /**
+     * Sets how often <code>player</code> receives movement updates for this entity.
+     * Players with an interval above 1 are sent teleport packets instead of relative moves, since they may miss some updates.
+     * @param player The player to set the interval of, must be tracking this entity
+     * @param interval The interval in ticks. 1 means every tick
+     */
+    void setUpdateInterval(@NotNull Player player, int interval);
+
     /**
      * @return The number of players currently tracking this entity.
      */
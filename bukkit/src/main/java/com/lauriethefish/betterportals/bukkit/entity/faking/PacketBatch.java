@@ -0,0 +1,234 @@
+package com.lauriethefish.betterportals.bukkit.entity.faking;
+
+import lombok.Getter;
+
+import java.util.*;
+import java.util.function.BiConsumer;
+
+/**
+ * Collects the packets sent to each recipient during a tick so that they can be sent together at the end of it.
+ * Packets that only describe the latest state of an entity (e.g. head rotation or metadata) replace any earlier queued packet of the same type for that entity, so that only the newest state is sent.
+ * The newer packet is queued at the end, so it is never sent before packets for the same entity that were queued after the one it replaces.
+ * @param <R> Type of the recipients, usually a player
+ * @param <P> Type of the packets being batched
+ */
+public class PacketBatch<R, P> {
+    // The highest state type, since the state type after it is used for barriers
+    private static final int maxStateType = 254;
+    private static final int barrierStateType = 255;
+
+    // Queues are kept between flushes so that their lists and tables can be reused, and removed once a flush passes without any packets for them
+    private final Map<R, RecipientQueue<P>> queues = new LinkedHashMap<>();
+    private boolean empty = true;
+
+    @Getter private long packetsQueued = 0;
+    @Getter private long packetsReplaced = 0;
+    @Getter private long packetsFlushed = 0;
+    @Getter private long flushes = 0;
+
+    private static class RecipientQueue<P> {
+        // Replaced packets are left as null until the queue is flushed
+        private final List<P> packets = new ArrayList<>();
+
+        // Index of the queued packet for each entity ID and state type, along with the index of the last barrier for each entity
+        private final StateIndexTable stateIndices = new StateIndexTable();
+    }
+
+    /**
+     * Maps an entity ID and state type, packed into a long, to a packet index.
+     * Uses open addressing with primitive arrays so that queueing state packets doesn't box anything.
+     * Entries are never removed, only overwritten, until the whole table is cleared after a flush.
+     */
+    private static class StateIndexTable {
+        private static final int initialCapacity = 64;
+        private static final long emptyKey = Long.MIN_VALUE; // Packed keys only use the lower 40 bits, so this is never a real key
+
+        private long[] keys;
+        private int[] values;
+        private int size = 0;
+
+        private StateIndexTable() {
+            allocate(initialCapacity);
+        }
+
+        private void allocate(int capacity) {
+            keys = new long[capacity];
+            values = new int[capacity];
+            Arrays.fill(keys, emptyKey);
+        }
+
+        private static long packKey(int entityId, int stateType) {
+            return (long) entityId << 8 | stateType;
+        }
+
+        private int findSlot(long key) {
+            int mask = keys.length - 1;
+            long hash = key * 0x9E3779B97F4A7C15L;
+            int slot = (int) (hash ^ (hash >>> 32)) & mask;
+            while(keys[slot] != emptyKey && keys[slot] != key) {
+                slot = (slot + 1) & mask;
+            }
+            return slot;
+        }
+
+        /**
+         * @return The index stored for <code>entityId</code> and <code>stateType</code>, or -1 if there is none
+         */
+        private int get(int entityId, int stateType) {
+            int slot = findSlot(packKey(entityId, stateType));
+            return keys[slot] == emptyKey ? -1 : values[slot];
+        }
+
+        private void put(int entityId, int stateType, int index) {
+            long key = packKey(entityId, stateType);
+            int slot = findSlot(key);
+            if(keys[slot] == emptyKey) {
+                // Keep the load factor at 0.5 or below
+                if((size + 1) * 2 > keys.length) {
+                    rehash(keys.length * 2);
+                    slot = findSlot(key);
+                }
+
+                keys[slot] = key;
+                size++;
+            }
+            values[slot] = index;
+        }
+
+        private void rehash(int newCapacity) {
+            long[] oldKeys = keys;
+            int[] oldValues = values;
+
+            allocate(newCapacity);
+            for(int oldSlot = 0; oldSlot < oldKeys.length; oldSlot++) {
+                if(oldKeys[oldSlot] == emptyKey) {continue;}
+
+                int slot = findSlot(oldKeys[oldSlot]);
+                keys[slot] = oldKeys[oldSlot];
+                values[slot] = oldValues[oldSlot];
+            }
+        }
+
+        private void clear() {
+            if(size == 0) {return;}
+
+            Arrays.fill(keys, emptyKey);
+            size = 0;
+        }
+    }
+
+    private RecipientQueue<P> getQueue(R recipient) {
+        empty = false;
+        RecipientQueue<P> queue = queues.get(recipient);
+        if(queue == null) {
+            queue = new RecipientQueue<>();
+            queues.put(recipient, queue);
+        }
+        return queue;
+    }
+
+    private static void checkStateType(int stateType) {
+        if(stateType < 0 || stateType > maxStateType) {
+            throw new IllegalArgumentException("State type must be between 0 and " + maxStateType);
+        }
+    }
+
+    /**
+     * Queues <code>packet</code> to be sent to <code>recipient</code> in order with the other packets in the batch.
+     * @param recipient Recipient of the packet
+     * @param packet The packet to queue
+     */
+    public void add(R recipient, P packet) {
+        getQueue(recipient).packets.add(packet);
+        packetsQueued++;
+    }
+
+    /**
+     * Queues a packet which spawns or removes the entity with ID <code>entityId</code>.
+     * State packets queued before this one will no longer be replaced, since the client would have discarded them anyway.
+     * @param recipient Recipient of the packet
+     * @param entityId The entity that this packet spawns or removes
+     * @param packet The packet to queue
+     */
+    public void addBarrier(R recipient, int entityId, P packet) {
+        RecipientQueue<P> queue = getQueue(recipient);
+        // States queued before the barrier's index are ignored, which avoids finding and removing each of them
+        queue.stateIndices.put(entityId, barrierStateType, queue.packets.size());
+        queue.packets.add(packet);
+        packetsQueued++;
+    }
+
+    /**
+     * Queues a packet that sets the state of type <code>stateType</code> for the entity with ID <code>entityId</code>.
+     * If a packet for the same state has already been queued, it is removed and <code>packet</code> is queued at the end instead of sending both.
+     * @param recipient Recipient of the packet
+     * @param entityId The entity that this packet updates
+     * @param stateType Identifies the state that this packet sets, e.g. head rotation. Must be between 0 and 254
+     * @param packet The packet to queue
+     */
+    public void addState(R recipient, int entityId, int stateType, P packet) {
+        checkStateType(stateType);
+        RecipientQueue<P> queue = getQueue(recipient);
+
+        int existingIndex = queue.stateIndices.get(entityId, stateType);
+        if(existingIndex != -1 && existingIndex > queue.stateIndices.get(entityId, barrierStateType)) {
+            queue.packets.set(existingIndex, null);
+            packetsReplaced++;
+        }
+        queue.stateIndices.put(entityId, stateType, queue.packets.size());
+        queue.packets.add(packet);
+        packetsQueued++;
+    }
+
+    /**
+     * Queues a packet that changes only part of the state of type <code>stateType</code> for the entity with ID <code>entityId</code>.
+     * This packet is never replaced, and packets of the same state queued before it will no longer be replaced, since that would reorder them.
+     * @param recipient Recipient of the packet
+     * @param entityId The entity that this packet updates
+     * @param stateType Identifies the state that this packet changes part of. Must be between 0 and 254
+     * @param packet The packet to queue
+     */
+    public void addStateChange(R recipient, int entityId, int stateType, P packet) {
+        checkStateType(stateType);
+        RecipientQueue<P> queue = getQueue(recipient);
+        if(queue.stateIndices.get(entityId, stateType) != -1) {
+            queue.stateIndices.put(entityId, stateType, -1);
+        }
+
+        queue.packets.add(packet);
+        packetsQueued++;
+    }
+
+    /**
+     * @return Whether there are no packets waiting to be flushed
+     */
+    public boolean isEmpty() {
+        return empty;
+    }
+
+    /**
+     * Passes the queued packets for each recipient to <code>sender</code>, then clears the batch.
+     * @param sender Sends the list of packets to the recipient, in order. The list is reused after the sender returns, so must not be kept
+     */
+    public void flush(BiConsumer<R, List<P>> sender) {
+        Iterator<Map.Entry<R, RecipientQueue<P>>> iterator = queues.entrySet().iterator();
+        while(iterator.hasNext()) {
+            Map.Entry<R, RecipientQueue<P>> entry = iterator.next();
+            RecipientQueue<P> queue = entry.getValue();
+            // Recipients that weren't sent anything since the last flush may have disconnected, so their queue isn't kept
+            if(queue.packets.isEmpty()) {
+                iterator.remove();
+                continue;
+            }
+
+            queue.packets.removeIf(Objects::isNull);
+            sender.accept(entry.getKey(), queue.packets);
+            packetsFlushed += queue.packets.size();
+            flushes++;
+
+            queue.packets.clear();
+            queue.stateIndices.clear();
+        }
+        empty = true;
+    }
+}
@@ -10,6 +10,7 @@ import com.lauriethefish.betterportals.bukkit.net.requests.GetBlockDataChangesRe
 import com.lauriethefish.betterportals.bukkit.net.requests.GetSelectionRequest;
 import com.lauriethefish.betterportals.bukkit.net.requests.TestForwardedRequest;
 import com.lauriethefish.betterportals.bukkit.player.IPlayerDataManager;
+import com.lauriethefish.betterportals.bukkit.util.performance.OperationRegistry;
 import com.lauriethefish.betterportals.bukkit.portal.selection.IPortalSelection;
 import com.lauriethefish.betterportals.bukkit.util.VersionUtil;
 import com.lauriethefish.betterportals.shared.logging.Logger;
@@ -27,6 +28,7 @@ import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.ObjectOutputStream;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.function.Consumer;
 
 @Singleton
@@ -35,11 +37,13 @@ public class ClientRequestHandler implements IRequestHandler {
     private final IExternalBlockWatcherManager blockWatcherManager;
     private final IPlayerDataManager playerDataManager;
     private final IPortalClient portalClient;
+    private final LongAdder relayBytesSent;
     private final ConcurrentLinkedQueue<Pair<Request, Consumer<Response>>> awaitingHandling = new ConcurrentLinkedQueue<>();
 
     @Inject
-    public ClientRequestHandler(Logger logger, IExternalBlockWatcherManager blockWatcherManager, IPlayerDataManager playerDataManager, IPortalClient portalClient) {
+    public ClientRequestHandler(Logger logger, IExternalBlockWatcherManager blockWatcherManager, IPlayerDataManager playerDataManager, IPortalClient portalClient, OperationRegistry operationRegistry) {
         this.logger = logger;
+        this.relayBytesSent = operationRegistry.getCounter(OperationRegistry.RELAY_BYTES_SENT);
         this.blockWatcherManager = blockWatcherManager;
         this.playerDataManager = playerDataManager;
         this.portalClient = portalClient;
@@ -106,6 +110,7 @@ public class ClientRequestHandler implements IRequestHandler {
             // Wrap the response as a byte array to avoid the proxy trying to deserialize a type that doesn't exist on bungeecord
             Response wrappedResponse = new Response();
             wrappedResponse.setResult(byteOutputStream.toByteArray());
+            relayBytesSent.add(byteOutputStream.size());
             onFinish.accept(wrappedResponse);
         });
     }
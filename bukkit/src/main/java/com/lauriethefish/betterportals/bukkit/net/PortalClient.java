@@ -4,6 +4,11 @@ import com.google.inject.Inject;
 import com.google.inject.Singleton;
 import com.lauriethefish.betterportals.bukkit.config.ProxyConfig;
 import com.lauriethefish.betterportals.bukkit.util.VersionUtil;
+import com.lauriethefish.betterportals.bukkit.util.performance.AllocationProfiler;
+import com.lauriethefish.betterportals.bukkit.util.performance.Operation;
+import com.lauriethefish.betterportals.bukkit.util.performance.OperationRegistry;
+import com.lauriethefish.betterportals.bukkit.util.performance.TickPhase;
+import com.lauriethefish.betterportals.bukkit.util.performance.TickPhaseEvent;
 import com.lauriethefish.betterportals.shared.logging.Logger;
 import com.lauriethefish.betterportals.shared.net.*;
 import com.lauriethefish.betterportals.shared.net.encryption.CipherManager;
@@ -25,6 +30,7 @@ import java.security.NoSuchAlgorithmException;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.function.Consumer;
 
 @Singleton
@@ -36,6 +42,9 @@ public class PortalClient implements IPortalClient {
     private final IRequestHandler requestHandler;
     private final IClientReconnectHandler reconnectHandler;
     private final CipherManager cipherManager;
+    private final Operation roundTripOperation;
+    private final LongAdder relayBytesReceived;
+    private final AllocationProfiler allocationProfiler;
 
     private Socket socket;
     private volatile boolean isRunning = false;
@@ -45,11 +54,17 @@ public class PortalClient implements IPortalClient {
 
     private IEncryptedObjectStream objectStream;
 
+    // Only used by the connection thread, for timing the object currently being read
+    private TickPhaseEvent readEvent;
+    private long readStartBytes;
+
     private final AtomicInteger currentRequestId = new AtomicInteger();
     private final ConcurrentMap<Integer, Consumer<Response>> waitingRequests = new ConcurrentHashMap<>();
+    // The System.nanoTime() that each waiting request was sent at
+    private final ConcurrentMap<Integer, Long> requestSendTimes = new ConcurrentHashMap<>();
 
     @Inject
-    public PortalClient(JavaPlugin pl, ProxyConfig proxyConfig, Logger logger, CipherManager cipherManager, EncryptedObjectStreamFactory encryptedObjectStreamFactory, IRequestHandler requestHandler, IClientReconnectHandler reconnectHandler) {
+    public PortalClient(JavaPlugin pl, ProxyConfig proxyConfig, Logger logger, CipherManager cipherManager, EncryptedObjectStreamFactory encryptedObjectStreamFactory, IRequestHandler requestHandler, IClientReconnectHandler reconnectHandler, OperationRegistry operationRegistry) {
         this.pl = pl;
         this.proxyConfig = proxyConfig;
         this.logger = logger;
@@ -57,6 +72,9 @@ public class PortalClient implements IPortalClient {
         this.requestHandler = requestHandler;
         this.reconnectHandler = reconnectHandler;
         this.cipherManager = cipherManager;
+        this.roundTripOperation = operationRegistry.getOperation(OperationRegistry.PROXY_ROUND_TRIP);
+        this.relayBytesReceived = operationRegistry.getCounter(OperationRegistry.RELAY_BYTES_RECEIVED);
+        this.allocationProfiler = operationRegistry.getAllocationProfiler();
     }
 
     @Override
@@ -117,8 +135,10 @@ public class PortalClient implements IPortalClient {
 
         logger.info("Successfully connected to the proxy");
 
+        // Waiting for the next object is left out, so this only counts decrypting and deserializing it, then processing it
+        Runnable onReceived = this::beginRead;
         while(true) {
-            Object next = objectStream.readObject();
+            Object next = objectStream.readObject(onReceived);
             if (next instanceof DisconnectNotice) {
                 logger.fine("Received disconnection notice, shutting down!");
                 return;
@@ -127,9 +147,17 @@ public class PortalClient implements IPortalClient {
             } else if (next instanceof Request) {
                 processRequest((Request) next);
             }
+            readEvent.finish(null, null, 0);
+            allocationProfiler.record(OperationRegistry.PROXY_READ, readStartBytes);
         }
     }
 
+    // Called by the object stream once the next object has started arriving
+    private void beginRead() {
+        readStartBytes = allocationProfiler.begin();
+        readEvent = TickPhaseEvent.begin(TickPhase.PROXY_READ);
+    }
+
     /**
      * Sends <code>request</code> to the request handler on the main thread.
      * @param request The request to process
@@ -158,6 +186,11 @@ public class PortalClient implements IPortalClient {
             throw new IllegalStateException("Received response for request that didn't exist");
         }
 
+        Long sendTime = requestSendTimes.remove(response.getId());
+        if(sendTime != null) {
+            roundTripOperation.record(System.nanoTime() - sendTime);
+        }
+
         // Call it on the main server thread
         Bukkit.getScheduler().runTask(pl, () -> waiter.accept(response));
     }
@@ -259,6 +292,7 @@ public class PortalClient implements IPortalClient {
             responseConsumer.accept(disconnectResponse);
         }
         waitingRequests.clear();
+        requestSendTimes.clear();
 
         reconnectHandler.onClientDisconnect();
     }
@@ -280,6 +314,7 @@ public class PortalClient implements IPortalClient {
         // Avoid blocking the main thread
         Bukkit.getScheduler().runTaskAsynchronously(pl, () -> {
             try {
+                requestSendTimes.put(requestId, System.nanoTime());
                 send(request);
             } catch (IOException | GeneralSecurityException ex) {
                 logger.warning("Disconnected from proxy while sending request");
@@ -299,6 +334,7 @@ public class PortalClient implements IPortalClient {
         sendRequestToProxy(relayRequest, (response) -> {
             try {
                 byte[] responseData = (byte[]) response.getResult();
+                relayBytesReceived.add(responseData.length);
                 Object deserializedResponse = new ObjectInputStream(new ByteArrayInputStream(responseData)).readObject();
                 onFinish.accept((Response) deserializedResponse);
 
@@ -313,6 +349,13 @@ public class PortalClient implements IPortalClient {
     }
 
     public synchronized void send(Object obj) throws GeneralSecurityException, IOException {
-        objectStream.writeObject(obj);
+        long startBytes = allocationProfiler.begin();
+        TickPhaseEvent event = TickPhaseEvent.begin(TickPhase.PROXY_SEND);
+        try {
+            objectStream.writeObject(obj);
+        }   finally     {
+            event.finish(null, null, 0);
+            allocationProfiler.record(OperationRegistry.PROXY_SEND, startBytes);
+        }
     }
 }
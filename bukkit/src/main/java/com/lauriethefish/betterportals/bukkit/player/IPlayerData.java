@@ -2,7 +2,6 @@ package com.lauriethefish.betterportals.bukkit.player;
 
 import com.lauriethefish.betterportals.bukkit.portal.selection.ISelectionManager;
 import com.lauriethefish.betterportals.bukkit.portal.IPortal;
-import org.bukkit.configuration.file.YamlConfiguration;
 import org.bukkit.entity.Player;
 import org.jetbrains.annotations.NotNull;
 
@@ -20,14 +19,10 @@ public interface IPlayerData {
     @NotNull Player getPlayer();
 
     /**
-     * @return The player's permanent data .yml
+     * Changes to the preferences are saved automatically.
+     * @return The player's saved preferences
      */
-    @NotNull YamlConfiguration getPermanentData();
-
-    /**
-     * Saves the player data after changes, if any.
-     */
-    void savePermanentData();
+    @NotNull PlayerPreferences getPreferences();
 
     /**
      * Stops scheduling portal view updates
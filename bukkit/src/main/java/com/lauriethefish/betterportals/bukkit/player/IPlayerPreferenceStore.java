@@ -0,0 +1,28 @@
+package com.lauriethefish.betterportals.bukkit.player;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.UUID;
+
+/**
+ * Loads and saves the {@link PlayerPreferences} of each player.
+ */
+public interface IPlayerPreferenceStore {
+    /**
+     * Gets the preferences of a player.
+     * These are normally loaded before the player joins. If they haven't been, the defaults are returned and replaced once they have loaded.
+     * @param playerId Unique ID of the player
+     * @return The player's preferences
+     */
+    @NotNull PlayerPreferences getPreferences(@NotNull UUID playerId);
+
+    /**
+     * Starts periodically writing changed preferences.
+     */
+    void start();
+
+    /**
+     * Writes any changed preferences, then waits for them to finish saving.
+     */
+    void stop();
+}
@@ -2,7 +2,6 @@ package com.lauriethefish.betterportals.bukkit.player;
 
 import com.google.inject.Inject;
 import com.google.inject.assistedinject.Assisted;
-import com.lauriethefish.betterportals.bukkit.BetterPortals;
 import com.lauriethefish.betterportals.bukkit.portal.selection.ISelectionManager;
 import com.lauriethefish.betterportals.bukkit.player.view.IPlayerPortalView;
 import com.lauriethefish.betterportals.bukkit.player.view.PlayerPortalViewFactory;
@@ -13,12 +12,9 @@ import com.lauriethefish.betterportals.bukkit.portal.predicate.IPortalPredicateM
 import com.lauriethefish.betterportals.shared.logging.Logger;
 import lombok.Getter;
 import lombok.Setter;
-import org.bukkit.configuration.file.YamlConfiguration;
 import org.bukkit.entity.Player;
 import org.jetbrains.annotations.NotNull;
 
-import java.io.File;
-import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
@@ -27,10 +23,9 @@ import java.util.concurrent.ConcurrentHashMap;
 
 public class PlayerData implements IPlayerData  {
     @Getter private final Player player;
-    @Getter private final YamlConfiguration permanentData;
+    @Getter private final PlayerPreferences preferences;
     @Getter @Setter private ISelectionManager selection;
 
-    private final BetterPortals pl;
     private final Logger logger;
     private final IPortalManager portalManager;
     private final IPortalPredicateManager portalPredicateManager;
@@ -44,17 +39,16 @@ public class PlayerData implements IPlayerData  {
     private boolean viewsFrozen;
 
     @Inject
-    public PlayerData(@Assisted Player player, ISelectionManager selection, IPortalManager portalManager, IPortalPredicateManager portalPredicateManager, BetterPortals pl, Logger logger, IPortalActivityManager portalActivityManager, PlayerPortalViewFactory playerPortalViewFactory) {
+    public PlayerData(@Assisted Player player, ISelectionManager selection, IPortalManager portalManager, IPortalPredicateManager portalPredicateManager, IPlayerPreferenceStore preferenceStore, Logger logger, IPortalActivityManager portalActivityManager, PlayerPortalViewFactory playerPortalViewFactory) {
         this.player = player;
         this.selection = selection;
         this.portalManager = portalManager;
         this.portalPredicateManager = portalPredicateManager;
-        this.pl = pl;
         this.logger = logger;
         this.portalActivityManager = portalActivityManager;
         this.playerPortalViewFactory = playerPortalViewFactory;
 
-        permanentData = loadPermanentDataYml();
+        this.preferences = preferenceStore.getPreferences(player.getUniqueId());
     }
 
     @Override
@@ -129,32 +123,6 @@ public class PlayerData implements IPlayerData  {
         deactivateViews(true);
     }
 
-
-    @Override
-    public void savePermanentData() {
-
-        File dataFolder = new File(pl.getDataFolder(), "playerData");
-
-        if (!dataFolder.exists()) //noinspection ResultOfMethodCallIgnored
-            dataFolder.mkdirs();
-
-        File permanentDataFile = new File(dataFolder, player.getUniqueId() + ".yml");
-
-        try {
-            if (!permanentDataFile.exists()) //noinspection ResultOfMethodCallIgnored
-                permanentDataFile.createNewFile();
-
-            permanentData.options().copyHeader(true);
-            permanentData.save(permanentDataFile);
-
-        } catch (IOException ex) {
-            logger.severe("Unable to save " + player.getName() + "'s permanent player data! \n" +
-                    ex.getMessage()); //Do nothing, as we cannot save.
-        }
-
-
-    }
-
     @Override
     public void freezePortalViews() {
         viewsFrozen = true;
@@ -167,38 +135,4 @@ public class PlayerData implements IPlayerData  {
     private void setNotViewing(IPortal portal) {
         portalViews.remove(portal).onDeactivate(false);
     }
-
-    private YamlConfiguration loadPermanentDataYml() {
-
-        File dataFolder = new File(pl.getDataFolder(), "playerData");
-
-        if (!dataFolder.exists()) //noinspection ResultOfMethodCallIgnored
-            dataFolder.mkdirs();
-
-        File permanentDataFile = new File(dataFolder, player.getUniqueId() + ".yml");
-
-        try {
-            if (!permanentDataFile.exists()) //noinspection ResultOfMethodCallIgnored
-                permanentDataFile.createNewFile();
-
-            YamlConfiguration permanentDataYml = createDefaultDataFile(permanentDataFile);
-            permanentDataYml.save(permanentDataFile);
-            return permanentDataYml;
-
-        } catch (IOException ex) {
-            logger.severe("Unable to load " + player.getName() + "'s permanent player data! " +
-                    "Default data will be used. \n" + ex.getMessage());
-
-            return createDefaultDataFile(permanentDataFile); //We don't save anything, and this is kept in memory.
-
-        }
-
-    }
-
-    private YamlConfiguration createDefaultDataFile(File permanentDataFile) {
-        YamlConfiguration permanentDataYml = YamlConfiguration.loadConfiguration(permanentDataFile);
-        permanentDataYml.addDefault("seeThroughPortal", true);
-        permanentDataYml.options().copyDefaults(true);
-        return permanentDataYml;
-    }
 }
@@ -5,8 +5,10 @@ import com.google.inject.Singleton;
 import com.lauriethefish.betterportals.bukkit.config.ProxyConfig;
 import com.lauriethefish.betterportals.bukkit.events.IEventRegistrar;
 import com.lauriethefish.betterportals.bukkit.net.requests.GetSelectionRequest;
+import com.lauriethefish.betterportals.bukkit.player.view.entity.EntityPacketBudget;
 import com.lauriethefish.betterportals.bukkit.portal.selection.ISelectionManager;
 import com.lauriethefish.betterportals.bukkit.portal.selection.IPortalSelection;
+import com.lauriethefish.betterportals.bukkit.util.performance.OperationRegistry;
 import com.lauriethefish.betterportals.shared.logging.Logger;
 import com.lauriethefish.betterportals.shared.net.requests.TeleportRequest;
 import org.bukkit.Bukkit;
@@ -29,6 +31,8 @@ public class PlayerDataManager implements IPlayerDataManager, Listener   {
     private final IPlayerData.Factory playerDataFactory;
     private final Map<Player, IPlayerData> players = new HashMap<>();
     private final ProxyConfig proxyConfig;
+    private final OperationRegistry operationRegistry;
+    private final EntityPacketBudget entityPacketBudget;
 
     private final Map<UUID, TeleportRequest> pendingTeleportOnJoin = new HashMap<>();
     private final Map<UUID, GetSelectionRequest.ExternalSelectionInfo> pendingSelectionOnJoin = new HashMap<>();
@@ -38,10 +42,12 @@ public class PlayerDataManager implements IPlayerDataManager, Listener   {
     private final Map<UUID, ISelectionManager> loggedOutPlayerSelections = new HashMap<>();
 
     @Inject
-    public PlayerDataManager(IEventRegistrar eventRegistrar, Logger logger, IPlayerData.Factory playerDataFactory, ProxyConfig proxyConfig) {
+    public PlayerDataManager(IEventRegistrar eventRegistrar, Logger logger, IPlayerData.Factory playerDataFactory, ProxyConfig proxyConfig, OperationRegistry operationRegistry, EntityPacketBudget entityPacketBudget) {
         this.logger = logger;
         this.playerDataFactory = playerDataFactory;
         this.proxyConfig = proxyConfig;
+        this.operationRegistry = operationRegistry;
+        this.entityPacketBudget = entityPacketBudget;
 
         addExistingPlayers();
         eventRegistrar.register(this);
@@ -166,5 +172,7 @@ public class PlayerDataManager implements IPlayerDataManager, Listener   {
         logger.fine("Unregistering player data on leave for player: %s", event.getPlayer().getUniqueId());
         players.remove(event.getPlayer());
         playerData.onLogout();
+        operationRegistry.removePlayer(event.getPlayer().getUniqueId());
+        entityPacketBudget.removePlayer(event.getPlayer().getUniqueId());
     }
 }
@@ -0,0 +1,119 @@
+package com.lauriethefish.betterportals.bukkit.player;
+
+import com.lauriethefish.betterportals.shared.logging.Logger;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * The file that {@link PlayerPreferenceStore} keeps every player's preferences in.
+ * This is a header followed by fixed size records of a player's UUID and their preference flags, so a changed player can be overwritten in place.
+ * Every record is read when the file is opened, which is cheap since each player only takes up 17 bytes.
+ * <br>A file with an invalid header is moved aside as a backup and replaced with an empty one, so that a corrupted file doesn't stop preferences from being saved.
+ * <br>This isn't thread safe, and is only used on the storage thread.
+ */
+public class PlayerPreferenceFile {
+    private static final int MAGIC = 0x42505046; // "BPPF"
+    private static final int VERSION = 1;
+    private static final int HEADER_LENGTH = 8;
+    private static final int RECORD_LENGTH = 17; // UUID, then the flags byte
+
+    private final RandomAccessFile file;
+    private final Map<UUID, Integer> recordIndices = new HashMap<>();
+    private final Map<UUID, Byte> storedFlags = new HashMap<>();
+
+    private PlayerPreferenceFile(RandomAccessFile file) {
+        this.file = file;
+    }
+
+    /**
+     * Opens the file and reads every record, creating it if it doesn't exist.
+     * @param path Path of the file
+     * @param logger Used to warn about corrupted files
+     * @return The opened file
+     * @throws IOException If the file couldn't be read or created
+     */
+    public static @NotNull PlayerPreferenceFile open(@NotNull Path path, @NotNull Logger logger) throws IOException {
+        PlayerPreferenceFile preferenceFile = new PlayerPreferenceFile(new RandomAccessFile(path.toFile(), "rw"));
+        RandomAccessFile file = preferenceFile.file;
+        if(file.length() < HEADER_LENGTH) {
+            preferenceFile.writeHeader();
+            return preferenceFile;
+        }
+
+        if(file.readInt() != MAGIC || file.readInt() != VERSION) {
+            file.close();
+
+            Path backupPath = path.resolveSibling(path.getFileName() + ".corrupt");
+            Files.move(path, backupPath, StandardCopyOption.REPLACE_EXISTING);
+            logger.warning("Invalid player preferences file header, moved it to %s and started a new file. Player preferences have been reset", backupPath.getFileName());
+
+            preferenceFile = new PlayerPreferenceFile(new RandomAccessFile(path.toFile(), "rw"));
+            preferenceFile.writeHeader();
+            return preferenceFile;
+        }
+
+        preferenceFile.readRecords();
+        logger.fine("Loaded preferences for %d players", preferenceFile.storedFlags.size());
+        return preferenceFile;
+    }
+
+    private void writeHeader() throws IOException {
+        file.setLength(0);
+        file.writeInt(MAGIC);
+        file.writeInt(VERSION);
+    }
+
+    private void readRecords() throws IOException {
+        // A partially written record at the end is ignored and overwritten by the next new player
+        int recordCount = (int) ((file.length() - HEADER_LENGTH) / RECORD_LENGTH);
+        byte[] data = new byte[recordCount * RECORD_LENGTH];
+        file.readFully(data);
+
+        ByteBuffer buffer = ByteBuffer.wrap(data);
+        for(int i = 0; i < recordCount; i++) {
+            UUID playerId = new UUID(buffer.getLong(), buffer.getLong());
+            recordIndices.put(playerId, i);
+            storedFlags.put(playerId, buffer.get());
+        }
+    }
+
+    /**
+     * @param playerId The player to find
+     * @return The stored flags of the player, or null if they don't have a record
+     */
+    public @Nullable Byte getFlags(@NotNull UUID playerId) {
+        return storedFlags.get(playerId);
+    }
+
+    /**
+     * Overwrites the records of changed players, and appends records for new players.
+     * @param changes The new flags of each changed player
+     * @throws IOException If writing failed
+     */
+    public void write(@NotNull Map<UUID, Byte> changes) throws IOException {
+        for(Map.Entry<UUID, Byte> entry : changes.entrySet()) {
+            UUID playerId = entry.getKey();
+            int index = recordIndices.computeIfAbsent(playerId, id -> recordIndices.size());
+
+            file.seek(HEADER_LENGTH + (long) index * RECORD_LENGTH);
+            file.writeLong(playerId.getMostSignificantBits());
+            file.writeLong(playerId.getLeastSignificantBits());
+            file.writeByte(entry.getValue());
+            storedFlags.put(playerId, entry.getValue());
+        }
+    }
+
+    public void close() throws IOException {
+        file.close();
+    }
+}
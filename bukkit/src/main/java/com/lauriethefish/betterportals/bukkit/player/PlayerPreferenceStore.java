@@ -0,0 +1,215 @@
+package com.lauriethefish.betterportals.bukkit.player;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.lauriethefish.betterportals.bukkit.events.IEventRegistrar;
+import com.lauriethefish.betterportals.shared.logging.Logger;
+import org.bukkit.configuration.file.YamlConfiguration;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.player.AsyncPlayerPreLoginEvent;
+import org.bukkit.event.player.PlayerQuitEvent;
+import org.bukkit.plugin.java.JavaPlugin;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Stores every player's preferences in <code>plugins/BetterPortals/data/playerPreferences.dat</code>, see {@link PlayerPreferenceFile} for the format.
+ * <br>Preferences are loaded on the storage thread during {@link AsyncPlayerPreLoginEvent}, so joining doesn't block the main thread.
+ * Players who were already online when the plugin was enabled use the defaults until their preferences have loaded.
+ * Changes are collected on the main thread every {@link #SAVE_INTERVAL} ticks, then written together on the storage thread.
+ * Players without a record are migrated from their old <code>playerData/&lt;uuid&gt;.yml</code> file, if they have one.
+ */
+@Singleton
+public class PlayerPreferenceStore implements IPlayerPreferenceStore, Listener {
+    private static final String FILE_NAME = "playerPreferences.dat";
+
+    private static final long SAVE_INTERVAL = 100;
+
+    private final JavaPlugin pl;
+    private final Logger logger;
+
+    // Preferences of the players that are online or logging in. Accessed from both the main thread and the login threads
+    private final Map<UUID, PlayerPreferences> loadedPreferences = new ConcurrentHashMap<>();
+    // Players whose preferences can be dropped once any changes have been written
+    private final Set<UUID> loggedOutPlayers = ConcurrentHashMap.newKeySet();
+
+    private final ExecutorService storageThread;
+
+    // Only used on the storage thread
+    private PlayerPreferenceFile file = null;
+
+    @Inject
+    public PlayerPreferenceStore(JavaPlugin pl, Logger logger, IEventRegistrar eventRegistrar) {
+        this.pl = pl;
+        this.logger = logger;
+        this.storageThread = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "BetterPortals Player Preference Thread");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        eventRegistrar.register(this);
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onAsyncPreLogin(AsyncPlayerPreLoginEvent event) {
+        if(event.getLoginResult() != AsyncPlayerPreLoginEvent.Result.ALLOWED) {return;}
+
+        UUID playerId = event.getUniqueId();
+        loggedOutPlayers.remove(playerId);
+        // The player may have rejoined before their changes were written
+        if(loadedPreferences.containsKey(playerId)) {return;}
+
+        loadedPreferences.put(playerId, load(playerId));
+    }
+
+    @EventHandler
+    public void onPlayerQuit(PlayerQuitEvent event) {
+        loggedOutPlayers.add(event.getPlayer().getUniqueId());
+    }
+
+    @Override
+    public @NotNull PlayerPreferences getPreferences(@NotNull UUID playerId) {
+        PlayerPreferences preferences = loadedPreferences.get(playerId);
+        if(preferences != null) {return preferences;}
+
+        // Happens for players who were already online when the plugin was enabled
+        // The defaults are used until the preferences have loaded, so that the main thread doesn't wait for the file
+        logger.fine("Loading preferences for player %s in the background", playerId);
+        PlayerPreferences defaults = new PlayerPreferences();
+        loadedPreferences.put(playerId, defaults);
+        try {
+            CompletableFuture.supplyAsync(() -> read(playerId), storageThread).whenComplete((loaded, ex) -> {
+                if(ex != null) {
+                    logger.warning("Failed to load the preferences of player %s, the defaults will be used: %s", playerId, ex.getMessage());
+                    return;
+                }
+
+                // Preferences are only modified on the main thread
+                if(pl.isEnabled()) {
+                    pl.getServer().getScheduler().runTask(pl, () -> defaults.applyLoaded(loaded));
+                }
+            });
+        }   catch(RejectedExecutionException ex) {
+            logger.warning("Failed to load the preferences of player %s, the defaults will be used: %s", playerId, ex.getMessage());
+        }
+        return defaults;
+    }
+
+    private PlayerPreferences load(UUID playerId) {
+        try {
+            return CompletableFuture.supplyAsync(() -> read(playerId), storageThread).join();
+        }   catch(CompletionException | RejectedExecutionException ex) {
+            logger.warning("Failed to load the preferences of player %s, the defaults will be used: %s", playerId, ex.getMessage());
+            return new PlayerPreferences();
+        }
+    }
+
+    @Override
+    public void start() {
+        pl.getServer().getScheduler().runTaskTimer(pl, this::saveChanged, SAVE_INTERVAL, SAVE_INTERVAL);
+    }
+
+    private void saveChanged() {
+        Map<UUID, Byte> changes = new HashMap<>();
+        for(Map.Entry<UUID, PlayerPreferences> entry : loadedPreferences.entrySet()) {
+            if(entry.getValue().takeChanged()) {
+                changes.put(entry.getKey(), entry.getValue().toFlags());
+            }
+        }
+
+        // Any later load is queued after these changes, so the preferences of logged out players can now be dropped
+        if(!changes.isEmpty()) {
+            logger.finer("Saving the preferences of %d players", changes.size());
+            storageThread.execute(() -> write(changes));
+        }
+
+        for(UUID playerId : loggedOutPlayers) {
+            loggedOutPlayers.remove(playerId);
+            loadedPreferences.remove(playerId);
+        }
+    }
+
+    @Override
+    public void stop() {
+        saveChanged();
+        storageThread.execute(this::close);
+        storageThread.shutdown();
+
+        try {
+            if(!storageThread.awaitTermination(30, TimeUnit.SECONDS)) {
+                logger.warning("Timed out while waiting for player preferences to finish saving");
+            }
+        }   catch(InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private File getFile() {
+        File dataFolder = new File(pl.getDataFolder(), "data");
+        //noinspection ResultOfMethodCallIgnored
+        dataFolder.mkdirs();
+        return new File(dataFolder, FILE_NAME);
+    }
+
+    private void open() throws IOException {
+        if(file != null) {return;}
+
+        file = PlayerPreferenceFile.open(getFile().toPath(), logger);
+    }
+
+    private PlayerPreferences read(UUID playerId) {
+        try {
+            open();
+        }   catch(IOException ex) {
+            throw new CompletionException(ex);
+        }
+
+        Byte flags = file.getFlags(playerId);
+        if(flags != null) {
+            return new PlayerPreferences(flags);
+        }
+
+        return migrateLegacyPreferences(playerId);
+    }
+
+    private PlayerPreferences migrateLegacyPreferences(UUID playerId) {
+        PlayerPreferences preferences = new PlayerPreferences();
+
+        File legacyFile = new File(new File(pl.getDataFolder(), "playerData"), playerId + ".yml");
+        if(!legacyFile.exists()) {return preferences;}
+
+        logger.fine("Migrating preferences of player %s from %s", playerId, legacyFile.getName());
+        YamlConfiguration legacyData = YamlConfiguration.loadConfiguration(legacyFile);
+        preferences.setSeeThroughPortal(legacyData.getBoolean("seeThroughPortal", true));
+        preferences.markChanged();
+        return preferences;
+    }
+
+    private void write(Map<UUID, Byte> changes) {
+        try {
+            open();
+            file.write(changes);
+        }   catch(IOException ex) {
+            logger.warning("Error occurred while saving player preferences. Check your file permissions!");
+            ex.printStackTrace();
+        }
+    }
+
+    private void close() {
+        if(file == null) {return;}
+
+        try {
+            file.close();
+        }   catch(IOException ex) {
+            ex.printStackTrace();
+        }
+        file = null;
+    }
+}
@@ -0,0 +1,73 @@
+package com.lauriethefish.betterportals.bukkit.player;
+
+/**
+ * The saved preferences of a player, kept as plain fields so that checking them each tick is just a field read.
+ * Changes are picked up and written by the {@link IPlayerPreferenceStore} in batches.
+ * <br>These are only modified on the main thread.
+ */
+public class PlayerPreferences {
+    private static final byte SEE_THROUGH_PORTAL_FLAG = 1;
+    private static final byte DEFAULT_FLAGS = SEE_THROUGH_PORTAL_FLAG;
+
+    private boolean seeThroughPortal;
+    private boolean changed = false;
+    // Unlike changed, this isn't cleared once the preferences are written
+    private boolean setByPlayer = false;
+
+    public PlayerPreferences() {
+        this(DEFAULT_FLAGS);
+    }
+
+    PlayerPreferences(byte flags) {
+        this.seeThroughPortal = (flags & SEE_THROUGH_PORTAL_FLAG) != 0;
+    }
+
+    public boolean isSeeThroughPortal() {
+        return seeThroughPortal;
+    }
+
+    public void setSeeThroughPortal(boolean seeThroughPortal) {
+        if(this.seeThroughPortal == seeThroughPortal) {return;}
+
+        this.seeThroughPortal = seeThroughPortal;
+        changed = true;
+        setByPlayer = true;
+    }
+
+    /**
+     * Replaces the defaults with preferences that finished loading after these were handed out.
+     * Nothing is replaced if the player has already changed their preferences, since their change is newer.
+     * @param loaded The loaded preferences
+     */
+    void applyLoaded(PlayerPreferences loaded) {
+        if(setByPlayer) {return;}
+
+        this.seeThroughPortal = loaded.seeThroughPortal;
+        this.changed = loaded.changed;
+    }
+
+    /**
+     * Marks these preferences as needing to be written, e.g. after migrating them from an old file.
+     */
+    void markChanged() {
+        changed = true;
+    }
+
+    /**
+     * @return Whether these preferences have changed since the last call
+     */
+    boolean takeChanged() {
+        boolean result = changed;
+        changed = false;
+        return result;
+    }
+
+    /**
+     * @return The preferences packed into the single byte that is stored in the preferences file
+     */
+    byte toFlags() {
+        byte flags = 0;
+        if(seeThroughPortal) {flags |= SEE_THROUGH_PORTAL_FLAG;}
+        return flags;
+    }
+}
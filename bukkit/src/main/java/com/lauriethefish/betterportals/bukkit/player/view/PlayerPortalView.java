@@ -3,21 +3,26 @@ package com.lauriethefish.betterportals.bukkit.player.view;
 import com.google.inject.Inject;
 import com.google.inject.assistedinject.Assisted;
 import com.lauriethefish.betterportals.bukkit.config.MiscConfig;
-import com.lauriethefish.betterportals.bukkit.config.RenderConfig;
 import com.lauriethefish.betterportals.bukkit.player.view.block.IPlayerBlockView;
 import com.lauriethefish.betterportals.bukkit.player.view.entity.IPlayerEntityView;
 import com.lauriethefish.betterportals.bukkit.portal.IPortal;
+import com.lauriethefish.betterportals.bukkit.portal.RenderQualityController;
 import com.lauriethefish.betterportals.bukkit.util.StringUtil;
+import com.lauriethefish.betterportals.bukkit.util.performance.TickPhase;
+import com.lauriethefish.betterportals.bukkit.util.performance.TickPhaseEvent;
 import com.lauriethefish.betterportals.shared.logging.Logger;
 import org.bukkit.Bukkit;
 import org.bukkit.Location;
 import org.bukkit.entity.Player;
 
+import java.util.logging.Level;
+
 // Represents each portal that a player is looking through
 public class PlayerPortalView implements IPlayerPortalView  {
     private final Player player;
+    private final IPortal viewedPortal;
     private final Logger logger;
-    private final RenderConfig renderConfig;
+    private final RenderQualityController qualityController;
 
     private final IPlayerBlockView blockView;
     private final IPlayerEntityView entityView;
@@ -26,10 +31,11 @@ public class PlayerPortalView implements IPlayerPortalView  {
     private int ticksSinceStarted = 0;
 
     @Inject
-    public PlayerPortalView(@Assisted Player player, @Assisted IPortal viewedPortal, ViewFactory viewFactory, Logger logger, RenderConfig renderConfig, MiscConfig miscConfig) {
+    public PlayerPortalView(@Assisted Player player, @Assisted IPortal viewedPortal, ViewFactory viewFactory, Logger logger, RenderQualityController qualityController, MiscConfig miscConfig) {
         this.player = player;
+        this.viewedPortal = viewedPortal;
         this.logger = logger;
-        this.renderConfig = renderConfig;
+        this.qualityController = qualityController;
 
         this.blockView = viewFactory.createBlockView(player, viewedPortal);
         if(!miscConfig.isEntitySupportEnabled()) {
@@ -43,7 +49,9 @@ public class PlayerPortalView implements IPlayerPortalView  {
         if(previousPosition == null) {return false;} // This condition shouldn't happen unless a player gets near a portal really quickly before going away, but to be on the safe side
         Location currentPosition = player.getLocation();
 
-        logger.finer("Checking deactivation type of portal view, previous pos: %s, current pos: %s", StringUtil.locationToString(previousPosition), StringUtil.locationToString(currentPosition));
+        if(logger.isLoggable(Level.FINER)) {
+            logger.finer("Checking deactivation type of portal view, previous pos: %s, current pos: %s", StringUtil.locationToString(previousPosition), StringUtil.locationToString(currentPosition));
+        }
         if(previousPosition.getWorld() != currentPosition.getWorld()) {return false;} // No need to bother if the player has switched worlds
         // Roughly measure whether or not the player moved so far that they're out of render distance
         // This is needed to not send the block reset packets if the player moved a long distance away
@@ -53,11 +61,12 @@ public class PlayerPortalView implements IPlayerPortalView  {
 
     @Override
     public void update() {
+        TickPhaseEvent event = TickPhaseEvent.begin(TickPhase.VIEW_UPDATE);
         // Only compare the coordinates, not the looking direction
         boolean moved = previousPosition == null || !player.getLocation().toVector().equals(previousPosition.toVector());
 
         // We refresh the block view every N ticks so that if the client doesn't change some of the blocks, they will be resent
-        if(ticksSinceStarted % renderConfig.getBlockStateRefreshInterval() == 0) {
+        if(ticksSinceStarted % qualityController.getBlockStateRefreshInterval() == 0) {
             blockView.update(true);
         }   else if(moved) { // Otherwise, an update only happens when we move to save on performance
             blockView.update(false);
@@ -70,6 +79,7 @@ public class PlayerPortalView implements IPlayerPortalView  {
 
         ticksSinceStarted++;
         previousPosition = player.getLocation();
+        event.finish(viewedPortal.getId(), player.getName(), 0);
     }
 
     @Override
@@ -5,6 +5,7 @@ import com.comphenix.protocol.events.PacketContainer;
 import com.comphenix.protocol.wrappers.WrappedBlockData;
 import com.google.inject.Inject;
 import com.google.inject.assistedinject.Assisted;
+import com.lauriethefish.betterportals.api.IntVector;
 import com.lauriethefish.betterportals.api.PortalDirection;
 import com.lauriethefish.betterportals.bukkit.block.IBlockMap;
 import com.lauriethefish.betterportals.bukkit.block.IViewableBlockInfo;
@@ -12,9 +13,15 @@ import com.lauriethefish.betterportals.bukkit.block.IMultiBlockChangeManager;
 import com.lauriethefish.betterportals.bukkit.config.RenderConfig;
 import com.lauriethefish.betterportals.bukkit.math.PlaneIntersectionChecker;
 import com.lauriethefish.betterportals.bukkit.portal.IPortal;
+import com.lauriethefish.betterportals.bukkit.portal.RenderBudget;
+import com.lauriethefish.betterportals.bukkit.portal.RenderQualityController;
 import com.lauriethefish.betterportals.bukkit.tasks.BlockUpdateFinisher;
 import com.lauriethefish.betterportals.bukkit.util.HeightUtil;
 import com.lauriethefish.betterportals.bukkit.util.MaterialUtil;
+import com.lauriethefish.betterportals.bukkit.util.performance.Operation;
+import com.lauriethefish.betterportals.bukkit.util.performance.OperationRegistry;
+import com.lauriethefish.betterportals.bukkit.util.performance.TickPhase;
+import com.lauriethefish.betterportals.bukkit.util.performance.TickPhaseEvent;
 import com.lauriethefish.betterportals.shared.logging.Logger;
 import org.bukkit.Material;
 import org.bukkit.World;
@@ -37,6 +44,13 @@ public class PlayerBlockView implements IPlayerBlockView   {
     private final Logger logger;
     private final BlockUpdateFinisher updateFinisher;
     private final boolean shouldHidePortalBlocks;
+    private final OperationRegistry operationRegistry;
+    private final Operation finishUpdateOperation;
+    private final RenderBudget renderBudget;
+    private final RenderQualityController qualityController;
+    private final double reducedRenderRadius;
+    private final int fullRadiusXZ;
+    private final int fullRadiusY;
 
     private final int minChunkY;
     private final int maxChunkY;
@@ -50,7 +64,8 @@ public class PlayerBlockView implements IPlayerBlockView   {
     @Inject
     public PlayerBlockView(@Assisted Player player, @Assisted IPortal portal,
                            IMultiBlockChangeManager.Factory multiBlockChangeManagerFactory, IPlayerBlockStates.Factory blockStatesFactory,
-                           Logger logger, BlockUpdateFinisher updateFinisher, RenderConfig renderConfig) {
+                           Logger logger, BlockUpdateFinisher updateFinisher, RenderConfig renderConfig, OperationRegistry operationRegistry,
+                           RenderBudget renderBudget, RenderQualityController qualityController) {
         this.player = player;
         this.portal = portal;
         this.multiBlockChangeManagerFactory = multiBlockChangeManagerFactory;
@@ -58,6 +73,13 @@ public class PlayerBlockView implements IPlayerBlockView   {
         this.logger = logger;
         this.updateFinisher = updateFinisher;
         this.shouldHidePortalBlocks = portal.isNetherPortal() && renderConfig.isPortalBlocksHidden();
+        this.operationRegistry = operationRegistry;
+        this.finishUpdateOperation = operationRegistry.getOperation(OperationRegistry.FINISH_UPDATE);
+        this.renderBudget = renderBudget;
+        this.qualityController = qualityController;
+        this.reducedRenderRadius = renderConfig.getReducedRenderRadius();
+        this.fullRadiusXZ = (int) renderConfig.getMaxXZ();
+        this.fullRadiusY = (int) renderConfig.getMaxY();
 
         World viewWorld = player.getWorld();
         minChunkY = HeightUtil.getMinHeight(viewWorld) >> 4;
@@ -118,10 +140,15 @@ public class PlayerBlockView implements IPlayerBlockView   {
         if(refresh) {
             logger.finest("Refreshing already sent blocks!");
         }
+        long startTime = System.nanoTime();
+        long startBytes = operationRegistry.getAllocationProfiler().begin();
+        TickPhaseEvent event = TickPhaseEvent.begin(TickPhase.ASYNC_FINISH);
+        int viewableCount = 0;
+        IMultiBlockChangeManager multiBlockChangeManager = null;
         statesLock.lock();
 
         try {
-            IMultiBlockChangeManager multiBlockChangeManager = multiBlockChangeManagerFactory.create(player, minChunkY, maxChunkY);
+            multiBlockChangeManager = multiBlockChangeManagerFactory.create(player, minChunkY, maxChunkY);
             List<PacketContainer> queuedTileEntityUpdates = new ArrayList<>();
 
             PlaneIntersectionChecker intersectionChecker = portal.getTransformations().createIntersectionChecker(playerPosition);
@@ -131,11 +158,23 @@ public class PlayerBlockView implements IPlayerBlockView   {
             if(viewableStates == null) {
                 return;
             }
+            viewableCount = viewableStates.size();
+
+            // Blocks outside the current effect size are treated as not visible, which resets any that were already sent.
+            // The block map may have been filled with a larger effect size, either before the quality was lowered, or before the portal had a reduced radius
+            int radiusXZ = qualityController.getEffectSizeXZ();
+            int radiusY = qualityController.getEffectSizeY();
+            if(renderBudget.getDegradation(portal.getId()).hasReducedRadius()) {
+                radiusXZ = (int) (radiusXZ * reducedRenderRadius);
+                radiusY = (int) (radiusY * reducedRenderRadius);
+            }
+            boolean limitRadius = radiusXZ < fullRadiusXZ || radiusY < fullRadiusY;
+            IntVector portalPosition = new IntVector(portal.getOriginPos().getVector());
 
             for (IViewableBlockInfo blockInfo : viewableStates) {
                 Vector position = blockInfo.getOriginPos().getCenterPos();
 
-                boolean visible = intersectionChecker.checkIfIntersects(position);
+                boolean visible = (!limitRadius || isWithinRadius(blockInfo.getOriginPos(), portalPosition, radiusXZ, radiusY)) && intersectionChecker.checkIfIntersects(position);
 
                 // If visible/non-visible, change to the new state
                 // However, don't bother resending the packet again if the block has already been changed
@@ -164,6 +203,7 @@ public class PlayerBlockView implements IPlayerBlockView   {
             }
 
             // Show the player the changed states
+            TickPhaseEvent sendEvent = TickPhaseEvent.begin(TickPhase.PACKET_SEND);
             multiBlockChangeManager.sendChanges();
             try {
                 for (PacketContainer packet : queuedTileEntityUpdates) {
@@ -172,14 +212,33 @@ public class PlayerBlockView implements IPlayerBlockView   {
             } catch (InvocationTargetException ex) {
                 throw new RuntimeException(ex);
             }
+            sendEvent.finish(portal.getId(), player.getName(), multiBlockChangeManager.getPacketsSent() + queuedTileEntityUpdates.size());
 
             // Removed due to being unreasonably frequent
             //logger.finest("Performed viewable block process. Time taken: %fms", timer.getTimeTakenMillis());
         }   finally     {
             statesLock.unlock();
+
+            long timeTaken = System.nanoTime() - startTime;
+            finishUpdateOperation.record(timeTaken);
+            operationRegistry.recordPortal(portal.getId(), timeTaken);
+            operationRegistry.recordPlayer(player.getUniqueId(), timeTaken);
+            if(multiBlockChangeManager == null) {
+                operationRegistry.getPortalCost(portal.getId()).recordVisibility(timeTaken, 0, 0);
+            }   else    {
+                operationRegistry.getPortalCost(portal.getId()).recordVisibility(timeTaken, multiBlockChangeManager.getPacketsSent(), multiBlockChangeManager.getBytesSent());
+            }
+            operationRegistry.getAllocationProfiler().record(OperationRegistry.FINISH_UPDATE, portal.getId(), startBytes);
+            event.finish(portal.getId(), player.getName(), viewableCount);
         }
     }
 
+    private boolean isWithinRadius(IntVector blockPosition, IntVector portalPosition, int radiusXZ, int radiusY) {
+        return Math.abs(blockPosition.getX() - portalPosition.getX()) <= radiusXZ
+                && Math.abs(blockPosition.getY() - portalPosition.getY()) <= radiusY
+                && Math.abs(blockPosition.getZ() - portalPosition.getZ()) <= radiusXZ;
+    }
+
     // Gets the right rotation of portal block depending on the portal's direction
     private WrappedBlockData getPortalBlockData() {
         PortalDirection portalDirection = portal.getOriginPos().getDirection();
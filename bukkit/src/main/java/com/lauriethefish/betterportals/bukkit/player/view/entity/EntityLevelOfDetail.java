@@ -0,0 +1,59 @@
+package com.lauriethefish.betterportals.bukkit.player.view.entity;
+
+/**
+ * Chooses how often a replicated entity is updated, based on how large it appears through a portal and how much of the packet budget is left.
+ * Kept separate from {@link PlayerEntityView} so that the tiers can be tested without a server.
+ */
+public class EntityLevelOfDetail {
+    public static final int NOT_REPLICATED = -1;
+
+    private final double fullRateDistance;
+    private final double reducedRateDistance;
+    private final int reducedRateInterval;
+    private final double minAngularSize;
+
+    public EntityLevelOfDetail(double fullRateDistance, double reducedRateDistance, int reducedRateInterval, double minAngularSize) {
+        this.fullRateDistance = fullRateDistance;
+        this.reducedRateDistance = reducedRateDistance;
+        this.reducedRateInterval = reducedRateInterval;
+        this.minAngularSize = minAngularSize;
+    }
+
+    /**
+     * @param updateInterval Ticks between updates
+     * @return Rough number of packets per second sent to update an entity at this interval
+     */
+    public static double getPacketsPerSecond(int updateInterval) {
+        return 20.0 / updateInterval;
+    }
+
+    /**
+     * Finds how often an entity should be updated based on how large it appears through the portal.
+     * @param size Largest dimension of the entity
+     * @param distance Distance from the player's eyes to where the entity appears at the portal origin
+     * @return The update interval in ticks, or {@link #NOT_REPLICATED} if the entity is too far away or too small to be shown.
+     */
+    public int findUpdateInterval(double size, double distance) {
+        if(distance >= reducedRateDistance) {return NOT_REPLICATED;}
+
+        // Small angle approximation, this doesn't need to be exact
+        double angularSize = size / distance;
+        if(angularSize < minAngularSize) {return NOT_REPLICATED;}
+
+        return distance < fullRateDistance ? 1 : reducedRateInterval;
+    }
+
+    /**
+     * Fits an entity's update interval into the remaining packet budget.
+     * Entities fall back to the reduced rate if there isn't enough budget left for updating them every tick.
+     * @param preferredInterval Interval found by {@link #findUpdateInterval(double, double)}
+     * @param availablePacketsPerSecond Packets per second left in the budget
+     * @return The interval to use, or {@link #NOT_REPLICATED} if the entity doesn't fit in the budget at all
+     */
+    public int fitUpdateInterval(int preferredInterval, double availablePacketsPerSecond) {
+        if(getPacketsPerSecond(preferredInterval) <= availablePacketsPerSecond) {return preferredInterval;}
+
+        int reducedInterval = Math.max(preferredInterval, reducedRateInterval);
+        return getPacketsPerSecond(reducedInterval) <= availablePacketsPerSecond ? reducedInterval : NOT_REPLICATED;
+    }
+}
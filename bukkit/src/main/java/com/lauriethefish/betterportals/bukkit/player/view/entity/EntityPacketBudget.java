@@ -0,0 +1,58 @@
+package com.lauriethefish.betterportals.bukkit.player.view.entity;
+
+import com.google.inject.Singleton;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Shares each player's entity packet budget between all of the portals that they are looking through, so that looking through more portals doesn't raise the limit.
+ * Each {@link PlayerEntityView} reserves the packet rate of the entities it replicates, and releases it before choosing them again.
+ * This is only used on the main thread.
+ */
+@Singleton
+public class EntityPacketBudget {
+    private final Map<UUID, Double> reservedRates = new HashMap<>();
+
+    /**
+     * @param player The player to check
+     * @param maxPacketsPerSecond Limit of packets per second for each player, or -1 for no limit
+     * @return Packets per second that haven't been reserved by any of the player's views
+     */
+    public double getAvailable(@NotNull UUID player, int maxPacketsPerSecond) {
+        if(maxPacketsPerSecond == -1) {return Double.POSITIVE_INFINITY;}
+
+        return Math.max(0.0, maxPacketsPerSecond - reservedRates.getOrDefault(player, 0.0));
+    }
+
+    /**
+     * @param player The player to reserve for
+     * @param packetsPerSecond Packet rate to add to the player's reserved rate
+     */
+    public void reserve(@NotNull UUID player, double packetsPerSecond) {
+        if(packetsPerSecond == 0.0) {return;}
+
+        reservedRates.merge(player, packetsPerSecond, Double::sum);
+    }
+
+    /**
+     * @param player The player to release for
+     * @param packetsPerSecond Packet rate previously reserved with {@link #reserve(UUID, double)}
+     */
+    public void release(@NotNull UUID player, double packetsPerSecond) {
+        if(packetsPerSecond == 0.0) {return;}
+
+        // Small amounts left over from rounding are removed along with the entry
+        reservedRates.computeIfPresent(player, (key, reserved) -> reserved - packetsPerSecond < 1e-6 ? null : reserved - packetsPerSecond);
+    }
+
+    /**
+     * Removes the reserved rate of a player who has left.
+     * @param player The player to remove
+     */
+    public void removePlayer(@NotNull UUID player) {
+        reservedRates.remove(player);
+    }
+}
@@ -0,0 +1,284 @@
+package com.lauriethefish.betterportals.bukkit.player.view.entity;
+
+import com.lauriethefish.betterportals.bukkit.entity.faking.EntityInfo;
+import org.bukkit.Location;
+import org.bukkit.entity.Entity;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Arrays;
+
+/**
+ * Stores the state of each entity around a portal for a {@link PlayerEntityView}, keyed by entity ID.
+ * Uses open addressing with parallel primitive arrays, so that checking and updating the entities every tick doesn't create any garbage.
+ * Each entry also remembers the position that it was last tested at, so that entities are only re-tested after moving.
+ * The {@link EntityInfo} used to hide or show an entity is also kept with its entry, so that it is only created once.
+ */
+public class EntityStateTable {
+    private static final int initialCapacity = 16;
+
+    private int[] ids;
+    private Entity[] entities; // Null if the slot is empty
+    private int[] states;
+    private int[] updateIntervals;
+    private double[] positions; // X, Y and Z for each slot
+    private double[] distances;
+    private int[] lastSeenTicks;
+    private EntityInfo[] infos; // Created when first needed
+
+    // Reused by each call to sortByDistance
+    private long[] sortKeys = new long[initialCapacity];
+    private int[] sortedSlots = new int[initialCapacity];
+
+    private int size = 0;
+    private int seenThisTick = 0;
+    private int currentTick = 0;
+
+    public EntityStateTable() {
+        allocate(initialCapacity);
+    }
+
+    private void allocate(int capacity) {
+        ids = new int[capacity];
+        entities = new Entity[capacity];
+        states = new int[capacity];
+        updateIntervals = new int[capacity];
+        positions = new double[capacity * 3];
+        distances = new double[capacity];
+        lastSeenTicks = new int[capacity];
+        infos = new EntityInfo[capacity];
+    }
+
+    private int findSlot(int id) {
+        int mask = ids.length - 1;
+        int slot = mix(id) & mask;
+        while(entities[slot] != null && ids[slot] != id) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    // Entity IDs are sequential, so we spread them out to avoid long probe chains
+    private static int mix(int id) {
+        int hash = id * 0x9E3779B9;
+        return hash ^ (hash >>> 16);
+    }
+
+    /**
+     * Starts a new tick, which is used to find the entities that weren't seen during it with {@link #removeUnseen(EntryConsumer)}.
+     */
+    public void startTick() {
+        currentTick++;
+        seenThisTick = 0;
+    }
+
+    /**
+     * Finds the slot of <code>entity</code>, adding a new empty entry if there is none, and marks it as seen this tick.
+     * @param entity The entity to find
+     * @return The slot of the entity's entry
+     */
+    public int markSeen(Entity entity) {
+        int slot = findSlot(entity.getEntityId());
+        if(entities[slot] == null) {
+            // Keep the load factor at 0.5 or below
+            if((size + 1) * 2 > ids.length) {
+                rehash(ids.length * 2, false);
+                slot = findSlot(entity.getEntityId());
+            }
+
+            ids[slot] = entity.getEntityId();
+            entities[slot] = entity;
+            states[slot] = 0;
+            updateIntervals[slot] = 0;
+            positions[slot * 3] = Double.NaN; // Makes sure the entity counts as moved on its first test
+            lastSeenTicks[slot] = currentTick - 1;
+            infos[slot] = null;
+            size++;
+        }
+
+        if(lastSeenTicks[slot] != currentTick) {
+            lastSeenTicks[slot] = currentTick;
+            seenThisTick++;
+        }
+        return slot;
+    }
+
+    /**
+     * Checks if the entity in <code>slot</code> moved since {@link #setPosition(int, Location)} was last called for it.
+     * @param slot The slot to check
+     * @param location The current location of the entity
+     * @return Whether the entity moved, or has never been tested
+     */
+    public boolean hasMoved(int slot, Location location) {
+        int i = slot * 3;
+        return positions[i] != location.getX() || positions[i + 1] != location.getY() || positions[i + 2] != location.getZ();
+    }
+
+    public void setPosition(int slot, Location location) {
+        int i = slot * 3;
+        positions[i] = location.getX();
+        positions[i + 1] = location.getY();
+        positions[i + 2] = location.getZ();
+    }
+
+    public boolean hasState(int slot, int state) {
+        return (states[slot] & state) != 0;
+    }
+
+    public void setState(int slot, int state, boolean value) {
+        if(value) {
+            states[slot] |= state;
+        }   else    {
+            states[slot] &= ~state;
+        }
+    }
+
+    public int getUpdateInterval(int slot) {
+        return updateIntervals[slot];
+    }
+
+    public void setUpdateInterval(int slot, int updateInterval) {
+        updateIntervals[slot] = updateInterval;
+    }
+
+    public double getDistance(int slot) {
+        return distances[slot];
+    }
+
+    public void setDistance(int slot, double distance) {
+        distances[slot] = distance;
+    }
+
+    /**
+     * @return The number of slots, used for iterating over the table with {@link #getEntity(int)}
+     */
+    public int getCapacity() {
+        return ids.length;
+    }
+
+    /**
+     * @param slot The slot to get the entity of
+     * @return The entity in <code>slot</code>, or null if the slot is empty
+     */
+    public @Nullable Entity getEntity(int slot) {
+        return entities[slot];
+    }
+
+    /**
+     * @param slot The slot to get the info of, which must not be empty
+     * @return The info used to hide or show the entity in <code>slot</code>, which is the same instance until the entity is removed
+     */
+    public @NotNull EntityInfo getInfo(int slot) {
+        EntityInfo info = infos[slot];
+        if(info == null) {
+            info = new EntityInfo(entities[slot]);
+            infos[slot] = info;
+        }
+        return info;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Finds the slots of the entries that have all of the bits in <code>requiredState</code> and none of the bits in <code>excludedState</code>, sorted by distance with the closest first.
+     * The slots can then be read with {@link #getSortedSlot(int)}.
+     * @param requiredState State bits that must all be set
+     * @param excludedState State bits that must all be unset
+     * @return The number of slots found
+     */
+    public int sortByDistance(int requiredState, int excludedState) {
+        if(sortKeys.length < ids.length) {
+            sortKeys = new long[ids.length];
+            sortedSlots = new int[ids.length];
+        }
+
+        int count = 0;
+        for(int slot = 0; slot < ids.length; slot++) {
+            if(entities[slot] == null || (states[slot] & requiredState) != requiredState || (states[slot] & excludedState) != 0) {continue;}
+
+            // The bits of a positive float sort in the same order as its value, so the distance and slot can be sorted together without boxing
+            sortKeys[count] = (long) Float.floatToIntBits((float) distances[slot]) << 32 | slot;
+            count++;
+        }
+
+        Arrays.sort(sortKeys, 0, count);
+        for(int i = 0; i < count; i++) {
+            sortedSlots[i] = (int) sortKeys[i];
+        }
+        return count;
+    }
+
+    /**
+     * @param index Index in the slots found by the last call to {@link #sortByDistance(int, int)}
+     * @return The slot at <code>index</code>
+     */
+    public int getSortedSlot(int index) {
+        return sortedSlots[index];
+    }
+
+    /**
+     * Removes the entries of all entities that weren't marked as seen during the current tick.
+     * @param onRemove Called with each entry before it is removed
+     * @return Whether any entries were removed
+     */
+    public boolean removeUnseen(EntryConsumer onRemove) {
+        if(seenThisTick == size) {return false;}
+
+        for(int slot = 0; slot < ids.length; slot++) {
+            if(entities[slot] != null && lastSeenTicks[slot] != currentTick) {
+                onRemove.accept(entities[slot], slot);
+            }
+        }
+
+        rehash(ids.length, true);
+        return true;
+    }
+
+    /**
+     * Calls <code>consumer</code> for every entry in the table.
+     * @param consumer Called with each entity and its slot
+     */
+    public void forEach(EntryConsumer consumer) {
+        for(int slot = 0; slot < ids.length; slot++) {
+            if(entities[slot] != null) {
+                consumer.accept(entities[slot], slot);
+            }
+        }
+    }
+
+    private void rehash(int newCapacity, boolean onlySeen) {
+        int[] oldIds = ids;
+        Entity[] oldEntities = entities;
+        int[] oldStates = states;
+        int[] oldUpdateIntervals = updateIntervals;
+        double[] oldPositions = positions;
+        double[] oldDistances = distances;
+        int[] oldLastSeenTicks = lastSeenTicks;
+        EntityInfo[] oldInfos = infos;
+
+        allocate(newCapacity);
+        size = 0;
+        for(int oldSlot = 0; oldSlot < oldIds.length; oldSlot++) {
+            if(oldEntities[oldSlot] == null) {continue;}
+            if(onlySeen && oldLastSeenTicks[oldSlot] != currentTick) {continue;}
+
+            int slot = findSlot(oldIds[oldSlot]);
+            ids[slot] = oldIds[oldSlot];
+            entities[slot] = oldEntities[oldSlot];
+            states[slot] = oldStates[oldSlot];
+            updateIntervals[slot] = oldUpdateIntervals[oldSlot];
+            System.arraycopy(oldPositions, oldSlot * 3, positions, slot * 3, 3);
+            distances[slot] = oldDistances[oldSlot];
+            lastSeenTicks[slot] = oldLastSeenTicks[oldSlot];
+            infos[slot] = oldInfos[oldSlot];
+            size++;
+        }
+    }
+
+    @FunctionalInterface
+    public interface EntryConsumer {
+        void accept(Entity entity, int slot);
+    }
+}
@@ -2,9 +2,10 @@ package com.lauriethefish.betterportals.bukkit.player.view.entity;
 
 import com.google.inject.Inject;
 import com.google.inject.assistedinject.Assisted;
-import com.lauriethefish.betterportals.bukkit.entity.faking.EntityInfo;
+import com.lauriethefish.betterportals.bukkit.config.RenderConfig;
 import com.lauriethefish.betterportals.bukkit.entity.faking.EntityTrackingManager;
 import com.lauriethefish.betterportals.bukkit.entity.faking.IEntityPacketManipulator;
+import com.lauriethefish.betterportals.bukkit.entity.faking.IEntityTracker;
 import com.lauriethefish.betterportals.bukkit.math.PlaneIntersectionChecker;
 import com.lauriethefish.betterportals.bukkit.portal.IPortal;
 import com.lauriethefish.betterportals.shared.logging.Logger;
@@ -12,98 +13,209 @@ import org.bukkit.Location;
 import org.bukkit.entity.Entity;
 import org.bukkit.entity.Player;
 import org.bukkit.metadata.MetadataValue;
+import org.bukkit.util.Vector;
 
-import java.util.HashMap;
-import java.util.HashSet;
-import java.util.Map;
-import java.util.Set;
+import java.util.*;
 
+/**
+ * Hides the entities in front of the portal, and replicates the entities visible through it for a player.
+ * Entities are only re-tested when they or the player have moved since the last tick, and their state is kept in an {@link EntityStateTable} so that no collections are rebuilt every tick.
+ */
 public class PlayerEntityView implements IPlayerEntityView  {
+    // State bits stored in the entity tables
+    private static final int hiddenState = 1;
+    private static final int inViewState = 1 << 1; // Visible through the portal and large enough to be replicated
+    private static final int fullRateState = 1 << 2;
+    private static final int vanishedState = 1 << 3;
+    private static final int replicatedState = 1 << 4;
+    private static final int selectedState = 1 << 5; // Used while applying the replication budget
+
     private final Logger logger;
     private final IPortal portal;
     private final Player player;
     private final IEntityPacketManipulator packetManipulator;
     private final EntityTrackingManager trackingManager;
-    private final Map<Entity, EntityInfo> hiddenEntities = new HashMap<>();
-    private final Set<Entity> replicatedEntities = new HashSet<>();
+    private final RenderConfig renderConfig;
+    private final EntityPacketBudget packetBudget;
+    private final EntityLevelOfDetail levelOfDetail;
+
+    private final EntityStateTable originEntities = new EntityStateTable();
+    private final EntityStateTable destinationEntities = new EntityStateTable();
+
+    private Vector lastEyePosition = null;
+    private PlaneIntersectionChecker intersectionChecker = null;
+
+    // Share of the player's packet budget taken by this view
+    private double reservedPacketsPerSecond = 0.0;
 
     @Inject
-    public PlayerEntityView(@Assisted IPortal portal, @Assisted Player player, IEntityPacketManipulator packetManipulator, Logger logger, EntityTrackingManager trackingManager) {
+    public PlayerEntityView(@Assisted IPortal portal, @Assisted Player player, IEntityPacketManipulator packetManipulator, Logger logger, EntityTrackingManager trackingManager, RenderConfig renderConfig, EntityPacketBudget packetBudget) {
         this.portal = portal;
         this.player = player;
         this.packetManipulator = packetManipulator;
         this.logger = logger;
         this.trackingManager = trackingManager;
+        this.renderConfig = renderConfig;
+        this.packetBudget = packetBudget;
+        this.levelOfDetail = new EntityLevelOfDetail(renderConfig.getEntityFullRateDistance(), renderConfig.getEntityReducedRateDistance(), renderConfig.getEntityReducedRateInterval(), renderConfig.getEntityMinAngularSize());
     }
 
     @Override
     public void update() {
-        updateHiddenEntities();
+        // The intersection checker only depends on the eye position, so it only needs to be recreated if the player moves
+        Vector eyePosition = player.getEyeLocation().toVector();
+        boolean viewerMoved = !eyePosition.equals(lastEyePosition);
+        if(viewerMoved) {
+            lastEyePosition = eyePosition;
+            intersectionChecker = portal.getTransformations().createIntersectionChecker(eyePosition);
+        }
+
+        updateHiddenEntities(viewerMoved);
         if(!portal.isCrossServer()) {
-            updateReplicatedEntities();
+            updateReplicatedEntities(viewerMoved);
         }
     }
 
-    private void updateHiddenEntities() {
-        PlaneIntersectionChecker intersectionChecker = portal.getTransformations().createIntersectionChecker(player.getEyeLocation().toVector());
-
-        Set<Entity> nowHidden = new HashSet<>();
-
+    private void updateHiddenEntities(boolean viewerMoved) {
+        originEntities.startTick();
         for(Entity entity : portal.getEntityList().getOriginEntities()) {
             if(entity == player) {continue;}
 
+            int slot = originEntities.markSeen(entity);
+            Location location = entity.getLocation();
+            if(!viewerMoved && !originEntities.hasMoved(slot, location)) {continue;}
+            originEntities.setPosition(slot, location);
+
             // If the line from the player's position to the entity intersects the portal, then hide it since it'll spoil the effect by appearing in front of the blocks
-            boolean shouldBeHidden = intersectionChecker.checkIfIntersects(entity.getLocation().toVector());
-            if(!shouldBeHidden) {continue;}
+            boolean shouldBeHidden = intersectionChecker.checkIfIntersects(location.toVector());
+            if(shouldBeHidden == originEntities.hasState(slot, hiddenState)) {continue;}
 
-            nowHidden.add(entity);
-            if(!hiddenEntities.containsKey(entity)) {
-                hide(entity);
+            originEntities.setState(slot, hiddenState, shouldBeHidden);
+            if(shouldBeHidden) {
+                packetManipulator.hideEntity(originEntities.getInfo(slot), player);
+            }   else if(entity.isValid()) {
+                packetManipulator.showEntity(originEntities.getInfo(slot), player);
             }
         }
 
-        hiddenEntities.entrySet().removeIf(entry -> {
-            boolean isHidden = nowHidden.contains(entry.getKey());
-            // Reshow entities that are no longer hidden and that still exist
-            if(!isHidden && entry.getKey().isValid()) {
-                packetManipulator.showEntity(entry.getValue(), player);
+        // Reshow entities that have left the area around the portal, if they still exist
+        originEntities.removeUnseen((entity, slot) -> {
+            if(originEntities.hasState(slot, hiddenState) && entity.isValid()) {
+                packetManipulator.showEntity(originEntities.getInfo(slot), player);
             }
-            return !isHidden;
         });
     }
 
-    private void updateReplicatedEntities() {
-        PlaneIntersectionChecker intersectionChecker = portal.getTransformations().createIntersectionChecker(player.getEyeLocation().toVector());
+    private void updateReplicatedEntities(boolean viewerMoved) {
+        // If there's a budget, a change in distance can change which entities are replicated, otherwise only entering or leaving the view can
+        boolean isLimited = renderConfig.getMaxReplicatedEntities() != -1 || renderConfig.getMaxEntityPacketsPerSecond() != -1;
+        boolean changed = false;
 
-        // Start tracking newly replicated entities
-        Set<Entity> nowReplicated = new HashSet<>();
+        destinationEntities.startTick();
         for(Entity entity : portal.getEntityList().getDestinationEntities()) {
-            if(isVanished(entity)) {
-                continue;
+            int slot = destinationEntities.markSeen(entity);
+
+            // Players can vanish without moving, so this is checked every tick
+            boolean isVanished = isVanished(entity);
+            if(isVanished != destinationEntities.hasState(slot, vanishedState)) {
+                destinationEntities.setState(slot, vanishedState, isVanished);
+                changed = true;
             }
 
-            Location originPos = portal.getTransformations().moveToOrigin(entity.getLocation());
+            Location location = entity.getLocation();
+            if(!viewerMoved && !destinationEntities.hasMoved(slot, location)) {continue;}
+            destinationEntities.setPosition(slot, location);
 
-            boolean shouldBeReplicated = intersectionChecker.checkIfIntersects(originPos.toVector());
-            if(!shouldBeReplicated) {continue;}
-            nowReplicated.add(entity);
+            // Find if the entity is visible through the portal, and how far away it appears to be
+            Vector originPos = portal.getTransformations().getDestinationToOrigin().transform(location.toVector());
+            int updateInterval = EntityLevelOfDetail.NOT_REPLICATED;
+            if(intersectionChecker.checkIfIntersects(originPos)) {
+                double distance = originPos.distance(lastEyePosition);
+                destinationEntities.setDistance(slot, distance);
+                updateInterval = levelOfDetail.findUpdateInterval(Math.max(entity.getWidth(), entity.getHeight()), distance);
+            }
 
-            // Only set it to be tracking if it wasn't previously
-            if(!replicatedEntities.contains(entity)) {
-                replicatedEntities.add(entity);
-                trackingManager.setTracking(entity, portal, player);
+            boolean isInView = updateInterval != EntityLevelOfDetail.NOT_REPLICATED;
+            boolean isFullRate = updateInterval == 1;
+            if(isLimited || isInView != destinationEntities.hasState(slot, inViewState) || isFullRate != destinationEntities.hasState(slot, fullRateState)) {
+                changed = true;
             }
+            destinationEntities.setState(slot, inViewState, isInView);
+            destinationEntities.setState(slot, fullRateState, isFullRate);
         }
 
-        // Stop tracking entities that are no longer visible through the portal
-        replicatedEntities.removeIf(entity -> {
-            boolean isReplicated = nowReplicated.contains(entity);
-
-            if(!isReplicated) {
+        // Stop tracking entities that have left the area around the portal
+        changed |= destinationEntities.removeUnseen((entity, slot) -> {
+            if(destinationEntities.hasState(slot, replicatedState)) {
                 trackingManager.setNoLongerTracking(entity, portal, player, true);
             }
-            return !isReplicated;
         });
+
+        if(changed) {
+            applyReplicationBudget();
+        }
+    }
+
+    /**
+     * Chooses which of the entities in view are replicated, and how often they are updated, based on the budget in the config.
+     * The packet budget is shared with the player's other portal views using the {@link EntityPacketBudget}.
+     */
+    private void applyReplicationBudget() {
+        // Plain loops are used here instead of forEach, since this runs whenever an entity moves while there is a budget
+        int capacity = destinationEntities.getCapacity();
+        for(int slot = 0; slot < capacity; slot++) {
+            destinationEntities.setState(slot, selectedState, false);
+        }
+
+        // Closer entities get priority if the budget runs out
+        int candidateCount = destinationEntities.sortByDistance(inViewState, vanishedState);
+
+        // This view's previous share is given back first, so that it can be chosen again with the rest of the player's budget
+        UUID playerId = player.getUniqueId();
+        packetBudget.release(playerId, reservedPacketsPerSecond);
+        double availablePacketsPerSecond = packetBudget.getAvailable(playerId, renderConfig.getMaxEntityPacketsPerSecond());
+
+        int replicatedCount = 0;
+        double packetsPerSecond = 0.0;
+        int maxEntities = renderConfig.getMaxReplicatedEntities();
+        for(int i = 0; i < candidateCount; i++) {
+            int slot = destinationEntities.getSortedSlot(i);
+            if(maxEntities != -1 && replicatedCount >= maxEntities) {break;}
+
+            int preferredInterval = destinationEntities.hasState(slot, fullRateState) ? 1 : renderConfig.getEntityReducedRateInterval();
+            int updateInterval = levelOfDetail.fitUpdateInterval(preferredInterval, availablePacketsPerSecond - packetsPerSecond);
+            if(updateInterval == EntityLevelOfDetail.NOT_REPLICATED) {continue;}
+            packetsPerSecond += EntityLevelOfDetail.getPacketsPerSecond(updateInterval);
+
+            replicatedCount++;
+            destinationEntities.setState(slot, selectedState, true);
+            Entity entity = Objects.requireNonNull(destinationEntities.getEntity(slot));
+
+            // Only set it to be tracking if it wasn't previously
+            boolean wasReplicated = destinationEntities.hasState(slot, replicatedState);
+            if(!wasReplicated) {
+                trackingManager.setTracking(entity, portal, player);
+                destinationEntities.setState(slot, replicatedState, true);
+            }
+
+            // Trackers start off updating every tick
+            int currentInterval = wasReplicated ? destinationEntities.getUpdateInterval(slot) : 1;
+            if(currentInterval != updateInterval) {
+                IEntityTracker tracker = Objects.requireNonNull(trackingManager.getTracker(portal, entity), "Tracker missing for replicated entity");
+                tracker.setUpdateInterval(player, updateInterval);
+            }
+            destinationEntities.setUpdateInterval(slot, updateInterval);
+        }
+        reservedPacketsPerSecond = packetsPerSecond;
+        packetBudget.reserve(playerId, packetsPerSecond);
+
+        // Stop tracking entities that are no longer visible through the portal, or that no longer fit in the budget
+        for(int slot = 0; slot < capacity; slot++) {
+            if(destinationEntities.hasState(slot, replicatedState) && !destinationEntities.hasState(slot, selectedState)) {
+                trackingManager.setNoLongerTracking(Objects.requireNonNull(destinationEntities.getEntity(slot)), portal, player, true);
+                destinationEntities.setState(slot, replicatedState, false);
+            }
+        }
     }
 
     /**
@@ -123,18 +235,23 @@ public class PlayerEntityView implements IPlayerEntityView  {
         return false;
     }
 
-    // Send packets to remove the entity from the player's view
-    private void hide(Entity entity) {
-        EntityInfo entityInfo = new EntityInfo(entity);
-        packetManipulator.hideEntity(entityInfo, player);
-        hiddenEntities.put(entity, entityInfo);
-    }
-
     @Override
     public void onDeactivate(boolean shouldResetEntities) {
         if(shouldResetEntities) {
-            hiddenEntities.forEach((entity, entityInfo) -> packetManipulator.showEntity(entityInfo, player));
+            originEntities.forEach((entity, slot) -> {
+                if(originEntities.hasState(slot, hiddenState)) {
+                    packetManipulator.showEntity(originEntities.getInfo(slot), player);
+                }
+            });
         }
-        replicatedEntities.forEach(entity -> trackingManager.setNoLongerTracking(entity, portal, player, shouldResetEntities));
+
+        destinationEntities.forEach((entity, slot) -> {
+            if(destinationEntities.hasState(slot, replicatedState)) {
+                trackingManager.setNoLongerTracking(entity, portal, player, shouldResetEntities);
+            }
+        });
+
+        packetBudget.release(player.getUniqueId(), reservedPacketsPerSecond);
+        reservedPacketsPerSecond = 0.0;
     }
 }
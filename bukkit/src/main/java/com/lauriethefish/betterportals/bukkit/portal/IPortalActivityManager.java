@@ -19,4 +19,20 @@ public interface IPortalActivityManager {
     void postUpdate();
 
     void resetActivity();
+
+    /**
+     * @param portal The portal to check
+     * @return Whether <code>portal</code> is currently activated
+     */
+    boolean isActive(IPortal portal);
+
+    /**
+     * @return The number of portals that were active last tick
+     */
+    int getActivePortalCount();
+
+    /**
+     * @return The number of portals that were viewed by at least one player last tick
+     */
+    int getViewedPortalCount();
 }
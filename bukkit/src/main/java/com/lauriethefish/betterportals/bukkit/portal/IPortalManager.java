@@ -1,11 +1,14 @@
 package com.lauriethefish.betterportals.bukkit.portal;
 
+import com.lauriethefish.betterportals.bukkit.portal.storage.PortalRecord;
 import org.bukkit.Location;
+import org.bukkit.World;
 import org.bukkit.entity.Player;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import java.util.Collection;
+import java.util.Set;
 import java.util.UUID;
 import java.util.function.Predicate;
 
@@ -15,10 +18,23 @@ import java.util.function.Predicate;
  */
 public interface IPortalManager {
     /**
-     * @return Every registered custom or nether portal
+     * Creates any portals that haven't been loaded yet, see {@link IPortalManager#registerUnloadedPortal(PortalRecord)}.
+     * This can be slow with lots of unloaded portals, so {@link IPortalManager#getLoadedPortals()} should be used where only portals in use are needed.
+     * @return Every stored custom or nether portal
      */
     Collection<IPortal> getAllPortals();
 
+    /**
+     * Portals that haven't been needed yet are not included, see {@link IPortalManager#registerUnloadedPortal(PortalRecord)}.
+     * @return Every loaded custom or nether portal
+     */
+    Collection<IPortal> getLoadedPortals();
+
+    /**
+     * @return The number of registered portals, including those that haven't been loaded yet
+     */
+    int getPortalCount();
+
     /**
      * Finds every portal at <code>originLoc</code>.
      * Multiple portals can have the same origin position!
@@ -80,6 +96,23 @@ public interface IPortalManager {
         return findClosestPortal(position, Double.POSITIVE_INFINITY);
     }
 
+    /**
+     * Finds every portal with an origin position within <code>distance</code> of <code>position</code>, creating any of them that haven't been loaded yet.
+     * @param position The position to find portals around
+     * @param distance The maximum distance from <code>position</code>
+     * @return The portals found, may be empty.
+     */
+    @NotNull Collection<IPortal> findPortalsInRange(@NotNull Location position, double distance);
+
+    /**
+     * Finds every loaded portal with an origin position within <code>distance</code> of <code>position</code>.
+     * This only checks the portals near <code>position</code>, so is cheap enough to call for every player regularly.
+     * @param position The position to find portals around
+     * @param distance The maximum distance from <code>position</code>
+     * @return The portals found, may be empty.
+     */
+    @NotNull Collection<IPortal> findLoadedPortalsInRange(@NotNull Location position, double distance);
+
     /**
      * Tests the portals against the {@link com.lauriethefish.betterportals.bukkit.portal.predicate.PortalPredicateManager} to find which ones are activatable by this player.
      * @param player The player to test
@@ -93,6 +126,33 @@ public interface IPortalManager {
      */
     void registerPortal(@NotNull IPortal portal);
 
+    /**
+     * Registers a stored portal without creating it.
+     * The portal is created once a chunk in the region around it is loaded, or once it is found by one of the lookup methods in this class.
+     * @param record The stored portal
+     */
+    void registerUnloadedPortal(@NotNull PortalRecord record);
+
+    /**
+     * Creates the unloaded portals in the region containing a chunk.
+     * @param world World of the chunk
+     * @param chunkX X coordinate of the chunk
+     * @param chunkZ Z coordinate of the chunk
+     */
+    void loadPortalsInChunk(@NotNull World world, int chunkX, int chunkZ);
+
+    /**
+     * Creates every unloaded portal, so that they are all returned by {@link IPortalManager#getLoadedPortals()}.
+     */
+    void loadAllPortals();
+
+    /**
+     * Unregisters a loaded portal and stores it as a {@link PortalRecord} until it is needed again.
+     * @param portal The portal to unload
+     * @return Whether the portal was unloaded. Portals that have changed since they were last saved aren't unloaded
+     */
+    boolean unloadPortal(@NotNull IPortal portal);
+
     /**
      * Removes all portals at <code>originLoc</code>.
      * @param originLoc The location to remove portals at
@@ -114,6 +174,19 @@ public interface IPortalManager {
      */
     boolean removePortalById(@NotNull UUID id);
 
+    /**
+     * Marks a portal as changed, so that it is written by the next save.
+     * Registering and removing portals marks them automatically.
+     * @param portal The portal that changed
+     */
+    void markDirty(@NotNull IPortal portal);
+
+    /**
+     * Finds the portals that have been registered, removed or changed since this was last called, and clears them.
+     * @return The IDs of the changed portals. Portals that have been removed will no longer be found by {@link IPortalManager#getPortalById(UUID)}
+     */
+    @NotNull Set<UUID> takeDirtyPortals();
+
     /**
      * Called whenever the plugin enables, but not for the first time.
      * Or when the player does <code>/bp reload</code>
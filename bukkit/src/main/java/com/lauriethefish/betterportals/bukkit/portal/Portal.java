@@ -153,6 +153,7 @@ public class Portal implements IPortal, ConfigurationSerializable {
         if(isNetherPortal()) throw new IllegalStateException("Cannot set name of nether portal");
 
         name = newName;
+        portalManager.markDirty(this);
     }
 
     @Override
@@ -163,6 +164,7 @@ public class Portal implements IPortal, ConfigurationSerializable {
     @Override
     public void setAllowsNonPlayerTeleportation(boolean allow) {
         allowNonPlayerTeleportation = allow;
+        portalManager.markDirty(this);
     }
 
     private boolean isStillValid() {
@@ -2,6 +2,8 @@ package com.lauriethefish.betterportals.bukkit.portal;
 
 import com.google.inject.Inject;
 import com.google.inject.Singleton;
+import com.lauriethefish.betterportals.bukkit.util.performance.TickPhase;
+import com.lauriethefish.betterportals.bukkit.util.performance.TickPhaseEvent;
 import com.lauriethefish.betterportals.shared.logging.Logger;
 
 import java.util.HashSet;
@@ -26,7 +28,9 @@ public class PortalActivityManager implements IPortalActivityManager    {
     public void onPortalActivatedThisTick(IPortal portal) {
         // If the portal is being activated and has not yet been added to the active list, activate it
         if(!activePortals.contains(portal)) {
+            TickPhaseEvent event = TickPhaseEvent.begin(TickPhase.ACTIVATION);
             portal.onActivate();
+            event.finish(portal.getId(), null, 0);
             activePortals.add(portal);
             activePortalsYetToUpdate.add(portal);
         }
@@ -88,4 +92,19 @@ public class PortalActivityManager implements IPortalActivityManager    {
         activePortalsYetToUpdate.clear();
         viewActivePortalsYetToUpdate.clear();
     }
+
+    @Override
+    public boolean isActive(IPortal portal) {
+        return activePortals.contains(portal);
+    }
+
+    @Override
+    public int getActivePortalCount() {
+        return activePortals.size();
+    }
+
+    @Override
+    public int getViewedPortalCount() {
+        return viewedPortals.size();
+    }
 }
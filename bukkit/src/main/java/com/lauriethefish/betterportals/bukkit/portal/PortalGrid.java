@@ -0,0 +1,121 @@
+package com.lauriethefish.betterportals.bukkit.portal;
+
+import org.bukkit.Location;
+import org.bukkit.World;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.*;
+
+/**
+ * Partitions the loaded portals by the world and cell of their origin position, so that the portals near a position can be found without checking every portal.
+ * Cells are 64x64 blocks, which is around the distance that players are checked against portals at.
+ */
+public class PortalGrid {
+    private static final int CELL_SHIFT = 6;
+    // Above this, every cell in the world is checked instead, since most of them will be empty
+    private static final int MAX_CELLS_CHECKED = 256;
+
+    private final Map<World, Map<Long, List<Entry>>> cellsByWorld = new HashMap<>();
+
+    // The origin position is kept alongside each portal, since getting it from the portal allocates
+    private static class Entry {
+        private final IPortal portal;
+        private final double x;
+        private final double y;
+        private final double z;
+
+        private Entry(IPortal portal, Location originLoc) {
+            this.portal = portal;
+            this.x = originLoc.getX();
+            this.y = originLoc.getY();
+            this.z = originLoc.getZ();
+        }
+    }
+
+    private static int getCellCoordinate(double blockCoordinate) {
+        return (int) Math.floor(blockCoordinate) >> CELL_SHIFT;
+    }
+
+    private static long getCellKey(int cellX, int cellZ) {
+        return ((long) cellX << 32) | (cellZ & 0xFFFFFFFFL);
+    }
+
+    private static long getCellKey(Location position) {
+        return getCellKey(getCellCoordinate(position.getX()), getCellCoordinate(position.getZ()));
+    }
+
+    /**
+     * @param portal The portal to add
+     * @param originLoc Origin position of the portal
+     */
+    public void add(@NotNull IPortal portal, @NotNull Location originLoc) {
+        cellsByWorld.computeIfAbsent(originLoc.getWorld(), world -> new HashMap<>())
+                .computeIfAbsent(getCellKey(originLoc), key -> new ArrayList<>())
+                .add(new Entry(portal, originLoc));
+    }
+
+    /**
+     * @param portal The portal to remove
+     * @param originLoc Origin position of the portal, which must be the same as when it was added
+     */
+    public void remove(@NotNull IPortal portal, @NotNull Location originLoc) {
+        Map<Long, List<Entry>> cells = cellsByWorld.get(originLoc.getWorld());
+        if(cells == null) {return;}
+
+        long cellKey = getCellKey(originLoc);
+        List<Entry> cell = cells.get(cellKey);
+        if(cell == null || !cell.removeIf(entry -> entry.portal == portal)) {return;}
+
+        if(cell.isEmpty()) {
+            cells.remove(cellKey);
+            if(cells.isEmpty()) {
+                cellsByWorld.remove(originLoc.getWorld());
+            }
+        }
+    }
+
+    /**
+     * Finds every portal with an origin position within <code>distance</code> of <code>position</code>.
+     * @param position The position to find portals around
+     * @param distance The maximum distance from <code>position</code>
+     * @return The portals found, may be empty
+     */
+    public @NotNull List<IPortal> findInRange(@NotNull Location position, double distance) {
+        Map<Long, List<Entry>> cells = cellsByWorld.get(position.getWorld());
+        if(cells == null) {return Collections.emptyList();}
+
+        List<IPortal> result = new ArrayList<>();
+        int minX = getCellCoordinate(position.getX() - distance);
+        int minZ = getCellCoordinate(position.getZ() - distance);
+        int maxX = getCellCoordinate(position.getX() + distance);
+        int maxZ = getCellCoordinate(position.getZ() + distance);
+        if(Double.isInfinite(distance) || (long) (maxX - minX + 1) * (maxZ - minZ + 1) > Math.min(MAX_CELLS_CHECKED, cells.size())) {
+            for(List<Entry> cell : cells.values()) {
+                addInRange(cell, position, distance, result);
+            }
+            return result;
+        }
+
+        for(int cellX = minX; cellX <= maxX; cellX++) {
+            for(int cellZ = minZ; cellZ <= maxZ; cellZ++) {
+                List<Entry> cell = cells.get(getCellKey(cellX, cellZ));
+                if(cell != null) {
+                    addInRange(cell, position, distance, result);
+                }
+            }
+        }
+        return result;
+    }
+
+    private void addInRange(List<Entry> cell, Location position, double distance, List<IPortal> result) {
+        double distanceSquared = distance * distance;
+        for(Entry entry : cell) {
+            double x = entry.x - position.getX();
+            double y = entry.y - position.getY();
+            double z = entry.z - position.getZ();
+            if(x * x + y * y + z * z <= distanceSquared) {
+                result.add(entry.portal);
+            }
+        }
+    }
+}
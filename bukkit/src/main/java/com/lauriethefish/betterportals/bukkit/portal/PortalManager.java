@@ -3,9 +3,12 @@ package com.lauriethefish.betterportals.bukkit.portal;
 import com.google.inject.Inject;
 import com.google.inject.Singleton;
 import com.lauriethefish.betterportals.bukkit.portal.predicate.IPortalPredicateManager;
+import com.lauriethefish.betterportals.bukkit.portal.storage.PortalRecord;
 import com.lauriethefish.betterportals.bukkit.util.StringUtil;
+import com.lauriethefish.betterportals.bukkit.util.performance.OperationRegistry;
 import com.lauriethefish.betterportals.shared.logging.Logger;
 import org.bukkit.Location;
+import org.bukkit.World;
 import org.bukkit.entity.Player;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
@@ -15,39 +18,73 @@ import java.util.function.Predicate;
 
 @Singleton
 public class PortalManager implements IPortalManager    {
+    private static final int MAX_REGIONS_CHECKED = 64;
+
     private final Logger logger;
     private final IPortalPredicateManager predicateManager;
     private final IPortalActivityManager portalActivityManager;
+    private final IPortal.Factory portalFactory;
+    private final OperationRegistry operationRegistry;
 
     // Multiple portals can have the same origin position
     private final Map<Location, Set<IPortal>> portals = new HashMap<>();
     private final Map<UUID, IPortal> portalsById = new HashMap<>();
+    // The same portals as above, partitioned by position for finding the portals near a player
+    private final PortalGrid portalGrid = new PortalGrid();
+    // Portals that haven't been created yet, since nothing has needed them
+    private final UnloadedPortalStore unloadedPortals = new UnloadedPortalStore();
+    // Portals changed since the last save
+    private Set<UUID> dirtyPortals = new HashSet<>();
 
     @Inject
-    public PortalManager(Logger logger, IPortalPredicateManager predicateManager, IPortalActivityManager portalActivityManager) {
+    public PortalManager(Logger logger, IPortalPredicateManager predicateManager, IPortalActivityManager portalActivityManager, IPortal.Factory portalFactory, OperationRegistry operationRegistry) {
         this.logger = logger;
         this.predicateManager = predicateManager;
         this.portalActivityManager = portalActivityManager;
+        this.portalFactory = portalFactory;
+        this.operationRegistry = operationRegistry;
     }
 
     @Override
     public Collection<IPortal> getAllPortals() {
+        loadAllPortals();
+        return portalsById.values();
+    }
+
+    @Override
+    public Collection<IPortal> getLoadedPortals() {
         return portalsById.values();
     }
 
+    @Override
+    public int getPortalCount() {
+        return portalsById.size() + unloadedPortals.size();
+    }
+
     @Override
     public Collection<IPortal> getPortalsAt(Location originLoc) {
+        loadPortalsInRange(originLoc, 0.0);
+
         Set<IPortal> portalsAtLoc = portals.get(originLoc);
         return portalsAtLoc == null ? Collections.emptyList() : portalsAtLoc;
     }
 
     @Override
     public IPortal getPortalById(@Nullable UUID id) {
-        return portalsById.get(id);
+        IPortal portal = portalsById.get(id);
+        if(portal != null || id == null) {return portal;}
+
+        PortalRecord record = unloadedPortals.remove(id);
+        return record == null ? null : loadPortal(record);
     }
 
     @Override
     public IPortal findClosestPortal(@NotNull Location position, double maximumDistance, Predicate<IPortal> predicate) {
+        loadPortalsInRange(position, maximumDistance);
+        if(!Double.isInfinite(maximumDistance)) {
+            return findClosestInRange(position, maximumDistance, predicate);
+        }
+
         IPortal currentClosest = null;
         double currentClosestDistance = maximumDistance;
         for(Map.Entry<Location, Set<IPortal>> entry : portals.entrySet()) {
@@ -72,6 +109,31 @@ public class PortalManager implements IPortalManager    {
         return currentClosest;
     }
 
+    private IPortal findClosestInRange(Location position, double maximumDistance, Predicate<IPortal> predicate) {
+        IPortal currentClosest = null;
+        double currentClosestDistance = maximumDistance;
+        for(IPortal portal : portalGrid.findInRange(position, maximumDistance)) {
+            double distance = portal.getOriginPos().getVector().distance(position.toVector());
+            if(distance >= currentClosestDistance || !predicate.test(portal)) {continue;}
+
+            currentClosest = portal;
+            currentClosestDistance = distance;
+        }
+
+        return currentClosest;
+    }
+
+    @Override
+    public @NotNull Collection<IPortal> findPortalsInRange(@NotNull Location position, double distance) {
+        loadPortalsInRange(position, distance);
+        return portalGrid.findInRange(position, distance);
+    }
+
+    @Override
+    public @NotNull Collection<IPortal> findLoadedPortalsInRange(@NotNull Location position, double distance) {
+        return portalGrid.findInRange(position, distance);
+    }
+
     @Override
     public @NotNull Collection<IPortal> findActivatablePortals(@NotNull Player player) {
         List<IPortal> result = new ArrayList<>();
@@ -90,6 +152,12 @@ public class PortalManager implements IPortalManager    {
 
     @Override
     public void registerPortal(@NotNull IPortal portal) {
+        unloadedPortals.remove(portal.getId());
+        addPortal(portal);
+        dirtyPortals.add(portal.getId());
+    }
+
+    private void addPortal(@NotNull IPortal portal) {
         logger.fine("Registering portal with origin position %s", portal.getOriginPos());
 
         // Add a new portal array if one doesn't already exist for this location
@@ -100,16 +168,103 @@ public class PortalManager implements IPortalManager    {
         portalsById.put(portal.getId(), portal);
 
         portals.get(originLoc).add(portal);
+        portalGrid.add(portal, originLoc);
+    }
+
+    @Override
+    public void registerUnloadedPortal(@NotNull PortalRecord record) {
+        World world = record.getOriginPos().getWorld();
+        // Portals in chunks that are already loaded are needed straight away
+        if(world != null && world.isChunkLoaded(record.getOriginPos().getVector().getBlockX() >> 4, record.getOriginPos().getVector().getBlockZ() >> 4)) {
+            loadPortal(record);
+        }   else    {
+            unloadedPortals.add(record);
+        }
+    }
+
+    private @Nullable IPortal loadPortal(@NotNull PortalRecord record) {
+        IPortal portal;
+        try {
+            portal = record.createPortal(portalFactory);
+        }   catch(RuntimeException ex) { // Avoid failing all portals when one is invalid
+            logger.warning("Failed to load portal: %s", ex.getMessage());
+            return null;
+        }
+
+        addPortal(portal);
+        return portal;
+    }
+
+    private void loadPortals(List<PortalRecord> records) {
+        if(records.isEmpty()) {return;}
+
+        logger.finer("Loading %d portals", records.size());
+        records.forEach(this::loadPortal);
+    }
+
+    /**
+     * Loads all unloaded portals that might be within <code>distance</code> of <code>position</code>.
+     * @param position The position to load portals around
+     * @param distance The distance to load portals within
+     */
+    private void loadPortalsInRange(@NotNull Location position, double distance) {
+        if(unloadedPortals.size() == 0 || position.getWorld() == null) {return;}
+        String worldName = position.getWorld().getName();
+
+        int minX = UnloadedPortalStore.getRegionCoordinate(position.getX() - distance);
+        int minZ = UnloadedPortalStore.getRegionCoordinate(position.getZ() - distance);
+        int maxX = UnloadedPortalStore.getRegionCoordinate(position.getX() + distance);
+        int maxZ = UnloadedPortalStore.getRegionCoordinate(position.getZ() + distance);
+        // Avoid looping over a huge number of regions for very large (or infinite) distances
+        if(Double.isInfinite(distance) || (long) (maxX - minX + 1) * (maxZ - minZ + 1) > MAX_REGIONS_CHECKED) {
+            loadPortals(unloadedPortals.removeWorld(worldName));
+            return;
+        }
+
+        for(int regionX = minX; regionX <= maxX; regionX++) {
+            for(int regionZ = minZ; regionZ <= maxZ; regionZ++) {
+                loadPortals(unloadedPortals.removeRegion(worldName, regionX, regionZ));
+            }
+        }
+    }
+
+    @Override
+    public void loadPortalsInChunk(@NotNull World world, int chunkX, int chunkZ) {
+        if(unloadedPortals.size() == 0) {return;}
+
+        int regionX = UnloadedPortalStore.getRegionCoordinateOfChunk(chunkX);
+        int regionZ = UnloadedPortalStore.getRegionCoordinateOfChunk(chunkZ);
+        loadPortals(unloadedPortals.removeRegion(world.getName(), regionX, regionZ));
+    }
+
+    @Override
+    public void loadAllPortals() {
+        loadPortals(unloadedPortals.removeAll());
+    }
+
+    @Override
+    public boolean unloadPortal(@NotNull IPortal portal) {
+        // Changed portals must be kept until they're saved, since saving needs the portal
+        if(dirtyPortals.contains(portal.getId()) || portalsById.get(portal.getId()) != portal) {return false;}
+
+        removeLoadedPortal(portal);
+        unloadedPortals.add(PortalRecord.fromPortal(portal));
+        return true;
     }
 
     @Override
     public int removePortalsAt(@NotNull Location originLoc) {
+        loadPortalsInRange(originLoc, 0.0);
+
         Set<IPortal> portalsRemoved = portals.remove(originLoc);
         if(portalsRemoved == null) {return 0;}
 
         // Make sure to also remove them from the ID map
         for(IPortal portal : portalsRemoved) {
             portalsById.remove(portal.getId());
+            portalGrid.remove(portal, originLoc);
+            operationRegistry.removePortal(portal.getId());
+            dirtyPortals.add(portal.getId());
         }
 
         logger.fine("Unregistering %d portal(s) at position %s", portalsRemoved.size(), StringUtil.locationToString(originLoc));
@@ -120,20 +275,35 @@ public class PortalManager implements IPortalManager    {
     public boolean removePortal(@NotNull IPortal portal) {
         logger.fine("Unregistering portal at position %s", StringUtil.locationToString(portal.getOriginPos().getLocation()));
 
-        Set<IPortal> portalsAtLoc = portals.get(portal.getOriginPos().getLocation());
+        boolean wasRemoved = removeLoadedPortal(portal);
+        dirtyPortals.add(portal.getId());
+        return wasRemoved;
+    }
+
+    private boolean removeLoadedPortal(@NotNull IPortal portal) {
+        Location originLoc = portal.getOriginPos().getLocation();
+        Set<IPortal> portalsAtLoc = portals.get(originLoc);
         if(portalsAtLoc == null) {return false;}
 
         boolean wasRemoved = portalsAtLoc.remove(portal);
         // Remove the portal array if there are no longer any portals at this location
         if(portalsAtLoc.size() == 0) {
-            portals.remove(portal.getOriginPos().getLocation());
+            portals.remove(originLoc);
         }
+        portalGrid.remove(portal, originLoc);
         portalsById.remove(portal.getId());
+        operationRegistry.removePortal(portal.getId());
         return wasRemoved;
     }
 
     @Override
     public boolean removePortalById(@NotNull UUID id) {
+        // Unloaded portals don't need to be created just to remove them
+        if(unloadedPortals.remove(id) != null) {
+            dirtyPortals.add(id);
+            return true;
+        }
+
         IPortal removed = portalsById.remove(id);
         if(removed == null) {return false;}
         removePortal(removed); // Also remove it in the location map
@@ -141,6 +311,18 @@ public class PortalManager implements IPortalManager    {
         return true;
     }
 
+    @Override
+    public void markDirty(@NotNull IPortal portal) {
+        dirtyPortals.add(portal.getId());
+    }
+
+    @Override
+    public @NotNull Set<UUID> takeDirtyPortals() {
+        Set<UUID> result = dirtyPortals;
+        dirtyPortals = new HashSet<>();
+        return result;
+    }
+
     @Override
     public void onReload() {
         portalActivityManager.resetActivity();
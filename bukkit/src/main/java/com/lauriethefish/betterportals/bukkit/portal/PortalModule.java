@@ -11,8 +11,8 @@ import com.lauriethefish.betterportals.bukkit.portal.predicate.IPortalPredicateM
 import com.lauriethefish.betterportals.bukkit.portal.predicate.PortalPredicateManager;
 import com.lauriethefish.betterportals.bukkit.portal.spawning.IPortalSpawner;
 import com.lauriethefish.betterportals.bukkit.portal.spawning.PortalSpawner;
+import com.lauriethefish.betterportals.bukkit.portal.storage.BinaryPortalStorage;
 import com.lauriethefish.betterportals.bukkit.portal.storage.IPortalStorage;
-import com.lauriethefish.betterportals.bukkit.portal.storage.YamlPortalStorage;
 
 public class PortalModule extends AbstractModule {
     @Override
@@ -28,7 +28,7 @@ public class PortalModule extends AbstractModule {
         install(new FactoryModuleBuilder().build(PortalTransformationsFactory.class));
 
         bind(IPortalPredicateManager.class).to(PortalPredicateManager.class);
-        bind(IPortalStorage.class).to(YamlPortalStorage.class);
+        bind(IPortalStorage.class).to(BinaryPortalStorage.class);
 
         bind(IPortalManager.class).to(PortalManager.class);
         bind(IPortalActivityManager.class).to(PortalActivityManager.class);
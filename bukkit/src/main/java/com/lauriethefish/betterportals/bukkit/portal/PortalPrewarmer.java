@@ -0,0 +1,152 @@
+package com.lauriethefish.betterportals.bukkit.portal;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.lauriethefish.betterportals.bukkit.block.IBlockMap;
+import com.lauriethefish.betterportals.bukkit.chunk.chunkloading.IPortalChunkLoader;
+import com.lauriethefish.betterportals.bukkit.chunk.chunkloading.PortalChunkPreloader;
+import com.lauriethefish.betterportals.bukkit.config.MiscConfig;
+import com.lauriethefish.betterportals.shared.logging.Logger;
+import org.bukkit.Bukkit;
+import org.bukkit.Location;
+import org.bukkit.entity.Player;
+import org.bukkit.util.Vector;
+
+import java.util.*;
+
+/**
+ * Predicts which portals players are about to activate from their movement, and prepares them ahead of time.
+ * The destination chunks are loaded in the background by the {@link PortalChunkPreloader}, then the initial block map update is done before the portal activates.
+ * This avoids the portal popping in, and spreads the work of activating portals over multiple ticks instead of doing it all at once.
+ */
+@Singleton
+public class PortalPrewarmer {
+    // Player velocities are found from how far they moved over this many ticks
+    private static final int PREDICTION_INTERVAL = 5;
+    // Cosine of the maximum angle between the direction a player is moving and the direction of the portal
+    private static final double MIN_HEADING_DOT = 0.7;
+    // Ignore players that are standing still or barely moving, in blocks per tick
+    private static final double MIN_SPEED = 0.05;
+
+    private final IPortalManager portalManager;
+    private final IPortalChunkLoader chunkLoader;
+    private final PortalChunkPreloader chunkPreloader;
+    private final IPortalActivityManager activityManager;
+    private final MiscConfig miscConfig;
+    private final Logger logger;
+
+    private Map<UUID, Location> lastPlayerPositions = new HashMap<>();
+    // Ordered with the soonest to activate first
+    private final Set<IPortal> prewarmingPortals = new LinkedHashSet<>();
+    private int ticksSincePrediction = 0;
+
+    @Inject
+    public PortalPrewarmer(IPortalManager portalManager, IPortalChunkLoader chunkLoader, PortalChunkPreloader chunkPreloader, IPortalActivityManager activityManager, MiscConfig miscConfig, Logger logger) {
+        this.portalManager = portalManager;
+        this.chunkLoader = chunkLoader;
+        this.chunkPreloader = chunkPreloader;
+        this.activityManager = activityManager;
+        this.miscConfig = miscConfig;
+        this.logger = logger;
+    }
+
+    public void update() {
+        ticksSincePrediction++;
+        if(ticksSincePrediction >= PREDICTION_INTERVAL) {
+            ticksSincePrediction = 0;
+            updatePrewarmingPortals(findApproachedPortals());
+        }
+
+        prepareNextBlockMap();
+    }
+
+    /**
+     * Finds the portals that players are heading towards and will reach the activation distance of within the lookahead time.
+     * @return The approached portals, with the soonest to be reached first, limited to the maximum number of concurrent pre-warms
+     */
+    private List<IPortal> findApproachedPortals() {
+        int lookaheadTime = miscConfig.getPrewarmLookaheadTime();
+        int maxPrewarms = miscConfig.getMaxConcurrentPrewarms();
+        if(lookaheadTime <= 0 || maxPrewarms <= 0) {
+            lastPlayerPositions.clear();
+            return Collections.emptyList();
+        }
+
+        double activationDistance = miscConfig.getPortalActivationDistance();
+        Map<IPortal, Double> ticksUntilReached = new HashMap<>();
+        Map<UUID, Location> newPlayerPositions = new HashMap<>();
+        for(Player player : Bukkit.getOnlinePlayers()) {
+            Location position = player.getLocation();
+            newPlayerPositions.put(player.getUniqueId(), position);
+
+            Location lastPosition = lastPlayerPositions.get(player.getUniqueId());
+            if(lastPosition == null || lastPosition.getWorld() != position.getWorld()) {continue;}
+
+            Vector velocity = position.toVector().subtract(lastPosition.toVector()).multiply(1.0 / PREDICTION_INTERVAL);
+            double speed = velocity.length();
+            if(speed < MIN_SPEED) {continue;}
+            Vector heading = velocity.multiply(1.0 / speed);
+
+            // Only portals that can be reached within the lookahead time need to be checked
+            double maxDistance = activationDistance + speed * lookaheadTime;
+            for(IPortal portal : portalManager.findLoadedPortalsInRange(position, maxDistance)) {
+                Location originPos = portal.getOriginPos().getLocation();
+                Vector towardsPortal = originPos.toVector().subtract(position.toVector());
+                double distance = towardsPortal.length();
+                // Portals within the activation distance are already handled by the portal activation
+                if(distance <= activationDistance || distance > maxDistance) {continue;}
+                if(towardsPortal.multiply(1.0 / distance).dot(heading) < MIN_HEADING_DOT) {continue;}
+
+                double ticks = (distance - activationDistance) / speed;
+                ticksUntilReached.merge(portal, ticks, Math::min);
+            }
+        }
+        lastPlayerPositions = newPlayerPositions;
+
+        List<IPortal> approachedPortals = new ArrayList<>(ticksUntilReached.keySet());
+        approachedPortals.sort(Comparator.comparingDouble(ticksUntilReached::get));
+        return approachedPortals.size() > maxPrewarms ? approachedPortals.subList(0, maxPrewarms) : approachedPortals;
+    }
+
+    private void updatePrewarmingPortals(List<IPortal> approachedPortals) {
+        // Stop pre-warming portals that players are no longer heading towards, or that have been removed
+        Set<IPortal> approachedSet = new HashSet<>(approachedPortals);
+        prewarmingPortals.removeIf(portal -> {
+            if(approachedSet.contains(portal)) {return false;}
+
+            logger.finer("No longer pre-warming portal at %s", portal.getOriginPos());
+            // Active portals reset their block map when they deactivate, otherwise we need to clear it to save memory
+            if(!activityManager.isActive(portal)) {
+                portal.getViewableBlocks().reset();
+            }
+            return true;
+        });
+
+        for(IPortal portal : approachedPortals) {
+            if(!prewarmingPortals.contains(portal)) {
+                logger.finer("Pre-warming portal at %s", portal.getOriginPos());
+            }
+        }
+        chunkPreloader.setPrewarmingPortals(approachedPortals);
+
+        // Re-add the portals in order so that the soonest to activate are prepared first
+        prewarmingPortals.clear();
+        prewarmingPortals.addAll(approachedPortals);
+    }
+
+    /**
+     * The initial block map update reads every block in the portal's view, so only one is done each tick to avoid lag spikes.
+     */
+    private void prepareNextBlockMap() {
+        for(IPortal portal : prewarmingPortals) {
+            IBlockMap blockMap = portal.getViewableBlocks();
+            // Active portals update their own block map
+            if(blockMap.isPrepared() || activityManager.isActive(portal)) {continue;}
+            // Reading the blocks before the chunks are loaded would load them on the main thread
+            if(!chunkLoader.arePortalChunksLoaded(portal.getDestPos())) {continue;}
+
+            blockMap.prepare();
+            return;
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package com.lauriethefish.betterportals.bukkit.portal;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.lauriethefish.betterportals.api.PortalPosition;
+import com.lauriethefish.betterportals.bukkit.config.MiscConfig;
+import com.lauriethefish.betterportals.bukkit.events.IEventRegistrar;
+import com.lauriethefish.betterportals.shared.logging.Logger;
+import org.bukkit.World;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.world.ChunkLoadEvent;
+import org.bukkit.util.Vector;
+
+import java.util.*;
+
+/**
+ * Creates stored portals once the region around them is loaded, and unloads portals again once they haven't been used for a while.
+ * A portal is counted as used while it is active, or while the chunk at its origin is loaded.
+ */
+@Singleton
+public class PortalRegionLoader implements Listener {
+    // Checking every portal isn't free, and portals don't need to be unloaded straight away
+    private static final int UNLOAD_CHECK_INTERVAL = 200;
+
+    private final IPortalManager portalManager;
+    private final IPortalActivityManager activityManager;
+    private final MiscConfig miscConfig;
+    private final Logger logger;
+
+    private final Map<IPortal, Integer> lastUsedTicks = new HashMap<>();
+    private int currentTick = 0;
+
+    @Inject
+    public PortalRegionLoader(IEventRegistrar eventRegistrar, IPortalManager portalManager, IPortalActivityManager activityManager, MiscConfig miscConfig, Logger logger) {
+        this.portalManager = portalManager;
+        this.activityManager = activityManager;
+        this.miscConfig = miscConfig;
+        this.logger = logger;
+
+        eventRegistrar.register(this);
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onChunkLoad(ChunkLoadEvent event) {
+        portalManager.loadPortalsInChunk(event.getWorld(), event.getChunk().getX(), event.getChunk().getZ());
+    }
+
+    public void update() {
+        currentTick++;
+        if(currentTick % UNLOAD_CHECK_INTERVAL != 0) {return;}
+
+        int unloadTime = miscConfig.getPortalUnloadTime();
+        if(unloadTime < 0) {
+            lastUsedTicks.clear();
+            return;
+        }
+
+        List<IPortal> unusedPortals = new ArrayList<>();
+        for(IPortal portal : portalManager.getLoadedPortals()) {
+            if(isInUse(portal)) {
+                lastUsedTicks.put(portal, currentTick);
+                continue;
+            }
+
+            int lastUsedTick = lastUsedTicks.computeIfAbsent(portal, key -> currentTick);
+            if(currentTick - lastUsedTick >= unloadTime) {
+                unusedPortals.add(portal);
+            }
+        }
+
+        int unloadedCount = 0;
+        for(IPortal portal : unusedPortals) {
+            if(portalManager.unloadPortal(portal)) {
+                unloadedCount++;
+            }
+        }
+
+        // Also forgets about portals that have been removed
+        lastUsedTicks.keySet().retainAll(new HashSet<>(portalManager.getLoadedPortals()));
+        if(unloadedCount > 0) {
+            logger.fine("Unloaded %d unused portals", unloadedCount);
+        }
+    }
+
+    private boolean isInUse(IPortal portal) {
+        if(activityManager.isActive(portal)) {return true;}
+
+        PortalPosition originPos = portal.getOriginPos();
+        World world = originPos.getWorld();
+        Vector position = originPos.getVector();
+        return world != null && world.isChunkLoaded(position.getBlockX() >> 4, position.getBlockZ() >> 4);
+    }
+}
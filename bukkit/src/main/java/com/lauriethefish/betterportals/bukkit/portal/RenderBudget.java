@@ -0,0 +1,180 @@
+package com.lauriethefish.betterportals.bukkit.portal;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.lauriethefish.betterportals.bukkit.config.RenderConfig;
+import com.lauriethefish.betterportals.bukkit.util.performance.OperationRegistry;
+import com.lauriethefish.betterportals.bukkit.util.performance.PortalCost;
+import com.lauriethefish.betterportals.shared.logging.Logger;
+import lombok.Getter;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps the time spent rendering portals under the budget in the config.
+ * Every evaluation interval, the CPU time of each portal is taken from its {@link PortalCost}.
+ * If the total is over the budget, the most expensive portals are degraded by one {@link RenderDegradation} level each until the estimated total fits.
+ * Once the total is comfortably under the budget, the cheapest degraded portal is restored by one level, so that portals don't switch back and forth.
+ * <br>Admins can override the level of a portal, in which case the budget leaves it alone. Overrides are kept until the server restarts.
+ */
+@Singleton
+public class RenderBudget {
+    // Portals are only restored once the total would still be under this fraction of the budget afterwards
+    private static final double RECOVERY_FRACTION = 0.7;
+    // Rough guess of how much of its cost a portal saves each time it is degraded
+    private static final double DEGRADATION_SAVING = 0.5;
+
+    private final RenderConfig renderConfig;
+    private final OperationRegistry operationRegistry;
+    private final Logger logger;
+
+    private final Map<UUID, RenderDegradation> decisions = new ConcurrentHashMap<>();
+    private final Map<UUID, RenderDegradation> overrides = new ConcurrentHashMap<>();
+
+    // Milliseconds per tick of each portal rendered in the last evaluation interval
+    private volatile Map<UUID, Double> lastCosts = Collections.emptyMap();
+    @Getter private volatile double lastTotalCost = 0.0;
+    private int ticksSinceEvaluation = 0;
+
+    @Inject
+    public RenderBudget(RenderConfig renderConfig, OperationRegistry operationRegistry, Logger logger) {
+        this.renderConfig = renderConfig;
+        this.operationRegistry = operationRegistry;
+        this.logger = logger;
+    }
+
+    /**
+     * Called every tick, and evaluates the budget once each evaluation interval.
+     */
+    public void update() {
+        ticksSinceEvaluation++;
+        if(ticksSinceEvaluation < renderConfig.getRenderBudgetInterval()) {return;}
+
+        evaluate(ticksSinceEvaluation);
+        ticksSinceEvaluation = 0;
+    }
+
+    private void evaluate(int ticks) {
+        Map<UUID, Double> costs = new HashMap<>();
+        double totalCost = 0.0;
+        for(Map.Entry<UUID, PortalCost> entry : operationRegistry.getPortalCosts().entrySet()) {
+            long nanos = entry.getValue().takeWindowNanos();
+            if(nanos == 0) {continue;}
+
+            double cost = nanos / 1_000_000d / ticks;
+            costs.put(entry.getKey(), cost);
+            totalCost += cost;
+        }
+        lastCosts = costs;
+        lastTotalCost = totalCost;
+
+        // Portals that weren't rendered during the interval start at full quality again next time they are
+        decisions.keySet().retainAll(costs.keySet());
+        if(!renderConfig.isRenderBudgetEnabled()) {
+            decisions.clear();
+            return;
+        }
+
+        double budget = renderConfig.getRenderBudgetMillis();
+        if(totalCost > budget) {
+            degradeMostExpensive(costs, totalCost - budget);
+        }   else    {
+            restoreCheapest(costs, totalCost, budget * RECOVERY_FRACTION);
+        }
+    }
+
+    private void degradeMostExpensive(Map<UUID, Double> costs, double excess) {
+        List<UUID> portals = new ArrayList<>(costs.keySet());
+        portals.sort(Comparator.comparing(costs::get).reversed());
+
+        for(UUID portalId : portals) {
+            if(excess <= 0.0) {break;}
+            if(overrides.containsKey(portalId)) {continue;}
+
+            RenderDegradation current = decisions.getOrDefault(portalId, RenderDegradation.NONE);
+            if(current.isStatic()) {continue;}
+
+            RenderDegradation degradation = current.next();
+            decisions.put(portalId, degradation);
+            excess -= costs.get(portalId) * DEGRADATION_SAVING;
+            logger.fine("Degrading portal %s to %s, since it took %.3fms per tick", portalId, degradation, costs.get(portalId));
+        }
+    }
+
+    private void restoreCheapest(Map<UUID, Double> costs, double totalCost, double recoveryLimit) {
+        UUID cheapest = null;
+        for(UUID portalId : decisions.keySet()) {
+            if(overrides.containsKey(portalId)) {continue;}
+            if(cheapest == null || costs.get(portalId) < costs.get(cheapest)) {
+                cheapest = portalId;
+            }
+        }
+        if(cheapest == null) {return;}
+
+        // Restoring a level is assumed to undo the saving made by degrading it
+        double cost = costs.get(cheapest);
+        double restoredCost = cost / (1.0 - DEGRADATION_SAVING);
+        if(totalCost - cost + restoredCost > recoveryLimit) {return;}
+
+        RenderDegradation degradation = decisions.get(cheapest).previous();
+        if(degradation == RenderDegradation.NONE) {
+            decisions.remove(cheapest);
+        }   else    {
+            decisions.put(cheapest, degradation);
+        }
+        logger.fine("Restoring portal %s to %s", cheapest, degradation);
+    }
+
+    /**
+     * Called from the block update threads, so this only reads from concurrent maps.
+     * @param portalId ID of the portal
+     * @return The current degradation of the portal, from an override if there is one
+     */
+    public @NotNull RenderDegradation getDegradation(@NotNull UUID portalId) {
+        RenderDegradation override = overrides.get(portalId);
+        if(override != null) {return override;}
+
+        return decisions.getOrDefault(portalId, RenderDegradation.NONE);
+    }
+
+    /**
+     * @param portalId ID of the portal
+     * @return Whether the degradation of the portal was set by an admin instead of the budget
+     */
+    public boolean isOverridden(@NotNull UUID portalId) {
+        return overrides.containsKey(portalId);
+    }
+
+    /**
+     * Sets the degradation of a portal, which the budget will no longer change.
+     * @param portalId ID of the portal
+     * @param degradation The new degradation, or null to let the budget decide again
+     */
+    public void setOverride(@NotNull UUID portalId, @Nullable RenderDegradation degradation) {
+        if(degradation == null) {
+            overrides.remove(portalId);
+        }   else    {
+            overrides.put(portalId, degradation);
+        }
+    }
+
+    /**
+     * @return The portals degraded by the budget or overridden by an admin, and their degradation
+     */
+    public @NotNull Map<UUID, RenderDegradation> getDegradedPortals() {
+        Map<UUID, RenderDegradation> result = new HashMap<>(decisions);
+        result.putAll(overrides);
+        return result;
+    }
+
+    /**
+     * @param portalId ID of the portal
+     * @return The time the portal took per tick during the last evaluation interval in milliseconds, or 0 if it wasn't rendered
+     */
+    public double getLastCost(@NotNull UUID portalId) {
+        return lastCosts.getOrDefault(portalId, 0.0);
+    }
+}
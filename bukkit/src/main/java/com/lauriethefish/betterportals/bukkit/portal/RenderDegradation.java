@@ -0,0 +1,38 @@
+package com.lauriethefish.betterportals.bukkit.portal;
+
+/**
+ * How much the rendering of a portal is reduced to keep within the {@link RenderBudget}.
+ * Each level also includes the reductions of the levels before it.
+ */
+public enum RenderDegradation {
+    NONE,
+    REDUCED_UPDATE_RATE, // The blocks around the portal are checked for changes less often
+    REDUCED_RADIUS, // Only the blocks closer to the portal are shown, so fewer blocks are sent to players
+    STATIC; // The blocks are no longer checked for changes, so players see them as they were when the portal activated
+
+    public boolean hasReducedUpdateRate() {
+        return compareTo(REDUCED_UPDATE_RATE) >= 0;
+    }
+
+    public boolean hasReducedRadius() {
+        return compareTo(REDUCED_RADIUS) >= 0;
+    }
+
+    public boolean isStatic() {
+        return this == STATIC;
+    }
+
+    /**
+     * @return The next level of degradation, or this level if it is already {@link #STATIC}
+     */
+    public RenderDegradation next() {
+        return this == STATIC ? STATIC : values()[ordinal() + 1];
+    }
+
+    /**
+     * @return The previous level of degradation, or this level if it is already {@link #NONE}
+     */
+    public RenderDegradation previous() {
+        return this == NONE ? NONE : values()[ordinal() - 1];
+    }
+}
@@ -0,0 +1,167 @@
+package com.lauriethefish.betterportals.bukkit.portal;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.lauriethefish.betterportals.bukkit.config.RenderConfig;
+import com.lauriethefish.betterportals.bukkit.util.performance.Operation;
+import com.lauriethefish.betterportals.bukkit.util.performance.OperationRegistry;
+import com.lauriethefish.betterportals.shared.logging.Logger;
+import lombok.Getter;
+import org.bukkit.Bukkit;
+import org.bukkit.Server;
+import org.jetbrains.annotations.Nullable;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+
+/**
+ * Scales the render quality of every portal with the server's MSPT, between the full quality values in the config and the adaptive quality limits.
+ * The quality goes down by one step each adjust interval while the MSPT is above the degrade threshold, and back up while it is below the recover threshold.
+ * Between the two, the quality stays where it is, so that it doesn't switch back and forth.
+ * <br>The portal effect size is only used by block maps when they do their initial flood fill, since they are sized for the full effect size.
+ * Blocks outside the current effect size are hidden by the player block views straight away.
+ */
+@Singleton
+public class RenderQualityController {
+    private static final double TICK_MILLIS = 50.0;
+    // The scheduler isn't exact, so ticks are only counted as late once they take this much longer than they should
+    private static final double LATE_TICK_MILLIS = TICK_MILLIS * 1.05;
+
+    private final RenderConfig renderConfig;
+    private final Operation mainUpdateOperation;
+    private final Logger logger;
+
+    private boolean checkedForPaper = false;
+    private @Nullable Method averageTickTimeMethod;
+
+    @Getter private volatile double quality = 1.0;
+    @Getter private volatile double lastMspt = 0.0;
+    // Whether the last MSPT came from the server, instead of being estimated
+    @Getter private volatile boolean msptFromServer = false;
+
+    private int ticksSinceAdjustment = 0;
+    private long windowStartTime = System.nanoTime();
+    private long lastMainUpdateNanos = 0;
+    private long lastMainUpdateCount = 0;
+
+    @Inject
+    public RenderQualityController(RenderConfig renderConfig, OperationRegistry operationRegistry, Logger logger) {
+        this.renderConfig = renderConfig;
+        this.mainUpdateOperation = operationRegistry.getOperation(OperationRegistry.MAIN_UPDATE);
+        this.logger = logger;
+    }
+
+    /**
+     * Called every tick, and samples the MSPT to adjust the quality once each adjust interval.
+     */
+    public void update() {
+        ticksSinceAdjustment++;
+        if(ticksSinceAdjustment < renderConfig.getQualityAdjustInterval()) {return;}
+
+        long now = System.nanoTime();
+        double tickInterval = (now - windowStartTime) / 1_000_000d / ticksSinceAdjustment;
+        windowStartTime = now;
+        ticksSinceAdjustment = 0;
+
+        lastMspt = sampleMspt(tickInterval);
+        adjustQuality(lastMspt);
+    }
+
+    private double sampleMspt(double tickInterval) {
+        Double serverMspt = getServerAverageTickTime();
+        msptFromServer = serverMspt != null;
+
+        // The main update timings may have been reset with /bp perf reset since the last sample
+        long mainUpdateNanos = mainUpdateOperation.getTotalTime().toNanos();
+        long mainUpdateCount = mainUpdateOperation.getInvocationTimes();
+        long nanosDelta = mainUpdateNanos - lastMainUpdateNanos;
+        long countDelta = mainUpdateCount - lastMainUpdateCount;
+        lastMainUpdateNanos = mainUpdateNanos;
+        lastMainUpdateCount = mainUpdateCount;
+
+        if(serverMspt != null) {return serverMspt;}
+
+        // Once the server is behind, the time between ticks is the MSPT
+        // Before then, it is at least as long as the plugin's own part of each tick
+        if(tickInterval > LATE_TICK_MILLIS) {return tickInterval;}
+        return nanosDelta > 0 && countDelta > 0 ? nanosDelta / 1_000_000d / countDelta : 0.0;
+    }
+
+    // Paper (and its forks) keep the average MSPT of the last 100 ticks, which isn't part of the Bukkit API
+    private @Nullable Double getServerAverageTickTime() {
+        Server server = Bukkit.getServer();
+        if(server == null) {return null;}
+
+        if(!checkedForPaper) {
+            checkedForPaper = true;
+            try {
+                averageTickTimeMethod = server.getClass().getMethod("getAverageTickTime");
+            }   catch(NoSuchMethodException ex) {
+                logger.fine("Average tick time is not available, so the MSPT will be estimated");
+            }
+        }
+        if(averageTickTimeMethod == null) {return null;}
+
+        try {
+            return ((Number) averageTickTimeMethod.invoke(server)).doubleValue();
+        }   catch(IllegalAccessException | InvocationTargetException | ClassCastException ex) {
+            logger.warning("Failed to get the average tick time, so the MSPT will be estimated instead");
+            averageTickTimeMethod = null;
+            return null;
+        }
+    }
+
+    /**
+     * Moves the quality one step towards the MSPT thresholds in the config.
+     * @param mspt The average milliseconds per tick of the server since the last adjustment
+     */
+    public void adjustQuality(double mspt) {
+        if(!renderConfig.isAdaptiveQualityEnabled()) {
+            quality = 1.0;
+            return;
+        }
+
+        double newQuality = quality;
+        if(mspt > renderConfig.getQualityDegradeMspt()) {
+            newQuality = Math.max(0.0, quality - renderConfig.getQualityStep());
+        }   else if(mspt < renderConfig.getQualityRecoverMspt()) {
+            newQuality = Math.min(1.0, quality + renderConfig.getQualityStep());
+        }
+
+        if(newQuality != quality) {
+            logger.fine("Changing render quality to %.2f, since the MSPT was %.2f", newQuality, mspt);
+            quality = newQuality;
+        }
+    }
+
+    // Rounded, so that equal steps of quality give (roughly) equal steps of each value
+    private int interpolate(int lowestQuality, int fullQuality) {
+        return (int) Math.round(lowestQuality + (fullQuality - lowestQuality) * quality);
+    }
+
+    /**
+     * @return The current portal effect size on the X and Z axes, at most <code>portalEffectSizeXZ</code>
+     */
+    public int getEffectSizeXZ() {
+        return interpolate(renderConfig.getMinEffectSizeXZ(), (int) renderConfig.getMaxXZ());
+    }
+
+    /**
+     * @return The current portal effect size on the Y axis, at most <code>portalEffectSizeY</code>
+     */
+    public int getEffectSizeY() {
+        return interpolate(renderConfig.getMinEffectSizeY(), (int) renderConfig.getMaxY());
+    }
+
+    public int getBlockUpdateInterval() {
+        return interpolate(renderConfig.getMaxBlockUpdateInterval(), renderConfig.getBlockUpdateInterval());
+    }
+
+    public int getBlockStateRefreshInterval() {
+        return interpolate(renderConfig.getMaxBlockStateRefreshInterval(), renderConfig.getBlockStateRefreshInterval());
+    }
+
+    public int getEntityMetadataUpdateInterval() {
+        return interpolate(renderConfig.getMaxEntityMetadataUpdateInterval(), renderConfig.getEntityMetadataUpdateInterval());
+    }
+}
@@ -0,0 +1,139 @@
+package com.lauriethefish.betterportals.bukkit.portal;
+
+import com.lauriethefish.betterportals.api.PortalPosition;
+import com.lauriethefish.betterportals.bukkit.portal.storage.PortalRecord;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.*;
+
+/**
+ * Stores the portals that haven't been created yet as {@link PortalRecord}s, partitioned by the world and region of their origin position.
+ * Creating a portal also creates its block map, entity list and transformations, so this is only done once the area around a portal is needed.
+ * Regions are 512x512 blocks, the same as Minecraft's region files.
+ */
+public class UnloadedPortalStore {
+    private static final int REGION_SHIFT = 9;
+
+    private final Map<String, Map<Long, List<PortalRecord>>> regionsByWorld = new HashMap<>();
+    private final Map<UUID, PortalRecord> portalsById = new HashMap<>();
+
+    /**
+     * @param blockCoordinate X or Z coordinate of a block
+     * @return The X or Z coordinate of the region containing the block
+     */
+    public static int getRegionCoordinate(double blockCoordinate) {
+        return (int) Math.floor(blockCoordinate) >> REGION_SHIFT;
+    }
+
+    /**
+     * @param chunkCoordinate X or Z coordinate of a chunk
+     * @return The X or Z coordinate of the region containing the chunk
+     */
+    public static int getRegionCoordinateOfChunk(int chunkCoordinate) {
+        return chunkCoordinate >> (REGION_SHIFT - 4);
+    }
+
+    private static long getRegionKey(int regionX, int regionZ) {
+        return ((long) regionX << 32) | (regionZ & 0xFFFFFFFFL);
+    }
+
+    private static long getRegionKey(PortalPosition position) {
+        return getRegionKey(getRegionCoordinate(position.getVector().getX()), getRegionCoordinate(position.getVector().getZ()));
+    }
+
+    public void add(@NotNull PortalRecord record) {
+        remove(record.getId());
+
+        PortalPosition originPos = record.getOriginPos();
+        regionsByWorld.computeIfAbsent(originPos.getWorldName(), world -> new HashMap<>())
+                .computeIfAbsent(getRegionKey(originPos), key -> new ArrayList<>())
+                .add(record);
+        portalsById.put(record.getId(), record);
+    }
+
+    public @Nullable PortalRecord get(@NotNull UUID id) {
+        return portalsById.get(id);
+    }
+
+    /**
+     * Removes the portal with the given ID.
+     * @param id ID of the portal
+     * @return The removed portal, or null if there was no unloaded portal with this ID
+     */
+    public @Nullable PortalRecord remove(@NotNull UUID id) {
+        PortalRecord record = portalsById.remove(id);
+        if(record == null) {return null;}
+
+        String worldName = record.getOriginPos().getWorldName();
+        Map<Long, List<PortalRecord>> regions = regionsByWorld.get(worldName);
+        long regionKey = getRegionKey(record.getOriginPos());
+        List<PortalRecord> region = regions.get(regionKey);
+        region.remove(record);
+
+        if(region.isEmpty()) {
+            regions.remove(regionKey);
+            if(regions.isEmpty()) {
+                regionsByWorld.remove(worldName);
+            }
+        }
+        return record;
+    }
+
+    /**
+     * Removes every portal in a region.
+     * @param worldName Name of the world of the region
+     * @param regionX X coordinate of the region
+     * @param regionZ Z coordinate of the region
+     * @return The removed portals, empty if there were none in this region
+     */
+    public @NotNull List<PortalRecord> removeRegion(@NotNull String worldName, int regionX, int regionZ) {
+        Map<Long, List<PortalRecord>> regions = regionsByWorld.get(worldName);
+        if(regions == null) {return Collections.emptyList();}
+
+        List<PortalRecord> region = regions.remove(getRegionKey(regionX, regionZ));
+        if(region == null) {return Collections.emptyList();}
+
+        if(regions.isEmpty()) {
+            regionsByWorld.remove(worldName);
+        }
+        for(PortalRecord record : region) {
+            portalsById.remove(record.getId());
+        }
+        return region;
+    }
+
+    /**
+     * Removes every portal in a world.
+     * @param worldName Name of the world
+     * @return The removed portals, empty if there were none in this world
+     */
+    public @NotNull List<PortalRecord> removeWorld(@NotNull String worldName) {
+        Map<Long, List<PortalRecord>> regions = regionsByWorld.remove(worldName);
+        if(regions == null) {return Collections.emptyList();}
+
+        List<PortalRecord> result = new ArrayList<>();
+        for(List<PortalRecord> region : regions.values()) {
+            for(PortalRecord record : region) {
+                portalsById.remove(record.getId());
+                result.add(record);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Removes every portal in this store.
+     * @return The removed portals
+     */
+    public @NotNull List<PortalRecord> removeAll() {
+        List<PortalRecord> result = new ArrayList<>(portalsById.values());
+        regionsByWorld.clear();
+        portalsById.clear();
+        return result;
+    }
+
+    public int size() {
+        return portalsById.size();
+    }
+}
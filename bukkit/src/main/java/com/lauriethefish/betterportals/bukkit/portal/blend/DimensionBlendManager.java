@@ -2,21 +2,36 @@ package com.lauriethefish.betterportals.bukkit.portal.blend;
 
 import com.google.inject.Inject;
 import com.google.inject.Singleton;
+import com.lauriethefish.betterportals.bukkit.block.write.BlockWriteBatch;
+import com.lauriethefish.betterportals.bukkit.block.write.IBlockWriter;
 import com.lauriethefish.betterportals.bukkit.config.PortalSpawnConfig;
+import com.lauriethefish.betterportals.bukkit.portal.spawning.SnapshotSpawnBlockView;
+import com.lauriethefish.betterportals.bukkit.util.HeightUtil;
 import com.lauriethefish.betterportals.bukkit.util.MaterialUtil;
-import com.lauriethefish.betterportals.bukkit.util.VersionUtil;
 import com.lauriethefish.betterportals.shared.logging.Logger;
+import org.bukkit.Bukkit;
+import org.bukkit.ChunkSnapshot;
 import org.bukkit.Location;
 import org.bukkit.Material;
+import org.bukkit.World;
+import org.bukkit.block.data.BlockData;
+import org.bukkit.plugin.java.JavaPlugin;
 import org.bukkit.util.Vector;
 import org.jetbrains.annotations.NotNull;
 
-import java.util.Objects;
-import java.util.Random;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadLocalRandom;
 
+/**
+ * Copies random blocks from around the destination of a new portal to around its origin.
+ * The chunks are snapshotted on the main thread, then which blocks to change is decided on another thread.
+ * The changes are then applied over the next few ticks by the {@link IBlockWriter}.
+ */
 @Singleton
 public class DimensionBlendManager implements IDimensionBlendManager    {
     private static final double INITIAL_CHANCE = 1.0;
+    private static final double RANDOM_OFFSET_POWER = 10.0;
     private static final Material[] BLACKLISTED_COPY_BLOCKS = new Material[] {
         Material.OBSIDIAN,
         Material.BEDROCK,
@@ -28,14 +43,17 @@ public class DimensionBlendManager implements IDimensionBlendManager    {
         Material.IRON_BLOCK
     };
 
+    private final JavaPlugin pl;
     private final PortalSpawnConfig spawnConfig;
-    private final Random random = new Random();
     private final Logger logger;
+    private final IBlockWriter blockWriter;
 
     @Inject
-    public DimensionBlendManager(PortalSpawnConfig spawnConfig, Logger logger) {
+    public DimensionBlendManager(JavaPlugin pl, PortalSpawnConfig spawnConfig, Logger logger, IBlockWriter blockWriter) {
+        this.pl = pl;
         this.spawnConfig = spawnConfig;
         this.logger = logger;
+        this.blockWriter = blockWriter;
     }
 
     private @NotNull Material findFillInBlock(@NotNull Location destination) {
@@ -52,8 +70,73 @@ public class DimensionBlendManager implements IDimensionBlendManager    {
         logger.fine("Origin for blend: %s.", origin.toVector());
         int blockRadius = (int) (1.0 / spawnConfig.getBlendFallOff() + 4.0 + INITIAL_CHANCE);
 
+        World originWorld = Objects.requireNonNull(origin.getWorld(), "World of origin location cannot be null");
+        World destWorld = Objects.requireNonNull(destination.getWorld(), "World of destination location cannot be null");
         Material fillInBlock = findFillInBlock(destination);
 
+        // The destination blocks are offset by up to half of the random offset power in each direction
+        BlendArea originArea = new BlendArea(originWorld, origin, blockRadius);
+        BlendArea destArea = new BlendArea(destWorld, destination, blockRadius + (int) Math.ceil(RANDOM_OFFSET_POWER / 2.0));
+
+        Location originCopy = origin.clone();
+        Location destCopy = destination.clone();
+        CompletableFuture.supplyAsync(() -> generateBlend(originArea, destArea, originCopy, destCopy, blockRadius, fillInBlock))
+                .whenComplete((batch, error) -> Bukkit.getScheduler().runTask(pl, () -> {
+                    if(error != null) {
+                        logger.warning("Failed to generate dimension blend: %s", error.getMessage());
+                        return;
+                    }
+
+                    logger.fine("Queueing dimension blend of %d blocks", batch.getSize());
+                    blockWriter.queue(batch);
+                }));
+    }
+
+    /**
+     * Snapshots of the chunks around a blend position, so that the blocks can be read on another thread.
+     * Must be created on the main thread.
+     */
+    private static class BlendArea {
+        private final Map<Long, ChunkSnapshot> snapshots = new HashMap<>();
+        private final int minHeight;
+        private final int maxHeight;
+
+        private BlendArea(World world, Location center, int radius) {
+            this.minHeight = HeightUtil.getMinHeight(world);
+            this.maxHeight = HeightUtil.getMaxHeight(world);
+
+            int minChunkX = (center.getBlockX() - radius) >> 4;
+            int maxChunkX = (center.getBlockX() + radius) >> 4;
+            int minChunkZ = (center.getBlockZ() - radius) >> 4;
+            int maxChunkZ = (center.getBlockZ() + radius) >> 4;
+            for(int chunkX = minChunkX; chunkX <= maxChunkX; chunkX++) {
+                for(int chunkZ = minChunkZ; chunkZ <= maxChunkZ; chunkZ++) {
+                    snapshots.put(SnapshotSpawnBlockView.getChunkKey(chunkX, chunkZ), world.getChunkAt(chunkX, chunkZ).getChunkSnapshot());
+                }
+            }
+        }
+
+        private Material getType(Location location) {
+            int y = location.getBlockY();
+            if(y < minHeight || y >= maxHeight) {return Material.AIR;}
+
+            int x = location.getBlockX();
+            int z = location.getBlockZ();
+            ChunkSnapshot snapshot = snapshots.get(SnapshotSpawnBlockView.getChunkKey(x >> 4, z >> 4));
+            if(snapshot == null) {return Material.AIR;}
+
+            return snapshot.getBlockType(x & 15, y, z & 15);
+        }
+    }
+
+    // Only reads from the snapshots, so this can be run on any thread
+    private BlockWriteBatch generateBlend(BlendArea originArea, BlendArea destArea, Location origin, Location destination, int blockRadius, Material fillInBlock) {
+        Random random = ThreadLocalRandom.current();
+        BlockWriteBatch batch = new BlockWriteBatch(Objects.requireNonNull(origin.getWorld()));
+        Map<Material, BlockData> blockData = new EnumMap<>(Material.class);
+
+        Location originPos = origin.clone();
+        Location destPos = destination.clone();
         for(int z = -blockRadius; z < blockRadius; z++) {
             for(int y = -blockRadius; y < blockRadius; y++) {
                 for(int x = -blockRadius; x < blockRadius; x++) {
@@ -63,11 +146,11 @@ public class DimensionBlendManager implements IDimensionBlendManager    {
                     // Apply the random chance
                     if(random.nextDouble() > swapChance) {continue;}
 
-                    Location originPos = origin.clone().add(relativePos);
-                    Location destPos = destination.clone().add(applyRandomOffset(relativePos, 10.0));
+                    setToOffset(originPos, origin, relativePos);
+                    setToOffset(destPos, destination, applyRandomOffset(random, relativePos, RANDOM_OFFSET_POWER));
 
-                    Material originType = originPos.getBlock().getType();
-                    Material destType = destPos.getBlock().getType();
+                    Material originType = originArea.getType(originPos);
+                    Material destType = destArea.getType(destPos);
 
                     if(!destType.isSolid()) {destType = fillInBlock;}
 
@@ -82,19 +165,28 @@ public class DimensionBlendManager implements IDimensionBlendManager    {
 
                     if(skip) {continue;}
 
-                    originPos.getBlock().setType(destType);
+                    batch.add(originPos.getBlockX(), originPos.getBlockY(), originPos.getBlockZ(), blockData.computeIfAbsent(destType, Material::createBlockData));
                 }
             }
         }
+
+        return batch;
+    }
+
+    private static void setToOffset(Location result, Location base, Vector offset) {
+        result.setX(base.getX() + offset.getX());
+        result.setY(base.getY() + offset.getY());
+        result.setZ(base.getZ() + offset.getZ());
     }
 
     /**
      * Moves each coordinate of <code>vec</code> a maximum of <code>power / 2</code> blocks higher or lower.
+     * @param random Random to use, since this is called off the main thread
      * @param vec The vector to move
      * @param power The maximum deviation times two.
      * @return A new, offset vector.
      */
-    private Vector applyRandomOffset(Vector vec, double power) {
+    private Vector applyRandomOffset(Random random, Vector vec, double power) {
         Vector other = new Vector();
         other.setX(vec.getX() + (random.nextDouble() - 0.5) * power);
         other.setY(vec.getY() + (random.nextDouble() - 0.5) * power);
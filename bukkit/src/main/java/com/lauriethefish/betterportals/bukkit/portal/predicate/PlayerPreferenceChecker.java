@@ -4,10 +4,12 @@ import com.lauriethefish.betterportals.api.BetterPortal;
 import com.lauriethefish.betterportals.api.PortalPredicate;
 import com.lauriethefish.betterportals.bukkit.player.IPlayerData;
 import com.lauriethefish.betterportals.bukkit.player.IPlayerDataManager;
-import org.bukkit.configuration.file.YamlConfiguration;
+import com.lauriethefish.betterportals.bukkit.player.PlayerPreferences;
 import org.bukkit.entity.Player;
 import org.jetbrains.annotations.NotNull;
 
+import java.util.function.Predicate;
+
 /**
  * At the moment, this is only meant to check if a player has seeThroughPortal enabled.
  * It could be expanded if other things are added.
@@ -15,9 +17,9 @@ import org.jetbrains.annotations.NotNull;
 public class PlayerPreferenceChecker implements PortalPredicate {
 
     private final IPlayerDataManager playerDataManager;
-    private final String preference;
+    private final Predicate<PlayerPreferences> preference;
 
-    public PlayerPreferenceChecker(IPlayerDataManager playerDataManager, String preference) {
+    public PlayerPreferenceChecker(IPlayerDataManager playerDataManager, Predicate<PlayerPreferences> preference) {
         this.preference = preference;
         this.playerDataManager = playerDataManager;
     }
@@ -27,8 +29,6 @@ public class PlayerPreferenceChecker implements PortalPredicate {
         IPlayerData playerData = playerDataManager.getPlayerData(player);
 
         assert playerData != null;
-        YamlConfiguration permanentData = playerData.getPermanentData();
-
-        return permanentData.getBoolean(preference);
+        return preference.test(playerData.getPreferences());
     }
 }
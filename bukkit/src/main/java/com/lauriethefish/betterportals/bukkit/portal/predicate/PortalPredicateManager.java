@@ -4,6 +4,7 @@ import com.google.inject.Inject;
 import com.google.inject.Singleton;
 import com.lauriethefish.betterportals.api.PortalPredicate;
 import com.lauriethefish.betterportals.bukkit.player.IPlayerDataManager;
+import com.lauriethefish.betterportals.bukkit.player.PlayerPreferences;
 import com.lauriethefish.betterportals.bukkit.portal.IPortal;
 import com.lauriethefish.betterportals.shared.logging.Logger;
 import org.bukkit.entity.Player;
@@ -28,7 +29,7 @@ public class PortalPredicateManager implements IPortalPredicateManager  {
         addActivationPredicate(activationDistance);
         addActivationPredicate(crossServerDestinationChecker);
         addViewPredicate(new PermissionsChecker("betterportals.see"));
-        addViewPredicate(new PlayerPreferenceChecker(playerDataManager, "seeThroughPortal"));
+        addViewPredicate(new PlayerPreferenceChecker(playerDataManager, PlayerPreferences::isSeeThroughPortal));
         addTeleportPredicate(new PermissionsChecker("betterportals.use"));
     }
 
@@ -3,49 +3,72 @@ package com.lauriethefish.betterportals.bukkit.portal.spawning;
 import com.lauriethefish.betterportals.bukkit.chunk.chunkpos.ChunkPosition;
 import com.lauriethefish.betterportals.bukkit.chunk.chunkpos.SpiralChunkAreaIterator;
 import com.lauriethefish.betterportals.bukkit.config.PortalSpawnConfig;
+import com.lauriethefish.betterportals.bukkit.util.ChunkLoadUtil;
 import com.lauriethefish.betterportals.bukkit.util.performance.OperationTimer;
 import com.lauriethefish.betterportals.shared.logging.Logger;
 import org.bukkit.Bukkit;
+import org.bukkit.ChunkSnapshot;
 import org.bukkit.Location;
+import org.bukkit.World;
 import org.bukkit.plugin.java.JavaPlugin;
 import org.bukkit.scheduler.BukkitTask;
+import org.bukkit.util.Vector;
 
-import java.util.Iterator;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
 import java.util.function.Consumer;
+import java.util.stream.Collectors;
 
 /**
  * Handles checking for existing/new spawn position across multiple ticks.
  * This is done to avoid freezing the server, since checking for a spawn position can take a couple of seconds
- * This class also contains various optimisations that improve the speed by allowing us to skip certain chunks
+ * Chunks are loaded and snapshotted on the main thread in batches (in spiral order), then each batch is checked in parallel on the {@link ForkJoinPool}.
+ * The main thread then only has to validate the final position against the live world.
+ * Only the snapshots needed by the current batch are kept, see {@link SpawnSearch}.
  */
 public class AsyncPortalChecker implements Runnable {
     /**
-     * Used to skip this chunk if there's no way that any block in the chunk can be any closer.
-     * We approximate this by finding the distance to the chunk center, then subtracting this value.
-     * Theoretically, this could skip a portal and not actually find the closest portal.
-     * However, I haven't seen any get missed.
-     * Ideally, the chunk skip distance would be nearly 150 - half of the the diagonal length of a chunk. However, this slows down portal spawning quite a lot
+     * Radius for existing portal checking/portal spawning.
      */
-    private static final double CHUNK_SKIP_DISTANCE = 45.0;
+    private static final double PORTAL_SEARCH_RADIUS = 128.0;
 
     /**
-     * Radius for existing portal checking/portal spawning.
+     * Number of chunks checked in parallel at once. Chunks are only skipped based on the closest position found in previous batches, so larger batches check more chunks unnecessarily.
      */
-    private static final double PORTAL_SEARCH_RADIUS = 128.0;
+    private static final int BATCH_SIZE = Math.max(Runtime.getRuntime().availableProcessors() * 2, 8);
+
+    /**
+     * Number of times to search again if the blocks at the found position change before it can be validated on the main thread.
+     */
+    private static final int MAX_ATTEMPTS = 3;
 
     private final Logger logger;
+    private final JavaPlugin pl;
     private final PortalSpawningContext context;
     private final PortalSpawnConfig config;
+    private final SpawnBlockViewFactory blockViewFactory;
+    private final World world;
 
-    private final Iterator<ChunkPosition> iterator;
     private final IChunkChecker chunkChecker;
     private final Consumer<PortalSpawnPosition> onFinish;
     private final BukkitTask repeatingTask;
 
-    private PortalSpawnPosition currentClosest;
-    private double closestDistance = Double.POSITIVE_INFINITY;
+    // Portal frames can extend into the chunks surrounding the chunk that they are found in, so these must also be snapshotted
+    private final int chunkMargin;
+
+    private SpawnSearch search;
+    private Map<Long, ChunkSnapshot> snapshots;
+    private ISpawnBlockView snapshotView;
+
+    private List<ChunkPosition> currentBatch = null;
+    private final Deque<ChunkPosition> chunksToLoad = new ArrayDeque<>();
+    private int pendingLoads = 0;
+    private boolean isCheckingBatch = false;
+    private boolean isFinished = false;
 
     private int updateCount;
+    private int attempts = 0;
 
     /**
      * Starts checking for portals in a spiral area
@@ -54,62 +77,159 @@ public class AsyncPortalChecker implements Runnable {
      * @param onFinish Called with the spawn position (may be null), when this check is complete
      */
     public AsyncPortalChecker(PortalSpawningContext context, IChunkChecker chunkChecker,
-                              Consumer<PortalSpawnPosition> onFinish, JavaPlugin pl, Logger logger, PortalSpawnConfig config) {
+                              Consumer<PortalSpawnPosition> onFinish, JavaPlugin pl, Logger logger, PortalSpawnConfig config, SpawnBlockViewFactory blockViewFactory) {
         this.logger = logger;
+        this.pl = pl;
         this.context = context;
         this.config = config;
+        this.blockViewFactory = blockViewFactory;
         this.chunkChecker = chunkChecker;
         this.onFinish = onFinish;
+        this.world = Objects.requireNonNull(context.getPreferredLocation().getWorld(), "Preferred location must have a world");
+
+        Vector size = context.getSize();
+        this.chunkMargin = ((int) Math.max(size.getX(), size.getY()) + 3 + 15) >> 4;
+
+        startSearch();
+        this.repeatingTask = Bukkit.getScheduler().runTaskTimer(pl, this, 1, 1);
+    }
+
+    private void startSearch() {
+        attempts++;
 
         // Make an iterator around the chunks of the portal search radius from our destination position
         Location spawnPos = context.getPreferredLocation();
-        this.iterator = new SpiralChunkAreaIterator(
+        Iterator<ChunkPosition> iterator = new SpiralChunkAreaIterator(
             spawnPos.clone().subtract(PORTAL_SEARCH_RADIUS, 0.0, PORTAL_SEARCH_RADIUS),
             spawnPos.clone().add(PORTAL_SEARCH_RADIUS, 0.0, PORTAL_SEARCH_RADIUS)
         );
+        search = new SpawnSearch(iterator, spawnPos, BATCH_SIZE, chunkMargin);
 
-        this.repeatingTask = Bukkit.getScheduler().runTaskTimer(pl, this, 1, 1);
+        snapshots = new HashMap<>();
+        snapshotView = blockViewFactory.createSnapshot(spawnPos, PORTAL_SEARCH_RADIUS, snapshots);
     }
 
     @Override
     public void run() {
         updateCount += 1;
 
-        OperationTimer timer = new OperationTimer();
+        // Wait for the chunks in the current batch to load, or for the current batch to be checked
+        if(isCheckingBatch) {return;}
 
-        // Make sure to stop when we're over the maximum allowed time
-        // NOTE: This might go a little over (by 1ms or so), depending on how long the IChunkChecker takes to do its think
-        while(timer.getTimeTakenMillis() < config.getAllowedSpawnTimePerTick()) {
-            if(!iterator.hasNext()) {
+        if(currentBatch == null) {
+            currentBatch = search.nextBatch();
+            if(currentBatch.isEmpty()) {
                 onFinish();
                 return;
             }
 
-            checkChunk(iterator.next());
+            // Snapshots from finished batches are dropped, unless the new batch also needs them
+            search.evictUnneeded(snapshots);
+            chunksToLoad.addAll(search.getNeededChunks());
+        }
+
+        OperationTimer timer = new OperationTimer();
+
+        // Make sure to stop when we're over the maximum allowed time
+        // NOTE: This might go a little over, depending on how long loading a chunk takes if async loading isn't supported
+        while(!chunksToLoad.isEmpty() && timer.getTimeTakenMillis() < config.getAllowedSpawnTimePerTick()) {
+            loadChunk(chunksToLoad.poll());
+        }
+
+        if(chunksToLoad.isEmpty() && pendingLoads == 0) {
+            checkBatch(currentBatch);
         }
     }
 
-    private void onFinish() {
-        logger.fine("Finished delayed portal check within %d ticks", updateCount);
-        repeatingTask.cancel();
-        onFinish.accept(currentClosest);
+    // Loads the chunk if necessary, then takes a snapshot of it
+    private void loadChunk(ChunkPosition chunk) {
+        long key = SnapshotSpawnBlockView.getChunkKey(chunk.getX(), chunk.getZ());
+        if(snapshots.containsKey(key)) {return;}
+
+        if(!chunkChecker.canGenerateChunks() && !blockViewFactory.isChunkGenerated(world, chunk.getX(), chunk.getZ())) {
+            return;
+        }
+
+        // Avoid loading the same chunk twice
+        snapshots.put(key, null);
+        pendingLoads++;
+        ChunkLoadUtil.loadChunk(world, chunk.getX(), chunk.getZ()).whenComplete((loadedChunk, error) -> {
+            pendingLoads--;
+            if(isFinished) {return;} // The snapshots have already been released
+
+            if(error != null) {
+                logger.warning("Failed to load chunk at %s for portal spawning: %s", chunk, error);
+                snapshots.remove(key);
+                return;
+            }
+
+            snapshots.put(key, loadedChunk.getChunkSnapshot());
+        });
+    }
+
+    private void checkBatch(List<ChunkPosition> batch) {
+        isCheckingBatch = true;
+        // Chunks that failed to load are left as null, which we can't read from
+        snapshots.values().removeIf(Objects::isNull);
+
+        CompletableFuture.supplyAsync(() -> batch.parallelStream()
+                .map(chunk -> chunkChecker.findClosestInChunk(chunk, context, snapshotView))
+                .collect(Collectors.toList()), ForkJoinPool.commonPool()
+        ).whenComplete((results, error) -> {
+            if(isFinished || !pl.isEnabled()) {return;}
+
+            Bukkit.getScheduler().runTask(pl, () -> {
+                if(!isFinished) {onBatchChecked(results, error);}
+            });
+        });
     }
 
-    // Checks this chunk to see if there are any valid positions in it closer than our current closest
-    private void checkChunk(ChunkPosition chunk) {
-        // Perform the rough check specified in the comment for CHUNK_SKIP_DISTANCE
-        double closestTheoreticalDistanceInChunk = chunk.getCenterPos().distance(context.getPreferredLocation()) - CHUNK_SKIP_DISTANCE;
-        if(closestTheoreticalDistanceInChunk > closestDistance) {
+    private void onBatchChecked(List<PortalSpawnPosition> results, Throwable error) {
+        isCheckingBatch = false;
+        currentBatch = null;
+        if(error != null) {
+            logger.warning("Error occurred while checking for a portal spawn position: %s", error);
+            error.printStackTrace();
             return;
         }
 
-        PortalSpawnPosition result = chunkChecker.findClosestInChunk(chunk, context);
-        if(result == null) {return;} // Some chunks might not have any valid positions
+        search.addResults(results);
+    }
 
-        double distance = result.getPosition().distance(context.getPreferredLocation());
-        if(distance < closestDistance) {
-            closestDistance = distance;
-            currentClosest = result;
+    private void onFinish() {
+        PortalSpawnPosition currentClosest = search.getClosest();
+        // The blocks may have changed since the snapshots were taken, so make sure that the position is still valid
+        if(currentClosest != null && !chunkChecker.isValidSpawnPosition(currentClosest, blockViewFactory.createLive(world))) {
+            if(attempts < MAX_ATTEMPTS) {
+                logger.fine("Found spawn position %s is no longer valid, searching again", currentClosest);
+                startSearch();
+                return;
+            }
+
+            currentClosest = null;
         }
+
+        logger.fine("Finished delayed portal check within %d ticks", updateCount);
+        cancel();
+        onFinish.accept(currentClosest);
+    }
+
+    /**
+     * Stops the search without calling the finish callback, and releases the snapshots.
+     * Used when the plugin is disabled while searching.
+     */
+    public void cancel() {
+        isFinished = true;
+        repeatingTask.cancel();
+        chunksToLoad.clear();
+        snapshots = null;
+        snapshotView = null;
+    }
+
+    /**
+     * @return Whether the search has finished or been cancelled
+     */
+    public boolean isFinished() {
+        return isFinished;
     }
 }
@@ -2,25 +2,21 @@ package com.lauriethefish.betterportals.bukkit.portal.spawning;
 
 import com.google.inject.Inject;
 import com.google.inject.Singleton;
+import com.lauriethefish.betterportals.api.IntVector;
 import com.lauriethefish.betterportals.api.PortalDirection;
 import com.lauriethefish.betterportals.bukkit.chunk.chunkpos.ChunkPosition;
-import com.lauriethefish.betterportals.bukkit.chunk.generation.IChunkGenerationChecker;
-import com.lauriethefish.betterportals.bukkit.config.PortalSpawnConfig;
 import com.lauriethefish.betterportals.bukkit.config.WorldLink;
-import com.lauriethefish.betterportals.bukkit.portal.IPortalManager;
 import com.lauriethefish.betterportals.bukkit.util.MaterialUtil;
-import org.bukkit.Chunk;
 import org.bukkit.Location;
 import org.bukkit.Material;
-import org.bukkit.block.Block;
 import org.bukkit.util.Vector;
 import org.jetbrains.annotations.NotNull;
 
-import java.util.ArrayList;
-import java.util.Collection;
+import java.util.*;
 
 /**
  * Finds valid existing portal frames within a chunk to avoid respawning portals when one already exists.
+ * The obsidian and portal blocks in each chunk are found using the {@link PortalBlockIndex}, instead of scanning the chunk.
  * Valid existing portal frames are defined as follows:
  * <ul>
  * <li>A portal block is one not on the corners, but on the rest of the frame or inside of the portal.</li>
@@ -40,118 +36,138 @@ public class ExistingPortalChecker implements IChunkChecker    {
             PortalDirection.NORTH,
             PortalDirection.EAST
     };
-    private static final Vector[] XZ_CHECK_OFFSETS = new Vector[] {
-        new Vector(0.0, 0.0, 0.0),
-        new Vector(1.0, 0.0, 0.0),
-        new Vector(-1.0, 0.0, 0.0),
-        new Vector(0.0, 0.0, -1.0),
-        new Vector(0.0, 0.0, 1.0),
-    };
 
-    private final IPortalManager portalManager;
-    private final PortalSpawnConfig spawnConfig;
-    private final IChunkGenerationChecker generationChecker;
+    private final PortalBlockIndex blockIndex;
 
     @Inject
-    public ExistingPortalChecker(IPortalManager portalManager, PortalSpawnConfig spawnConfig, IChunkGenerationChecker generationChecker) {
-        this.portalManager = portalManager;
-        this.spawnConfig = spawnConfig;
-        this.generationChecker = generationChecker;
+    public ExistingPortalChecker(PortalBlockIndex blockIndex) {
+        this.blockIndex = blockIndex;
     }
 
     @Override
-    public PortalSpawnPosition findClosestInChunk(@NotNull ChunkPosition chunk, @NotNull PortalSpawningContext context) {
-        if(!generationChecker.isChunkGenerated(chunk)) {
+    public PortalSpawnPosition findClosestInChunk(@NotNull ChunkPosition chunk, @NotNull PortalSpawningContext context, @NotNull ISpawnBlockView blocks) {
+        if(!blocks.isChunkAvailable(chunk.getX(), chunk.getZ())) {
             return null;
         }
 
-        int frameSize = context.getSize().getBlockY() + 2;
-        Collection<Location> obsidianBlocks = searchForObsidianBlocks(chunk, frameSize, context.getWorldLink());
-
-        PortalSpawnPosition closestPosition = null;
-        double closestDistance = Double.POSITIVE_INFINITY;
-
-        for(Location block : obsidianBlocks) {
-            // Because the above may only check every frameSize(th) block, we have to check the surrounding areas for portals here
-            // This ends up being faster, since most chunks have very little obsidian in them
-            for(int yOffset = -frameSize; yOffset <= frameSize; yOffset++) {
-                // We also must check surrounding blocks on the X/Z for portals, since otherwise it wouldn't work if the portal corners don't exist.
-                for(Vector offset : XZ_CHECK_OFFSETS) {
-                    Location offsetBlock = block.clone().add(offset);
-                    offsetBlock.setY(offsetBlock.getY() + yOffset);
-                    // Check the distance here to speed it up a bit if a location gets found
-                    double distance = offsetBlock.distance(context.getPreferredLocation());
-                    if (distance >= closestDistance) {continue;}
-
-                    for (PortalDirection direction : CHECKED_DIRECTIONS) {
-                        if (validPortalExists(offsetBlock, direction, context.getSize())) {
-                            closestPosition = new PortalSpawnPosition(offsetBlock, context.getSize(), direction);
-                            closestDistance = distance;
+        WorldLink link = context.getWorldLink();
+        int frameWidth = context.getSize().getBlockX() + 1;
+        int frameHeight = context.getSize().getBlockY() + 1;
+
+        // Each obsidian block could be any block on the edge of a frame, and each portal block could be any block inside it
+        // We find the bottom left corner of the frame for each of these, then check the closest ones first
+        List<Candidate> candidates = new ArrayList<>();
+        for(PortalDirection direction : CHECKED_DIRECTIONS) {
+            Set<IntVector> origins = new HashSet<>();
+            for(IntVector block : blockIndex.getObsidianBlocks(blocks, chunk.getX(), chunk.getZ())) {
+                if(block.getY() < link.getMinSpawnY() || block.getY() >= link.getMaxSpawnY()) {continue;}
+
+                for(int x = 0; x <= frameWidth; x++) {
+                    for(int y = 0; y <= frameHeight; y++) {
+                        boolean isFrame = x == 0 || y == 0 || x == frameWidth || y == frameHeight;
+                        if(isFrame) {
+                            origins.add(findOrigin(block, direction, x, y));
                         }
                     }
                 }
             }
-        }
 
-        return closestPosition;
-    }
+            for(IntVector block : blockIndex.getPortalBlocks(blocks, chunk.getX(), chunk.getZ())) {
+                if(block.getY() < link.getMinSpawnY() || block.getY() >= link.getMaxSpawnY()) {continue;}
 
-    /**
-     * We first do a (relatively) quick check for all the obsidian blocks in the chunk to make this faster.
-     * @param yIncrement We can skip some of the blocks in the chunk for larger portals, because they are so tall we can skip even 1 out of 5 blocks and we'll always hit at least one obsidian
-     * @param worldLink Used for the minimum and maximum spawn height
-     * @return The list of obsidian blocks
-     */
-    private Collection<Location> searchForObsidianBlocks(ChunkPosition chunkPos, int yIncrement, WorldLink worldLink) {
-        Collection<Location> result = new ArrayList<>();
-
-        Chunk chunk = chunkPos.getChunk();
-        // The yIncrement is used to skip checking some Y levels as for 5 tall portals, we only need to check every fifth Y coordinate to guarantee that we hit one of the obsidian blocks
-        // Then we can just search the surrounding area for portal positions afterwards
-        // This helps performance a ton
-        for(int y = worldLink.getMinSpawnY(); y < worldLink.getMaxSpawnY(); y += yIncrement) {
-            for(int z = 0; z < 16; z += 1) {
-                for(int x = 0; x < 16; x += 1) {
-                    Block block = chunk.getBlock(x, y, z);
-                    if(block.getType() == Material.OBSIDIAN) {
-                        result.add(block.getLocation());
+                for(int x = 1; x < frameWidth; x++) {
+                    for(int y = 1; y < frameHeight; y++) {
+                        origins.add(findOrigin(block, direction, x, y));
                     }
                 }
             }
+
+            for(IntVector origin : origins) {
+                candidates.add(new Candidate(origin, direction, distance(origin.getX(), origin.getY(), origin.getZ(), context.getPreferredLocation())));
+            }
+        }
+
+        candidates.sort(Comparator.comparingDouble(candidate -> candidate.distance));
+        for(Candidate candidate : candidates) {
+            IntVector origin = candidate.origin;
+            if(validPortalExists(blocks, origin.getX(), origin.getY(), origin.getZ(), candidate.direction, context.getSize())) {
+                return new PortalSpawnPosition(new Location(blocks.getWorld(), origin.getX(), origin.getY(), origin.getZ()), context.getSize(), candidate.direction);
+            }
+        }
+
+        return null;
+    }
+
+    // Finds the bottom left corner of a frame, given that the block is at (x, y) within it
+    private static IntVector findOrigin(IntVector block, PortalDirection direction, int x, int y) {
+        boolean isSwapped = direction == PortalDirection.EAST || direction == PortalDirection.WEST;
+        return new IntVector(block.getX() - (isSwapped ? 0 : x), block.getY() - y, block.getZ() - (isSwapped ? x : 0));
+    }
+
+    private static class Candidate {
+        private final IntVector origin;
+        private final PortalDirection direction;
+        private final double distance;
+
+        private Candidate(IntVector origin, PortalDirection direction, double distance) {
+            this.origin = origin;
+            this.direction = direction;
+            this.distance = distance;
         }
+    }
 
-        return result;
+    private static double distance(int x, int y, int z, Location other) {
+        double dx = x - other.getX();
+        double dy = y - other.getY();
+        double dz = z - other.getZ();
+        return Math.sqrt(dx * dx + dy * dy + dz * dz);
+    }
+
+    @Override
+    public boolean isValidSpawnPosition(@NotNull PortalSpawnPosition position, @NotNull ISpawnBlockView blocks) {
+        Location location = position.getPosition();
+        return validPortalExists(blocks, location.getBlockX(), location.getBlockY(), location.getBlockZ(), position.getDirection(), position.getSize());
+    }
+
+    // Existing portals are only searched for in generated chunks, since generating chunks is slow and new ones won't contain any portals anyway
+    @Override
+    public boolean canGenerateChunks() {
+        return false;
     }
 
     /**
-     * 
-     * @param location The bottom left corner of the portal (lowest of the coordinates)
+     * @param blocks Blocks to check
+     * @param originX X coordinate of the bottom left corner of the portal (lowest of the coordinates)
+     * @param originY Y coordinate of the bottom left corner
+     * @param originZ Z coordinate of the bottom left corner
      * @param direction Direction of the portal
      * @param size Size to test
-     * @return Whether a portal frame already exists at <code>location</code>.
+     * @return Whether a portal frame already exists at the given position.
      */
-    private boolean validPortalExists(Location location, PortalDirection direction, Vector size) {
+    private boolean validPortalExists(ISpawnBlockView blocks, int originX, int originY, int originZ, PortalDirection direction, Vector size) {
         // We need the size of the actual portal frame, not the portal window
-        size = new Vector(size.getX() + 1.0, size.getY() + 1.0, 0.0);
+        int sizeX = size.getBlockX() + 1;
+        int sizeY = size.getBlockY() + 1;
+        boolean isSwapped = direction == PortalDirection.EAST || direction == PortalDirection.WEST;
 
         // Find which blocks of the portal frame are correct
-        int blocks = 0;
+        int totalBlocks = 0;
         int validBlocks = 0;
-        for(int x = 0; x <= size.getX(); x++) {
-            for(int y = 0; y <= size.getY(); y++) {
+        for(int x = 0; x <= sizeX; x++) {
+            for(int y = 0; y <= sizeY; y++) {
                 // Corner blocks don't need to be taken into account - these aren't required
-                if((x == 0 && y == 0) || (x == size.getX() && y == 0) || (x == 0 && y == size.getY()) || (x == size.getX() && y == size.getY())) {
+                if((x == 0 && y == 0) || (x == sizeX && y == 0) || (x == 0 && y == sizeY) || (x == sizeX && y == sizeY)) {
                     continue;
                 }
 
-                boolean isFrame = x == 0 || y == 0 || x == size.getX() || y == size.getY();
-
-                Vector offset = direction.swapVector(new Vector(x, y, 0.0));
+                boolean isFrame = x == 0 || y == 0 || x == sizeX || y == sizeY;
 
-                Location blockPos = location.clone().add(offset);
+                // EAST/WEST portals run along the Z axis instead of the X
+                int blockX = originX + (isSwapped ? 0 : x);
+                int blockZ = originZ + (isSwapped ? x : 0);
 
-                blocks++;
-                Material type = blockPos.getBlock().getType();
+                totalBlocks++;
+                Material type = blocks.getType(blockX, originY + y, blockZ);
                 // Frame blocks must only be obsidian, interior blocks can be air or portal blocks
                 if(isFrame) {
                     if(type == Material.OBSIDIAN) {
@@ -165,13 +181,12 @@ public class ExistingPortalChecker implements IChunkChecker    {
             }
         }
 
-        double percentageValid = (double) validBlocks / (double) blocks;
-        boolean isValid = percentageValid >= VALIDITY_THRESHOLD;
-        // Make sure that there aren't any other portals too close
-        boolean isFarEnoughSpaced = portalManager.findClosestPortal(location, spawnConfig.getMinimumPortalSpawnDistance()) == null;
-        // Don't spawn portals outside the world border!
-        boolean isInsideWorldBorder = location.getWorld().getWorldBorder().isInside(location);
+        double percentageValid = (double) validBlocks / (double) totalBlocks;
+        if(percentageValid < VALIDITY_THRESHOLD) {
+            return false;
+        }
 
-        return isInsideWorldBorder && isFarEnoughSpaced && isValid;
+        // Make sure that there aren't any other portals too close, and don't spawn portals outside the world border!
+        return blocks.isInsideWorldBorder(originX, originZ) && !blocks.isNearExistingPortal(originX, originY, originZ);
     }
 }
@@ -6,13 +6,29 @@ import org.jetbrains.annotations.Nullable;
 
 /**
  * Checks a chunk for either existing or new {@link PortalSpawnPosition}s.
+ * Implementations must be thread safe, since chunks are checked in parallel.
  */
 public interface IChunkChecker {
     /**
      * Finds the closest valid position in <code>chunk</code>.
      * @param chunk The chunk to check
      * @param context The preferred spawn position and size
+     * @param blocks The blocks to check, which must include the chunks surrounding <code>chunk</code> if they exist
      * @return The closest position in the chunk to the context's preferred position, or null if there is none.
      */
-    @Nullable PortalSpawnPosition findClosestInChunk(@NotNull ChunkPosition chunk, @NotNull PortalSpawningContext context);
+    @Nullable PortalSpawnPosition findClosestInChunk(@NotNull ChunkPosition chunk, @NotNull PortalSpawningContext context, @NotNull ISpawnBlockView blocks);
+
+    /**
+     * Checks that a position found by {@link #findClosestInChunk(ChunkPosition, PortalSpawningContext, ISpawnBlockView)} is still valid.
+     * This is used to validate positions found from chunk snapshots against the live world before spawning.
+     * @param position The position to check
+     * @param blocks The blocks to check
+     * @return Whether the position is valid
+     */
+    boolean isValidSpawnPosition(@NotNull PortalSpawnPosition position, @NotNull ISpawnBlockView blocks);
+
+    /**
+     * @return Whether this checker should generate chunks that haven't been generated yet in order to check them
+     */
+    boolean canGenerateChunks();
 }
@@ -15,4 +15,9 @@ public interface IPortalSpawner {
      * @return true once the spawn has started, false if no valid WorldLink was found.
      */
     boolean findAndSpawnDestination(@NotNull Location originPosition, @NotNull Vector size, Consumer<PortalSpawnPosition> onFinish);
+
+    /**
+     * Cancels any searches for a destination that are still running, since they can't finish once the plugin is disabled.
+     */
+    void stop();
 }
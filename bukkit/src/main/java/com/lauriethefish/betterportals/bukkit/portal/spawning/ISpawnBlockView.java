@@ -0,0 +1,61 @@
+package com.lauriethefish.betterportals.bukkit.portal.spawning;
+
+import org.bukkit.ChunkSnapshot;
+import org.bukkit.Material;
+import org.bukkit.World;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Provides the blocks and other world state that {@link IChunkChecker}s use to find spawn positions.
+ * This allows the same checks to run against the live world on the main thread, or against chunk snapshots on other threads.
+ */
+public interface ISpawnBlockView {
+    /**
+     * @return The world that the blocks are in
+     */
+    @NotNull World getWorld();
+
+    /**
+     * @param x Block X coordinate
+     * @param y Block Y coordinate
+     * @param z Block Z coordinate
+     * @return The type of the block at the given coordinates, or {@link Material#AIR} if the block isn't available.
+     */
+    @NotNull Material getType(int x, int y, int z);
+
+    /**
+     * @param chunkX Chunk X coordinate
+     * @param chunkZ Chunk Z coordinate
+     * @return A snapshot of the chunk, or null if the chunk isn't available
+     */
+    @Nullable ChunkSnapshot getChunkSnapshot(int chunkX, int chunkZ);
+
+    /**
+     * Must be called before {@link #getChunkSnapshot(int, int)}, since live views capture snapshots when they are requested.
+     * @return The {@link PortalBlockIndex#getChangeSequence()} from before the snapshots returned by this view were captured
+     */
+    long getSnapshotSequence();
+
+    /**
+     * @param chunkX Chunk X coordinate
+     * @param chunkZ Chunk Z coordinate
+     * @return Whether the chunk has been generated, and its blocks can be checked
+     */
+    boolean isChunkAvailable(int chunkX, int chunkZ);
+
+    /**
+     * @param x Block X coordinate
+     * @param z Block Z coordinate
+     * @return Whether the block is inside the world border
+     */
+    boolean isInsideWorldBorder(int x, int z);
+
+    /**
+     * @param x Block X coordinate
+     * @param y Block Y coordinate
+     * @param z Block Z coordinate
+     * @return Whether there is an existing portal closer than the minimum portal spawn distance
+     */
+    boolean isNearExistingPortal(int x, int y, int z);
+}
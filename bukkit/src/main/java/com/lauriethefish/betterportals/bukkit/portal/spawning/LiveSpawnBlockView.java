@@ -0,0 +1,66 @@
+package com.lauriethefish.betterportals.bukkit.portal.spawning;
+
+import com.lauriethefish.betterportals.bukkit.chunk.generation.IChunkGenerationChecker;
+import com.lauriethefish.betterportals.bukkit.portal.IPortalManager;
+import org.bukkit.ChunkSnapshot;
+import org.bukkit.Location;
+import org.bukkit.Material;
+import org.bukkit.World;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Reads directly from the world, so must only be used on the main thread.
+ */
+public class LiveSpawnBlockView implements ISpawnBlockView {
+    private final World world;
+    private final IPortalManager portalManager;
+    private final IChunkGenerationChecker generationChecker;
+    private final PortalBlockIndex blockIndex;
+    private final double minimumPortalSpawnDistance;
+
+    public LiveSpawnBlockView(World world, IPortalManager portalManager, IChunkGenerationChecker generationChecker, PortalBlockIndex blockIndex, double minimumPortalSpawnDistance) {
+        this.world = world;
+        this.portalManager = portalManager;
+        this.generationChecker = generationChecker;
+        this.blockIndex = blockIndex;
+        this.minimumPortalSpawnDistance = minimumPortalSpawnDistance;
+    }
+
+    @Override
+    public @NotNull World getWorld() {
+        return world;
+    }
+
+    @Override
+    public @NotNull Material getType(int x, int y, int z) {
+        return world.getBlockAt(x, y, z).getType();
+    }
+
+    @Override
+    public @Nullable ChunkSnapshot getChunkSnapshot(int chunkX, int chunkZ) {
+        if(!isChunkAvailable(chunkX, chunkZ)) {return null;}
+
+        return world.getChunkAt(chunkX, chunkZ).getChunkSnapshot();
+    }
+
+    @Override
+    public long getSnapshotSequence() {
+        return blockIndex.getChangeSequence();
+    }
+
+    @Override
+    public boolean isChunkAvailable(int chunkX, int chunkZ) {
+        return generationChecker.isChunkGenerated(world, chunkX, chunkZ);
+    }
+
+    @Override
+    public boolean isInsideWorldBorder(int x, int z) {
+        return world.getWorldBorder().isInside(new Location(world, x, 0.0, z));
+    }
+
+    @Override
+    public boolean isNearExistingPortal(int x, int y, int z) {
+        return portalManager.findClosestPortal(new Location(world, x, y, z), minimumPortalSpawnDistance) != null;
+    }
+}
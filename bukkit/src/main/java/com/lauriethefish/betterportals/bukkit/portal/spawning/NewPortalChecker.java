@@ -4,9 +4,7 @@ import com.google.inject.Inject;
 import com.google.inject.Singleton;
 import com.lauriethefish.betterportals.api.PortalDirection;
 import com.lauriethefish.betterportals.bukkit.chunk.chunkpos.ChunkPosition;
-import com.lauriethefish.betterportals.bukkit.config.PortalSpawnConfig;
 import com.lauriethefish.betterportals.bukkit.config.WorldLink;
-import com.lauriethefish.betterportals.bukkit.portal.IPortalManager;
 import com.lauriethefish.betterportals.bukkit.util.MaterialUtil;
 import org.bukkit.Location;
 import org.bukkit.Material;
@@ -14,6 +12,8 @@ import org.bukkit.util.Vector;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
+import java.util.Objects;
+
 /**
  * Finds new valid portal positions in a chunk
  *
@@ -32,34 +32,48 @@ public class NewPortalChecker implements IChunkChecker  {
             PortalDirection.EAST
     };
 
-    private final IPortalManager portalManager;
-    private final PortalSpawnConfig spawnConfig;
+    private final SpawnBlockViewFactory blockViewFactory;
 
     @Inject
-    public NewPortalChecker(IPortalManager portalManager, PortalSpawnConfig spawnConfig) {
-        this.portalManager = portalManager;
-        this.spawnConfig = spawnConfig;
+    public NewPortalChecker(SpawnBlockViewFactory blockViewFactory) {
+        this.blockViewFactory = blockViewFactory;
     }
 
     @Override
-    public @Nullable PortalSpawnPosition findClosestInChunk(@NotNull ChunkPosition chunk, @NotNull PortalSpawningContext context) {
+    public @Nullable PortalSpawnPosition findClosestInChunk(@NotNull ChunkPosition chunk, @NotNull PortalSpawningContext context, @NotNull ISpawnBlockView blocks) {
         PortalSpawnPosition currentClosest = null;
         double closestDistance = Double.POSITIVE_INFINITY;
 
+        Location preferred = context.getPreferredLocation();
+        int baseX = chunk.getX() << 4;
+        int baseZ = chunk.getZ() << 4;
+        int frameWidth = context.getSize().getBlockX() + 1;
+        int frameHeight = context.getSize().getBlockY() + 1;
+
+        // Read each block that any position in this chunk could use once, including the blocks going through the portal on either side
         WorldLink link = context.getWorldLink();
+        SpawnColumnGrid grid = new SpawnColumnGrid(blocks,
+                baseX - 1, link.getMinSpawnY(), baseZ - 1,
+                baseX + 15 + frameWidth, link.getMaxSpawnY() + frameHeight, baseZ + 15 + frameWidth
+        );
+
         for(int y = link.getMinSpawnY(); y < link.getMaxSpawnY(); y++) {
-            for(int x = 0; x < 16; x++) {
-                for(int z = 0; z < 16; z++) {
-                    Location blockPos = chunk.getBottomLeft().add(x, y, z);
+            grid.selectLayer(y, frameHeight - 1);
+
+            for(int x = baseX; x < baseX + 16; x++) {
+                for(int z = baseZ; z < baseZ + 16; z++) {
                     // Do this here to avoid the expensive check if at-all possible
-                    double distance = blockPos.distance(context.getPreferredLocation());
+                    double dx = x - preferred.getX();
+                    double dy = y - preferred.getY();
+                    double dz = z - preferred.getZ();
+                    double distance = Math.sqrt(dx * dx + dy * dy + dz * dz);
                     if(distance >= closestDistance) {continue;}
 
                     // Make sure to check both directions for a valid spawn position
                     for(PortalDirection direction : CHECKED_DIRECTIONS) {
-                        if(isValidPortalSpawnPosition(blockPos, direction, context.getSize())) {
+                        if(fitsPortal(grid, x, z, direction, frameWidth) && isSpacedCorrectly(blocks, x, y, z)) {
                             closestDistance = distance;
-                            currentClosest = new PortalSpawnPosition(blockPos, context.getSize(), direction);
+                            currentClosest = new PortalSpawnPosition(new Location(blocks.getWorld(), x, y, z), context.getSize(), direction);
                         }
                     }
                 }
@@ -69,18 +83,84 @@ public class NewPortalChecker implements IChunkChecker  {
         return currentClosest;
     }
 
+    /**
+     * Checks the blocks at a position using the prefix sums in <code>grid</code>, which is equivalent to the block checks in {@link #isValidPortalSpawnPosition(ISpawnBlockView, int, int, int, PortalDirection, Vector)}.
+     * @param grid Grid with the layer of the portal's floor selected
+     * @param originX X coordinate of the bottom left corner of the portal frame
+     * @param originZ Z coordinate of the bottom left corner of the portal frame
+     * @param direction Direction of the portal
+     * @param frameWidth Width of the portal frame, including both sides
+     * @return Whether the floor is solid and the inside of the portal is air
+     */
+    private boolean fitsPortal(SpawnColumnGrid grid, int originX, int originZ, PortalDirection direction, int frameWidth) {
+        // The floor includes the corners, the inside doesn't. Both also include the blocks on either side going through the portal
+        if(direction == PortalDirection.EAST || direction == PortalDirection.WEST) {
+            return grid.isFloorSolid(originX - 1, originZ, originX + 1, originZ + frameWidth)
+                    && grid.isInteriorAir(originX - 1, originZ + 1, originX + 1, originZ + frameWidth - 1);
+        }   else    {
+            return grid.isFloorSolid(originX, originZ - 1, originX + frameWidth, originZ + 1)
+                    && grid.isInteriorAir(originX + 1, originZ - 1, originX + frameWidth - 1, originZ + 1);
+        }
+    }
+
+    @Override
+    public boolean isValidSpawnPosition(@NotNull PortalSpawnPosition position, @NotNull ISpawnBlockView blocks) {
+        Location location = position.getPosition();
+        return isValidPortalSpawnPosition(blocks, location.getBlockX(), location.getBlockY(), location.getBlockZ(), position.getDirection(), position.getSize());
+    }
+
+    @Override
+    public boolean canGenerateChunks() {
+        return true;
+    }
+
+    /**
+     * Checks if a portal can be spawned at <code>location</code> in the live world using the same accelerated checks as {@link #findClosestInChunk(ChunkPosition, PortalSpawningContext, ISpawnBlockView)}.
+     * Used for checking that these give the same result as {@link #isValidPortalSpawnPosition(Location, PortalDirection, Vector)}. Must be called on the main thread.
+     * @param location The bottom left corner of the portal frame
+     * @param direction Direction of the portal
+     * @param size Size of the portal window
+     * @return Whether a portal can be spawned here
+     */
+    public boolean isValidPortalSpawnPositionAccelerated(Location location, PortalDirection direction, Vector size) {
+        ISpawnBlockView blocks = blockViewFactory.createLive(Objects.requireNonNull(location.getWorld()));
+        int x = location.getBlockX();
+        int y = location.getBlockY();
+        int z = location.getBlockZ();
+        int frameWidth = size.getBlockX() + 1;
+        int frameHeight = size.getBlockY() + 1;
+
+        SpawnColumnGrid grid = new SpawnColumnGrid(blocks, x - frameWidth - 1, y, z - frameWidth - 1, x + frameWidth + 1, y + frameHeight, z + frameWidth + 1);
+        grid.selectLayer(y, frameHeight - 1);
+        return fitsPortal(grid, x, z, direction, frameWidth) && isSpacedCorrectly(blocks, x, y, z);
+    }
+
+    /**
+     * Checks if a portal can be spawned at <code>location</code> in the live world. Must be called on the main thread.
+     * @param location The bottom left corner of the portal frame
+     * @param direction Direction of the portal
+     * @param size Size of the portal window
+     * @return Whether a portal can be spawned here
+     */
     public boolean isValidPortalSpawnPosition(Location location, PortalDirection direction, Vector size) {
-        size = new Vector(size.getX() + 1, size.getY() + 1, 0.0);
+        ISpawnBlockView blocks = blockViewFactory.createLive(Objects.requireNonNull(location.getWorld()));
+        return isValidPortalSpawnPosition(blocks, location.getBlockX(), location.getBlockY(), location.getBlockZ(), direction, size);
+    }
 
-        for(int z = -1; z <= 1; z++) {
-            for (int x = 0; x <= size.getX(); x++) {
-                for (int y = 0; y <= size.getY(); y++) {
-                    Vector frameRelativePos = new Vector(x, y, z);
+    private boolean isValidPortalSpawnPosition(ISpawnBlockView blocks, int originX, int originY, int originZ, PortalDirection direction, Vector size) {
+        int sizeX = size.getBlockX() + 1;
+        int sizeY = size.getBlockY() + 1;
+        // EAST/WEST portals run along the Z axis instead of the X
+        boolean isSwapped = direction == PortalDirection.EAST || direction == PortalDirection.WEST;
 
-                    Location blockPos = location.clone().add(direction.swapVector(frameRelativePos));
-                    Material type = blockPos.getBlock().getType();
+        for(int z = -1; z <= 1; z++) {
+            for (int x = 0; x <= sizeX; x++) {
+                for (int y = 0; y <= sizeY; y++) {
+                    int blockX = originX + (isSwapped ? z : x);
+                    int blockZ = originZ + (isSwapped ? x : z);
+                    Material type = blocks.getType(blockX, originY + y, blockZ);
 
-                    boolean isFrame = x == 0 || y == 0 || x == size.getX() || y == size.getY();
+                    boolean isFrame = x == 0 || y == 0 || x == sizeX || y == sizeY;
 
                     if ((!isFrame) && !MaterialUtil.isAir(type)) { // Portal block positions must be air
                         return false;
@@ -92,11 +172,11 @@ public class NewPortalChecker implements IChunkChecker  {
             }
         }
 
-        // Make sure that there aren't any other portals too close
-        boolean isFarEnoughSpaced = portalManager.findClosestPortal(location, spawnConfig.getMinimumPortalSpawnDistance()) == null;
-        // Don't spawn portals outside the world border!
-        boolean isInsideWorldBorder = location.getWorld().getWorldBorder().isInside(location);
+        return isSpacedCorrectly(blocks, originX, originY, originZ);
+    }
 
-        return isFarEnoughSpaced && isInsideWorldBorder;
+    private boolean isSpacedCorrectly(ISpawnBlockView blocks, int originX, int originY, int originZ) {
+        // Make sure that there aren't any other portals too close, and don't spawn portals outside the world border!
+        return !blocks.isNearExistingPortal(originX, originY, originZ) && blocks.isInsideWorldBorder(originX, originZ);
     }
 }
@@ -0,0 +1,253 @@
+package com.lauriethefish.betterportals.bukkit.portal.spawning;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.lauriethefish.betterportals.api.IntVector;
+import com.lauriethefish.betterportals.bukkit.events.IEventRegistrar;
+import com.lauriethefish.betterportals.bukkit.util.HeightUtil;
+import com.lauriethefish.betterportals.bukkit.util.MaterialUtil;
+import com.lauriethefish.betterportals.bukkit.util.VersionUtil;
+import org.bukkit.Bukkit;
+import org.bukkit.ChunkSnapshot;
+import org.bukkit.Material;
+import org.bukkit.World;
+import org.bukkit.block.Block;
+import org.bukkit.block.BlockFace;
+import org.bukkit.block.BlockState;
+import org.bukkit.block.data.BlockData;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.block.BlockBreakEvent;
+import org.bukkit.event.block.BlockExplodeEvent;
+import org.bukkit.event.block.BlockFormEvent;
+import org.bukkit.event.block.BlockPistonExtendEvent;
+import org.bukkit.event.block.BlockPistonRetractEvent;
+import org.bukkit.event.block.BlockPlaceEvent;
+import org.bukkit.event.entity.EntityExplodeEvent;
+import org.bukkit.event.world.PortalCreateEvent;
+import org.bukkit.event.world.WorldUnloadEvent;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps an index of the obsidian and portal blocks in each chunk, so that {@link ExistingPortalChecker} doesn't have to scan every chunk in the search radius each time a portal is lit.
+ * Chunks are indexed lazily the first time that they are checked, then kept up to date using block events.
+ * Entries are kept after chunks unload, since blocks can't be changed by events while unloaded, so chunks checked by earlier searches don't need to be indexed again.
+ * Blocks written by the plugin without an event are handled by {@link #invalidate(World, int, int)}.
+ * Blocks changed without an event by other plugins may be missing from the index, but positions found using it are always checked against the actual blocks.
+ * This is safe to read from any thread.
+ */
+@Singleton
+public class PortalBlockIndex implements Listener {
+    // Allows skipping chunks without any obsidian or portal blocks without checking each block
+    private static final boolean CAN_CHECK_PALETTE = VersionUtil.isMcVersionAtLeast("1.17.0");
+
+    private static final BlockFace[] MOVED_BLOCK_FACES = {BlockFace.SELF, BlockFace.NORTH, BlockFace.EAST, BlockFace.SOUTH, BlockFace.WEST};
+
+    private final Map<World, WorldBlockIndex> worlds = new ConcurrentHashMap<>();
+    private final List<BlockData> indexedBlockData = new ArrayList<>();
+    // Incremented for each change, so that changes can be ordered against snapshots without relying on the world time, which can stop or go backwards
+    private final AtomicLong changeSequence = new AtomicLong();
+
+    @Inject
+    public PortalBlockIndex(IEventRegistrar eventRegistrar) {
+        if(CAN_CHECK_PALETTE) {
+            indexedBlockData.add(Material.OBSIDIAN.createBlockData());
+            indexedBlockData.add(Bukkit.createBlockData(MaterialUtil.PORTAL_MATERIAL, "[axis=x]"));
+            indexedBlockData.add(Bukkit.createBlockData(MaterialUtil.PORTAL_MATERIAL, "[axis=z]"));
+        }
+
+        eventRegistrar.register(this);
+    }
+
+    /**
+     * @return The sequence number of the latest change. Snapshots captured after reading this include every change up to it
+     */
+    public long getChangeSequence() {
+        return changeSequence.get();
+    }
+
+    /**
+     * Removes the index of a chunk after its blocks were changed without an event, so that it is indexed again next time it is needed.
+     * Must be called on the main thread, after the blocks have been changed.
+     * @param world World of the chunk
+     * @param chunkX Chunk X coordinate
+     * @param chunkZ Chunk Z coordinate
+     */
+    public void invalidate(@NotNull World world, int chunkX, int chunkZ) {
+        getIndex(world).invalidate(SnapshotSpawnBlockView.getChunkKey(chunkX, chunkZ), changeSequence.incrementAndGet());
+    }
+
+    /**
+     * Finds the obsidian blocks in a chunk, indexing it first if necessary.
+     * @param blocks Used to get a snapshot of the chunk if it hasn't been indexed yet
+     * @param chunkX Chunk X coordinate
+     * @param chunkZ Chunk Z coordinate
+     * @return The positions of the obsidian blocks in the chunk, empty if the chunk isn't available
+     */
+    public @NotNull Collection<IntVector> getObsidianBlocks(@NotNull ISpawnBlockView blocks, int chunkX, int chunkZ) {
+        ChunkEntry entry = getEntry(blocks, chunkX, chunkZ);
+        return entry == null ? Collections.emptySet() : entry.getObsidianBlocks();
+    }
+
+    /**
+     * Finds the portal blocks in a chunk, indexing it first if necessary.
+     * @param blocks Used to get a snapshot of the chunk if it hasn't been indexed yet
+     * @param chunkX Chunk X coordinate
+     * @param chunkZ Chunk Z coordinate
+     * @return The positions of the portal blocks in the chunk, empty if the chunk isn't available
+     */
+    public @NotNull Collection<IntVector> getPortalBlocks(@NotNull ISpawnBlockView blocks, int chunkX, int chunkZ) {
+        ChunkEntry entry = getEntry(blocks, chunkX, chunkZ);
+        return entry == null ? Collections.emptySet() : entry.getPortalBlocks();
+    }
+
+    private WorldBlockIndex.ChunkEntry getEntry(ISpawnBlockView blocks, int chunkX, int chunkZ) {
+        WorldBlockIndex index = getIndex(blocks.getWorld());
+        long key = SnapshotSpawnBlockView.getChunkKey(chunkX, chunkZ);
+
+        WorldBlockIndex.ChunkEntry entry = index.get(key);
+        if(entry != null) {return entry;}
+
+        // This must be read first, since live views capture the snapshot when it is requested
+        long captureSequence = blocks.getSnapshotSequence();
+        ChunkSnapshot snapshot = blocks.getChunkSnapshot(chunkX, chunkZ);
+        if(snapshot == null) {return null;}
+
+        // Blocks changed after the snapshot was taken are checked for before the entry is stored
+        return index.publish(key, indexChunk(blocks.getWorld(), snapshot), captureSequence);
+    }
+
+    private WorldBlockIndex getIndex(World world) {
+        return worlds.computeIfAbsent(world, w -> new WorldBlockIndex());
+    }
+
+    private WorldBlockIndex.ChunkEntry indexChunk(World world, ChunkSnapshot snapshot) {
+        WorldBlockIndex.ChunkEntry entry = new WorldBlockIndex.ChunkEntry();
+        if(CAN_CHECK_PALETTE && indexedBlockData.stream().noneMatch(snapshot::contains)) {
+            return entry;
+        }
+
+        int minHeight = HeightUtil.getMinHeight(world);
+        int maxHeight = HeightUtil.getMaxHeight(world);
+        int baseX = snapshot.getX() << 4;
+        int baseZ = snapshot.getZ() << 4;
+        for(int sectionY = minHeight; sectionY < maxHeight; sectionY += 16) {
+            // Sections that only contain air don't need to be checked
+            if(snapshot.isSectionEmpty((sectionY - minHeight) >> 4)) {continue;}
+
+            for(int y = sectionY; y < Math.min(sectionY + 16, maxHeight); y++) {
+                for(int z = 0; z < 16; z++) {
+                    for(int x = 0; x < 16; x++) {
+                        Material type = snapshot.getBlockType(x, y, z);
+                        if(type == Material.OBSIDIAN) {
+                            entry.addObsidian(new IntVector(baseX + x, y, baseZ + z));
+                        }   else if(type == MaterialUtil.PORTAL_MATERIAL) {
+                            entry.addPortal(new IntVector(baseX + x, y, baseZ + z));
+                        }
+                    }
+                }
+            }
+        }
+
+        return entry;
+    }
+
+    private static boolean isIndexed(Material type) {
+        return type == Material.OBSIDIAN || type == MaterialUtil.PORTAL_MATERIAL;
+    }
+
+    // Updates the index if the block's chunk has been indexed, otherwise records the change so that an index from an earlier snapshot isn't stored
+    private void onBlockChanged(Block block, Material oldType, Material newType) {
+        if(!isIndexed(oldType) && !isIndexed(newType)) {return;}
+
+        World world = block.getWorld();
+        getIndex(world).onBlockChanged(
+                SnapshotSpawnBlockView.getChunkKey(block.getX() >> 4, block.getZ() >> 4),
+                new IntVector(block.getX(), block.getY(), block.getZ()),
+                newType == Material.OBSIDIAN,
+                newType == MaterialUtil.PORTAL_MATERIAL,
+                changeSequence.incrementAndGet()
+        );
+    }
+
+    // Moved blocks may cross into neighbouring chunks, so the chunks around each moved block are indexed again rather than working out where each block ends up
+    private void onBlocksMoved(List<Block> blocks) {
+        Set<Long> changedChunks = new HashSet<>();
+        World world = null;
+        for(Block block : blocks) {
+            if(!isIndexed(block.getType())) {continue;}
+
+            world = block.getWorld();
+            for(BlockFace face : MOVED_BLOCK_FACES) {
+                changedChunks.add(SnapshotSpawnBlockView.getChunkKey((block.getX() + face.getModX()) >> 4, (block.getZ() + face.getModZ()) >> 4));
+            }
+        }
+        if(world == null) {return;}
+
+        WorldBlockIndex index = getIndex(world);
+        long sequence = changeSequence.incrementAndGet();
+        changedChunks.forEach(key -> index.invalidate(key, sequence));
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onBlockPlace(BlockPlaceEvent event) {
+        onBlockChanged(event.getBlockPlaced(), event.getBlockReplacedState().getType(), event.getBlockPlaced().getType());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onBlockBreak(BlockBreakEvent event) {
+        onBlockChanged(event.getBlock(), event.getBlock().getType(), Material.AIR);
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onEntityExplode(EntityExplodeEvent event) {
+        event.blockList().forEach(block -> onBlockChanged(block, block.getType(), Material.AIR));
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onBlockExplode(BlockExplodeEvent event) {
+        event.blockList().forEach(block -> onBlockChanged(block, block.getType(), Material.AIR));
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onPortalCreate(PortalCreateEvent event) {
+        // This is a list of BlockState on 1.14 and up, and Block on 1.13 and under
+        for(Object obj : event.getBlocks()) {
+            if(obj instanceof BlockState) {
+                BlockState state = (BlockState) obj;
+                onBlockChanged(state.getBlock(), state.getBlock().getType(), state.getType());
+            }   else    {
+                // The blocks haven't been changed yet, so assume that anything other than the frame will become a portal block
+                Block block = (Block) obj;
+                onBlockChanged(block, block.getType(), block.getType() == Material.OBSIDIAN ? Material.OBSIDIAN : MaterialUtil.PORTAL_MATERIAL);
+            }
+        }
+    }
+
+    // Includes lava turning into obsidian
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onBlockForm(BlockFormEvent event) {
+        onBlockChanged(event.getBlock(), event.getBlock().getType(), event.getNewState().getType());
+    }
+
+    // Obsidian and portal blocks can't normally be moved by pistons, but some servers allow it
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onPistonExtend(BlockPistonExtendEvent event) {
+        onBlocksMoved(event.getBlocks());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onPistonRetract(BlockPistonRetractEvent event) {
+        onBlocksMoved(event.getBlocks());
+    }
+
+    @EventHandler
+    public void onWorldUnload(WorldUnloadEvent event) {
+        worlds.remove(event.getWorld());
+    }
+}
@@ -3,20 +3,26 @@ package com.lauriethefish.betterportals.bukkit.portal.spawning;
 import com.google.inject.Inject;
 import com.google.inject.Singleton;
 import com.lauriethefish.betterportals.api.PortalDirection;
+import com.lauriethefish.betterportals.bukkit.block.write.BlockWriteBatch;
+import com.lauriethefish.betterportals.bukkit.block.write.IBlockWriter;
 import com.lauriethefish.betterportals.bukkit.config.PortalSpawnConfig;
 import com.lauriethefish.betterportals.bukkit.config.WorldLink;
 import com.lauriethefish.betterportals.bukkit.portal.blend.IDimensionBlendManager;
 import com.lauriethefish.betterportals.bukkit.util.MaterialUtil;
 import com.lauriethefish.betterportals.shared.logging.Logger;
+import org.bukkit.Axis;
 import org.bukkit.Location;
 import org.bukkit.Material;
 import org.bukkit.World;
 import org.bukkit.WorldBorder;
-import org.bukkit.block.BlockState;
+import org.bukkit.block.data.BlockData;
+import org.bukkit.block.data.Orientable;
 import org.bukkit.plugin.java.JavaPlugin;
 import org.bukkit.util.Vector;
 import org.jetbrains.annotations.NotNull;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Objects;
 import java.util.function.Consumer;
 
@@ -32,15 +38,21 @@ public class PortalSpawner implements IPortalSpawner {
     private final ExistingPortalChecker existingPortalChecker;
     private final NewPortalChecker newPortalChecker;
     private final IDimensionBlendManager dimensionBlendManager;
+    private final SpawnBlockViewFactory blockViewFactory;
+    private final IBlockWriter blockWriter;
+
+    private final List<AsyncPortalChecker> runningChecks = new ArrayList<>();
 
     @Inject
-    public PortalSpawner(JavaPlugin pl, PortalSpawnConfig config, Logger logger, ExistingPortalChecker existingPortalChecker, NewPortalChecker newPortalChecker, IDimensionBlendManager dimensionBlendManager) {
+    public PortalSpawner(JavaPlugin pl, PortalSpawnConfig config, Logger logger, ExistingPortalChecker existingPortalChecker, NewPortalChecker newPortalChecker, IDimensionBlendManager dimensionBlendManager, SpawnBlockViewFactory blockViewFactory, IBlockWriter blockWriter) {
         this.pl = pl;
         this.config = config;
         this.logger = logger;
         this.existingPortalChecker = existingPortalChecker;
         this.newPortalChecker = newPortalChecker;
         this.dimensionBlendManager = dimensionBlendManager;
+        this.blockViewFactory = blockViewFactory;
+        this.blockWriter = blockWriter;
     }
 
     @Override
@@ -87,7 +99,18 @@ public class PortalSpawner implements IPortalSpawner {
 
     // Portal spawn checks are done over a number of ticks to avoid slowing down the server
     private void startAsyncCheck(PortalSpawningContext context, IChunkChecker chunkChecker, Consumer<PortalSpawnPosition> onFinish) {
-        new AsyncPortalChecker(context, chunkChecker, onFinish, pl, logger, config);
+        runningChecks.removeIf(AsyncPortalChecker::isFinished);
+        runningChecks.add(new AsyncPortalChecker(context, chunkChecker, onFinish, pl, logger, config, blockViewFactory));
+    }
+
+    @Override
+    public void stop() {
+        for(AsyncPortalChecker check : runningChecks) {
+            if(!check.isFinished()) {
+                check.cancel();
+            }
+        }
+        runningChecks.clear();
     }
 
     /**
@@ -116,7 +139,6 @@ public class PortalSpawner implements IPortalSpawner {
      * <br>Will also perform the dimension blend if it's enabled.
      * @param position Position to spawn the portal at
      */
-    @SuppressWarnings("deprecation")
     private void spawnPortal(PortalSpawnPosition position, Location originPos) {
         if(config.isDimensionBlendEnabled()) {
             dimensionBlendManager.performBlend(originPos.clone().add(position.getSize().clone().multiply(0.5)), position.getPosition());
@@ -125,23 +147,27 @@ public class PortalSpawner implements IPortalSpawner {
         Vector size = position.getSize().clone().add(new Vector(1.0, 1.0, 0.0));
         PortalDirection direction = position.getDirection();
 
+        BlockData frameData = Material.OBSIDIAN.createBlockData();
+        BlockData portalData = MaterialUtil.PORTAL_MATERIAL.createBlockData();
+        // Make sure to rotate the portal blocks for NORTH/SOUTH portals
+        if(portalData instanceof Orientable && (direction == PortalDirection.EAST || direction == PortalDirection.WEST)) {
+            ((Orientable) portalData).setAxis(Axis.Z);
+        }
+
+        // The blocks are written without updating physics, since otherwise our portal blocks would get removed during creation
+        BlockWriteBatch batch = new BlockWriteBatch(Objects.requireNonNull(position.getPosition().getWorld()));
         for(int x = 0; x <= size.getX(); x++) {
             for(int y = 0; y <= size.getY(); y++) {
                 Vector frameRelativePos = new Vector(x, y, 0.0);
 
-                Location blockPos = position.getPosition().clone().add(position.getDirection().swapVector(frameRelativePos));
+                Location blockPos = position.getPosition().clone().add(direction.swapVector(frameRelativePos));
                 boolean isFrameBlock = x == 0 || x == size.getX() || y == 0 || y == size.getY();
 
-                // This is done with a BlockState to avoid updating physics, since otherwise our portal blocks would get removed during creation
-                BlockState state = blockPos.getBlock().getState();
-                state.setType(isFrameBlock ? Material.OBSIDIAN : MaterialUtil.PORTAL_MATERIAL);
-                // Make sure to rotate the portal blocks for NORTH/SOUTH portals
-                if(!isFrameBlock && (direction == PortalDirection.EAST || direction == PortalDirection.WEST)) {
-                    state.setRawData((byte) 2);
-                }
-
-                state.update(true, false);
+                batch.add(blockPos.getBlockX(), blockPos.getBlockY(), blockPos.getBlockZ(), isFrameBlock ? frameData : portalData);
             }
         }
+
+        // The portal is registered straight after this, so the frame can't be spread over multiple ticks
+        blockWriter.writeNow(batch);
     }
 }
@@ -0,0 +1,114 @@
+package com.lauriethefish.betterportals.bukkit.portal.spawning;
+
+import org.bukkit.ChunkSnapshot;
+import org.bukkit.Location;
+import org.bukkit.Material;
+import org.bukkit.World;
+import org.bukkit.WorldBorder;
+import org.bukkit.util.Vector;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * Reads blocks from {@link ChunkSnapshot}s taken on the main thread, so that spawn positions can be checked on other threads.
+ * The world border and existing portal positions are also copied when this is created.
+ */
+public class SnapshotSpawnBlockView implements ISpawnBlockView {
+    private final World world;
+    private final Map<Long, ChunkSnapshot> snapshots;
+    private final int minHeight;
+    private final int maxHeight;
+    private final long snapshotSequence;
+
+    private final double borderMinX;
+    private final double borderMaxX;
+    private final double borderMinZ;
+    private final double borderMaxZ;
+
+    private final Vector[] portalPositions;
+    private final double minimumPortalSpawnDistanceSq;
+
+    /**
+     * Must be created on the main thread.
+     * @param world The world that the snapshots are from
+     * @param snapshots Snapshots of the chunks that can be checked, keyed by {@link #getChunkKey(int, int)}. This may be added to or removed from later, but only while nothing is reading from this view.
+     * @param minHeight Minimum block Y coordinate of the world
+     * @param maxHeight Maximum block Y coordinate of the world, exclusive
+     * @param snapshotSequence {@link PortalBlockIndex#getChangeSequence()} from before any of the snapshots were captured
+     * @param portalPositions Origin positions of the existing portals in this world
+     * @param minimumPortalSpawnDistance How close new portals can be to existing ones
+     */
+    public SnapshotSpawnBlockView(World world, Map<Long, ChunkSnapshot> snapshots, int minHeight, int maxHeight, long snapshotSequence, Collection<Vector> portalPositions, double minimumPortalSpawnDistance) {
+        this.world = world;
+        this.snapshots = snapshots;
+        this.minHeight = minHeight;
+        this.maxHeight = maxHeight;
+        this.snapshotSequence = snapshotSequence;
+
+        WorldBorder border = world.getWorldBorder();
+        Location center = border.getCenter();
+        double radius = border.getSize() / 2.0;
+        borderMinX = center.getX() - radius;
+        borderMaxX = center.getX() + radius;
+        borderMinZ = center.getZ() - radius;
+        borderMaxZ = center.getZ() + radius;
+
+        this.portalPositions = portalPositions.toArray(new Vector[0]);
+        this.minimumPortalSpawnDistanceSq = minimumPortalSpawnDistance * minimumPortalSpawnDistance;
+    }
+
+    public static long getChunkKey(int chunkX, int chunkZ) {
+        return ((long) chunkX << 32) | (chunkZ & 0xFFFFFFFFL);
+    }
+
+    @Override
+    public @NotNull World getWorld() {
+        return world;
+    }
+
+    @Override
+    public @NotNull Material getType(int x, int y, int z) {
+        if(y < minHeight || y >= maxHeight) {return Material.AIR;}
+
+        ChunkSnapshot snapshot = snapshots.get(getChunkKey(x >> 4, z >> 4));
+        if(snapshot == null) {return Material.AIR;}
+
+        return snapshot.getBlockType(x & 15, y, z & 15);
+    }
+
+    @Override
+    public @Nullable ChunkSnapshot getChunkSnapshot(int chunkX, int chunkZ) {
+        return snapshots.get(getChunkKey(chunkX, chunkZ));
+    }
+
+    @Override
+    public long getSnapshotSequence() {
+        return snapshotSequence;
+    }
+
+    @Override
+    public boolean isChunkAvailable(int chunkX, int chunkZ) {
+        return snapshots.containsKey(getChunkKey(chunkX, chunkZ));
+    }
+
+    @Override
+    public boolean isInsideWorldBorder(int x, int z) {
+        return x >= borderMinX && x < borderMaxX && z >= borderMinZ && z < borderMaxZ;
+    }
+
+    @Override
+    public boolean isNearExistingPortal(int x, int y, int z) {
+        for(Vector portalPos : portalPositions) {
+            double dx = portalPos.getX() - x;
+            double dy = portalPos.getY() - y;
+            double dz = portalPos.getZ() - z;
+            if(dx * dx + dy * dy + dz * dz < minimumPortalSpawnDistanceSq) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
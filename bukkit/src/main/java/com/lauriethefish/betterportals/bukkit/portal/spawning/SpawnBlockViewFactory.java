@@ -0,0 +1,71 @@
+package com.lauriethefish.betterportals.bukkit.portal.spawning;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.lauriethefish.betterportals.bukkit.chunk.generation.IChunkGenerationChecker;
+import com.lauriethefish.betterportals.bukkit.config.PortalSpawnConfig;
+import com.lauriethefish.betterportals.bukkit.portal.IPortal;
+import com.lauriethefish.betterportals.bukkit.portal.IPortalManager;
+import com.lauriethefish.betterportals.bukkit.util.HeightUtil;
+import org.bukkit.ChunkSnapshot;
+import org.bukkit.Location;
+import org.bukkit.World;
+import org.bukkit.util.Vector;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Creates the {@link ISpawnBlockView}s used for finding portal spawn positions.
+ */
+@Singleton
+public class SpawnBlockViewFactory {
+    private final IPortalManager portalManager;
+    private final PortalSpawnConfig spawnConfig;
+    private final IChunkGenerationChecker generationChecker;
+    private final PortalBlockIndex blockIndex;
+
+    @Inject
+    public SpawnBlockViewFactory(IPortalManager portalManager, PortalSpawnConfig spawnConfig, IChunkGenerationChecker generationChecker, PortalBlockIndex blockIndex) {
+        this.portalManager = portalManager;
+        this.spawnConfig = spawnConfig;
+        this.generationChecker = generationChecker;
+        this.blockIndex = blockIndex;
+    }
+
+    /**
+     * @param world The world to check
+     * @return A view that reads from the world directly. This must only be used on the main thread.
+     */
+    public @NotNull ISpawnBlockView createLive(@NotNull World world) {
+        return new LiveSpawnBlockView(world, portalManager, generationChecker, blockIndex, spawnConfig.getMinimumPortalSpawnDistance());
+    }
+
+    /**
+     * Copies the world border and existing portal positions, so this must be called on the main thread.
+     * The returned view is then safe to read from on any thread.
+     * @param center Center of the square area that will be checked
+     * @param radius Half of the width of the area that will be checked
+     * @param snapshots Snapshots of the chunks that can be checked, keyed by {@link SnapshotSpawnBlockView#getChunkKey(int, int)}. These must be captured after this is called
+     * @return A view that reads from the snapshots
+     */
+    public @NotNull ISpawnBlockView createSnapshot(@NotNull Location center, double radius, @NotNull Map<Long, ChunkSnapshot> snapshots) {
+        World world = Objects.requireNonNull(center.getWorld(), "Center must have a world");
+
+        // Portals that haven't been loaded yet must also be kept away from, and the chunks checked can extend a chunk past the corners of the area
+        double portalRange = radius * Math.sqrt(2) + 16.0 + spawnConfig.getMinimumPortalSpawnDistance();
+        List<Vector> portalPositions = new ArrayList<>();
+        for(IPortal portal : portalManager.findPortalsInRange(center, portalRange)) {
+            portalPositions.add(portal.getOriginPos().getVector());
+        }
+
+        return new SnapshotSpawnBlockView(world, snapshots, HeightUtil.getMinHeight(world), HeightUtil.getMaxHeight(world), blockIndex.getChangeSequence(), portalPositions, spawnConfig.getMinimumPortalSpawnDistance());
+    }
+
+    public boolean isChunkGenerated(@NotNull World world, int chunkX, int chunkZ) {
+        return generationChecker.isChunkGenerated(world, chunkX, chunkZ);
+    }
+}
@@ -0,0 +1,141 @@
+package com.lauriethefish.betterportals.bukkit.portal.spawning;
+
+import com.lauriethefish.betterportals.bukkit.util.MaterialUtil;
+import org.bukkit.Material;
+
+import java.util.function.Predicate;
+
+/**
+ * Stores which blocks are solid, and how many air blocks are above each block, for every column in an area.
+ * This is built once for each chunk checked by {@link NewPortalChecker}, so that checking each candidate spawn position only takes a few 2D prefix sum lookups, instead of reading every block around the portal.
+ */
+public class SpawnColumnGrid {
+    private final int minX;
+    private final int minY;
+    private final int minZ;
+    private final int width; // Along X
+    private final int height; // Along Y
+    private final int depth; // Along Z
+
+    private final boolean[] solid;
+    private final int[] airRuns; // Number of air blocks going up from each block, including the block itself
+
+    // Prefix sums for the currently selected layer, indexed by (z * (width + 1) + x)
+    private final int[] solidSums;
+    private final int[] airSums;
+
+    /**
+     * Reads the type of the block at a position.
+     * @param <T> Type of the blocks
+     */
+    @FunctionalInterface
+    public interface BlockReader<T> {
+        T getType(int x, int y, int z);
+    }
+
+    /**
+     * Reads the blocks in the given area. All coordinates are inclusive.
+     * @param blocks The blocks to read from
+     */
+    public SpawnColumnGrid(ISpawnBlockView blocks, int minX, int minY, int minZ, int maxX, int maxY, int maxZ) {
+        this(blocks::getType, Material::isSolid, MaterialUtil::isAir, minX, minY, minZ, maxX, maxY, maxZ);
+    }
+
+    /**
+     * Reads the blocks in the given area, using <code>isSolid</code> and <code>isAir</code> to classify each block. All coordinates are inclusive.
+     * This is separate so that the grid can be tested without {@link Material}s.
+     * @param blocks The blocks to read from
+     * @param isSolid Whether a block can be used as part of the floor
+     * @param isAir Whether a block can be used as part of the interior
+     * @param <T> Type of the blocks
+     */
+    public <T> SpawnColumnGrid(BlockReader<T> blocks, Predicate<T> isSolid, Predicate<T> isAir, int minX, int minY, int minZ, int maxX, int maxY, int maxZ) {
+        this.minX = minX;
+        this.minY = minY;
+        this.minZ = minZ;
+        this.width = maxX - minX + 1;
+        this.height = maxY - minY + 1;
+        this.depth = maxZ - minZ + 1;
+
+        solid = new boolean[width * height * depth];
+        airRuns = new int[width * height * depth];
+        solidSums = new int[(width + 1) * (depth + 1)];
+        airSums = new int[(width + 1) * (depth + 1)];
+
+        for(int z = 0; z < depth; z++) {
+            for(int x = 0; x < width; x++) {
+                // Go downwards so that the air run above each block is already known
+                int airRun = 0;
+                for(int y = height - 1; y >= 0; y--) {
+                    T type = blocks.getType(minX + x, minY + y, minZ + z);
+                    int index = getIndex(x, y, z);
+
+                    airRun = isAir.test(type) ? airRun + 1 : 0;
+                    airRuns[index] = airRun;
+                    solid[index] = isSolid.test(type);
+                }
+            }
+        }
+    }
+
+    private int getIndex(int x, int y, int z) {
+        return (y * depth + z) * width + x;
+    }
+
+    /**
+     * Calculates the prefix sums used for checking positions with their floor at <code>floorY</code>.
+     * Must be called before {@link #isFloorSolid(int, int, int, int)} or {@link #isInteriorAir(int, int, int, int)}.
+     * @param floorY Y coordinate of the floor of the portal frame
+     * @param interiorHeight How many air blocks are required above the floor
+     */
+    public void selectLayer(int floorY, int interiorHeight) {
+        int y = floorY - minY;
+        int rowLength = width + 1;
+        for(int z = 0; z < depth; z++) {
+            int solidRowSum = 0;
+            int airRowSum = 0;
+            for(int x = 0; x < width; x++) {
+                if(solid[getIndex(x, y, z)]) {
+                    solidRowSum++;
+                }
+                if(y + 1 < height && airRuns[getIndex(x, y + 1, z)] >= interiorHeight) {
+                    airRowSum++;
+                }
+
+                int sumIndex = (z + 1) * rowLength + x + 1;
+                solidSums[sumIndex] = solidSums[sumIndex - rowLength] + solidRowSum;
+                airSums[sumIndex] = airSums[sumIndex - rowLength] + airRowSum;
+            }
+        }
+    }
+
+    private int sumRectangle(int[] sums, int x1, int z1, int x2, int z2) {
+        int rowLength = width + 1;
+        int lowX = x1 - minX;
+        int lowZ = z1 - minZ;
+        int highX = x2 - minX + 1;
+        int highZ = z2 - minZ + 1;
+
+        return sums[highZ * rowLength + highX] - sums[lowZ * rowLength + highX] - sums[highZ * rowLength + lowX] + sums[lowZ * rowLength + lowX];
+    }
+
+    private static int getArea(int x1, int z1, int x2, int z2) {
+        return (x2 - x1 + 1) * (z2 - z1 + 1);
+    }
+
+    /**
+     * All coordinates are inclusive, and must be within the grid.
+     * @return Whether all blocks in the rectangle on the selected floor layer are solid
+     */
+    public boolean isFloorSolid(int x1, int z1, int x2, int z2) {
+        return sumRectangle(solidSums, x1, z1, x2, z2) == getArea(x1, z1, x2, z2);
+    }
+
+    /**
+     * All coordinates are inclusive, and must be within the grid.
+     * @return Whether all columns in the rectangle have the required interior height of air above the selected floor layer
+     */
+    public boolean isInteriorAir(int x1, int z1, int x2, int z2) {
+        return sumRectangle(airSums, x1, z1, x2, z2) == getArea(x1, z1, x2, z2);
+    }
+}
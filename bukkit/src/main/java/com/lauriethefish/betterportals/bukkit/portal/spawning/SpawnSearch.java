@@ -0,0 +1,107 @@
+package com.lauriethefish.betterportals.bukkit.portal.spawning;
+
+import com.lauriethefish.betterportals.bukkit.chunk.chunkpos.ChunkPosition;
+import lombok.Getter;
+import org.bukkit.Location;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.*;
+
+/**
+ * Chooses the chunks checked in each batch of an {@link AsyncPortalChecker}, and combines the results of the batches.
+ * This is kept separate from the scheduling in {@link AsyncPortalChecker} so that it can be tested.
+ */
+public class SpawnSearch {
+    /**
+     * Used to skip this chunk if there's no way that any block in the chunk can be any closer.
+     * We approximate this by finding the distance to the chunk center, then subtracting this value.
+     * Theoretically, this could skip a portal and not actually find the closest portal.
+     * However, I haven't seen any get missed.
+     * Ideally, the chunk skip distance would be nearly 150 - half of the the diagonal length of a chunk. However, this slows down portal spawning quite a lot
+     */
+    private static final double CHUNK_SKIP_DISTANCE = 45.0;
+
+    private final Iterator<ChunkPosition> iterator;
+    private final Location preferredLocation;
+    private final int batchSize;
+    private final int chunkMargin;
+
+    // Keys of the chunks that must be snapshotted to check the current batch, see SnapshotSpawnBlockView#getChunkKey
+    private final Set<Long> neededChunkKeys = new HashSet<>();
+    @Getter private final List<ChunkPosition> neededChunks = new ArrayList<>();
+
+    @Getter private @Nullable PortalSpawnPosition closest = null;
+    @Getter private double closestDistance = Double.POSITIVE_INFINITY;
+
+    /**
+     * @param iterator The chunks to check, in spiral order around <code>preferredLocation</code>
+     * @param preferredLocation The position to find the closest spawn position to
+     * @param batchSize Maximum number of chunks checked in each batch
+     * @param chunkMargin Number of chunks around each checked chunk that must also be snapshotted, since portal frames can extend into them
+     */
+    public SpawnSearch(@NotNull Iterator<ChunkPosition> iterator, @NotNull Location preferredLocation, int batchSize, int chunkMargin) {
+        this.iterator = iterator;
+        this.preferredLocation = preferredLocation;
+        this.batchSize = batchSize;
+        this.chunkMargin = chunkMargin;
+    }
+
+    /**
+     * Finds the next chunks to check in spiral order, skipping any chunks that can't contain a closer position.
+     * Also finds the chunks that must be snapshotted to check them, see {@link #getNeededChunks()}.
+     * @return The chunks to check, empty if there are no more
+     */
+    public @NotNull List<ChunkPosition> nextBatch() {
+        neededChunkKeys.clear();
+        neededChunks.clear();
+
+        List<ChunkPosition> batch = new ArrayList<>();
+        while(iterator.hasNext() && batch.size() < batchSize) {
+            ChunkPosition chunk = iterator.next();
+
+            // Perform the rough check specified in the comment for CHUNK_SKIP_DISTANCE
+            double closestTheoreticalDistanceInChunk = chunk.getCenterPos().distance(preferredLocation) - CHUNK_SKIP_DISTANCE;
+            if(closestTheoreticalDistanceInChunk > closestDistance) {
+                continue;
+            }
+
+            batch.add(chunk);
+            for(int x = chunk.getX() - chunkMargin; x <= chunk.getX() + chunkMargin; x++) {
+                for(int z = chunk.getZ() - chunkMargin; z <= chunk.getZ() + chunkMargin; z++) {
+                    if(neededChunkKeys.add(SnapshotSpawnBlockView.getChunkKey(x, z))) {
+                        neededChunks.add(new ChunkPosition(chunk.getWorld(), x, z));
+                    }
+                }
+            }
+        }
+
+        return batch;
+    }
+
+    /**
+     * Removes the snapshots of chunks that aren't needed to check the current batch.
+     * Chunks shared with the previous batch are kept, so that they don't have to be snapshotted again.
+     * @param snapshots Snapshots keyed by {@link SnapshotSpawnBlockView#getChunkKey(int, int)}
+     */
+    public void evictUnneeded(@NotNull Map<Long, ?> snapshots) {
+        snapshots.keySet().retainAll(neededChunkKeys);
+    }
+
+    /**
+     * Updates the closest position with the results of checking a batch.
+     * @param results The closest position in each chunk of the batch, in the same order as the batch. Null if a chunk had no valid positions
+     */
+    public void addResults(@NotNull List<PortalSpawnPosition> results) {
+        // Results are in spiral order, so this picks the same position as checking the chunks one at a time would
+        for(PortalSpawnPosition result : results) {
+            if(result == null) {continue;}
+
+            double distance = result.getPosition().distance(preferredLocation);
+            if(distance < closestDistance) {
+                closestDistance = distance;
+                closest = result;
+            }
+        }
+    }
+}
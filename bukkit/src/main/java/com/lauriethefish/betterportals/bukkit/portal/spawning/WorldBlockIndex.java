@@ -0,0 +1,159 @@
+package com.lauriethefish.betterportals.bukkit.portal.spawning;
+
+import com.lauriethefish.betterportals.api.IntVector;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Stores the obsidian and portal blocks found by {@link PortalBlockIndex} in one world, keyed by {@link SnapshotSpawnBlockView#getChunkKey(int, int)}.
+ * Changes to chunks that haven't been indexed yet are also recorded, so that an index built from a snapshot taken before the change isn't kept.
+ * Changes and snapshots are ordered by the sequence numbers from {@link PortalBlockIndex#getChangeSequence()}.
+ * This is kept separate from the event handling in {@link PortalBlockIndex} so that it can be tested without a server.
+ */
+public class WorldBlockIndex {
+    // Above this, the recorded changes are dropped, and every snapshot captured before them is treated as out of date instead
+    private static final int MAX_UNINDEXED_CHANGES = 4096;
+
+    private final Map<Long, ChunkEntry> chunks = new ConcurrentHashMap<>();
+    // Sequence number of the last change to each chunk without an entry, only written while holding the lock for the same key in chunks
+    private final Map<Long, Long> unindexedChanges = new ConcurrentHashMap<>();
+    // Snapshots captured before this may have missed changes that were dropped from unindexedChanges
+    private volatile long droppedChangeSequence = Long.MIN_VALUE;
+
+    /**
+     * The indexed blocks in one chunk.
+     * Most chunks have no obsidian or portal blocks, so the sets are only created once something is added to them.
+     */
+    public static class ChunkEntry {
+        private volatile Set<IntVector> obsidianBlocks = Collections.emptySet();
+        private volatile Set<IntVector> portalBlocks = Collections.emptySet();
+
+        public @NotNull Set<IntVector> getObsidianBlocks() {
+            return obsidianBlocks;
+        }
+
+        public @NotNull Set<IntVector> getPortalBlocks() {
+            return portalBlocks;
+        }
+
+        public void addObsidian(@NotNull IntVector position) {
+            if(obsidianBlocks.isEmpty()) {obsidianBlocks = ConcurrentHashMap.newKeySet();}
+            obsidianBlocks.add(position);
+        }
+
+        public void addPortal(@NotNull IntVector position) {
+            if(portalBlocks.isEmpty()) {portalBlocks = ConcurrentHashMap.newKeySet();}
+            portalBlocks.add(position);
+        }
+
+        private void setBlock(IntVector position, boolean isObsidian, boolean isPortal) {
+            if(isObsidian) {
+                addObsidian(position);
+            }   else    {
+                obsidianBlocks.remove(position);
+            }
+
+            if(isPortal) {
+                addPortal(position);
+            }   else    {
+                portalBlocks.remove(position);
+            }
+        }
+    }
+
+    /**
+     * @param chunkKey Key of the chunk
+     * @return The entry of the chunk, or null if it hasn't been indexed
+     */
+    public @Nullable ChunkEntry get(long chunkKey) {
+        return chunks.get(chunkKey);
+    }
+
+    /**
+     * Stores a newly built entry for a chunk, unless the chunk was changed after the snapshot that it was built from was taken.
+     * @param chunkKey Key of the chunk
+     * @param entry The new entry
+     * @param captureSequence Change sequence number from before the snapshot was taken
+     * @return The entry stored for the chunk if another thread indexed it first, otherwise <code>entry</code>. This may not have been stored if it was out of date
+     */
+    public @NotNull ChunkEntry publish(long chunkKey, @NotNull ChunkEntry entry, long captureSequence) {
+        ChunkEntry stored = chunks.compute(chunkKey, (key, existing) -> {
+            if(existing != null) {return existing;}
+
+            Long changeSequence = unindexedChanges.get(key);
+            if(changeSequence != null && changeSequence > captureSequence) {return null;}
+            if(droppedChangeSequence > captureSequence) {return null;}
+
+            unindexedChanges.remove(key);
+            return entry;
+        });
+
+        return stored == null ? entry : stored;
+    }
+
+    /**
+     * Updates the entry of a chunk after a block in it changed, or records the change if the chunk hasn't been indexed.
+     * @param chunkKey Key of the chunk
+     * @param position Position of the block
+     * @param isObsidian Whether the block is now obsidian
+     * @param isPortal Whether the block is now a portal block
+     * @param sequence Change sequence number of this change
+     */
+    public void onBlockChanged(long chunkKey, @NotNull IntVector position, boolean isObsidian, boolean isPortal, long sequence) {
+        chunks.compute(chunkKey, (key, entry) -> {
+            if(entry == null) {
+                unindexedChanges.merge(key, sequence, Math::max);
+            }   else    {
+                entry.setBlock(position, isObsidian, isPortal);
+            }
+            return entry;
+        });
+        limitUnindexedChanges(sequence);
+    }
+
+    /**
+     * Removes the entry of a chunk, so that it is indexed again next time it is needed.
+     * Used for changes that can't easily be applied to the entry.
+     * @param chunkKey Key of the chunk
+     * @param sequence Change sequence number of this change
+     */
+    public void invalidate(long chunkKey, long sequence) {
+        chunks.compute(chunkKey, (key, entry) -> {
+            unindexedChanges.merge(key, sequence, Math::max);
+            return null;
+        });
+        limitUnindexedChanges(sequence);
+    }
+
+    // Changes to chunks that are never indexed would otherwise be kept forever
+    private void limitUnindexedChanges(long sequence) {
+        if(unindexedChanges.size() <= MAX_UNINDEXED_CHANGES) {return;}
+
+        // The dropped sequence is raised before the changes are removed, so a snapshot that misses a change can't be published
+        long maxSequence = sequence;
+        for(long changeSequence : unindexedChanges.values()) {
+            maxSequence = Math.max(maxSequence, changeSequence);
+        }
+        droppedChangeSequence = Math.max(droppedChangeSequence, maxSequence);
+        unindexedChanges.clear();
+    }
+
+    /**
+     * @return The number of changes recorded for chunks that haven't been indexed
+     */
+    public int getUnindexedChangeCount() {
+        return unindexedChanges.size();
+    }
+
+    /**
+     * @return The number of chunks that have been indexed
+     */
+    public int size() {
+        return chunks.size();
+    }
+}
@@ -0,0 +1,214 @@
+package com.lauriethefish.betterportals.bukkit.portal.storage;
+
+import com.google.inject.Inject;
+import com.lauriethefish.betterportals.bukkit.config.MiscConfig;
+import com.lauriethefish.betterportals.bukkit.portal.IPortal;
+import com.lauriethefish.betterportals.bukkit.portal.IPortalManager;
+import com.lauriethefish.betterportals.bukkit.util.performance.Operation;
+import com.lauriethefish.betterportals.bukkit.util.performance.OperationRegistry;
+import com.lauriethefish.betterportals.shared.logging.Logger;
+import org.bukkit.plugin.java.JavaPlugin;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Stores portals in a {@link PortalLog}, in <code>plugins/BetterPortals/data/portals.dat</code>.
+ * Each save only writes the portals marked as dirty in the {@link IPortalManager} since the last one, so saving when nothing has changed does nothing.
+ * The portals are copied into {@link PortalRecord}s on the main thread, then encoded and written on a separate thread.
+ * If there is no log yet, the portals are migrated from <code>portals.yml</code>, including any legacy portals in it.
+ */
+public class BinaryPortalStorage extends IPortalStorage {
+    private static final String LOG_FILE_NAME = "portals.dat";
+    private static final String YAML_FILE_NAME = "portals.yml";
+
+    private final JavaPlugin pl;
+    private final IPortalManager portalManager;
+    private final MiscConfig miscConfig;
+    private final YamlPortalStorage yamlStorage;
+    private final Operation saveOperation;
+    private final Operation writeOperation;
+
+    private ExecutorService storageThread = null;
+    private PortalLog log = null; // Only used on the storage thread
+
+    // The IDs of the portals in the log, used to find which removed portals need to be written
+    private final Set<UUID> savedPortals = new HashSet<>();
+
+    @Inject
+    public BinaryPortalStorage(JavaPlugin pl, Logger logger, IPortalManager portalManager, MiscConfig miscConfig, YamlPortalStorage yamlStorage, OperationRegistry operationRegistry) {
+        super(logger, pl, miscConfig);
+
+        this.pl = pl;
+        this.portalManager = portalManager;
+        this.miscConfig = miscConfig;
+        this.yamlStorage = yamlStorage;
+        this.saveOperation = operationRegistry.getOperation(OperationRegistry.STORAGE_SAVE);
+        this.writeOperation = operationRegistry.getOperation(OperationRegistry.STORAGE_WRITE);
+    }
+
+    private Path getDataFolder() {
+        File pluginFolder = pl.getDataFolder();
+        pluginFolder.mkdir();
+
+        File dataFolder = pluginFolder.toPath().resolve("data").toFile();
+        dataFolder.mkdir();
+        return dataFolder.toPath();
+    }
+
+    @Override
+    public void loadPortals() throws IOException {
+        Path logPath = getDataFolder().resolve(LOG_FILE_NAME);
+        Path yamlPath = getDataFolder().resolve(YAML_FILE_NAME);
+
+        if(Files.exists(logPath)) {
+            logger.fine("Loading from plugins/BetterPortals/data/%s", LOG_FILE_NAME);
+            PortalLog.Contents contents = PortalLog.read(logPath, logger);
+            logger.finer("Loading %d portals from %d records . . .", contents.getPortals().size(), contents.getRecordCount());
+
+            for(PortalRecord record : contents.getPortals().values()) {
+                registerPortal(record);
+            }
+            // Loading the portals doesn't change them
+            portalManager.takeDirtyPortals();
+            submit(() -> log = PortalLog.open(logPath, logger, miscConfig.getPortalStorageFsync(), contents));
+        }   else    {
+            if(Files.exists(yamlPath)) {
+                logger.info("Migrating portals from %s to %s", YAML_FILE_NAME, LOG_FILE_NAME);
+                yamlStorage.loadPortals();
+            }
+
+            // Write every portal to the new log
+            List<PortalLog.Change> changes = new ArrayList<>();
+            for(IPortal portal : portalManager.getAllPortals()) {
+                PortalRecord record = PortalRecord.fromPortal(portal);
+                savedPortals.add(record.getId());
+                changes.add(new PortalLog.Change(record.getId(), record));
+            }
+            portalManager.takeDirtyPortals();
+
+            submit(() -> {
+                log = PortalLog.open(logPath, logger, miscConfig.getPortalStorageFsync(), null);
+                log.append(changes);
+
+                // Keep the old file as a backup, but make sure that it isn't migrated again
+                if(Files.exists(yamlPath)) {
+                    Files.move(yamlPath, yamlPath.resolveSibling(YAML_FILE_NAME + ".migrated"), StandardCopyOption.REPLACE_EXISTING);
+                    logger.info("Migrated %d portals", changes.size());
+                }
+            });
+        }
+        logger.fine("Loaded portals");
+    }
+
+    private void registerPortal(PortalRecord record) {
+        // Portals in worlds that no longer exist are left in the log, so that they come back if the world is restored
+        if(record.getOriginPos().getWorld() == null) {
+            logger.warning("Portal at position %s, was not loaded because the world it was in no longer exists!", record.getOriginPos().getVector());
+            return;
+        }
+
+        // The portal is only created once the area around it is loaded
+        portalManager.registerUnloadedPortal(record);
+        savedPortals.add(record.getId());
+    }
+
+    @Override
+    public void savePortals() {
+        long startTime = System.nanoTime();
+        // Only the portals that have changed since the last save need to be written
+        Set<UUID> dirtyPortals = portalManager.takeDirtyPortals();
+        if(dirtyPortals.isEmpty()) {
+            logger.fine("No portals have changed since the last save");
+            return;
+        }
+
+        // The records can't change, so they can be safely written on the storage thread
+        List<PortalLog.Change> changes = new ArrayList<>();
+        for(UUID id : dirtyPortals) {
+            IPortal portal = portalManager.getPortalById(id);
+            if(portal == null) {
+                // Portals that were registered then removed before being saved don't need to be written
+                if(savedPortals.remove(id)) {
+                    changes.add(new PortalLog.Change(id, null));
+                }
+                continue;
+            }
+
+            try {
+                changes.add(new PortalLog.Change(id, PortalRecord.fromPortal(portal)));
+                savedPortals.add(id);
+            }   catch(RuntimeException ex) { // Avoid failing all portals when one is invalid
+                logger.warning("Failed to save portal: %s", ex.getMessage());
+            }
+        }
+
+        logger.fine("Saving %d changed portals", changes.size());
+        saveOperation.record(System.nanoTime() - startTime);
+        if(changes.isEmpty()) {return;}
+
+        submit(() -> {
+            if(log == null) {
+                logger.warning("Unable to save portals, since the portals file failed to open");
+                return;
+            }
+
+            long writeStartTime = System.nanoTime();
+            log.append(changes);
+            writeOperation.record(System.nanoTime() - writeStartTime);
+        });
+    }
+
+    private interface StorageTask {
+        void run() throws IOException;
+    }
+
+    private void submit(StorageTask task) {
+        if(storageThread == null) {
+            storageThread = Executors.newSingleThreadExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "BetterPortals Portal Storage Thread");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+
+        storageThread.execute(() -> {
+            try {
+                task.run();
+            }   catch(IOException | RuntimeException ex) {
+                logger.warning("Error occurred while writing to %s. Check your file permissions!", LOG_FILE_NAME);
+                ex.printStackTrace();
+            }
+        });
+    }
+
+    @Override
+    public void stop() {
+        if(storageThread == null) {return;}
+
+        submit(() -> {
+            if(log != null) {
+                log.close();
+            }
+        });
+        storageThread.shutdown();
+
+        // Wait for any pending saves to finish writing, otherwise they would be lost when the server stops
+        try {
+            if(!storageThread.awaitTermination(30, TimeUnit.SECONDS)) {
+                logger.warning("Timed out while waiting for the portals to finish saving");
+            }
+        }   catch(InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        storageThread = null;
+        log = null;
+    }
+}
@@ -0,0 +1,11 @@
+package com.lauriethefish.betterportals.bukkit.portal.storage;
+
+/**
+ * When the portal storage forces its writes to be flushed to the disk.
+ * Syncing more often makes it less likely for recently saved portals to be lost if the server loses power, but is slower on some disks.
+ */
+public enum FsyncPolicy {
+    ALWAYS, // After every save
+    COMPACTION, // Only when the storage file is rewritten, or closed
+    NEVER // Left up to the operating system
+}
@@ -10,7 +10,7 @@ import java.io.IOException;
 
 /**
  * Saves/loads portals from disk
- * TODO: Eventually add support for databases, or something else instead of just YAML
+ * TODO: Eventually add support for databases
  */
 public abstract class IPortalStorage implements Runnable    {
     protected Logger logger;
@@ -36,6 +36,12 @@ public abstract class IPortalStorage implements Runnable    {
      */
     public abstract void savePortals() throws IOException;
 
+    /**
+     * Called when the plugin disables, after the portals have been saved.
+     * Should wait for any saves still being written to finish.
+     */
+    public void stop() {}
+
     public void start() {
         int saveInterval = miscConfig.getPortalSaveInterval();
         if(miscConfig.getPortalSaveInterval() > 0) {
@@ -52,7 +58,7 @@ public abstract class IPortalStorage implements Runnable    {
             logger.fine("Autosaving portals!");
             savePortals();
         }   catch(IOException ex) {
-            logger.warning("Error occurred while saving the portals to portals.yml. Check your file permissions!");
+            logger.warning("Error occurred while saving the portals. Check your file permissions!");
             ex.printStackTrace();
         }
     }
@@ -0,0 +1,343 @@
+package com.lauriethefish.betterportals.bukkit.portal.storage;
+
+import com.lauriethefish.betterportals.shared.logging.Logger;
+import lombok.Getter;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only binary log of portal changes.
+ * Each record either adds/modifies a portal, or removes one, so saving only needs to write the portals that changed.
+ * Once the log contains too many outdated records, it is compacted by rewriting it with only the current portals.
+ * <br>The file starts with a header, then each record is stored as its type, the length of its data, a CRC32 checksum of the type and length, the data, then a CRC32 checksum of the whole record.
+ * If the server crashes while writing, the partially written record at the end is discarded when loading.
+ * Corrupted records in the middle of the log are skipped by searching for the next record with valid checksums, since their length can't be trusted, so the valid records after them aren't lost.
+ * Before the log is truncated or compacted because of a failed read, the original file is copied aside as a backup.
+ * <br>Apart from {@link #read(Path, Logger)}, this is only used from the storage thread.
+ */
+public class PortalLog {
+    private static final int MAGIC = 0x42504C47; // "BPLG"
+    private static final int VERSION = 1;
+    private static final int HEADER_LENGTH = 8;
+    private static final int RECORD_HEADER_LENGTH = 9; // Type, length, then the checksum of both
+    private static final int CHECKSUM_LENGTH = 4;
+
+    // Returned when checking a record at the end of the file that was only partly written
+    private static final int INCOMPLETE_RECORD = -1;
+    // Returned when checking a record that failed its checksums
+    private static final int INVALID_RECORD = -2;
+
+    private static final byte PUT_RECORD = 1;
+    private static final byte REMOVE_RECORD = 2;
+
+    // The log must have at least this many records before it is compacted
+    private static final int MIN_COMPACTION_RECORDS = 256;
+    // The log is compacted once it has this many times as many records as there are portals
+    private static final int COMPACTION_RATIO = 2;
+
+    private final Path path;
+    private final Logger logger;
+    private final FsyncPolicy fsyncPolicy;
+
+    // The current portals, used for writing them when compacting
+    @Getter private final Map<UUID, PortalRecord> portals;
+    private int recordCount;
+    private FileChannel channel = null;
+
+    /**
+     * Change to a portal, to be written to the log.
+     */
+    public static class Change {
+        @Getter private final UUID id;
+        @Getter private final @Nullable PortalRecord record; // Null if the portal was removed
+
+        public Change(UUID id, @Nullable PortalRecord record) {
+            this.id = id;
+            this.record = record;
+        }
+    }
+
+    /**
+     * The result of reading a log file.
+     */
+    public static class Contents {
+        @Getter private final Map<UUID, PortalRecord> portals = new HashMap<>();
+        @Getter private int recordCount = 0;
+        @Getter private long validLength = 0; // Length of the file up to the end of the last complete record
+        @Getter private int skippedRecords = 0; // Corrupted records that were skipped
+    }
+
+    private PortalLog(Path path, Logger logger, FsyncPolicy fsyncPolicy, Map<UUID, PortalRecord> portals, int recordCount) {
+        this.path = path;
+        this.logger = logger;
+        this.fsyncPolicy = fsyncPolicy;
+        this.portals = portals;
+        this.recordCount = recordCount;
+    }
+
+    /**
+     * Reads the portals in a log file.
+     * @param path Path of the log file
+     * @param logger Used to warn about corrupted records
+     * @return The portals in the file, and how much of the file is valid
+     * @throws IOException If reading the file failed, or the file is not a portal log
+     */
+    public static Contents read(Path path, Logger logger) throws IOException {
+        Contents contents = new Contents();
+        ByteBuffer data = ByteBuffer.wrap(Files.readAllBytes(path));
+        if(data.limit() == 0) {return contents;} // Created but never written to
+
+        if(data.limit() < HEADER_LENGTH || data.getInt(0) != MAGIC) {
+            throw new IOException("Invalid portal log header");
+        }
+        int version = data.getInt(4);
+        if(version != VERSION) {
+            throw new IOException(String.format("Unsupported portal log version %d", version));
+        }
+        contents.validLength = HEADER_LENGTH;
+
+        CRC32 checksum = new CRC32();
+        int position = HEADER_LENGTH;
+        while(position < data.limit()) {
+            int recordEnd = checkRecord(data, position, checksum);
+            if(recordEnd == INCOMPLETE_RECORD) {
+                logger.warning("The portal log ended part way through a record, this is normal if the server crashed while saving. Discarding the incomplete record");
+                break;
+            }
+
+            if(recordEnd == INVALID_RECORD) {
+                contents.skippedRecords++;
+                int nextRecord = findNextRecord(data, position + 1, checksum);
+                if(nextRecord == INVALID_RECORD) {
+                    logger.warning("Portal log record %d is corrupted, and no valid records were found after it. Discarding the rest of the log", contents.recordCount);
+                    break;
+                }
+
+                logger.warning("Portal log record %d is corrupted, skipping %d bytes to the next valid record. The portals it changed may be out of date", contents.recordCount, nextRecord - position);
+                position = nextRecord;
+                contents.validLength = position;
+                continue;
+            }
+
+            byte type = data.get(position);
+            DataInputStream recordInput = new DataInputStream(new ByteArrayInputStream(data.array(), position + RECORD_HEADER_LENGTH, recordEnd - CHECKSUM_LENGTH - position - RECORD_HEADER_LENGTH));
+            if(type == PUT_RECORD) {
+                PortalRecord record = PortalRecord.read(recordInput);
+                contents.portals.put(record.getId(), record);
+            }   else if(type == REMOVE_RECORD) {
+                contents.portals.remove(PortalRecord.readUuid(recordInput));
+            }   else    {
+                logger.warning("Unknown portal log record type %d, skipping it", type);
+                contents.skippedRecords++;
+            }
+
+            contents.recordCount++;
+            position = recordEnd;
+            contents.validLength = position;
+        }
+
+        return contents;
+    }
+
+    /**
+     * Checks the checksums of the record starting at <code>position</code>.
+     * A record is only incomplete if it runs up to or past the end of the file, since only the last record can have been partly written.
+     * @return The position of the end of the record, or {@link #INCOMPLETE_RECORD} or {@link #INVALID_RECORD}
+     */
+    private static int checkRecord(ByteBuffer data, int position, CRC32 checksum) {
+        if(data.limit() - position < RECORD_HEADER_LENGTH) {return INCOMPLETE_RECORD;}
+
+        checksum.reset();
+        checksum.update(data.array(), position, RECORD_HEADER_LENGTH - CHECKSUM_LENGTH);
+        if(data.getInt(position + RECORD_HEADER_LENGTH - CHECKSUM_LENGTH) != (int) checksum.getValue()) {return INVALID_RECORD;}
+
+        int length = data.getInt(position + 1);
+        if(length < 0) {return INVALID_RECORD;}
+        long recordEnd = (long) position + RECORD_HEADER_LENGTH + length + CHECKSUM_LENGTH;
+        if(recordEnd > data.limit()) {return INCOMPLETE_RECORD;}
+
+        // The record checksum also covers the type and length, which are still in the checksum
+        checksum.update(data.array(), position + RECORD_HEADER_LENGTH, length);
+        if(data.getInt((int) recordEnd - CHECKSUM_LENGTH) != (int) checksum.getValue()) {
+            return recordEnd == data.limit() ? INCOMPLETE_RECORD : INVALID_RECORD;
+        }
+        return (int) recordEnd;
+    }
+
+    /**
+     * Finds the first valid record at or after <code>position</code>.
+     * @return The position of the record, or {@link #INVALID_RECORD} if there are no valid records after it
+     */
+    private static int findNextRecord(ByteBuffer data, int position, CRC32 checksum) {
+        for(int candidate = position; candidate <= data.limit() - RECORD_HEADER_LENGTH - CHECKSUM_LENGTH; candidate++) {
+            if(checkRecord(data, candidate, checksum) >= 0) {
+                return candidate;
+            }
+        }
+        return INVALID_RECORD;
+    }
+
+    /**
+     * Opens the log for appending, discarding anything after the last complete record.
+     * The log is compacted if any corrupted records were skipped while reading it.
+     * If any of the file is discarded or skipped, it is first copied to <code>&lt;name&gt;.corrupt</code>.
+     * Should be called on the storage thread.
+     * @param path Path of the log file. Created if it doesn't exist
+     * @param contents The result of reading the file, or null if it doesn't exist yet
+     * @return The opened log
+     * @throws IOException If opening the file failed
+     */
+    public static PortalLog open(Path path, Logger logger, FsyncPolicy fsyncPolicy, @Nullable Contents contents) throws IOException {
+        Map<UUID, PortalRecord> portals = contents == null ? new HashMap<>() : new HashMap<>(contents.portals);
+        PortalLog log = new PortalLog(path, logger, fsyncPolicy, portals, contents == null ? 0 : contents.recordCount);
+        if(contents == null || contents.validLength == 0) {
+            log.compact();
+            return log;
+        }
+
+        if(contents.skippedRecords > 0 || Files.size(path) > contents.validLength) {
+            Path backupPath = path.resolveSibling(path.getFileName() + ".corrupt");
+            Files.copy(path, backupPath, StandardCopyOption.REPLACE_EXISTING);
+            logger.warning("Part of the portal log couldn't be read, copied it to %s before repairing it", backupPath.getFileName());
+        }
+
+        log.channel = FileChannel.open(path, StandardOpenOption.WRITE);
+        log.channel.truncate(contents.validLength);
+        log.channel.position(contents.validLength);
+        // Rewriting the log removes the skipped records, so that they aren't warned about every time it is read
+        if(contents.skippedRecords > 0) {
+            log.compact();
+        }   else    {
+            log.compactIfNeeded();
+        }
+        return log;
+    }
+
+    /**
+     * Appends the given changes to the log, then compacts it if there are too many outdated records.
+     * @param changes The changes to write
+     * @throws IOException If writing failed
+     */
+    public void append(List<Change> changes) throws IOException {
+        if(changes.isEmpty()) {return;}
+
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        DataOutputStream output = new DataOutputStream(buffer);
+        for(Change change : changes) {
+            if(change.record == null) {
+                portals.remove(change.id);
+                writeRecord(output, REMOVE_RECORD, recordOutput -> PortalRecord.writeUuid(recordOutput, change.id));
+            }   else    {
+                portals.put(change.id, change.record);
+                writeRecord(output, PUT_RECORD, change.record::write);
+            }
+            recordCount++;
+        }
+
+        writeFully(channel, buffer.toByteArray());
+        if(fsyncPolicy == FsyncPolicy.ALWAYS) {
+            channel.force(false);
+        }
+        logger.finer("Appended %d records to the portal log", changes.size());
+
+        compactIfNeeded();
+    }
+
+    private void compactIfNeeded() throws IOException {
+        if(recordCount >= MIN_COMPACTION_RECORDS && recordCount > portals.size() * COMPACTION_RATIO) {
+            compact();
+        }
+    }
+
+    /**
+     * Rewrites the log with only the current portals.
+     * The new log is written to a temporary file which then replaces the old one, so the old log is kept if this fails.
+     * @throws IOException If writing failed
+     */
+    public void compact() throws IOException {
+        logger.fine("Compacting portal log. Records: %d, portals: %d", recordCount, portals.size());
+
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        DataOutputStream output = new DataOutputStream(buffer);
+        output.writeInt(MAGIC);
+        output.writeInt(VERSION);
+        for(PortalRecord record : portals.values()) {
+            writeRecord(output, PUT_RECORD, record::write);
+        }
+
+        Path tempPath = path.resolveSibling(path.getFileName() + ".tmp");
+        try(FileChannel tempChannel = FileChannel.open(tempPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            writeFully(tempChannel, buffer.toByteArray());
+            // Make sure the new log is on disk before it replaces the old one
+            if(fsyncPolicy != FsyncPolicy.NEVER) {
+                tempChannel.force(true);
+            }
+        }
+
+        close();
+        try {
+            Files.move(tempPath, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }   catch(AtomicMoveNotSupportedException ex) {
+            Files.move(tempPath, path, StandardCopyOption.REPLACE_EXISTING);
+        }
+
+        channel = FileChannel.open(path, StandardOpenOption.WRITE);
+        channel.position(channel.size());
+        recordCount = portals.size();
+    }
+
+    /**
+     * Closes the log file, syncing it to the disk first unless fsync is disabled.
+     * @throws IOException If closing failed
+     */
+    public void close() throws IOException {
+        if(channel == null) {return;}
+
+        if(fsyncPolicy != FsyncPolicy.NEVER) {
+            channel.force(false);
+        }
+        channel.close();
+        channel = null;
+    }
+
+    private interface RecordWriter {
+        void write(DataOutput output) throws IOException;
+    }
+
+    private static void writeRecord(DataOutputStream output, byte type, RecordWriter writer) throws IOException {
+        ByteArrayOutputStream recordBuffer = new ByteArrayOutputStream();
+        writer.write(new DataOutputStream(recordBuffer));
+        byte[] recordData = recordBuffer.toByteArray();
+
+        ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER_LENGTH);
+        header.put(type);
+        header.putInt(recordData.length);
+
+        CRC32 checksum = new CRC32();
+        checksum.update(header.array(), 0, RECORD_HEADER_LENGTH - CHECKSUM_LENGTH);
+        header.putInt((int) checksum.getValue());
+        // The record checksum continues from the header, so it covers the type and length as well
+        checksum.update(recordData);
+
+        output.write(header.array());
+        output.write(recordData);
+        output.writeInt((int) checksum.getValue());
+    }
+
+    private static void writeFully(FileChannel channel, byte[] data) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(data);
+        while(buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+}
@@ -0,0 +1,166 @@
+package com.lauriethefish.betterportals.bukkit.portal.storage;
+
+import com.lauriethefish.betterportals.api.PortalPosition;
+import com.lauriethefish.betterportals.bukkit.portal.IPortal;
+import lombok.Getter;
+import org.bukkit.util.Vector;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+
+/**
+ * Immutable copy of the saved fields of a portal.
+ * This is what gets written to disk, and since it can't change, it is safe to pass to the storage thread.
+ */
+public class PortalRecord {
+    @Getter private final UUID id;
+    @Getter private final @Nullable UUID ownerId;
+    @Getter private final @Nullable String name;
+    @Getter private final PortalPosition originPos;
+    @Getter private final PortalPosition destPos;
+    private final double sizeX;
+    private final double sizeY;
+    private final double sizeZ;
+    @Getter private final boolean isCustom;
+    @Getter private final boolean allowsNonPlayerTeleportation;
+
+    public PortalRecord(@NotNull UUID id, @Nullable UUID ownerId, @Nullable String name, @NotNull PortalPosition originPos, @NotNull PortalPosition destPos, @NotNull Vector size, boolean isCustom, boolean allowsNonPlayerTeleportation) {
+        this.id = id;
+        this.ownerId = ownerId;
+        this.name = name;
+        this.originPos = originPos;
+        this.destPos = destPos;
+        this.sizeX = size.getX();
+        this.sizeY = size.getY();
+        this.sizeZ = size.getZ();
+        this.isCustom = isCustom;
+        this.allowsNonPlayerTeleportation = allowsNonPlayerTeleportation;
+    }
+
+    /**
+     * Copies the saved fields of <code>portal</code>.
+     * @param portal The portal to copy
+     * @return The new record
+     */
+    public static PortalRecord fromPortal(IPortal portal) {
+        return new PortalRecord(portal.getId(), portal.getOwnerId(), portal.getName(), portal.getOriginPos(), portal.getDestPos(), portal.getSize(), portal.isCustom(), portal.allowsNonPlayerTeleportation());
+    }
+
+    /**
+     * Creates a new portal with the fields of this record. The portal is not registered.
+     * @param portalFactory Factory to create the portal with
+     * @return The new portal
+     */
+    public IPortal createPortal(IPortal.Factory portalFactory) {
+        return portalFactory.create(originPos, destPos, getSize(), isCustom, id, ownerId, name, allowsNonPlayerTeleportation);
+    }
+
+    public Vector getSize() {
+        return new Vector(sizeX, sizeY, sizeZ);
+    }
+
+    public void write(DataOutput output) throws IOException {
+        writeUuid(output, id);
+        output.writeBoolean(ownerId != null);
+        if(ownerId != null) {writeUuid(output, ownerId);}
+        writeNullableString(output, name);
+
+        writePosition(output, originPos);
+        writePosition(output, destPos);
+
+        output.writeDouble(sizeX);
+        output.writeDouble(sizeY);
+        output.writeDouble(sizeZ);
+        output.writeBoolean(isCustom);
+        output.writeBoolean(allowsNonPlayerTeleportation);
+    }
+
+    public static PortalRecord read(DataInput input) throws IOException {
+        UUID id = readUuid(input);
+        UUID ownerId = input.readBoolean() ? readUuid(input) : null;
+        String name = readNullableString(input);
+
+        PortalPosition originPos = readPosition(input);
+        PortalPosition destPos = readPosition(input);
+
+        Vector size = new Vector(input.readDouble(), input.readDouble(), input.readDouble());
+        boolean isCustom = input.readBoolean();
+        boolean allowsNonPlayerTeleportation = input.readBoolean();
+
+        return new PortalRecord(id, ownerId, name, originPos, destPos, size, isCustom, allowsNonPlayerTeleportation);
+    }
+
+    static void writeUuid(DataOutput output, UUID uuid) throws IOException {
+        output.writeLong(uuid.getMostSignificantBits());
+        output.writeLong(uuid.getLeastSignificantBits());
+    }
+
+    static UUID readUuid(DataInput input) throws IOException {
+        return new UUID(input.readLong(), input.readLong());
+    }
+
+    private static void writeNullableString(DataOutput output, @Nullable String value) throws IOException {
+        output.writeBoolean(value != null);
+        if(value != null) {output.writeUTF(value);}
+    }
+
+    private static @Nullable String readNullableString(DataInput input) throws IOException {
+        return input.readBoolean() ? input.readUTF() : null;
+    }
+
+    // Positions go through the same map used for YAML, so that the world ID and name are kept even if the world isn't currently loaded
+    private static void writePosition(DataOutput output, PortalPosition position) throws IOException {
+        Map<String, Object> map = position.serialize();
+        String worldId = (String) map.get("worldId");
+        writeNullableString(output, worldId);
+        writeNullableString(output, (String) map.get("worldName"));
+        writeNullableString(output, (String) map.get("serverName"));
+        output.writeDouble((double) map.get("x"));
+        output.writeDouble((double) map.get("y"));
+        output.writeDouble((double) map.get("z"));
+        output.writeUTF((String) map.get("direction"));
+    }
+
+    private static PortalPosition readPosition(DataInput input) throws IOException {
+        Map<String, Object> map = new HashMap<>();
+        map.put("worldId", readNullableString(input));
+        map.put("worldName", readNullableString(input));
+        map.put("serverName", readNullableString(input));
+        map.put("x", input.readDouble());
+        map.put("y", input.readDouble());
+        map.put("z", input.readDouble());
+        map.put("direction", input.readUTF());
+
+        return new PortalPosition(map);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if(this == obj) {return true;}
+        if(!(obj instanceof PortalRecord)) {return false;}
+        PortalRecord other = (PortalRecord) obj;
+
+        return  id.equals(other.id) &&
+                Objects.equals(ownerId, other.ownerId) &&
+                Objects.equals(name, other.name) &&
+                originPos.equals(other.originPos) &&
+                destPos.equals(other.destPos) &&
+                sizeX == other.sizeX &&
+                sizeY == other.sizeY &&
+                sizeZ == other.sizeZ &&
+                isCustom == other.isCustom &&
+                allowsNonPlayerTeleportation == other.allowsNonPlayerTeleportation;
+    }
+
+    @Override
+    public int hashCode() {
+        return id.hashCode();
+    }
+}
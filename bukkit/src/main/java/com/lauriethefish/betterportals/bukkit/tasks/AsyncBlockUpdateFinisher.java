@@ -2,6 +2,7 @@ package com.lauriethefish.betterportals.bukkit.tasks;
 
 import com.google.inject.Inject;
 import com.google.inject.Singleton;
+import com.lauriethefish.betterportals.bukkit.util.performance.OperationRegistry;
 import com.lauriethefish.betterportals.shared.logging.Logger;
 import org.bukkit.Bukkit;
 import org.bukkit.plugin.java.JavaPlugin;
@@ -16,8 +17,8 @@ public class AsyncBlockUpdateFinisher extends BlockUpdateFinisher implements Run
     private final JavaPlugin pl;
 
     @Inject
-    public AsyncBlockUpdateFinisher(JavaPlugin pl, Logger logger) {
-        super(logger);
+    public AsyncBlockUpdateFinisher(JavaPlugin pl, Logger logger, OperationRegistry operationRegistry) {
+        super(logger, operationRegistry);
 
         this.pl = pl;
     }
@@ -1,6 +1,8 @@
 package com.lauriethefish.betterportals.bukkit.tasks;
 
 import com.lauriethefish.betterportals.bukkit.player.view.block.PlayerBlockView;
+import com.lauriethefish.betterportals.bukkit.util.performance.Operation;
+import com.lauriethefish.betterportals.bukkit.util.performance.OperationRegistry;
 import com.lauriethefish.betterportals.shared.logging.Logger;
 
 import java.util.concurrent.BlockingQueue;
@@ -20,6 +22,7 @@ public abstract class BlockUpdateFinisher {
     private static class BlockViewUpdateInfo {
         PlayerBlockView blockView;
         BlockViewUpdateType type;
+        long queuedTime = System.nanoTime();
         public BlockViewUpdateInfo(PlayerBlockView blockView, BlockViewUpdateType type) {
             this.blockView = blockView;
             this.type = type;
@@ -36,14 +39,19 @@ public abstract class BlockUpdateFinisher {
 
     private final BlockingQueue<BlockViewUpdateInfo> updateQueue = new LinkedBlockingQueue<>();
     protected final Logger logger;
+    private final Operation lagOperation;
 
     private volatile boolean hasStopped = false;
 
-    protected BlockUpdateFinisher(Logger logger) {
+    protected BlockUpdateFinisher(Logger logger, OperationRegistry operationRegistry) {
         this.logger = logger;
+        this.lagOperation = operationRegistry.getOperation(OperationRegistry.BLOCK_UPDATE_LAG);
     }
 
     private void processUpdate(BlockViewUpdateInfo next) {
+        // How long the update was waiting in the queue
+        lagOperation.record(System.nanoTime() - next.queuedTime);
+
         if(next.type == BlockViewUpdateType.RESET) {
             logger.fine("Running scheduled reset");
             next.blockView.finishReset();
@@ -82,6 +90,13 @@ public abstract class BlockUpdateFinisher {
         hasStopped = true;
     }
 
+    /**
+     * @return The number of updates waiting to be processed
+     */
+    public int getQueueSize() {
+        return updateQueue.size();
+    }
+
     /**
      * Schedules the update for <code>blockView</code> to happen on another thread.
      * @param blockView The block view to be updated
@@ -3,11 +3,23 @@ package com.lauriethefish.betterportals.bukkit.tasks;
 import com.google.inject.Inject;
 import com.google.inject.Singleton;
 import com.lauriethefish.betterportals.bukkit.block.external.IExternalBlockWatcherManager;
+import com.lauriethefish.betterportals.bukkit.chunk.chunkloading.IChunkLoader;
+import com.lauriethefish.betterportals.bukkit.chunk.chunkloading.PortalChunkPreloader;
 import com.lauriethefish.betterportals.bukkit.entity.faking.EntityTrackingManager;
+import com.lauriethefish.betterportals.bukkit.entity.faking.IEntityPacketManipulator;
 import com.lauriethefish.betterportals.bukkit.net.ClientRequestHandler;
 import com.lauriethefish.betterportals.bukkit.player.IPlayerData;
 import com.lauriethefish.betterportals.bukkit.player.PlayerDataManager;
 import com.lauriethefish.betterportals.bukkit.portal.IPortalActivityManager;
+import com.lauriethefish.betterportals.bukkit.portal.PortalPrewarmer;
+import com.lauriethefish.betterportals.bukkit.portal.PortalRegionLoader;
+import com.lauriethefish.betterportals.bukkit.portal.RenderBudget;
+import com.lauriethefish.betterportals.bukkit.portal.RenderQualityController;
+import com.lauriethefish.betterportals.bukkit.util.performance.AllocationProfiler;
+import com.lauriethefish.betterportals.bukkit.util.performance.Operation;
+import com.lauriethefish.betterportals.bukkit.util.performance.OperationRegistry;
+import com.lauriethefish.betterportals.bukkit.util.performance.TickPhase;
+import com.lauriethefish.betterportals.bukkit.util.performance.TickPhaseEvent;
 import com.lauriethefish.betterportals.shared.logging.Logger;
 import org.bukkit.plugin.java.JavaPlugin;
 
@@ -23,24 +35,57 @@ public class MainUpdate implements Runnable {
     private final PlayerDataManager playerDataManager;
     private final IPortalActivityManager activityManager;
     private final EntityTrackingManager entityTrackingManager;
+    private final IEntityPacketManipulator entityPacketManipulator;
     private final ClientRequestHandler requestHandler;
     private final IExternalBlockWatcherManager blockWatcherManager;
+    private final PortalChunkPreloader chunkPreloader;
+    private final PortalPrewarmer portalPrewarmer;
+    private final PortalRegionLoader regionLoader;
+    private final IChunkLoader chunkLoader;
+    private final RenderBudget renderBudget;
+    private final RenderQualityController qualityController;
     private final Logger logger;
 
+    private final OperationRegistry operationRegistry;
+    private final AllocationProfiler allocationProfiler;
+    private final Operation mainUpdateOperation;
+    private final Operation playerUpdateOperation;
+    private final Operation entityTrackingOperation;
+    private final Operation requestHandlingOperation;
+
     @Inject
     public MainUpdate(JavaPlugin pl,
                       PlayerDataManager playerDataManager,
                       IPortalActivityManager activityManager,
                       EntityTrackingManager entityTrackingManager,
+                      IEntityPacketManipulator entityPacketManipulator,
                       ClientRequestHandler requestHandler,
-                      IExternalBlockWatcherManager blockWatcherManager, Logger logger) {
+                      IExternalBlockWatcherManager blockWatcherManager,
+                      PortalChunkPreloader chunkPreloader,
+                      PortalPrewarmer portalPrewarmer,
+                      PortalRegionLoader regionLoader,
+                      IChunkLoader chunkLoader, RenderBudget renderBudget, RenderQualityController qualityController, Logger logger,
+                      OperationRegistry operationRegistry) {
         this.pl = pl;
         this.playerDataManager = playerDataManager;
         this.activityManager = activityManager;
         this.entityTrackingManager = entityTrackingManager;
+        this.entityPacketManipulator = entityPacketManipulator;
         this.requestHandler = requestHandler;
         this.blockWatcherManager = blockWatcherManager;
+        this.chunkPreloader = chunkPreloader;
+        this.portalPrewarmer = portalPrewarmer;
+        this.regionLoader = regionLoader;
+        this.chunkLoader = chunkLoader;
+        this.renderBudget = renderBudget;
+        this.qualityController = qualityController;
         this.logger = logger;
+        this.operationRegistry = operationRegistry;
+        this.allocationProfiler = operationRegistry.getAllocationProfiler();
+        this.mainUpdateOperation = operationRegistry.getOperation(OperationRegistry.MAIN_UPDATE);
+        this.playerUpdateOperation = operationRegistry.getOperation(OperationRegistry.PLAYER_UPDATE);
+        this.entityTrackingOperation = operationRegistry.getOperation(OperationRegistry.ENTITY_TRACKING);
+        this.requestHandlingOperation = operationRegistry.getOperation(OperationRegistry.REQUEST_HANDLING);
     }
 
     public void start() {
@@ -49,16 +94,61 @@ public class MainUpdate implements Runnable {
 
     @Override
     public void run() {
+        long startTime = System.nanoTime();
+        long startBytes = allocationProfiler.begin();
         try {
-            playerDataManager.getPlayers().forEach(IPlayerData::onUpdate);
+            // Entity packets sent while updating are collected, then sent to each player together at the end
+            entityPacketManipulator.startBatch();
+            try {
+                for(IPlayerData playerData : playerDataManager.getPlayers()) {
+                    long playerStartTime = System.nanoTime();
+                    long playerStartBytes = allocationProfiler.begin();
+                    TickPhaseEvent playerEvent = TickPhaseEvent.begin(TickPhase.PLAYER_UPDATE);
+                    playerData.onUpdate();
+                    playerEvent.finish(null, playerData.getPlayer().getName(), 0);
+                    allocationProfiler.record(OperationRegistry.PLAYER_UPDATE, playerStartBytes);
+
+                    long playerTime = System.nanoTime() - playerStartTime;
+                    playerUpdateOperation.record(playerTime);
+                    operationRegistry.recordPlayer(playerData.getPlayer().getUniqueId(), playerTime);
+                }
 
-            // Update replicated entities
-            entityTrackingManager.update();
+                // Update replicated entities
+                long entityStartTime = System.nanoTime();
+                long entityStartBytes = allocationProfiler.begin();
+                TickPhaseEvent entityEvent = TickPhaseEvent.begin(TickPhase.ENTITY_TRACKING);
+                entityTrackingManager.update();
+                entityEvent.finish(null, null, entityTrackingManager.getTrackerCount());
+                entityTrackingOperation.record(System.nanoTime() - entityStartTime);
+                allocationProfiler.record(OperationRegistry.ENTITY_TRACKING, entityStartBytes);
+            }   finally {
+                TickPhaseEvent sendEvent = TickPhaseEvent.begin(TickPhase.PACKET_SEND);
+                entityPacketManipulator.flushBatch();
+                sendEvent.finish(null, null, 0);
+            }
 
             // Deactivates and view-deactivates any unused portals that were active last tick
             activityManager.postUpdate();
 
+            // Start loading the chunks of portals that players are getting close to, and unload chunks that are no longer needed
+            chunkPreloader.update();
+            // Prepare the portals that players are predicted to reach soon
+            portalPrewarmer.update();
+            // Unload portals that haven't been used in a while
+            regionLoader.update();
+            chunkLoader.update();
+            // Degrade or restore portals based on how long they took to render recently
+            renderBudget.update();
+            // Lower or raise the render quality of every portal based on the server's MSPT
+            qualityController.update();
+
+            long requestStartTime = System.nanoTime();
+            long requestStartBytes = allocationProfiler.begin();
+            TickPhaseEvent requestEvent = TickPhaseEvent.begin(TickPhase.REQUEST_HANDLING);
             requestHandler.handlePendingRequests();
+            requestEvent.finish(null, null, 0);
+            requestHandlingOperation.record(System.nanoTime() - requestStartTime);
+            allocationProfiler.record(OperationRegistry.REQUEST_HANDLING, requestStartBytes);
 
             blockWatcherManager.update();
 
@@ -66,6 +156,9 @@ public class MainUpdate implements Runnable {
             logger.severe("A critical error occurred during main update.");
             logger.severe("Please create an issue at %s to get this fixed.", ISSUES_URL);
             ex.printStackTrace();
+        }   finally {
+            mainUpdateOperation.record(System.nanoTime() - startTime);
+            allocationProfiler.recordTick(startBytes);
         }
     }
 }
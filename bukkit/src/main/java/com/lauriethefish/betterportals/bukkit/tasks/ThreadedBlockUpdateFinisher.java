@@ -2,6 +2,7 @@ package com.lauriethefish.betterportals.bukkit.tasks;
 
 import com.google.inject.Inject;
 import com.google.inject.Singleton;
+import com.lauriethefish.betterportals.bukkit.util.performance.OperationRegistry;
 import com.lauriethefish.betterportals.shared.logging.Logger;
 
 /**
@@ -13,8 +14,8 @@ public class ThreadedBlockUpdateFinisher extends BlockUpdateFinisher implements
     private Thread thread;
 
     @Inject
-    public ThreadedBlockUpdateFinisher(Logger logger) {
-        super(logger);
+    public ThreadedBlockUpdateFinisher(Logger logger, OperationRegistry operationRegistry) {
+        super(logger, operationRegistry);
     }
 
     @Override
@@ -0,0 +1,49 @@
+package com.lauriethefish.betterportals.bukkit.util;
+
+import com.lauriethefish.betterportals.shared.util.ReflectionException;
+import com.lauriethefish.betterportals.shared.util.ReflectionUtil;
+import org.bukkit.Chunk;
+import org.bukkit.World;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.CompletableFuture;
+
+public class ChunkLoadUtil {
+    // Paper (and its forks) can load and generate chunks without blocking the main thread
+    private static final Method GET_CHUNK_AT_ASYNC;
+
+    static {
+        Method getChunkAtAsync;
+        try {
+            getChunkAtAsync = ReflectionUtil.findMethod(World.class, "getChunkAtAsync", int.class, int.class);
+        }   catch(ReflectionException ex) {
+            getChunkAtAsync = null;
+        }
+        GET_CHUNK_AT_ASYNC = getChunkAtAsync;
+    }
+
+    /**
+     * @return Whether chunks can be loaded without blocking the main thread on this server
+     */
+    public static boolean isAsyncLoadingSupported() {
+        return GET_CHUNK_AT_ASYNC != null;
+    }
+
+    /**
+     * Loads (or generates) the chunk at the given coordinates.
+     * If the server doesn't support async chunk loading, the chunk is loaded immediately on the calling thread.
+     * Must be called on the main thread, and the returned future is also completed on the main thread.
+     * @param world The world to load the chunk in
+     * @param x Chunk X coordinate
+     * @param z Chunk Z coordinate
+     * @return A future completed with the loaded chunk
+     */
+    @SuppressWarnings("unchecked")
+    public static CompletableFuture<Chunk> loadChunk(World world, int x, int z) {
+        if(GET_CHUNK_AT_ASYNC == null || world.isChunkLoaded(x, z)) {
+            return CompletableFuture.completedFuture(world.getChunkAt(x, z));
+        }
+
+        return (CompletableFuture<Chunk>) ReflectionUtil.invokeMethod(world, GET_CHUNK_AT_ASYNC, x, z);
+    }
+}
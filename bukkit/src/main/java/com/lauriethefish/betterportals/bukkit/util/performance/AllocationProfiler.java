@@ -0,0 +1,156 @@
+package com.lauriethefish.betterportals.bukkit.util.performance;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Opt-in diagnostic that counts the bytes allocated by each instrumented section, using the allocation counter the JVM keeps for each thread.
+ * Sections use the same names as their {@link Operation}, and are recorded from whichever thread they run on, since the counter is per-thread.
+ * <br>Reading the counter isn't free, so nothing is recorded unless profiling has been started with <code>/bp perfalloc start</code>.
+ * Sections can be nested (e.g. each player update is part of the main update), so the totals of different sections overlap.
+ */
+public class AllocationProfiler {
+    private final @Nullable com.sun.management.ThreadMXBean threadBean;
+
+    private final Map<String, LongAdder> sectionBytes = new ConcurrentHashMap<>();
+    private final Map<UUID, LongAdder> portalBytes = new ConcurrentHashMap<>();
+    // Number of main updates while profiling, used to find the bytes allocated per tick
+    private final LongAdder ticks = new LongAdder();
+
+    private volatile boolean enabled = false;
+
+    public AllocationProfiler() {
+        // Other JVMs may not have the allocation counter at all
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if(bean instanceof com.sun.management.ThreadMXBean && ((com.sun.management.ThreadMXBean) bean).isThreadAllocatedMemorySupported()) {
+            threadBean = (com.sun.management.ThreadMXBean) bean;
+        }   else    {
+            threadBean = null;
+        }
+    }
+
+    /**
+     * @return Whether the JVM counts the bytes allocated by each thread
+     */
+    public boolean isSupported() {
+        return threadBean != null;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Clears the previous results and starts recording allocations.
+     * @return Whether profiling was started, which fails if the JVM doesn't support it
+     */
+    public boolean start() {
+        if(threadBean == null) {return false;}
+        if(!threadBean.isThreadAllocatedMemoryEnabled()) {
+            threadBean.setThreadAllocatedMemoryEnabled(true);
+        }
+
+        clear();
+        enabled = true;
+        return true;
+    }
+
+    /**
+     * Stops recording allocations. The results are kept until profiling is started again.
+     */
+    public void stop() {
+        enabled = false;
+    }
+
+    /**
+     * Removes the results of the current or last profiling session.
+     */
+    public void clear() {
+        sectionBytes.clear();
+        portalBytes.clear();
+        ticks.reset();
+    }
+
+    /**
+     * Should be called at the start of each instrumented section, and passed to one of the <code>record</code> methods at the end, on the same thread.
+     * @return The bytes allocated by the current thread so far, or -1 if profiling isn't enabled
+     */
+    public long begin() {
+        if(!enabled || threadBean == null) {return -1;}
+
+        return threadBean.getCurrentThreadAllocatedBytes();
+    }
+
+    /**
+     * @param section Name of the section
+     * @param startBytes The value returned by {@link #begin()} at the start of the section
+     */
+    public void record(@NotNull String section, long startBytes) {
+        if(startBytes < 0) {return;}
+
+        sectionBytes.computeIfAbsent(section, key -> new LongAdder()).add(getAllocatedSince(startBytes));
+    }
+
+    /**
+     * Records a section that was spent on one portal, which is also added to the portal's total.
+     * @param section Name of the section
+     * @param portalId ID of the portal
+     * @param startBytes The value returned by {@link #begin()} at the start of the section
+     */
+    public void record(@NotNull String section, @NotNull UUID portalId, long startBytes) {
+        if(startBytes < 0) {return;}
+
+        long allocated = getAllocatedSince(startBytes);
+        sectionBytes.computeIfAbsent(section, key -> new LongAdder()).add(allocated);
+        portalBytes.computeIfAbsent(portalId, key -> new LongAdder()).add(allocated);
+    }
+
+    /**
+     * Records the main update, and counts the tick.
+     * @param startBytes The value returned by {@link #begin()} at the start of the main update
+     */
+    public void recordTick(long startBytes) {
+        if(startBytes < 0) {return;}
+
+        record(OperationRegistry.MAIN_UPDATE, startBytes);
+        ticks.increment();
+    }
+
+    private long getAllocatedSince(long startBytes) {
+        // Only called when begin() returned a value, so the bean must exist
+        assert threadBean != null;
+        return Math.max(0, threadBean.getCurrentThreadAllocatedBytes() - startBytes);
+    }
+
+    public long getTicks() {
+        return ticks.sum();
+    }
+
+    /**
+     * @return The total bytes allocated by each section while profiling, sorted by name
+     */
+    public @NotNull Map<String, Long> getSectionBytes() {
+        Map<String, Long> result = new TreeMap<>();
+        sectionBytes.forEach((section, bytes) -> result.put(section, bytes.sum()));
+        return Collections.unmodifiableMap(result);
+    }
+
+    /**
+     * @return The total bytes allocated for each portal while profiling
+     */
+    public @NotNull Map<UUID, Long> getPortalBytes() {
+        Map<UUID, Long> result = new HashMap<>();
+        portalBytes.forEach((portalId, bytes) -> result.put(portalId, bytes.sum()));
+        return Collections.unmodifiableMap(result);
+    }
+}
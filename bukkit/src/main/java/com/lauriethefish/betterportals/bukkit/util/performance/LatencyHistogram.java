@@ -0,0 +1,68 @@
+package com.lauriethefish.betterportals.bukkit.util.performance;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free histogram of durations in nanoseconds, using the same bucket layout as HdrHistogram.
+ * Each power of two range is split into {@link #SUB_BUCKET_COUNT} linear sub-buckets, so recorded values are accurate to within 1/16 (about 6%) while only needing a few hundred buckets.
+ */
+public class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    // 2^41 nanoseconds is over half an hour, longer values are clamped
+    private static final int MAX_MAGNITUDE = 40;
+    private static final long MAX_VALUE = (1L << (MAX_MAGNITUDE + 1)) - 1;
+
+    private final AtomicLongArray counts = new AtomicLongArray((MAX_MAGNITUDE - SUB_BUCKET_BITS + 2) * SUB_BUCKET_COUNT);
+
+    static int getBucketIndex(long value) {
+        if(value < SUB_BUCKET_COUNT) {return (int) Math.max(value, 0);}
+        value = Math.min(value, MAX_VALUE);
+
+        int magnitude = 63 - Long.numberOfLeadingZeros(value);
+        int shift = magnitude - SUB_BUCKET_BITS;
+        int subBucket = (int) (value >>> shift) & (SUB_BUCKET_COUNT - 1);
+        return (shift + 1) * SUB_BUCKET_COUNT + subBucket;
+    }
+
+    // Returns the highest value that would be recorded in the bucket
+    static long getBucketHighestValue(int index) {
+        if(index < SUB_BUCKET_COUNT) {return index;}
+
+        int shift = index / SUB_BUCKET_COUNT - 1;
+        int subBucket = index % SUB_BUCKET_COUNT;
+        return ((long) (SUB_BUCKET_COUNT + subBucket + 1) << shift) - 1;
+    }
+
+    public void record(long nanos) {
+        counts.incrementAndGet(getBucketIndex(nanos));
+    }
+
+    /**
+     * @param percentile Percentile to find, from 0 to 100
+     * @return The highest value in the bucket containing the given percentile, or 0 if nothing has been recorded
+     */
+    public long getValueAtPercentile(double percentile) {
+        long total = 0;
+        for(int i = 0; i < counts.length(); i++) {
+            total += counts.get(i);
+        }
+        if(total == 0) {return 0;}
+
+        long target = Math.max((long) Math.ceil(percentile / 100.0 * total), 1);
+        long seen = 0;
+        for(int i = 0; i < counts.length(); i++) {
+            seen += counts.get(i);
+            if(seen >= target) {
+                return getBucketHighestValue(i);
+            }
+        }
+        return MAX_VALUE;
+    }
+
+    public void reset() {
+        for(int i = 0; i < counts.length(); i++) {
+            counts.set(i, 0);
+        }
+    }
+}
@@ -1,53 +1,103 @@
 package com.lauriethefish.betterportals.bukkit.util.performance;
 
-import lombok.Getter;
+import org.jetbrains.annotations.Nullable;
 
 import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
 
+/**
+ * Tracks the durations of an operation.
+ * All counters are lock-free, so this can be recorded to from multiple threads at once with very little overhead.
+ */
 public class Operation {
-    @Getter private Duration totalTime = Duration.ZERO;
-    @Getter private long invocationTimes;
+    private final LongAdder totalNanos = new LongAdder();
+    private final LongAdder invocationTimes = new LongAdder();
+    private final LongAccumulator highestNanos = new LongAccumulator(Math::max, Long.MIN_VALUE);
+    private final LongAccumulator lowestNanos = new LongAccumulator(Math::min, Long.MAX_VALUE);
+    private final @Nullable LatencyHistogram histogram;
 
-    private Duration highestTime = null;
-    private Duration lowestTime = null;
+    private final AtomicInteger invocationsUntilStart;
 
-    private int invocationsUntilStart;
     public Operation(int invocationsUntilStart) {
-        this.invocationsUntilStart = invocationsUntilStart;
+        this(invocationsUntilStart, true);
     }
 
-    void update(Duration duration) {
-        if(invocationsUntilStart > 0) {
-            invocationsUntilStart--;
+    /**
+     * @param invocationsUntilStart Number of invocations to ignore at the start, e.g. while the JIT warms up
+     * @param recordHistogram Whether to keep a {@link LatencyHistogram} for finding percentiles. This takes about 5KB
+     */
+    public Operation(int invocationsUntilStart, boolean recordHistogram) {
+        this.invocationsUntilStart = new AtomicInteger(invocationsUntilStart);
+        this.histogram = recordHistogram ? new LatencyHistogram() : null;
+    }
+
+    /**
+     * Records one invocation of this operation.
+     * @param nanos How long the invocation took, in nanoseconds
+     */
+    public void record(long nanos) {
+        if(invocationsUntilStart.get() > 0 && invocationsUntilStart.getAndDecrement() > 0) {
             return;
         }
 
-        totalTime = totalTime.plus(duration);
-        invocationTimes++;
-
-        // This returns greater than 0 if more, less than 0 if lesser
-        if(highestTime == null || duration.compareTo(highestTime) > 0) {
-            highestTime = duration;
+        totalNanos.add(nanos);
+        invocationTimes.increment();
+        highestNanos.accumulate(nanos);
+        lowestNanos.accumulate(nanos);
+        if(histogram != null) {
+            histogram.record(nanos);
         }
+    }
 
-        // This returns less than 0 if lesser, greater than 0 if more
-        if(lowestTime == null || duration.compareTo(lowestTime) < 0) {
-            lowestTime = duration;
-        }
+    public Duration getTotalTime() {
+        return Duration.ofNanos(totalNanos.sum());
+    }
+
+    public long getInvocationTimes() {
+        return invocationTimes.sum();
     }
 
     public Duration getAverageTime() {
+        long invocations = invocationTimes.sum();
         // Avoid dividing by zero exceptions
-        if(invocationTimes == 0) {return Duration.ZERO;}
+        if(invocations == 0) {return Duration.ZERO;}
 
-        return totalTime.dividedBy(invocationTimes);
+        return Duration.ofNanos(totalNanos.sum() / invocations);
     }
 
     public Duration getHighestTime() {
-        return highestTime == null ? Duration.ZERO : highestTime;
+        long highest = highestNanos.get();
+        return highest == Long.MIN_VALUE ? Duration.ZERO : Duration.ofNanos(highest);
     }
 
     public Duration getLowestTime() {
-        return lowestTime == null ? Duration.ZERO : lowestTime;
+        long lowest = lowestNanos.get();
+        return lowest == Long.MAX_VALUE ? Duration.ZERO : Duration.ofNanos(lowest);
+    }
+
+    /**
+     * @param percentile Percentile to find, from 0 to 100
+     * @return The duration that <code>percentile</code>% of invocations took less than, accurate to within about 6%. Zero if this operation doesn't record a histogram
+     */
+    public Duration getPercentile(double percentile) {
+        if(histogram == null) {return Duration.ZERO;}
+
+        return Duration.ofNanos(histogram.getValueAtPercentile(percentile));
+    }
+
+    /**
+     * Clears all recorded invocations.
+     * Invocations recorded at the same time as this is called may be partially kept.
+     */
+    public void reset() {
+        totalNanos.reset();
+        invocationTimes.reset();
+        highestNanos.reset();
+        lowestNanos.reset();
+        if(histogram != null) {
+            histogram.reset();
+        }
     }
 }
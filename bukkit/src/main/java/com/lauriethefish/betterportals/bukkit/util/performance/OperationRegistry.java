@@ -0,0 +1,147 @@
+package com.lauriethefish.betterportals.bukkit.util.performance;
+
+import com.google.inject.Singleton;
+import lombok.Getter;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Always-on timings of the hot paths of the plugin, shown by <code>/bp perf</code>.
+ * Each section is an {@link Operation}, which should be fetched once and kept, then recorded to with {@link System#nanoTime()} differences.
+ * <br>The time spent on each portal and player is also totalled across sections, so that it's possible to find which portal is taking up the tick.
+ * These breakdowns don't keep histograms, to keep their memory usage low, and are removed once the player leaves or the portal is removed or unloaded.
+ * <br>Each portal also has a {@link PortalCost}, which splits its time into sections along with the packets sent for it, and is used by the render budget.
+ * <br>Counters of things like packets and bytes sent are also kept here. These only ever increase, and aren't cleared by {@link #reset()}.
+ * <br>The {@link AllocationProfiler} is kept here too, so that anything timing a section can also count its allocations.
+ */
+@Singleton
+public class OperationRegistry {
+    public static final String MAIN_UPDATE = "MainUpdate.run";
+    public static final String PLAYER_UPDATE = "PlayerData.onUpdate";
+    public static final String FLOOD_FILL = "FloodFillBlockMap.floodFill";
+    public static final String CHECK_FOR_CHANGES = "FloodFillBlockMap.checkForChanges";
+    public static final String FINISH_UPDATE = "PlayerBlockView.finishUpdate";
+    public static final String ENTITY_TRACKING = "EntityTrackingManager.update";
+    public static final String REQUEST_HANDLING = "ClientRequestHandler.handlePendingRequests";
+    public static final String STORAGE_SAVE = "PortalStorage.savePortals";
+    public static final String STORAGE_WRITE = "PortalStorage.write";
+    public static final String BLOCK_UPDATE_LAG = "BlockUpdateFinisher.lag";
+    public static final String PROXY_ROUND_TRIP = "PortalClient.roundTrip";
+    public static final String PROXY_READ = "PortalClient.read";
+    public static final String PROXY_SEND = "PortalClient.send";
+
+    public static final String MULTI_BLOCK_CHANGE_PACKETS = "multi_block_change_packets";
+    public static final String MULTI_BLOCK_CHANGE_BYTES = "multi_block_change_bytes";
+    public static final String RELAY_BYTES_SENT = "relay_sent_bytes";
+    public static final String RELAY_BYTES_RECEIVED = "relay_received_bytes";
+
+    private final Map<String, Operation> operations = new ConcurrentHashMap<>();
+    private final Map<UUID, Operation> portalOperations = new ConcurrentHashMap<>();
+    private final Map<UUID, Operation> playerOperations = new ConcurrentHashMap<>();
+    private final Map<UUID, PortalCost> portalCosts = new ConcurrentHashMap<>();
+    private final Map<String, LongAdder> counters = new ConcurrentHashMap<>();
+    @Getter private final AllocationProfiler allocationProfiler = new AllocationProfiler();
+
+    /**
+     * @param name Name of the section
+     * @return The operation for the section, created if it doesn't exist yet
+     */
+    public @NotNull Operation getOperation(@NotNull String name) {
+        return operations.computeIfAbsent(name, key -> new Operation(0));
+    }
+
+    /**
+     * @param name Name of the counter
+     * @return The counter, created if it doesn't exist yet
+     */
+    public @NotNull LongAdder getCounter(@NotNull String name) {
+        return counters.computeIfAbsent(name, key -> new LongAdder());
+    }
+
+    /**
+     * Adds time spent on a portal to its breakdown.
+     * @param portalId ID of the portal
+     * @param nanos Time taken in nanoseconds
+     */
+    public void recordPortal(@NotNull UUID portalId, long nanos) {
+        portalOperations.computeIfAbsent(portalId, key -> new Operation(0, false)).record(nanos);
+    }
+
+    /**
+     * Adds time spent on a player to their breakdown.
+     * @param playerId Unique ID of the player
+     * @param nanos Time taken in nanoseconds
+     */
+    public void recordPlayer(@NotNull UUID playerId, long nanos) {
+        playerOperations.computeIfAbsent(playerId, key -> new Operation(0, false)).record(nanos);
+    }
+
+    /**
+     * The cost may be removed by {@link #reset()}, so this should be fetched each time rather than kept.
+     * @param portalId ID of the portal
+     * @return The cost of the portal, created if it doesn't exist yet
+     */
+    public @NotNull PortalCost getPortalCost(@NotNull UUID portalId) {
+        return portalCosts.computeIfAbsent(portalId, key -> new PortalCost());
+    }
+
+    /**
+     * Removes the breakdown of a player, since they will no longer be updated.
+     * @param playerId Unique ID of the player who left
+     */
+    public void removePlayer(@NotNull UUID playerId) {
+        playerOperations.remove(playerId);
+    }
+
+    /**
+     * Removes the breakdown and cost of a portal, since it will no longer be updated until it is loaded again.
+     * @param portalId ID of the portal that was removed or unloaded
+     */
+    public void removePortal(@NotNull UUID portalId) {
+        portalOperations.remove(portalId);
+        portalCosts.remove(portalId);
+    }
+
+    /**
+     * @return Every section, sorted by name
+     */
+    public @NotNull Map<String, Operation> getOperations() {
+        return Collections.unmodifiableMap(new TreeMap<>(operations));
+    }
+
+    /**
+     * @return Every counter, sorted by name
+     */
+    public @NotNull Map<String, LongAdder> getCounters() {
+        return Collections.unmodifiableMap(new TreeMap<>(counters));
+    }
+
+    public @NotNull Map<UUID, Operation> getPortalOperations() {
+        return Collections.unmodifiableMap(portalOperations);
+    }
+
+    public @NotNull Map<UUID, Operation> getPlayerOperations() {
+        return Collections.unmodifiableMap(playerOperations);
+    }
+
+    public @NotNull Map<UUID, PortalCost> getPortalCosts() {
+        return Collections.unmodifiableMap(portalCosts);
+    }
+
+    /**
+     * Clears the timings of every section, and removes the portal and player breakdowns, portal costs and allocation counts.
+     */
+    public void reset() {
+        operations.values().forEach(Operation::reset);
+        portalOperations.clear();
+        playerOperations.clear();
+        portalCosts.clear();
+        allocationProfiler.clear();
+    }
+}
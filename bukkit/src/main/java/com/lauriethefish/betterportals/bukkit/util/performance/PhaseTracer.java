@@ -0,0 +1,106 @@
+package com.lauriethefish.betterportals.bukkit.util.performance;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.lauriethefish.betterportals.shared.logging.Logger;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Recording;
+import org.bukkit.plugin.java.JavaPlugin;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * Records a {@link TickPhaseEvent} for each phase of rendering portals, along with garbage collections, to a JFR file in the <code>traces</code> folder.
+ * The file can be opened in JDK Mission Control to see exactly where the time went during a lag spike.
+ */
+@Singleton
+public class PhaseTracer {
+    private static final String TRACES_FOLDER = "traces";
+    private static final DateTimeFormatter FILE_NAME_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd_HH-mm-ss");
+    // A trace that is never stopped would otherwise keep growing until the server restarts
+    private static final Duration MAX_AGE = Duration.ofMinutes(30);
+
+    private final JavaPlugin pl;
+    private final Logger logger;
+
+    private Recording recording = null;
+
+    @Inject
+    public PhaseTracer(JavaPlugin pl, Logger logger) {
+        this.pl = pl;
+        this.logger = logger;
+    }
+
+    /**
+     * @return Whether JFR can be used, which it can't if it was disabled with a JVM flag
+     */
+    public boolean isAvailable() {
+        return FlightRecorder.isAvailable();
+    }
+
+    public synchronized boolean isTracing() {
+        return recording != null;
+    }
+
+    /**
+     * Starts recording the phases.
+     * @throws IllegalStateException If already tracing, or JFR isn't available
+     */
+    public synchronized void start() {
+        if(recording != null) {throw new IllegalStateException("Attempted to start tracing while already tracing");}
+        if(!isAvailable()) {throw new IllegalStateException("JFR is not available");}
+
+        FlightRecorder.register(TickPhaseEvent.class);
+        recording = new Recording();
+        recording.setName("BetterPortals");
+        recording.setToDisk(true);
+        recording.setMaxAge(MAX_AGE);
+        recording.enable(TickPhaseEvent.class).withThreshold(Duration.ZERO);
+        recording.enable("jdk.GarbageCollection");
+        recording.start();
+        logger.fine("Started tracing");
+    }
+
+    /**
+     * Stops recording the phases, and writes them to a new file.
+     * @return The path of the file
+     * @throws IllegalStateException If not tracing
+     * @throws IOException If writing the file fails
+     */
+    public synchronized @NotNull Path stop() throws IOException {
+        if(recording == null) {throw new IllegalStateException("Attempted to stop tracing while not tracing");}
+
+        try {
+            recording.stop();
+
+            Path folder = pl.getDataFolder().toPath().resolve(TRACES_FOLDER);
+            Files.createDirectories(folder);
+            Path path = folder.resolve(String.format("trace-%s.jfr", LocalDateTime.now().format(FILE_NAME_FORMAT)));
+            recording.dump(path);
+            logger.fine("Wrote trace to %s", path);
+            return path;
+        }   finally     {
+            recording.close();
+            recording = null;
+        }
+    }
+
+    /**
+     * Stops tracing if a trace is running, so that it isn't lost when the server shuts down.
+     */
+    public void shutDown() {
+        if(!isTracing()) {return;}
+
+        try {
+            logger.info("Saved the running trace to %s", stop());
+        }   catch(IOException ex) {
+            logger.warning("Failed to save the running trace: %s", ex.getMessage());
+        }
+    }
+}
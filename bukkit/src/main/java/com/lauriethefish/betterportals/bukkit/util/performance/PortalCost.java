@@ -0,0 +1,79 @@
+package com.lauriethefish.betterportals.bukkit.util.performance;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The resources used by rendering one portal, for finding which portals are the most expensive.
+ * All counters are lock-free, since the visibility updates are recorded from the block update threads.
+ * <br>The CPU time is also added to a window, which is taken by the render budget to find the recent cost of the portal.
+ */
+public class PortalCost {
+    private final LongAdder floodFillNanos = new LongAdder();
+    private final LongAdder changeCheckNanos = new LongAdder();
+    private final LongAdder visibilityNanos = new LongAdder();
+    private final LongAdder packetsSent = new LongAdder();
+    private final LongAdder bytesSent = new LongAdder();
+
+    private final LongAdder windowNanos = new LongAdder();
+
+    /**
+     * @param nanos Time taken by the initial flood fill of the portal's block map
+     */
+    public void recordFloodFill(long nanos) {
+        floodFillNanos.add(nanos);
+        windowNanos.add(nanos);
+    }
+
+    /**
+     * @param nanos Time taken to check the portal's block map for changes
+     */
+    public void recordChangeCheck(long nanos) {
+        changeCheckNanos.add(nanos);
+        windowNanos.add(nanos);
+    }
+
+    /**
+     * @param nanos Time taken to find which blocks are visible to one player, and send them
+     * @param packets Number of block change packets sent
+     * @param bytes Estimated size of the packets sent
+     */
+    public void recordVisibility(long nanos, int packets, long bytes) {
+        visibilityNanos.add(nanos);
+        windowNanos.add(nanos);
+        packetsSent.add(packets);
+        bytesSent.add(bytes);
+    }
+
+    /**
+     * Clears the CPU time of the current window.
+     * @return The CPU time spent on this portal since the window was last taken, in nanoseconds
+     */
+    public long takeWindowNanos() {
+        return windowNanos.sumThenReset();
+    }
+
+    public Duration getFloodFillTime() {
+        return Duration.ofNanos(floodFillNanos.sum());
+    }
+
+    public Duration getChangeCheckTime() {
+        return Duration.ofNanos(changeCheckNanos.sum());
+    }
+
+    public Duration getVisibilityTime() {
+        return Duration.ofNanos(visibilityNanos.sum());
+    }
+
+    public Duration getTotalTime() {
+        return Duration.ofNanos(floodFillNanos.sum() + changeCheckNanos.sum() + visibilityNanos.sum());
+    }
+
+    public long getPacketsSent() {
+        return packetsSent.sum();
+    }
+
+    public long getBytesSent() {
+        return bytesSent.sum();
+    }
+}
@@ -0,0 +1,18 @@
+package com.lauriethefish.betterportals.bukkit.util.performance;
+
+/**
+ * The phases of rendering portals that are traced with a {@link TickPhaseEvent}.
+ */
+public enum TickPhase {
+    PLAYER_UPDATE, // Updating the portals near one player
+    ACTIVATION, // A portal being activated, which force-loads its destination chunks
+    VIEW_UPDATE, // Updating the blocks and entities one player sees through a portal
+    FLOOD_FILL, // The initial flood fill of a portal's block map. The size is the number of blocks reached
+    CHANGE_CHECK, // Checking a portal's block map for changes. The size is the number of blocks reached
+    ASYNC_FINISH, // Finding which blocks are visible to one player on the finisher thread. The size is the number of viewable blocks
+    PACKET_SEND, // Sending block or entity packets. The size is the number of packets, if it is known
+    ENTITY_TRACKING, // Updating the replicated entities. The size is the number of replicated entities
+    REQUEST_HANDLING, // Handling requests from the proxy on the main thread
+    PROXY_READ, // Processing one object read from the proxy connection
+    PROXY_SEND // Sending one object to the proxy
+}
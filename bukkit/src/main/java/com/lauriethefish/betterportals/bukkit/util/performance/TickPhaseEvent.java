@@ -0,0 +1,60 @@
+package com.lauriethefish.betterportals.bukkit.util.performance;
+
+import jdk.jfr.*;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.UUID;
+
+/**
+ * JFR event for the time taken by one {@link TickPhase}, recorded by <code>/bp trace start</code> or any other JFR recording.
+ * While nothing is recording, beginning and finishing an event does nearly nothing, so these are always left in.
+ */
+@Name("betterportals.TickPhase")
+@Label("Tick Phase")
+@Category("BetterPortals")
+@Description("Time taken by one phase of rendering portals")
+@StackTrace(false)
+public class TickPhaseEvent extends Event {
+    @Label("Phase")
+    private String phase;
+
+    @Label("Portal ID")
+    private String portalId;
+
+    @Label("Player")
+    private String player;
+
+    @Label("Size")
+    @Description("Number of blocks, packets or entities handled, depending on the phase")
+    private long size;
+
+    /**
+     * Starts timing a phase, which must be followed by {@link #finish(UUID, String, long)} on the same thread.
+     * @param phase The phase being timed
+     * @return The event to finish once the phase is done
+     */
+    public static @NotNull TickPhaseEvent begin(@NotNull TickPhase phase) {
+        TickPhaseEvent event = new TickPhaseEvent();
+        event.phase = phase.name();
+        event.begin();
+        return event;
+    }
+
+    /**
+     * Finishes timing the phase, and commits the event if it is being recorded.
+     * @param portalId ID of the portal the phase was for, or null if it wasn't for one portal
+     * @param player Name of the player the phase was for, or null if it wasn't for one player
+     * @param size Number of blocks, packets or entities handled, or 0 if not known
+     */
+    public void finish(@Nullable UUID portalId, @Nullable String player, long size) {
+        end();
+        // Avoid converting the ID when the event won't be recorded
+        if(!shouldCommit()) {return;}
+
+        this.portalId = portalId == null ? null : portalId.toString();
+        this.player = player;
+        this.size = size;
+        commit();
+    }
+}
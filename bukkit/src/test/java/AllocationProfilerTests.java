@@ -0,0 +1,50 @@
+import com.lauriethefish.betterportals.bukkit.util.performance.AllocationProfiler;
+import com.lauriethefish.betterportals.bukkit.util.performance.OperationRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+public class AllocationProfilerTests {
+    // Kept in a field so that the allocation can't be optimised away
+    private Object allocated;
+
+    @Test
+    public void testNothingRecordedUnlessStarted() {
+        AllocationProfiler profiler = new AllocationProfiler();
+        long startBytes = profiler.begin();
+        allocated = new byte[10_000];
+        profiler.recordTick(startBytes);
+
+        assertEquals(-1, startBytes);
+        assertEquals(0, profiler.getTicks());
+        assertTrue(profiler.getSectionBytes().isEmpty());
+    }
+
+    @Test
+    public void testAllocationsRecorded() {
+        AllocationProfiler profiler = new AllocationProfiler();
+        assumeTrue(profiler.start(), "JVM doesn't support counting allocations");
+
+        UUID portalId = UUID.randomUUID();
+        long startBytes = profiler.begin();
+        long portalStartBytes = profiler.begin();
+        allocated = new byte[100_000];
+        profiler.record(OperationRegistry.FLOOD_FILL, portalId, portalStartBytes);
+        profiler.recordTick(startBytes);
+
+        assertEquals(1, profiler.getTicks());
+        assertTrue(profiler.getSectionBytes().get(OperationRegistry.FLOOD_FILL) >= 100_000);
+        assertTrue(profiler.getSectionBytes().get(OperationRegistry.MAIN_UPDATE) >= 100_000);
+        assertTrue(profiler.getPortalBytes().get(portalId) >= 100_000);
+
+        // Results are kept after stopping, but cleared when starting again
+        profiler.stop();
+        assertEquals(1, profiler.getTicks());
+        profiler.start();
+        assertEquals(0, profiler.getTicks());
+        assertTrue(profiler.getPortalBytes().isEmpty());
+    }
+}
@@ -0,0 +1,183 @@
+import com.lauriethefish.betterportals.bukkit.entity.faking.BatchedPacketSender;
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+import java.util.function.Predicate;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BatchedPacketSenderTests {
+    private static final int MAX_BUNDLE_SIZE = 4;
+
+    // Each entry is one write and flush to a player
+    private final Map<String, List<String>> flushes = new HashMap<>();
+    private final Set<String> disconnected = new HashSet<>();
+
+    private BatchedPacketSender<String, String> createSender(boolean bundles) {
+        return new BatchedPacketSender<>(
+                (player, packet) -> flushes.computeIfAbsent(player, p -> new ArrayList<>()).add(packet),
+                player -> !disconnected.contains(player),
+                bundles ? packets -> "bundle" + packets : null,
+                MAX_BUNDLE_SIZE
+        );
+    }
+
+    // Encodes packets by wrapping them in angle brackets, and counts how many times each was encoded
+    private final Map<String, Integer> encodeCounts = new HashMap<>();
+    private final Set<String> listenedPackets = new HashSet<>();
+
+    private BatchedPacketSender<String, String> createPreEncodingSender(boolean bundles) {
+        BatchedPacketSender.PreEncoder<String, String, String> preEncoder = new BatchedPacketSender.PreEncoder<>() {
+            @Override
+            public Predicate<String> startFlush() {
+                return packet -> !listenedPackets.contains(packet);
+            }
+
+            @Override
+            public String encode(String packet) {
+                encodeCounts.merge(packet, 1, Integer::sum);
+                return "<" + packet + ">";
+            }
+
+            @Override
+            public void send(String player, String packet) {
+                flushes.computeIfAbsent(player, p -> new ArrayList<>()).add(packet);
+            }
+
+            @Override
+            public String getBundleDelimiter() {
+                return bundles ? "|" : null;
+            }
+        };
+
+        return new BatchedPacketSender<>(
+                (player, packet) -> flushes.computeIfAbsent(player, p -> new ArrayList<>()).add(packet),
+                player -> !disconnected.contains(player),
+                bundles ? packets -> "bundle" + packets : null,
+                MAX_BUNDLE_SIZE,
+                preEncoder
+        );
+    }
+
+    @Test
+    public void testPacketsEncodedOnceForAllPlayers() {
+        BatchedPacketSender<String, String> sender = createPreEncodingSender(true);
+        List<String> players = List.of("a", "b", "c");
+
+        sender.startBatch();
+        sender.send("move", players);
+        sender.sendState("head", 1, 0, players);
+        sender.sendBarrier("spawn", 2, List.of("a"));
+        sender.flushBatch();
+
+        assertEquals(Map.of("move", 1, "head", 1, "spawn", 1), encodeCounts);
+        assertEquals(3, sender.getEncodes());
+        assertEquals(List.of("|", "<move>", "<head>", "<spawn>", "|"), flushes.get("a"));
+        assertEquals(List.of("|", "<move>", "<head>", "|"), flushes.get("b"));
+
+        // A single packet isn't bundled
+        flushes.clear();
+        sender.startBatch();
+        sender.send("move 2", List.of("a"));
+        sender.flushBatch();
+        assertEquals(List.of("<move 2>"), flushes.get("a"));
+    }
+
+    @Test
+    public void testListenedPacketsNotPreEncoded() {
+        BatchedPacketSender<String, String> sender = createPreEncodingSender(true);
+        listenedPackets.add("spawn");
+
+        sender.startBatch();
+        sender.send("move", List.of("a", "b"));
+        sender.sendBarrier("spawn", 2, List.of("a"));
+        sender.flushBatch();
+
+        // All of a player's packets are sent normally if any are listened for, so that they stay in order and in one bundle
+        assertEquals(List.of("bundle[move, spawn]"), flushes.get("a"));
+        assertEquals(List.of("<move>"), flushes.get("b"));
+        assertEquals(1, sender.getEncodes());
+    }
+
+    @Test
+    public void testLargePreEncodedBatchesAreSplit() {
+        BatchedPacketSender<String, String> sender = createPreEncodingSender(true);
+
+        sender.startBatch();
+        for(int i = 0; i < MAX_BUNDLE_SIZE + 1; i++) {
+            sender.send("move " + i, List.of("a"));
+        }
+        sender.flushBatch();
+
+        List<String> sent = flushes.get("a");
+        assertEquals(List.of("|", "|", "|", "|"), sent.stream().filter("|"::equals).toList());
+        assertEquals(List.of("|", "<move 4>", "|"), sent.subList(sent.size() - 3, sent.size()));
+    }
+
+    @Test
+    public void testOneFlushPerPlayerWithBundles() {
+        BatchedPacketSender<String, String> sender = createSender(true);
+        List<String> players = List.of("a", "b", "c");
+
+        sender.startBatch();
+        sender.send("move", players);
+        sender.sendState("head", 1, 0, players);
+        sender.sendBarrier("spawn", 2, players);
+        assertTrue(flushes.isEmpty());
+        sender.flushBatch();
+
+        assertEquals(3, sender.getSends());
+        for(String player : players) {
+            assertEquals(List.of("bundle[move, head, spawn]"), flushes.get(player));
+        }
+    }
+
+    @Test
+    public void testLargeBatchesAreSplit() {
+        BatchedPacketSender<String, String> sender = createSender(true);
+
+        sender.startBatch();
+        for(int i = 0; i < MAX_BUNDLE_SIZE + 1; i++) {
+            sender.send("move " + i, List.of("a"));
+        }
+        sender.flushBatch();
+
+        assertEquals(2, flushes.get("a").size());
+    }
+
+    @Test
+    public void testFlushPerPacketWithoutBundles() {
+        BatchedPacketSender<String, String> sender = createSender(false);
+
+        sender.startBatch();
+        sender.send("move", List.of("a"));
+        sender.sendState("head", 1, 0, List.of("a"));
+        sender.sendState("head 2", 1, 0, List.of("a"));
+        sender.flushBatch();
+
+        // The replaced head rotation is never sent
+        assertEquals(List.of("move", "head 2"), flushes.get("a"));
+        assertEquals(2, sender.getSends());
+    }
+
+    @Test
+    public void testDisconnectedPlayersSkipped() {
+        BatchedPacketSender<String, String> sender = createSender(true);
+
+        sender.startBatch();
+        sender.send("move", List.of("a", "b"));
+        disconnected.add("b");
+        sender.flushBatch();
+
+        assertEquals(1, sender.getSends());
+        assertFalse(flushes.containsKey("b"));
+    }
+
+    @Test
+    public void testSentImmediatelyOutsideBatch() {
+        BatchedPacketSender<String, String> sender = createSender(true);
+        sender.send("move", List.of("a"));
+
+        assertEquals(List.of("move"), flushes.get("a"));
+    }
+}
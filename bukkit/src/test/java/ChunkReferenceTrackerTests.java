@@ -0,0 +1,97 @@
+import com.lauriethefish.betterportals.bukkit.chunk.chunkloading.ChunkReferenceTracker;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ChunkReferenceTrackerTests {
+    private static final int LINGER_TIME = 3;
+
+    private final ChunkReferenceTracker<String> tracker = new ChunkReferenceTracker<>(chunk -> chunk);
+    private final List<String> removedTickets = new ArrayList<>();
+
+    private void acquireWithTicket(String chunk) {
+        if(tracker.acquire(chunk)) {
+            tracker.onTicketAdded(chunk);
+        }
+    }
+
+    private void tick(int ticks) {
+        for(int i = 0; i < ticks; i++) {
+            tracker.tick(removedTickets::add);
+        }
+    }
+
+    @Test
+    public void testOnlyFirstAcquireAddsTicket() {
+        assertTrue(tracker.acquire("a"));
+        tracker.onTicketAdded("a");
+        assertFalse(tracker.acquire("a"));
+        assertFalse(tracker.acquire("a"));
+
+        assertEquals(3, tracker.getReferenceCount("a"));
+        assertEquals(0, tracker.getReferenceCount("b"));
+    }
+
+    @Test
+    public void testTicketRemovedAfterLastRelease() {
+        acquireWithTicket("a");
+        acquireWithTicket("a");
+
+        assertFalse(tracker.release("a", 0));
+        assertEquals(1, tracker.getReferenceCount("a"));
+        assertTrue(tracker.hasTicket("a"));
+
+        assertTrue(tracker.release("a", 0));
+        assertEquals(0, tracker.getReferenceCount("a"));
+        assertFalse(tracker.hasTicket("a"));
+
+        // Releasing a chunk that isn't referenced does nothing
+        assertFalse(tracker.release("a", 0));
+    }
+
+    @Test
+    public void testTicketLingers() {
+        acquireWithTicket("a");
+        assertFalse(tracker.release("a", LINGER_TIME));
+        assertTrue(tracker.hasTicket("a"));
+
+        tick(LINGER_TIME - 1);
+        assertTrue(removedTickets.isEmpty());
+        assertTrue(tracker.hasTicket("a"));
+
+        tick(1);
+        assertEquals(List.of("a"), removedTickets);
+        assertFalse(tracker.hasTicket("a"));
+
+        // Once the ticket is gone, the next acquire needs a new one
+        assertTrue(tracker.acquire("a"));
+    }
+
+    @Test
+    public void testReacquiredWhileLingering() {
+        acquireWithTicket("a");
+        tracker.release("a", LINGER_TIME);
+        tick(1);
+
+        // The chunk still has its ticket, so doesn't need another
+        assertFalse(tracker.acquire("a"));
+        tick(LINGER_TIME * 2);
+        assertTrue(removedTickets.isEmpty());
+        assertTrue(tracker.hasTicket("a"));
+    }
+
+    @Test
+    public void testReleasedWhileLoading() {
+        // The chunk is loading asynchronously, so hasn't had its ticket added yet
+        assertTrue(tracker.acquire("a"));
+        assertTrue(tracker.needsTicket("a"));
+
+        assertFalse(tracker.release("a", LINGER_TIME));
+        assertFalse(tracker.needsTicket("a"));
+        tick(LINGER_TIME);
+        assertTrue(removedTickets.isEmpty());
+    }
+}
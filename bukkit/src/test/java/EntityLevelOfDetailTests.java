@@ -0,0 +1,78 @@
+import com.lauriethefish.betterportals.bukkit.player.view.entity.EntityLevelOfDetail;
+import com.lauriethefish.betterportals.bukkit.player.view.entity.EntityPacketBudget;
+import org.junit.jupiter.api.Test;
+
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class EntityLevelOfDetailTests {
+    private static final int REDUCED_INTERVAL = 4;
+    private static final int MAX_PACKETS_PER_SECOND = 100;
+
+    private final EntityLevelOfDetail levelOfDetail = new EntityLevelOfDetail(16.0, 48.0, REDUCED_INTERVAL, 0.02);
+    private final EntityPacketBudget budget = new EntityPacketBudget();
+
+    @Test
+    public void testDistanceTiers() {
+        assertEquals(1, levelOfDetail.findUpdateInterval(1.0, 8.0));
+        assertEquals(REDUCED_INTERVAL, levelOfDetail.findUpdateInterval(1.0, 16.0));
+        assertEquals(REDUCED_INTERVAL, levelOfDetail.findUpdateInterval(1.0, 47.9));
+        assertEquals(EntityLevelOfDetail.NOT_REPLICATED, levelOfDetail.findUpdateInterval(1.0, 48.0));
+    }
+
+    @Test
+    public void testSmallEntitiesCulled() {
+        // 0.25 / 20 = 0.0125 radians, below the minimum
+        assertEquals(EntityLevelOfDetail.NOT_REPLICATED, levelOfDetail.findUpdateInterval(0.25, 20.0));
+        assertEquals(REDUCED_INTERVAL, levelOfDetail.findUpdateInterval(0.5, 20.0));
+    }
+
+    @Test
+    public void testFallsBackToReducedRate() {
+        assertEquals(1, levelOfDetail.fitUpdateInterval(1, 20.0));
+        assertEquals(REDUCED_INTERVAL, levelOfDetail.fitUpdateInterval(1, 19.0));
+        assertEquals(REDUCED_INTERVAL, levelOfDetail.fitUpdateInterval(REDUCED_INTERVAL, 5.0));
+        assertEquals(EntityLevelOfDetail.NOT_REPLICATED, levelOfDetail.fitUpdateInterval(1, 4.0));
+        assertEquals(1, levelOfDetail.fitUpdateInterval(1, Double.POSITIVE_INFINITY));
+    }
+
+    @Test
+    public void testBudgetSharedBetweenViews() {
+        UUID player = UUID.randomUUID();
+
+        // The first portal view takes most of the budget, so the second one only has room for reduced rate entities
+        budget.reserve(player, 90.0);
+        double available = budget.getAvailable(player, MAX_PACKETS_PER_SECOND);
+        assertEquals(10.0, available, 1e-9);
+        assertEquals(REDUCED_INTERVAL, levelOfDetail.fitUpdateInterval(1, available));
+
+        budget.reserve(player, 15.0);
+        assertEquals(0.0, budget.getAvailable(player, MAX_PACKETS_PER_SECOND));
+
+        // Other players have their own budget
+        assertEquals(MAX_PACKETS_PER_SECOND, budget.getAvailable(UUID.randomUUID(), MAX_PACKETS_PER_SECOND), 1e-9);
+    }
+
+    @Test
+    public void testBudgetReleased() {
+        UUID player = UUID.randomUUID();
+        budget.reserve(player, 20.0 / 3.0);
+        budget.reserve(player, 60.0);
+
+        budget.release(player, 60.0);
+        budget.release(player, 20.0 / 3.0);
+        assertEquals(MAX_PACKETS_PER_SECOND, budget.getAvailable(player, MAX_PACKETS_PER_SECOND), 1e-9);
+
+        budget.reserve(player, 60.0);
+        budget.removePlayer(player);
+        assertEquals(MAX_PACKETS_PER_SECOND, budget.getAvailable(player, MAX_PACKETS_PER_SECOND), 1e-9);
+    }
+
+    @Test
+    public void testUnlimitedBudget() {
+        UUID player = UUID.randomUUID();
+        budget.reserve(player, 1000.0);
+        assertEquals(Double.POSITIVE_INFINITY, budget.getAvailable(player, -1));
+    }
+}
@@ -0,0 +1,157 @@
+import com.lauriethefish.betterportals.bukkit.player.view.entity.EntityStateTable;
+import org.bukkit.Location;
+import org.bukkit.entity.Entity;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class EntityStateTableTests {
+    private static final int TEST_STATE = 1;
+
+    private final EntityStateTable table = new EntityStateTable();
+
+    // Only the ID and unique ID of the entities are used by the table
+    private static Entity createEntity(int entityId) {
+        UUID uniqueId = UUID.randomUUID();
+        return (Entity) Proxy.newProxyInstance(Entity.class.getClassLoader(), new Class<?>[]{Entity.class}, (proxy, method, args) -> {
+            switch(method.getName()) {
+                case "getEntityId": return entityId;
+                case "getUniqueId": return uniqueId;
+                case "hashCode": return System.identityHashCode(proxy);
+                case "equals": return proxy == args[0];
+                case "toString": return "Entity " + entityId;
+                default: throw new UnsupportedOperationException(method.getName());
+            }
+        });
+    }
+
+    private static List<Entity> createEntities(int count, int idSpacing) {
+        List<Entity> entities = new ArrayList<>();
+        for(int i = 0; i < count; i++) {
+            entities.add(createEntity(i * idSpacing));
+        }
+        return entities;
+    }
+
+    @Test
+    public void testCollisions() {
+        // IDs that are multiples of the capacity would all share one slot if the IDs weren't mixed
+        List<Entity> entities = createEntities(7, 16);
+        table.startTick();
+        int[] slots = new int[entities.size()];
+        for(int i = 0; i < entities.size(); i++) {
+            slots[i] = table.markSeen(entities.get(i));
+            table.setDistance(slots[i], i);
+        }
+
+        assertEquals(entities.size(), table.size());
+        assertEquals(16, table.getCapacity());
+        for(int i = 0; i < entities.size(); i++) {
+            assertEquals(slots[i], table.markSeen(entities.get(i)));
+            assertSame(entities.get(i), table.getEntity(slots[i]));
+            assertEquals(i, table.getDistance(slots[i]));
+        }
+        assertEquals(entities.size(), table.size());
+    }
+
+    @Test
+    public void testGrowth() {
+        Entity first = createEntity(-1);
+        table.startTick();
+        int slot = table.markSeen(first);
+        table.setState(slot, TEST_STATE, true);
+        table.setUpdateInterval(slot, 5);
+        table.setDistance(slot, 12.5);
+        table.setPosition(slot, new Location(null, 1.0, 2.0, 3.0));
+
+        List<Entity> entities = createEntities(100, 1);
+        entities.forEach(table::markSeen);
+
+        assertEquals(101, table.size());
+        assertTrue(table.getCapacity() >= 200);
+
+        // The first entry should have been moved with all of its state
+        slot = table.markSeen(first);
+        assertSame(first, table.getEntity(slot));
+        assertTrue(table.hasState(slot, TEST_STATE));
+        assertEquals(5, table.getUpdateInterval(slot));
+        assertEquals(12.5, table.getDistance(slot));
+        assertFalse(table.hasMoved(slot, new Location(null, 1.0, 2.0, 3.0)));
+        for(Entity entity : entities) {
+            assertSame(entity, table.getEntity(table.markSeen(entity)));
+        }
+    }
+
+    @Test
+    public void testRemoveUnseen() {
+        List<Entity> entities = createEntities(20, 1);
+        table.startTick();
+        entities.forEach(table::markSeen);
+
+        // Nothing is removed if every entity was seen
+        assertFalse(table.removeUnseen((entity, slot) -> fail("No entities should be removed")));
+
+        table.startTick();
+        for(int i = 0; i < entities.size(); i += 2) {
+            int slot = table.markSeen(entities.get(i));
+            table.setState(slot, TEST_STATE, true);
+        }
+
+        List<Entity> removed = new ArrayList<>();
+        assertTrue(table.removeUnseen((entity, slot) -> removed.add(entity)));
+        assertEquals(10, removed.size());
+        assertEquals(10, table.size());
+        for(int i = 0; i < entities.size(); i++) {
+            assertEquals(i % 2 == 1, removed.contains(entities.get(i)));
+        }
+
+        // The remaining entries keep their state, and the removed ones start again from nothing
+        table.startTick();
+        for(int i = 0; i < entities.size(); i++) {
+            int slot = table.markSeen(entities.get(i));
+            assertEquals(i % 2 == 0, table.hasState(slot, TEST_STATE));
+        }
+        assertEquals(20, table.size());
+    }
+
+    @Test
+    public void testNewEntryHasMoved() {
+        table.startTick();
+        int slot = table.markSeen(createEntity(1));
+        Location location = new Location(null, 0.0, 0.0, 0.0);
+
+        assertTrue(table.hasMoved(slot, location));
+        table.setPosition(slot, location);
+        assertFalse(table.hasMoved(slot, location));
+        assertTrue(table.hasMoved(slot, new Location(null, 0.0, 0.5, 0.0)));
+    }
+
+    @Test
+    public void testSortByDistance() {
+        List<Entity> entities = createEntities(50, 1);
+        table.startTick();
+        for(int i = 0; i < entities.size(); i++) {
+            int slot = table.markSeen(entities.get(i));
+            // Every third entity doesn't have the required state
+            table.setState(slot, TEST_STATE, i % 3 != 0);
+            table.setDistance(slot, (i * 37) % 50 + 0.5);
+        }
+
+        int count = table.sortByDistance(TEST_STATE, 0);
+        assertEquals(33, count);
+        double lastDistance = 0.0;
+        for(int i = 0; i < count; i++) {
+            int slot = table.getSortedSlot(i);
+            assertTrue(table.hasState(slot, TEST_STATE));
+            assertTrue(table.getDistance(slot) >= lastDistance);
+            lastDistance = table.getDistance(slot);
+        }
+
+        assertEquals(17, table.sortByDistance(0, TEST_STATE));
+    }
+}
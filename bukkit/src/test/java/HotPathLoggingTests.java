@@ -0,0 +1,84 @@
+import com.lauriethefish.betterportals.api.IntVector;
+import com.lauriethefish.betterportals.bukkit.block.IViewableBlockInfo;
+import com.lauriethefish.betterportals.bukkit.block.StateQueue;
+import com.lauriethefish.betterportals.bukkit.block.external.ExternalBlockWatcherManager;
+import com.lauriethefish.betterportals.bukkit.math.Matrix;
+import com.lauriethefish.betterportals.bukkit.net.ClientRequestHandler;
+import com.lauriethefish.betterportals.bukkit.net.requests.GetBlockDataChangesRequest;
+import com.lauriethefish.betterportals.bukkit.util.performance.OperationRegistry;
+import com.lauriethefish.betterportals.shared.net.requests.RelayRequest;
+import implementations.TestFormatCountingLogger;
+import implementations.TestViewableBlockInfo;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.logging.Level;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Runs code that logs per block, per entity or per request, and checks that no messages are formatted when debug logging is disabled.
+ */
+public class HotPathLoggingTests {
+    private static final int REQUEST_COUNT = 10;
+
+    private GetBlockDataChangesRequest createRequest() {
+        GetBlockDataChangesRequest request = new GetBlockDataChangesRequest();
+        request.setChangeSetId(UUID.randomUUID());
+        request.setPosition(new IntVector(0, 64, 0));
+        request.setRotateOriginToDest(Matrix.makeIdentity());
+        request.setWorldName("world");
+        return request;
+    }
+
+    private void runStateQueue(TestFormatCountingLogger logger) {
+        StateQueue stateQueue = new StateQueue(logger);
+        assertTrue(stateQueue.getViewableStates().isEmpty());
+
+        stateQueue.addStatesInitially(new ArrayList<>());
+        for(int i = 0; i < REQUEST_COUNT; i++) {
+            List<IViewableBlockInfo> states = Collections.singletonList(new TestViewableBlockInfo());
+            stateQueue.enqueueStates(states);
+            stateQueue.getViewableStates();
+        }
+        assertEquals(REQUEST_COUNT, stateQueue.stateCount());
+    }
+
+    private void runRequestHandling(TestFormatCountingLogger logger) {
+        ExternalBlockWatcherManager watcherManager = new ExternalBlockWatcherManager(logger, request -> () -> Collections.singletonMap(request.getPosition(), 1));
+        ClientRequestHandler requestHandler = new ClientRequestHandler(logger, watcherManager, null, null, new OperationRegistry());
+
+        int[] responseCount = new int[1];
+        for(int i = 0; i < REQUEST_COUNT; i++) {
+            RelayRequest relayRequest = new RelayRequest();
+            relayRequest.setInnerRequest(createRequest());
+
+            requestHandler.handleRequest(createRequest(), response -> responseCount[0]++);
+            requestHandler.handleRequest(relayRequest, response -> responseCount[0]++);
+        }
+        requestHandler.handlePendingRequests();
+
+        assertEquals(REQUEST_COUNT * 2, responseCount[0]);
+    }
+
+    @Test
+    public void testNoFormattingWhenDisabled() {
+        TestFormatCountingLogger logger = new TestFormatCountingLogger(Level.INFO);
+        runStateQueue(logger);
+        runRequestHandling(logger);
+
+        assertEquals(0, logger.getFormatCount(), "Hot path formatted log messages while debug logging was disabled");
+    }
+
+    @Test
+    public void testFormattingWhenEnabled() {
+        // Otherwise the test above would pass if the hot paths stopped logging through the formatting methods
+        TestFormatCountingLogger logger = new TestFormatCountingLogger(Level.FINEST);
+        runRequestHandling(logger);
+
+        assertTrue(logger.getFormatCount() >= REQUEST_COUNT * 2);
+    }
+}
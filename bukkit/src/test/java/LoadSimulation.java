@@ -0,0 +1,467 @@
+import be.seeseemelk.mockbukkit.MockBukkit;
+import be.seeseemelk.mockbukkit.ServerMock;
+import be.seeseemelk.mockbukkit.WorldMock;
+import com.google.inject.AbstractModule;
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import com.google.inject.assistedinject.FactoryModuleBuilder;
+import com.lauriethefish.betterportals.api.PortalDirection;
+import com.lauriethefish.betterportals.api.PortalPosition;
+import com.lauriethefish.betterportals.bukkit.block.IBlockMap;
+import com.lauriethefish.betterportals.bukkit.block.IMultiBlockChangeManager;
+import com.lauriethefish.betterportals.bukkit.block.external.BlockChangeWatcher;
+import com.lauriethefish.betterportals.bukkit.block.external.ExternalBlockWatcherManager;
+import com.lauriethefish.betterportals.bukkit.block.external.IBlockChangeWatcher;
+import com.lauriethefish.betterportals.bukkit.block.external.IExternalBlockWatcherManager;
+import com.lauriethefish.betterportals.bukkit.chunk.chunkloading.IChunkLoader;
+import com.lauriethefish.betterportals.bukkit.chunk.chunkloading.IPortalChunkLoader;
+import com.lauriethefish.betterportals.bukkit.chunk.chunkloading.PortalChunkLoader;
+import com.lauriethefish.betterportals.bukkit.config.ConfigManager;
+import com.lauriethefish.betterportals.bukkit.config.RenderConfig;
+import com.lauriethefish.betterportals.bukkit.entity.BukkitEntityFinder;
+import com.lauriethefish.betterportals.bukkit.entity.IEntityFinder;
+import com.lauriethefish.betterportals.bukkit.entity.IPortalEntityManager;
+import com.lauriethefish.betterportals.bukkit.entity.PortalEntityManager;
+import com.lauriethefish.betterportals.bukkit.entity.faking.EntityTracker;
+import com.lauriethefish.betterportals.bukkit.entity.faking.EntityTrackingManager;
+import com.lauriethefish.betterportals.bukkit.entity.faking.IEntityPacketManipulator;
+import com.lauriethefish.betterportals.bukkit.entity.faking.IEntityTracker;
+import com.lauriethefish.betterportals.bukkit.entity.faking.NoUpdateEntityTrackingManager;
+import com.lauriethefish.betterportals.bukkit.events.EventRegistrar;
+import com.lauriethefish.betterportals.bukkit.events.IEventRegistrar;
+import com.lauriethefish.betterportals.bukkit.math.PortalTransformationsFactory;
+import com.lauriethefish.betterportals.bukkit.net.IPortalClient;
+import com.lauriethefish.betterportals.bukkit.player.IPlayerData;
+import com.lauriethefish.betterportals.bukkit.player.IPlayerDataManager;
+import com.lauriethefish.betterportals.bukkit.player.IPlayerPreferenceStore;
+import com.lauriethefish.betterportals.bukkit.player.PlayerData;
+import com.lauriethefish.betterportals.bukkit.player.PlayerDataManager;
+import com.lauriethefish.betterportals.bukkit.player.view.IPlayerPortalView;
+import com.lauriethefish.betterportals.bukkit.player.view.PlayerPortalView;
+import com.lauriethefish.betterportals.bukkit.player.view.PlayerPortalViewFactory;
+import com.lauriethefish.betterportals.bukkit.player.view.ViewFactory;
+import com.lauriethefish.betterportals.bukkit.player.view.block.IPlayerBlockStates;
+import com.lauriethefish.betterportals.bukkit.player.view.block.IPlayerBlockView;
+import com.lauriethefish.betterportals.bukkit.player.view.block.PlayerBlockStates;
+import com.lauriethefish.betterportals.bukkit.player.view.block.PlayerBlockView;
+import com.lauriethefish.betterportals.bukkit.player.view.entity.IPlayerEntityView;
+import com.lauriethefish.betterportals.bukkit.player.view.entity.PlayerEntityView;
+import com.lauriethefish.betterportals.bukkit.portal.IPortal;
+import com.lauriethefish.betterportals.bukkit.portal.IPortalActivityManager;
+import com.lauriethefish.betterportals.bukkit.portal.IPortalManager;
+import com.lauriethefish.betterportals.bukkit.portal.Portal;
+import com.lauriethefish.betterportals.bukkit.portal.PortalActivityManager;
+import com.lauriethefish.betterportals.bukkit.portal.PortalManager;
+import com.lauriethefish.betterportals.bukkit.portal.predicate.IPortalPredicateManager;
+import com.lauriethefish.betterportals.bukkit.portal.predicate.PortalPredicateManager;
+import com.lauriethefish.betterportals.bukkit.portal.selection.IPortalSelection;
+import com.lauriethefish.betterportals.bukkit.portal.selection.ISelectionManager;
+import com.lauriethefish.betterportals.bukkit.portal.selection.PortalSelection;
+import com.lauriethefish.betterportals.bukkit.portal.selection.SelectionManager;
+import com.lauriethefish.betterportals.bukkit.tasks.BlockUpdateFinisher;
+import com.lauriethefish.betterportals.bukkit.tasks.MainUpdate;
+import com.lauriethefish.betterportals.bukkit.util.performance.Operation;
+import com.lauriethefish.betterportals.bukkit.util.performance.OperationRegistry;
+import implementations.*;
+import lombok.Getter;
+import org.bukkit.Location;
+import org.bukkit.Material;
+import org.bukkit.World;
+import org.bukkit.block.Block;
+import org.bukkit.configuration.file.YamlConfiguration;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.Listener;
+import org.bukkit.event.player.PlayerTeleportEvent;
+import org.bukkit.permissions.Permission;
+import org.bukkit.permissions.PermissionDefault;
+import org.bukkit.plugin.java.JavaPlugin;
+import org.bukkit.util.Vector;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+
+/**
+ * Runs the plugin's tick loop headlessly with many players walking around many portals.
+ * The real portal, player, view and teleportation code is used, with MockBukkit as the server. Only the parts that need ProtocolLib or NMS are replaced:
+ * block maps read materials instead of block data, and packets are counted instead of sent.
+ * Entity support is disabled, since viewing entities through portals can't be done without ProtocolLib.
+ * <br>Block updates are finished synchronously after each tick instead of on another thread, so that runs are repeatable.
+ */
+public class LoadSimulation {
+    private static final String ORIGIN_WORLD = "world";
+    private static final String DEST_WORLD = "world_nether";
+    private static final int GROUND_HEIGHT = 64;
+    private static final int PORTAL_SPACING = 64;
+    private static final int PORTALS_PER_ROW = 8;
+    private static final double WALKING_SPEED = 0.2; // Blocks per tick, slightly slower than vanilla walking
+    private static final double WANDER_RADIUS = 30.0;
+
+    private static final PortalDirection[] DIRECTIONS = new PortalDirection[]{PortalDirection.NORTH, PortalDirection.EAST, PortalDirection.SOUTH, PortalDirection.WEST};
+
+    /**
+     * How each player moves relative to their portal.
+     */
+    private enum Movement {
+        WALK_THROUGH, // Walks back and forth through the portal, teleporting each time
+        CIRCLE, // Circles the portal, viewing it from every angle without going through
+        WANDER // Randomly walks near the portal, sometimes out of activation distance
+    }
+
+    private static class SimulatedPlayer {
+        private final TestPlayer player;
+        private final IPortal portal;
+        private final Movement movement;
+        private final int tickOffset;
+        private final double lateralOffset;
+        private final double circleRadius;
+        private Vector wanderPosition;
+
+        private SimulatedPlayer(TestPlayer player, IPortal portal, Movement movement, Random random) {
+            this.player = player;
+            this.portal = portal;
+            this.movement = movement;
+            this.tickOffset = random.nextInt(1000);
+            this.lateralOffset = random.nextDouble() - 0.5;
+            this.circleRadius = 5.0 + random.nextDouble() * 7.0;
+            this.wanderPosition = portal.getOriginPos().getVector();
+        }
+    }
+
+    /**
+     * Sizes of the simulation and thresholds for the regression gate, read from <code>loadSimulation.*</code> system properties.
+     */
+    @Getter
+    public static class Settings {
+        private final int players = Integer.getInteger("loadSimulation.players", 200);
+        private final int portals = Integer.getInteger("loadSimulation.portals", 50);
+        private final int ticks = Integer.getInteger("loadSimulation.ticks", 1200);
+        private final int warmupTicks = Integer.getInteger("loadSimulation.warmupTicks", 200);
+        private final int blockChangesPerTick = Integer.getInteger("loadSimulation.blockChangesPerTick", 20);
+        private final long seed = Long.getLong("loadSimulation.seed", 1L);
+        // Set to -1 to disable each check
+        private final double maxP99Mspt = Double.parseDouble(System.getProperty("loadSimulation.maxP99Mspt", "50"));
+        private final double maxAllocatedMbPerTick = Double.parseDouble(System.getProperty("loadSimulation.maxAllocatedMbPerTick", "-1"));
+    }
+
+    /**
+     * Results of a simulation, only including the ticks after the warmup.
+     */
+    @Getter
+    public static class Report {
+        private final Settings settings;
+        private final Operation tickTimes;
+        private final Map<String, Operation> sections;
+        private final double allocatedBytesPerTick;
+        private final long blockChangePackets;
+        private final long blockChangeBytes;
+        private final long entityPackets;
+        private final long chunkForceLoads;
+        private final int teleports;
+
+        private Report(Settings settings, Operation tickTimes, Map<String, Operation> sections, double allocatedBytesPerTick,
+                       long blockChangePackets, long blockChangeBytes, long entityPackets, long chunkForceLoads, int teleports) {
+            this.settings = settings;
+            this.tickTimes = tickTimes;
+            this.sections = sections;
+            this.allocatedBytesPerTick = allocatedBytesPerTick;
+            this.blockChangePackets = blockChangePackets;
+            this.blockChangeBytes = blockChangeBytes;
+            this.entityPackets = entityPackets;
+            this.chunkForceLoads = chunkForceLoads;
+            this.teleports = teleports;
+        }
+
+        public double getMsptPercentile(double percentile) {
+            return tickTimes.getPercentile(percentile).toNanos() / 1_000_000d;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder builder = new StringBuilder();
+            double ticks = settings.getTicks();
+            builder.append(String.format("Load simulation: %d players, %d portals, %d ticks (after %d warmup ticks)%n",
+                    settings.getPlayers(), settings.getPortals(), settings.getTicks(), settings.getWarmupTicks()));
+            builder.append(String.format("MSPT: mean %.3f, p50 %.3f, p90 %.3f, p99 %.3f, max %.3f%n",
+                    toMillis(tickTimes.getAverageTime().toNanos()), getMsptPercentile(50.0), getMsptPercentile(90.0), getMsptPercentile(99.0), toMillis(tickTimes.getHighestTime().toNanos())));
+            builder.append(String.format("Allocation: %.3f MB/tick (%.1f MB/s at 20 TPS)%n",
+                    allocatedBytesPerTick / 1_000_000d, allocatedBytesPerTick * 20 / 1_000_000d));
+            builder.append(String.format("Block change packets: %d (%.1f/tick, %.1f KB/tick)%n",
+                    blockChangePackets, blockChangePackets / ticks, blockChangeBytes / ticks / 1000d));
+            builder.append(String.format("Entity packets: %d (%.1f/tick)%n", entityPackets, entityPackets / ticks));
+            builder.append(String.format("Chunk force loads: %d%n", chunkForceLoads));
+            builder.append(String.format("Teleports: %d%n", teleports));
+
+            builder.append(String.format("%-45s %10s %10s %10s %10s%n", "Section", "Calls", "Mean ms", "p99 ms", "Max ms"));
+            for(Map.Entry<String, Operation> entry : sections.entrySet()) {
+                Operation operation = entry.getValue();
+                if(operation.getInvocationTimes() == 0) {continue;}
+
+                builder.append(String.format("%-45s %10d %10.3f %10.3f %10.3f%n", entry.getKey(), operation.getInvocationTimes(),
+                        toMillis(operation.getAverageTime().toNanos()), toMillis(operation.getPercentile(99.0).toNanos()), toMillis(operation.getHighestTime().toNanos())));
+            }
+            return builder.toString();
+        }
+
+        private static double toMillis(long nanos) {
+            return nanos / 1_000_000d;
+        }
+    }
+
+    private class TeleportCounter implements Listener {
+        @EventHandler
+        public void onTeleport(PlayerTeleportEvent event) {
+            teleports++;
+        }
+    }
+
+    private final Settings settings;
+    private final Random random;
+    private final List<IPortal> portals = new ArrayList<>();
+    private final List<SimulatedPlayer> players = new ArrayList<>();
+
+    private ServerMock server;
+    private World destWorld;
+    private RenderConfig renderConfig;
+    private OperationRegistry operationRegistry;
+    private MainUpdate mainUpdate;
+    private TestBlockUpdateFinisher blockUpdateFinisher;
+    private TestEntityPacketManipulator entityPacketManipulator;
+    private TestChunkLoader chunkLoader;
+    private int teleports = 0;
+
+    public LoadSimulation(Settings settings) {
+        this.settings = settings;
+        this.random = new Random(settings.getSeed());
+    }
+
+    /**
+     * Starts the mock server, then creates the portals and players.
+     */
+    public void setUp() {
+        server = MockBukkit.mock();
+        JavaPlugin plugin = MockBukkit.createMockPlugin();
+
+        World originWorld = addWorld(ORIGIN_WORLD, Material.STONE);
+        destWorld = addWorld(DEST_WORLD, Material.NETHERRACK);
+
+        // These are normally registered from plugin.yml
+        server.getPluginManager().addPermission(new Permission("betterportals.see", PermissionDefault.TRUE));
+        server.getPluginManager().addPermission(new Permission("betterportals.use", PermissionDefault.TRUE));
+
+        // Players must exist before the player data manager is created, since it picks up online players when created
+        List<TestPlayer> mockPlayers = new ArrayList<>();
+        for(int i = 0; i < settings.getPlayers(); i++) {
+            TestPlayer player = new TestPlayer(server, "Player" + i);
+            server.addPlayer(player);
+            mockPlayers.add(player);
+        }
+
+        entityPacketManipulator = new TestEntityPacketManipulator();
+        chunkLoader = new TestChunkLoader();
+        Injector injector = Guice.createInjector(new TestLoggerModule(), createModule(plugin));
+
+        YamlConfiguration config = YamlConfiguration.loadConfiguration(new File("src/test/resources/defaultConfig.yml"));
+        config.set("enableEntitySupport", false);
+        config.set("enableUpdateCheck", false);
+        injector.getInstance(ConfigManager.class).loadValues(config, null);
+
+        renderConfig = injector.getInstance(RenderConfig.class);
+        operationRegistry = injector.getInstance(OperationRegistry.class);
+        blockUpdateFinisher = injector.getInstance(TestBlockUpdateFinisher.class);
+        mainUpdate = injector.getInstance(MainUpdate.class);
+        server.getPluginManager().registerEvents(new TeleportCounter(), plugin);
+
+        IPortal.Factory portalFactory = injector.getInstance(IPortal.Factory.class);
+        IPortalManager portalManager = injector.getInstance(IPortalManager.class);
+        for(int i = 0; i < settings.getPortals(); i++) {
+            Vector position = new Vector((i % PORTALS_PER_ROW) * PORTAL_SPACING + 0.5, GROUND_HEIGHT + 1.5, (i / PORTALS_PER_ROW) * PORTAL_SPACING + 0.5);
+
+            PortalPosition originPos = new PortalPosition(position.toLocation(originWorld), DIRECTIONS[i % 2]);
+            PortalPosition destPos = new PortalPosition(position.toLocation(destWorld), DIRECTIONS[i % DIRECTIONS.length]);
+            IPortal portal = portalFactory.create(originPos, destPos, new Vector(2.0, 3.0, 0.0), true, UUID.randomUUID(), null, null, true);
+            portalManager.registerPortal(portal);
+            portals.add(portal);
+        }
+
+        Movement[] movements = Movement.values();
+        for(int i = 0; i < mockPlayers.size(); i++) {
+            IPortal portal = portals.get(i % portals.size());
+            players.add(new SimulatedPlayer(mockPlayers.get(i), portal, movements[i % movements.length], random));
+        }
+    }
+
+    private World addWorld(String name, Material ground) {
+        WorldMock world = new WorldMock(ground, GROUND_HEIGHT);
+        world.setName(name);
+        server.addWorld(world);
+        return world;
+    }
+
+    private AbstractModule createModule(JavaPlugin plugin) {
+        return new AbstractModule() {
+            @Override
+            protected void configure() {
+                bind(JavaPlugin.class).toInstance(plugin);
+                bind(IEventRegistrar.class).to(EventRegistrar.class);
+
+                install(new FactoryModuleBuilder().implement(IPortal.class, Portal.class).build(IPortal.Factory.class));
+                install(new FactoryModuleBuilder().implement(IPortalEntityManager.class, PortalEntityManager.class).build(IPortalEntityManager.Factory.class));
+                install(new FactoryModuleBuilder().build(PortalTransformationsFactory.class));
+                install(new FactoryModuleBuilder().implement(IBlockMap.class, TestBlockMap.class).build(IBlockMap.Factory.class));
+                install(new FactoryModuleBuilder().implement(IMultiBlockChangeManager.class, TestMultiBlockChangeManager.class).build(IMultiBlockChangeManager.Factory.class));
+                install(new FactoryModuleBuilder().implement(IBlockChangeWatcher.class, BlockChangeWatcher.class).build(IBlockChangeWatcher.Factory.class));
+                install(new FactoryModuleBuilder().implement(IEntityTracker.class, EntityTracker.class).build(IEntityTracker.Factory.class));
+                install(new FactoryModuleBuilder().implement(IPlayerData.class, PlayerData.class).build(IPlayerData.Factory.class));
+                install(new FactoryModuleBuilder().implement(IPlayerBlockStates.class, PlayerBlockStates.class).build(IPlayerBlockStates.Factory.class));
+                install(new FactoryModuleBuilder().implement(IPlayerPortalView.class, PlayerPortalView.class).build(PlayerPortalViewFactory.class));
+                install(new FactoryModuleBuilder()
+                        .implement(IPlayerBlockView.class, PlayerBlockView.class)
+                        .implement(IPlayerEntityView.class, PlayerEntityView.class)
+                        .build(ViewFactory.class)
+                );
+
+                bind(IPortalManager.class).to(PortalManager.class);
+                bind(IPortalActivityManager.class).to(PortalActivityManager.class);
+                bind(IPortalPredicateManager.class).to(PortalPredicateManager.class);
+                bind(IPlayerDataManager.class).to(PlayerDataManager.class);
+                bind(ISelectionManager.class).to(SelectionManager.class);
+                bind(IPortalSelection.class).to(PortalSelection.class);
+                bind(IPortalChunkLoader.class).to(PortalChunkLoader.class);
+                bind(IExternalBlockWatcherManager.class).to(ExternalBlockWatcherManager.class);
+                bind(IEntityFinder.class).to(BukkitEntityFinder.class);
+                bind(EntityTrackingManager.class).to(NoUpdateEntityTrackingManager.class);
+                bind(BlockUpdateFinisher.class).to(TestBlockUpdateFinisher.class);
+
+                bind(IChunkLoader.class).toInstance(chunkLoader);
+                bind(IEntityPacketManipulator.class).toInstance(entityPacketManipulator);
+                bind(IPlayerPreferenceStore.class).to(TestPlayerPreferenceStore.class).asEagerSingleton();
+                bind(IPortalClient.class).to(TestPortalClient.class);
+            }
+        };
+    }
+
+    /**
+     * Runs the warmup ticks, then the measured ticks.
+     * @return The results of the measured ticks
+     */
+    public Report run() {
+        for(int tick = 0; tick < settings.getWarmupTicks(); tick++) {
+            runTick(tick, null);
+        }
+
+        // Counters are never reset, so only the difference after warmup is reported
+        operationRegistry.reset();
+        long blockChangePacketsBefore = operationRegistry.getCounter(OperationRegistry.MULTI_BLOCK_CHANGE_PACKETS).sum();
+        long blockChangeBytesBefore = operationRegistry.getCounter(OperationRegistry.MULTI_BLOCK_CHANGE_BYTES).sum();
+        long entityPacketsBefore = entityPacketManipulator.getPacketCount();
+        long chunkForceLoadsBefore = chunkLoader.getForceLoadCount();
+        teleports = 0;
+
+        com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+
+        Operation tickTimes = new Operation(0);
+        long allocatedBytes = 0;
+        for(int tick = settings.getWarmupTicks(); tick < settings.getWarmupTicks() + settings.getTicks(); tick++) {
+            long allocatedBefore = threadBean.getThreadAllocatedBytes(threadId);
+            runTick(tick, tickTimes);
+            allocatedBytes += threadBean.getThreadAllocatedBytes(threadId) - allocatedBefore;
+        }
+
+        return new Report(settings, tickTimes, operationRegistry.getOperations(),
+                (double) allocatedBytes / settings.getTicks(),
+                operationRegistry.getCounter(OperationRegistry.MULTI_BLOCK_CHANGE_PACKETS).sum() - blockChangePacketsBefore,
+                operationRegistry.getCounter(OperationRegistry.MULTI_BLOCK_CHANGE_BYTES).sum() - blockChangeBytesBefore,
+                entityPacketManipulator.getPacketCount() - entityPacketsBefore,
+                chunkLoader.getForceLoadCount() - chunkForceLoadsBefore,
+                teleports
+        );
+    }
+
+    public void tearDown() {
+        MockBukkit.unmock();
+    }
+
+    // Only the main update is timed, since block updates are normally finished on another thread
+    private void runTick(int tick, Operation tickTimes) {
+        for(SimulatedPlayer player : players) {
+            movePlayer(player, tick);
+        }
+        changeDestinationBlocks();
+
+        long startTime = System.nanoTime();
+        mainUpdate.run();
+        if(tickTimes != null) {
+            tickTimes.record(System.nanoTime() - startTime);
+        }
+
+        blockUpdateFinisher.finishUpdates();
+    }
+
+    private void movePlayer(SimulatedPlayer simulated, int tick) {
+        IPortal portal = simulated.portal;
+        Vector center = portal.getOriginPos().getVector();
+        Vector normal = portal.getOriginPos().getDirection().toVector();
+        Vector lateral = new Vector(normal.getZ(), 0.0, normal.getX());
+        int time = tick + simulated.tickOffset;
+
+        Vector position;
+        switch(simulated.movement) {
+            case WALK_THROUGH:
+                // Triangle wave between 15 blocks in front of and behind the portal
+                double period = 30.0 / WALKING_SPEED;
+                double phase = (time % (2 * period)) / period;
+                double distance = (phase < 1.0 ? phase : 2.0 - phase) * 30.0 - 15.0;
+                position = center.clone().add(normal.clone().multiply(distance)).add(lateral.clone().multiply(simulated.lateralOffset));
+                break;
+            case CIRCLE:
+                double angle = time * WALKING_SPEED / simulated.circleRadius;
+                position = center.clone().add(normal.clone().multiply(Math.cos(angle) * simulated.circleRadius))
+                        .add(lateral.clone().multiply(Math.sin(angle) * simulated.circleRadius));
+                break;
+            case WANDER:
+                double heading = random.nextDouble() * Math.PI * 2;
+                Vector next = simulated.wanderPosition.clone().add(new Vector(Math.cos(heading), 0.0, Math.sin(heading)).multiply(WALKING_SPEED));
+                // Walk back towards the portal when too far away
+                if(next.distance(center) > WANDER_RADIUS) {
+                    next = simulated.wanderPosition.clone().add(center.clone().subtract(simulated.wanderPosition).normalize().multiply(WALKING_SPEED));
+                }
+                simulated.wanderPosition = next;
+                position = next.clone();
+                break;
+            default:
+                throw new IllegalStateException("Unknown movement " + simulated.movement);
+        }
+
+        // Standing on the ground, looking at the portal. Players that were teleported are moved straight back to the origin world.
+        position.setY(GROUND_HEIGHT);
+        Location location = position.toLocation(portal.getOriginPos().getWorld());
+        Vector towardsPortal = center.clone().subtract(position);
+        if(towardsPortal.lengthSquared() > 0.0) {
+            location.setDirection(towardsPortal);
+        }
+        simulated.player.setLocation(location);
+    }
+
+    // Toggles random blocks around the destinations of portals, so that block maps have changes to find
+    private void changeDestinationBlocks() {
+        for(int i = 0; i < settings.getBlockChangesPerTick(); i++) {
+            IPortal portal = portals.get(random.nextInt(portals.size()));
+            Vector destPos = portal.getDestPos().getVector();
+
+            int maxXZ = (int) renderConfig.getMaxXZ();
+            int maxY = (int) renderConfig.getMaxY();
+            Block block = destWorld.getBlockAt(
+                    destPos.getBlockX() + random.nextInt(maxXZ * 2 + 1) - maxXZ,
+                    destPos.getBlockY() + random.nextInt(maxY * 2 + 1) - maxY,
+                    destPos.getBlockZ() + random.nextInt(maxXZ * 2 + 1) - maxXZ
+            );
+            block.setType(block.getType() == Material.AIR ? Material.NETHERRACK : Material.AIR);
+        }
+    }
+}
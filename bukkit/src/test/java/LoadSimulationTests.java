@@ -0,0 +1,48 @@
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Runs the {@link LoadSimulation} and fails if the tick time or allocation rate goes over the configured limits.
+ * Takes a while, so only runs with <code>./gradlew :bukkit:loadSimulation</code>.
+ */
+@EnabledIfSystemProperty(named = "loadSimulation.enabled", matches = "true")
+public class LoadSimulationTests {
+    private LoadSimulation.Settings settings;
+    private LoadSimulation simulation;
+
+    @BeforeEach
+    public void setup() {
+        settings = new LoadSimulation.Settings();
+        simulation = new LoadSimulation(settings);
+        simulation.setUp();
+    }
+
+    @AfterEach
+    public void cleanup() {
+        simulation.tearDown();
+    }
+
+    @Test
+    public void testTickTimes() {
+        LoadSimulation.Report report = simulation.run();
+        System.out.println(report);
+
+        double p99Mspt = report.getMsptPercentile(99.0);
+        if(settings.getMaxP99Mspt() >= 0) {
+            assertTrue(p99Mspt <= settings.getMaxP99Mspt(), String.format("p99 MSPT of %.3f was over the limit of %.3f", p99Mspt, settings.getMaxP99Mspt()));
+        }
+
+        double allocatedMbPerTick = report.getAllocatedBytesPerTick() / 1_000_000d;
+        if(settings.getMaxAllocatedMbPerTick() >= 0) {
+            assertTrue(allocatedMbPerTick <= settings.getMaxAllocatedMbPerTick(), String.format("Allocated %.3f MB per tick, over the limit of %.3f", allocatedMbPerTick, settings.getMaxAllocatedMbPerTick()));
+        }
+
+        // Makes sure that the simulation actually exercised the portals
+        assertTrue(report.getBlockChangePackets() > 0, "No block changes were sent");
+        assertTrue(report.getTeleports() > 0, "No players teleported");
+    }
+}
@@ -0,0 +1,40 @@
+import com.lauriethefish.betterportals.bukkit.util.performance.OperationRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class OperationRegistryTests {
+    private final OperationRegistry operationRegistry = new OperationRegistry();
+
+    @Test
+    public void testRemovePlayer() {
+        UUID leaving = UUID.randomUUID();
+        UUID staying = UUID.randomUUID();
+        operationRegistry.recordPlayer(leaving, 100);
+        operationRegistry.recordPlayer(staying, 100);
+
+        operationRegistry.removePlayer(leaving);
+
+        assertFalse(operationRegistry.getPlayerOperations().containsKey(leaving));
+        assertTrue(operationRegistry.getPlayerOperations().containsKey(staying));
+    }
+
+    @Test
+    public void testRemovePortal() {
+        UUID removed = UUID.randomUUID();
+        UUID kept = UUID.randomUUID();
+        for(UUID portalId : new UUID[]{removed, kept}) {
+            operationRegistry.recordPortal(portalId, 100);
+            operationRegistry.getPortalCost(portalId).recordChangeCheck(100);
+        }
+
+        operationRegistry.removePortal(removed);
+
+        assertFalse(operationRegistry.getPortalOperations().containsKey(removed));
+        assertFalse(operationRegistry.getPortalCosts().containsKey(removed));
+        assertTrue(operationRegistry.getPortalOperations().containsKey(kept));
+        assertTrue(operationRegistry.getPortalCosts().containsKey(kept));
+    }
+}
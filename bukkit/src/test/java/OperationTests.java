@@ -0,0 +1,47 @@
+import com.lauriethefish.betterportals.bukkit.util.performance.Operation;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class OperationTests {
+    @Test
+    public void testTotals() {
+        Operation operation = new Operation(1);
+        operation.record(1_000_000); // Ignored, since it's before the operation starts
+        operation.record(100);
+        operation.record(300);
+
+        assertEquals(2, operation.getInvocationTimes());
+        assertEquals(Duration.ofNanos(400), operation.getTotalTime());
+        assertEquals(Duration.ofNanos(200), operation.getAverageTime());
+        assertEquals(Duration.ofNanos(100), operation.getLowestTime());
+        assertEquals(Duration.ofNanos(300), operation.getHighestTime());
+    }
+
+    @Test
+    public void testPercentiles() {
+        Operation operation = new Operation(0);
+        for(int i = 1; i <= 1000; i++) {
+            operation.record(i * 1000L);
+        }
+
+        // Percentiles are only accurate to within 1/16 of the value
+        long median = operation.getPercentile(50.0).toNanos();
+        assertTrue(Math.abs(median - 500_000) <= 500_000 / 16, "Median was " + median);
+        long p99 = operation.getPercentile(99.0).toNanos();
+        assertTrue(Math.abs(p99 - 990_000) <= 990_000 / 16, "99th percentile was " + p99);
+    }
+
+    @Test
+    public void testReset() {
+        Operation operation = new Operation(0);
+        operation.record(100);
+        operation.reset();
+
+        assertEquals(0, operation.getInvocationTimes());
+        assertEquals(Duration.ZERO, operation.getHighestTime());
+        assertEquals(Duration.ZERO, operation.getPercentile(50.0));
+    }
+}
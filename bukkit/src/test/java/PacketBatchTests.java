@@ -0,0 +1,183 @@
+import com.lauriethefish.betterportals.bukkit.entity.faking.BatchedPacketSender;
+import com.lauriethefish.betterportals.bukkit.entity.faking.PacketBatch;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PacketBatchTests {
+    private static final int HEAD_ROTATION = 0;
+    private static final int METADATA = 1;
+
+    private Map<String, List<String>> flush(PacketBatch<String, String> batch) {
+        Map<String, List<String>> sent = new HashMap<>();
+        batch.flush((player, packets) -> sent.put(player, new ArrayList<>(packets)));
+        return sent;
+    }
+
+    @Test
+    public void testOrderIsKept() {
+        PacketBatch<String, String> batch = new PacketBatch<>();
+        batch.add("player", "move 1");
+        batch.add("player", "move 2");
+        batch.addState("player", 1, HEAD_ROTATION, "head 1");
+
+        assertEquals(List.of("move 1", "move 2", "head 1"), flush(batch).get("player"));
+        assertTrue(batch.isEmpty());
+    }
+
+    @Test
+    public void testStateIsReplaced() {
+        PacketBatch<String, String> batch = new PacketBatch<>();
+        batch.addState("player", 1, HEAD_ROTATION, "head 1");
+        batch.addState("player", 1, METADATA, "metadata 1");
+        batch.addState("player", 2, HEAD_ROTATION, "other head");
+        batch.addState("player", 1, HEAD_ROTATION, "head 2");
+
+        // The older head rotation should be dropped, and other entities/states should be unaffected
+        assertEquals(List.of("metadata 1", "other head", "head 2"), flush(batch).get("player"));
+        assertEquals(1, batch.getPacketsReplaced());
+    }
+
+    @Test
+    public void testBarrierStopsReplacement() {
+        PacketBatch<String, String> batch = new PacketBatch<>();
+        batch.addState("player", 1, METADATA, "metadata 1");
+        batch.addBarrier("player", 1, "spawn");
+        batch.addState("player", 1, METADATA, "metadata 2");
+
+        // The metadata after the spawn must not be moved before it
+        assertEquals(List.of("metadata 1", "spawn", "metadata 2"), flush(batch).get("player"));
+    }
+
+    @Test
+    public void testStateChangeIsNotReplaced() {
+        PacketBatch<String, String> batch = new PacketBatch<>();
+        batch.addState("player", 1, METADATA, "full metadata 1");
+        batch.addStateChange("player", 1, METADATA, "changed metadata");
+        batch.addState("player", 1, METADATA, "full metadata 2");
+
+        // Replacing the first full update would send it before the older partial update
+        assertEquals(List.of("full metadata 1", "changed metadata", "full metadata 2"), flush(batch).get("player"));
+        assertEquals(0, batch.getPacketsReplaced());
+    }
+
+    @Test
+    public void testPlayersAreSeparate() {
+        PacketBatch<String, String> batch = new PacketBatch<>();
+        batch.addState("a", 1, HEAD_ROTATION, "head a");
+        batch.addState("b", 1, HEAD_ROTATION, "head b");
+
+        Map<String, List<String>> sent = flush(batch);
+        assertEquals(List.of("head a"), sent.get("a"));
+        assertEquals(List.of("head b"), sent.get("b"));
+        assertEquals(2, batch.getFlushes());
+    }
+
+    @Test
+    public void testReplacementKeepsEntityOrder() {
+        PacketBatch<String, String> batch = new PacketBatch<>();
+        batch.addState("player", 1, HEAD_ROTATION, "head 1");
+        batch.add("player", "move 1");
+        batch.addState("player", 1, HEAD_ROTATION, "head 2");
+
+        // The newer head rotation must not be sent before the move queued after the one it replaced
+        assertEquals(List.of("move 1", "head 2"), flush(batch).get("player"));
+        assertEquals(2, batch.getPacketsFlushed());
+    }
+
+    @Test
+    public void testQueuesAreReusedBetweenFlushes() {
+        PacketBatch<String, String> batch = new PacketBatch<>();
+        batch.addState("a", 1, HEAD_ROTATION, "head 1");
+        batch.addBarrier("a", 2, "spawn");
+        batch.addState("b", 1, HEAD_ROTATION, "head b");
+        flush(batch);
+        assertTrue(batch.isEmpty());
+
+        // Indices from the last flush must not be used to replace packets in the next one
+        batch.add("a", "move");
+        batch.addState("a", 1, HEAD_ROTATION, "head 2");
+        batch.addState("a", 2, METADATA, "metadata 1");
+        batch.addState("a", 2, METADATA, "metadata 2");
+        assertFalse(batch.isEmpty());
+
+        Map<String, List<String>> sent = flush(batch);
+        assertEquals(List.of("move", "head 2", "metadata 2"), sent.get("a"));
+        assertFalse(sent.containsKey("b"));
+        assertEquals(1, batch.getPacketsReplaced());
+    }
+
+    @Test
+    public void testManyEntities() {
+        PacketBatch<String, String> batch = new PacketBatch<>();
+        for(int entity = -500; entity < 500; entity++) {
+            batch.addState("player", entity, HEAD_ROTATION, "head 1");
+            batch.addState("player", entity, METADATA, "metadata");
+        }
+        for(int entity = -500; entity < 500; entity++) {
+            batch.addState("player", entity, HEAD_ROTATION, "head 2");
+        }
+
+        assertEquals(2000, flush(batch).get("player").size());
+        assertEquals(1000, batch.getPacketsReplaced());
+    }
+
+    @Test
+    public void testInvalidStateType() {
+        PacketBatch<String, String> batch = new PacketBatch<>();
+        assertThrows(IllegalArgumentException.class, () -> batch.addState("player", 1, 255, "state"));
+    }
+
+    // Replays the packets that a turning, walking replicated mob produced per tick through the same sender used by EntityPacketManipulator, both with and without batching, and compares the number of packets and flushes per second
+    @Test
+    public void testPacketRateReduction() {
+        int players = 30;
+        int entities = 20;
+        int ticks = 20;
+        int metadataUpdateInterval = 6;
+
+        List<Integer> recipients = new ArrayList<>();
+        for(int player = 0; player < players; player++) {
+            recipients.add(player);
+        }
+
+        long[] batchedPackets = new long[1];
+        BatchedPacketSender<Integer, String> unbatched = new BatchedPacketSender<>((player, packet) -> {}, player -> true, null, 4096);
+        BatchedPacketSender<Integer, String> batched = new BatchedPacketSender<>((player, packet) -> {}, player -> true, packets -> {
+            batchedPackets[0] += packets.size();
+            return "bundle";
+        }, 4096);
+
+        for(int tick = 0; tick < ticks; tick++) {
+            batched.startBatch();
+            for(BatchedPacketSender<Integer, String> sender : List.of(unbatched, batched)) {
+                for(int entity = 0; entity < entities; entity++) {
+                    sender.send("move look", recipients);
+                    // The head rotation used to be sent by both the movement update and the main update
+                    sender.sendState("head rotation", entity, HEAD_ROTATION, recipients);
+                    sender.sendState("head rotation", entity, HEAD_ROTATION, recipients);
+
+                    if(tick % metadataUpdateInterval == 0) {
+                        sender.sendState("metadata", entity, METADATA, recipients);
+                    }
+                }
+            }
+            batched.flushBatch();
+        }
+
+        double seconds = ticks / 20.0;
+        double unbatchedPacketsPerSecond = unbatched.getSends() / seconds;
+        double batchedPacketsPerSecond = batchedPackets[0] / seconds;
+        double batchedFlushesPerSecond = batched.getSends() / seconds;
+
+        assertEquals(unbatched.getSends() - (long) players * entities * ticks, batchedPackets[0]);
+        assertTrue(batchedPacketsPerSecond < unbatchedPacketsPerSecond);
+        // Each player now gets a single bundle, so a single flush, per tick
+        assertEquals(players * 20.0, batchedFlushesPerSecond);
+    }
+}
@@ -0,0 +1,86 @@
+import com.lauriethefish.betterportals.bukkit.player.PlayerPreferenceFile;
+import com.lauriethefish.betterportals.shared.logging.Logger;
+import com.lauriethefish.betterportals.shared.logging.OverrideLogger;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PlayerPreferenceFileTests {
+    private final Logger logger = new OverrideLogger(Logger.getAnonymousLogger());
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        Path path = tempDir.resolve("playerPreferences.dat");
+        UUID first = UUID.randomUUID();
+        UUID second = UUID.randomUUID();
+
+        PlayerPreferenceFile file = PlayerPreferenceFile.open(path, logger);
+        assertNull(file.getFlags(first));
+        file.write(Map.of(first, (byte) 1, second, (byte) 0));
+        file.write(Map.of(first, (byte) 0));
+        file.close();
+
+        // Changed players are overwritten in place rather than appended
+        assertEquals(8 + 2 * 17, Files.size(path));
+
+        PlayerPreferenceFile reopened = PlayerPreferenceFile.open(path, logger);
+        assertEquals((byte) 0, reopened.getFlags(first));
+        assertEquals((byte) 0, reopened.getFlags(second));
+        assertNull(reopened.getFlags(UUID.randomUUID()));
+        reopened.close();
+    }
+
+    @Test
+    public void testPartialRecordIgnored() throws IOException {
+        Path path = tempDir.resolve("playerPreferences.dat");
+        UUID kept = UUID.randomUUID();
+
+        PlayerPreferenceFile file = PlayerPreferenceFile.open(path, logger);
+        file.write(Map.of(kept, (byte) 1));
+        file.close();
+
+        try(RandomAccessFile raw = new RandomAccessFile(path.toFile(), "rw")) {
+            raw.setLength(raw.length() + 5);
+        }
+
+        PlayerPreferenceFile reopened = PlayerPreferenceFile.open(path, logger);
+        assertEquals((byte) 1, reopened.getFlags(kept));
+
+        // The next new player overwrites the partial record
+        UUID added = UUID.randomUUID();
+        reopened.write(Map.of(added, (byte) 0));
+        reopened.close();
+        assertEquals(8 + 2 * 17, Files.size(path));
+    }
+
+    @Test
+    public void testCorruptedHeaderBackedUp() throws IOException {
+        Path path = tempDir.resolve("playerPreferences.dat");
+        byte[] corrupted = new byte[8 + 17];
+        Files.write(path, corrupted);
+
+        PlayerPreferenceFile file = PlayerPreferenceFile.open(path, logger);
+        Path backupPath = tempDir.resolve("playerPreferences.dat.corrupt");
+        assertArrayEquals(corrupted, Files.readAllBytes(backupPath));
+
+        // The new file can be written to and read back as normal
+        UUID playerId = UUID.randomUUID();
+        file.write(Map.of(playerId, (byte) 1));
+        file.close();
+
+        PlayerPreferenceFile reopened = PlayerPreferenceFile.open(path, logger);
+        assertEquals((byte) 1, reopened.getFlags(playerId));
+        reopened.close();
+    }
+}
@@ -0,0 +1,85 @@
+import com.lauriethefish.betterportals.bukkit.portal.IPortal;
+import com.lauriethefish.betterportals.bukkit.portal.PortalGrid;
+import org.bukkit.Location;
+import org.bukkit.World;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Proxy;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PortalGridTests {
+    private final PortalGrid grid = new PortalGrid();
+    private final World world = createProxy(World.class, "world");
+    private final World otherWorld = createProxy(World.class, "other");
+
+    // Only identity is used by the grid, so none of the other methods are needed
+    private static <T> T createProxy(Class<T> type, String name) {
+        return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, (proxy, method, args) -> {
+            switch(method.getName()) {
+                case "hashCode": return System.identityHashCode(proxy);
+                case "equals": return proxy == args[0];
+                case "toString": return name;
+                default: throw new UnsupportedOperationException(method.getName());
+            }
+        }));
+    }
+
+    private IPortal addPortal(World world, double x, double y, double z) {
+        IPortal portal = createProxy(IPortal.class, String.format("portal at %s, %s, %s", x, y, z));
+        grid.add(portal, new Location(world, x, y, z));
+        return portal;
+    }
+
+    @Test
+    public void testFindsPortalsInRange() {
+        IPortal near = addPortal(world, 10.0, 64.0, 10.0);
+        IPortal acrossCell = addPortal(world, -20.0, 64.0, 10.0);
+        IPortal tooHigh = addPortal(world, 10.0, 100.0, 10.0);
+        addPortal(world, 200.0, 64.0, 10.0);
+        addPortal(otherWorld, 10.0, 64.0, 10.0);
+
+        Location position = new Location(world, 0.0, 64.0, 0.0);
+        assertEquals(Set.of(near, acrossCell), new HashSet<>(grid.findInRange(position, 30.0)));
+        assertEquals(Set.of(near, acrossCell, tooHigh), new HashSet<>(grid.findInRange(position, 40.0)));
+    }
+
+    @Test
+    public void testMatchesBruteForce() {
+        Random random = new Random(1234);
+        Map<IPortal, Location> portals = new HashMap<>();
+        for(int i = 0; i < 500; i++) {
+            Location originLoc = new Location(world, random.nextDouble() * 2000.0 - 1000.0, random.nextDouble() * 256.0, random.nextDouble() * 2000.0 - 1000.0);
+            IPortal portal = createProxy(IPortal.class, "portal " + i);
+            grid.add(portal, originLoc);
+            portals.put(portal, originLoc);
+        }
+
+        // The largest distances check every cell instead
+        for(double distance : new double[]{0.0, 10.0, 64.0, 150.0, 5000.0, Double.POSITIVE_INFINITY}) {
+            for(int i = 0; i < 20; i++) {
+                Location position = new Location(world, random.nextDouble() * 2000.0 - 1000.0, 64.0, random.nextDouble() * 2000.0 - 1000.0);
+
+                Set<IPortal> expected = new HashSet<>();
+                portals.forEach((portal, originLoc) -> {
+                    if(originLoc.distance(position) <= distance) {expected.add(portal);}
+                });
+                assertEquals(expected, new HashSet<>(grid.findInRange(position, distance)));
+            }
+        }
+    }
+
+    @Test
+    public void testRemove() {
+        IPortal removed = addPortal(world, 10.0, 64.0, 10.0);
+        IPortal kept = addPortal(world, 10.0, 64.0, 10.0);
+        Location position = new Location(world, 10.0, 64.0, 10.0);
+
+        grid.remove(removed, position);
+        assertEquals(List.of(kept), grid.findInRange(position, 1.0));
+
+        grid.remove(kept, position);
+        assertTrue(grid.findInRange(position, Double.POSITIVE_INFINITY).isEmpty());
+    }
+}
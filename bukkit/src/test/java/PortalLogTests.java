@@ -0,0 +1,209 @@
+import com.lauriethefish.betterportals.api.PortalDirection;
+import com.lauriethefish.betterportals.api.PortalPosition;
+import com.lauriethefish.betterportals.bukkit.portal.storage.FsyncPolicy;
+import com.lauriethefish.betterportals.bukkit.portal.storage.PortalLog;
+import com.lauriethefish.betterportals.bukkit.portal.storage.PortalRecord;
+import com.lauriethefish.betterportals.shared.logging.Logger;
+import com.lauriethefish.betterportals.shared.logging.OverrideLogger;
+import org.bukkit.util.Vector;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PortalLogTests {
+    private final Logger logger = new OverrideLogger(Logger.getAnonymousLogger());
+
+    @TempDir
+    Path tempDir;
+
+    private PortalRecord createRecord(String name) {
+        PortalPosition originPos = new PortalPosition(new Vector(1.5, 64.0, -3.5), PortalDirection.NORTH, "lobby", "world");
+        PortalPosition destPos = new PortalPosition(new Vector(10.0, 70.0, 20.0), PortalDirection.EAST, "survival", "world_nether");
+
+        return new PortalRecord(UUID.randomUUID(), UUID.randomUUID(), name, originPos, destPos, new Vector(2.0, 3.0, 0.0), true, false);
+    }
+
+    @Test
+    public void testChangesAreReplayed() throws IOException {
+        Path path = tempDir.resolve("portals.dat");
+        PortalRecord kept = createRecord("kept");
+        PortalRecord removed = createRecord(null);
+        PortalRecord renamed = createRecord("old name");
+        PortalRecord newName = new PortalRecord(renamed.getId(), renamed.getOwnerId(), "new name", renamed.getOriginPos(), renamed.getDestPos(), renamed.getSize(), true, false);
+
+        PortalLog log = PortalLog.open(path, logger, FsyncPolicy.NEVER, null);
+        log.append(Arrays.asList(
+                new PortalLog.Change(kept.getId(), kept),
+                new PortalLog.Change(removed.getId(), removed),
+                new PortalLog.Change(renamed.getId(), renamed)
+        ));
+        log.append(Arrays.asList(
+                new PortalLog.Change(removed.getId(), null),
+                new PortalLog.Change(renamed.getId(), newName)
+        ));
+        log.close();
+
+        PortalLog.Contents contents = PortalLog.read(path, logger);
+        assertEquals(5, contents.getRecordCount());
+        assertEquals(2, contents.getPortals().size());
+        assertEquals(kept, contents.getPortals().get(kept.getId()));
+        assertEquals("new name", contents.getPortals().get(renamed.getId()).getName());
+        assertFalse(contents.getPortals().containsKey(removed.getId()));
+    }
+
+    // A record that was only partly written when the server stopped should be discarded, without losing the records before it
+    @Test
+    public void testIncompleteRecordIsDiscarded() throws IOException {
+        Path path = tempDir.resolve("portals.dat");
+        PortalRecord first = createRecord("first");
+        PortalRecord second = createRecord("second");
+
+        PortalLog log = PortalLog.open(path, logger, FsyncPolicy.NEVER, null);
+        log.append(Collections.singletonList(new PortalLog.Change(first.getId(), first)));
+        long firstRecordEnd = Files.size(path);
+        log.append(Collections.singletonList(new PortalLog.Change(second.getId(), second)));
+        log.close();
+
+        try(RandomAccessFile file = new RandomAccessFile(path.toFile(), "rw")) {
+            file.setLength(file.length() - 3);
+        }
+
+        PortalLog.Contents contents = PortalLog.read(path, logger);
+        assertEquals(1, contents.getPortals().size());
+        assertEquals(first, contents.getPortals().get(first.getId()));
+        assertEquals(firstRecordEnd, contents.getValidLength());
+
+        // Appending after reopening should overwrite the incomplete record
+        log = PortalLog.open(path, logger, FsyncPolicy.NEVER, contents);
+        log.append(Collections.singletonList(new PortalLog.Change(second.getId(), second)));
+        log.close();
+        assertEquals(2, PortalLog.read(path, logger).getPortals().size());
+    }
+
+    private static void flipByte(Path path, long position) throws IOException {
+        try(RandomAccessFile file = new RandomAccessFile(path.toFile(), "rw")) {
+            file.seek(position);
+            int value = file.read();
+            file.seek(position);
+            file.write(value ^ 0xFF);
+        }
+    }
+
+    // A corrupted record in the middle of the log should be skipped, keeping the valid records after it
+    @Test
+    public void testCorruptRecordInMiddleIsSkipped() throws IOException {
+        Path path = tempDir.resolve("portals.dat");
+        PortalRecord first = createRecord("first");
+        PortalRecord corrupted = createRecord("corrupted");
+        PortalRecord last = createRecord("last");
+
+        PortalLog log = PortalLog.open(path, logger, FsyncPolicy.NEVER, null);
+        log.append(Collections.singletonList(new PortalLog.Change(first.getId(), first)));
+        long corruptedRecordStart = Files.size(path);
+        log.append(Collections.singletonList(new PortalLog.Change(corrupted.getId(), corrupted)));
+        log.append(Collections.singletonList(new PortalLog.Change(last.getId(), last)));
+        log.close();
+        long length = Files.size(path);
+
+        // Corrupt the data of the middle record, after its type and length
+        flipByte(path, corruptedRecordStart + 10);
+
+        PortalLog.Contents contents = PortalLog.read(path, logger);
+        assertEquals(2, contents.getPortals().size());
+        assertEquals(first, contents.getPortals().get(first.getId()));
+        assertEquals(last, contents.getPortals().get(last.getId()));
+        assertEquals(1, contents.getSkippedRecords());
+        assertEquals(length, contents.getValidLength());
+
+        // Reopening rewrites the log without the corrupted record
+        log = PortalLog.open(path, logger, FsyncPolicy.NEVER, contents);
+        log.close();
+        PortalLog.Contents compacted = PortalLog.read(path, logger);
+        assertEquals(0, compacted.getSkippedRecords());
+        assertEquals(contents.getPortals(), compacted.getPortals());
+    }
+
+    // A corrupted length can't be used to find the next record, so the records after it should be found by their checksums instead
+    @Test
+    public void testCorruptLengthInMiddleIsSkipped() throws IOException {
+        // Corrupting the highest byte makes the length run past the end of the file, and the lowest byte makes it end inside the next record
+        for(int lengthByte : new int[]{1, 4}) {
+            Path path = tempDir.resolve("portals" + lengthByte + ".dat");
+            PortalRecord first = createRecord("first");
+            PortalRecord corrupted = createRecord("corrupted");
+            PortalRecord last = createRecord("last");
+
+            PortalLog log = PortalLog.open(path, logger, FsyncPolicy.NEVER, null);
+            log.append(Collections.singletonList(new PortalLog.Change(first.getId(), first)));
+            long corruptedRecordStart = Files.size(path);
+            log.append(Collections.singletonList(new PortalLog.Change(corrupted.getId(), corrupted)));
+            log.append(Collections.singletonList(new PortalLog.Change(last.getId(), last)));
+            log.close();
+            long length = Files.size(path);
+
+            flipByte(path, corruptedRecordStart + lengthByte);
+            byte[] corruptedFile = Files.readAllBytes(path);
+
+            PortalLog.Contents contents = PortalLog.read(path, logger);
+            assertEquals(2, contents.getPortals().size());
+            assertEquals(first, contents.getPortals().get(first.getId()));
+            assertEquals(last, contents.getPortals().get(last.getId()));
+            assertEquals(1, contents.getSkippedRecords());
+            assertEquals(length, contents.getValidLength());
+
+            // The original file is backed up before the log is compacted, and the compacted log keeps the portals after the corrupted record
+            log = PortalLog.open(path, logger, FsyncPolicy.NEVER, contents);
+            log.close();
+            assertArrayEquals(corruptedFile, Files.readAllBytes(path.resolveSibling(path.getFileName() + ".corrupt")));
+            assertEquals(contents.getPortals(), PortalLog.read(path, logger).getPortals());
+        }
+    }
+
+    // The last record failing its checksum is treated as a torn write, so it is discarded
+    @Test
+    public void testCorruptLastRecordIsDiscarded() throws IOException {
+        Path path = tempDir.resolve("portals.dat");
+        PortalRecord first = createRecord("first");
+        PortalRecord second = createRecord("second");
+
+        PortalLog log = PortalLog.open(path, logger, FsyncPolicy.NEVER, null);
+        log.append(Collections.singletonList(new PortalLog.Change(first.getId(), first)));
+        long firstRecordEnd = Files.size(path);
+        log.append(Collections.singletonList(new PortalLog.Change(second.getId(), second)));
+        log.close();
+
+        flipByte(path, Files.size(path) - 1);
+
+        PortalLog.Contents contents = PortalLog.read(path, logger);
+        assertEquals(1, contents.getPortals().size());
+        assertEquals(first, contents.getPortals().get(first.getId()));
+        assertEquals(firstRecordEnd, contents.getValidLength());
+        assertEquals(0, contents.getSkippedRecords());
+    }
+
+    @Test
+    public void testCompaction() throws IOException {
+        Path path = tempDir.resolve("portals.dat");
+        PortalRecord record = createRecord("portal");
+
+        PortalLog log = PortalLog.open(path, logger, FsyncPolicy.NEVER, null);
+        for(int i = 0; i < 1000; i++) {
+            log.append(Collections.singletonList(new PortalLog.Change(record.getId(), record)));
+        }
+        log.close();
+
+        // The repeated records of the same portal should have been removed
+        PortalLog.Contents contents = PortalLog.read(path, logger);
+        assertTrue(contents.getRecordCount() < 1000);
+        assertEquals(record, contents.getPortals().get(record.getId()));
+    }
+}
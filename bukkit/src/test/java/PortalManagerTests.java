@@ -12,6 +12,7 @@ import com.lauriethefish.betterportals.bukkit.portal.IPortal;
 import com.lauriethefish.betterportals.bukkit.portal.IPortalActivityManager;
 import com.lauriethefish.betterportals.bukkit.portal.PortalManager;
 import com.lauriethefish.betterportals.bukkit.portal.predicate.IPortalPredicateManager;
+import com.lauriethefish.betterportals.bukkit.portal.storage.PortalRecord;
 import implementations.*;
 import org.bukkit.Location;
 import org.bukkit.util.Vector;
@@ -169,4 +170,77 @@ public class PortalManagerTests {
         portalManager.removePortalById(portal.getId());
         assertNull(portalManager.getPortalById(portal.getId()));
     }
+
+    // Far enough from spawn that the chunks around these portals are never loaded
+    private PortalRecord createUnloadedRecord(double x, double z) {
+        PortalPosition portalOrigin = new PortalPosition(new Location(overworld, x, 64, z), PortalDirection.EAST);
+        PortalPosition portalDestination = new PortalPosition(new Location(nether, x / 8.0, 64, z / 8.0), PortalDirection.EAST);
+        return new PortalRecord(UUID.randomUUID(), null, null, portalOrigin, portalDestination, new Vector(2.0, 3.0, 0.0), false, true);
+    }
+
+    @Test
+    public void testLoadedByRegion() {
+        PortalRecord near = createUnloadedRecord(5000, 5000);
+        PortalRecord far = createUnloadedRecord(6000, 5000);
+        portalManager.registerUnloadedPortal(near);
+        portalManager.registerUnloadedPortal(far);
+
+        assertTrue(portalManager.getLoadedPortals().isEmpty());
+        assertEquals(2, portalManager.getPortalCount());
+
+        // Any chunk in the same region as the portal should load it
+        portalManager.loadPortalsInChunk(overworld, (5000 >> 4) + 20, 5000 >> 4);
+        assertEquals(1, portalManager.getLoadedPortals().size());
+        assertEquals(near.getId(), portalManager.getLoadedPortals().iterator().next().getId());
+        assertEquals(2, portalManager.getPortalCount());
+    }
+
+    @Test
+    public void testGetAllIncludesUnloaded() {
+        PortalRecord record = createUnloadedRecord(5000, 5000);
+        portalManager.registerUnloadedPortal(record);
+
+        Collection<IPortal> allPortals = portalManager.getAllPortals();
+        assertEquals(1, allPortals.size());
+        assertEquals(record.getId(), allPortals.iterator().next().getId());
+    }
+
+    @Test
+    public void testFindInRangeLoads() {
+        PortalRecord record = createUnloadedRecord(5000, 5000);
+        portalManager.registerUnloadedPortal(record);
+
+        assertTrue(portalManager.findPortalsInRange(new Location(overworld, 5000, 64, 5100), 50.0).isEmpty());
+        Collection<IPortal> found = portalManager.findPortalsInRange(new Location(overworld, 5000, 64, 5100), 150.0);
+        assertEquals(1, found.size());
+        assertEquals(1, portalManager.getLoadedPortals().size());
+    }
+
+    @Test
+    public void testUnload() {
+        PortalRecord record = createUnloadedRecord(5000, 5000);
+        portalManager.registerUnloadedPortal(record);
+        IPortal portal = portalManager.getPortalById(record.getId());
+        assertNotNull(portal);
+
+        assertTrue(portalManager.unloadPortal(portal));
+        assertTrue(portalManager.getLoadedPortals().isEmpty());
+        assertEquals(1, portalManager.getPortalCount());
+
+        // It should be loaded again once it's needed
+        IPortal reloaded = portalManager.getPortalById(record.getId());
+        assertNotNull(reloaded);
+        assertNotSame(portal, reloaded);
+    }
+
+    @Test
+    public void testChangedPortalNotUnloaded() {
+        IPortal portal = createTestPortal();
+        portalManager.registerPortal(portal);
+
+        // The portal hasn't been saved yet, so unloading it would lose it
+        assertFalse(portalManager.unloadPortal(portal));
+        portalManager.takeDirtyPortals();
+        assertTrue(portalManager.unloadPortal(portal));
+    }
 }
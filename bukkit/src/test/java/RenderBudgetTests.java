@@ -0,0 +1,99 @@
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import com.lauriethefish.betterportals.bukkit.portal.RenderBudget;
+import com.lauriethefish.betterportals.bukkit.portal.RenderDegradation;
+import com.lauriethefish.betterportals.bukkit.util.performance.OperationRegistry;
+import implementations.TestConfigHandler;
+import implementations.TestLoggerModule;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class RenderBudgetTests {
+    private static final int EVALUATION_INTERVAL = 10;
+
+    private final UUID expensivePortal = UUID.randomUUID();
+    private final UUID cheapPortal = UUID.randomUUID();
+
+    private OperationRegistry operationRegistry;
+    private RenderBudget renderBudget;
+
+    @BeforeEach
+    public void setup() {
+        Injector injector = Guice.createInjector(new TestLoggerModule());
+        TestConfigHandler.prepareConfig(injector, config -> {
+            config.set("renderBudget.enable", true);
+            config.set("renderBudget.maxMillisPerTick", 1.0);
+            config.set("renderBudget.evaluationInterval", EVALUATION_INTERVAL);
+        });
+
+        operationRegistry = injector.getInstance(OperationRegistry.class);
+        renderBudget = injector.getInstance(RenderBudget.class);
+    }
+
+    // Records the costs of both portals over one evaluation interval
+    private void runInterval(double expensiveMillisPerTick, double cheapMillisPerTick) {
+        for(int tick = 0; tick < EVALUATION_INTERVAL; tick++) {
+            if(expensiveMillisPerTick > 0.0) {
+                operationRegistry.getPortalCost(expensivePortal).recordChangeCheck((long) (expensiveMillisPerTick * 1_000_000));
+            }
+            if(cheapMillisPerTick > 0.0) {
+                operationRegistry.getPortalCost(cheapPortal).recordVisibility((long) (cheapMillisPerTick * 1_000_000), 1, 100);
+            }
+            renderBudget.update();
+        }
+    }
+
+    @Test
+    public void testMostExpensiveIsDegradedFirst() {
+        runInterval(1.5, 0.1);
+
+        assertEquals(RenderDegradation.REDUCED_UPDATE_RATE, renderBudget.getDegradation(expensivePortal));
+        assertEquals(RenderDegradation.NONE, renderBudget.getDegradation(cheapPortal));
+        assertEquals(1.6, renderBudget.getLastTotalCost(), 0.001);
+
+        // Still over the budget, so it is degraded further
+        runInterval(1.5, 0.1);
+        runInterval(1.5, 0.1);
+        runInterval(1.5, 0.1);
+        assertEquals(RenderDegradation.STATIC, renderBudget.getDegradation(expensivePortal));
+    }
+
+    @Test
+    public void testRestoredOnceUnderBudget() {
+        runInterval(1.5, 0.1);
+        assertEquals(RenderDegradation.REDUCED_UPDATE_RATE, renderBudget.getDegradation(expensivePortal));
+
+        // Restoring would go over the recovery limit, so nothing changes
+        runInterval(0.4, 0.1);
+        assertEquals(RenderDegradation.REDUCED_UPDATE_RATE, renderBudget.getDegradation(expensivePortal));
+
+        runInterval(0.2, 0.1);
+        assertEquals(RenderDegradation.NONE, renderBudget.getDegradation(expensivePortal));
+    }
+
+    @Test
+    public void testUnrenderedPortalsAreRestored() {
+        runInterval(1.5, 0.1);
+        runInterval(0.0, 0.1);
+
+        assertEquals(RenderDegradation.NONE, renderBudget.getDegradation(expensivePortal));
+    }
+
+    @Test
+    public void testOverridesAreKept() {
+        renderBudget.setOverride(expensivePortal, RenderDegradation.NONE);
+        renderBudget.setOverride(cheapPortal, RenderDegradation.STATIC);
+        runInterval(1.5, 0.1);
+
+        assertEquals(RenderDegradation.NONE, renderBudget.getDegradation(expensivePortal));
+        assertEquals(RenderDegradation.STATIC, renderBudget.getDegradation(cheapPortal));
+
+        renderBudget.setOverride(expensivePortal, null);
+        runInterval(1.5, 0.1);
+        assertEquals(RenderDegradation.REDUCED_UPDATE_RATE, renderBudget.getDegradation(expensivePortal));
+    }
+}
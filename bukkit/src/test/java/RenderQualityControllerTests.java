@@ -0,0 +1,63 @@
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import com.lauriethefish.betterportals.bukkit.portal.RenderQualityController;
+import implementations.TestConfigHandler;
+import implementations.TestLoggerModule;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class RenderQualityControllerTests {
+    private RenderQualityController qualityController;
+
+    @BeforeEach
+    public void setup() {
+        Injector injector = Guice.createInjector(new TestLoggerModule());
+        TestConfigHandler.prepareConfig(injector, config -> {
+            config.set("portalEffectSizeXZ", 20);
+            config.set("portalBlockUpdateInterval", 10);
+            config.set("adaptiveQuality.enable", true);
+            config.set("adaptiveQuality.degradeMspt", 40.0);
+            config.set("adaptiveQuality.recoverMspt", 30.0);
+            config.set("adaptiveQuality.step", 0.25);
+            config.set("adaptiveQuality.minPortalEffectSizeXZ", 8);
+            config.set("adaptiveQuality.maxPortalBlockUpdateInterval", 50);
+        });
+
+        qualityController = injector.getInstance(RenderQualityController.class);
+    }
+
+    @Test
+    public void testFullQualityUsesConfigValues() {
+        assertEquals(20, qualityController.getEffectSizeXZ());
+        assertEquals(10, qualityController.getBlockUpdateInterval());
+    }
+
+    @Test
+    public void testQualityLoweredWhenOverloaded() {
+        qualityController.adjustQuality(45.0);
+        qualityController.adjustQuality(45.0);
+
+        assertEquals(0.5, qualityController.getQuality(), 0.001);
+        assertEquals(14, qualityController.getEffectSizeXZ());
+        assertEquals(30, qualityController.getBlockUpdateInterval());
+
+        // Never goes past the limits in the config
+        for(int i = 0; i < 10; i++) {
+            qualityController.adjustQuality(45.0);
+        }
+        assertEquals(8, qualityController.getEffectSizeXZ());
+        assertEquals(50, qualityController.getBlockUpdateInterval());
+    }
+
+    @Test
+    public void testQualityKeptBetweenThresholds() {
+        qualityController.adjustQuality(45.0);
+        qualityController.adjustQuality(35.0);
+        assertEquals(0.75, qualityController.getQuality(), 0.001);
+
+        qualityController.adjustQuality(25.0);
+        assertEquals(1.0, qualityController.getQuality(), 0.001);
+    }
+}
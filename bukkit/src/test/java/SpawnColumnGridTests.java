@@ -0,0 +1,115 @@
+import com.lauriethefish.betterportals.bukkit.portal.spawning.SpawnColumnGrid;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SpawnColumnGridTests {
+    // Solid blocks, air blocks, and blocks that are neither, e.g. grass or water
+    private static final char SOLID = '#';
+    private static final char AIR = '.';
+    private static final char OTHER = '~';
+
+    private static final int MIN_X = -5;
+    private static final int MIN_Y = 60;
+    private static final int MIN_Z = 3;
+    private static final int WIDTH = 7;
+    private static final int HEIGHT = 8;
+    private static final int DEPTH = 6;
+
+    private final char[][][] layout = new char[WIDTH][HEIGHT][DEPTH];
+
+    private char getType(int x, int y, int z) {
+        return layout[x - MIN_X][y - MIN_Y][z - MIN_Z];
+    }
+
+    private SpawnColumnGrid createGrid() {
+        return new SpawnColumnGrid(this::getType, type -> type == SOLID, type -> type == AIR,
+                MIN_X, MIN_Y, MIN_Z, MIN_X + WIDTH - 1, MIN_Y + HEIGHT - 1, MIN_Z + DEPTH - 1);
+    }
+
+    private boolean isFloorSolid(int floorY, int x1, int z1, int x2, int z2) {
+        for(int x = x1; x <= x2; x++) {
+            for(int z = z1; z <= z2; z++) {
+                if(getType(x, floorY, z) != SOLID) {return false;}
+            }
+        }
+        return true;
+    }
+
+    // Blocks above the top of the grid aren't read, so count as not being air
+    private boolean isInteriorAir(int floorY, int interiorHeight, int x1, int z1, int x2, int z2) {
+        if(floorY + interiorHeight >= MIN_Y + HEIGHT) {return false;}
+
+        for(int x = x1; x <= x2; x++) {
+            for(int z = z1; z <= z2; z++) {
+                for(int y = floorY + 1; y <= floorY + interiorHeight; y++) {
+                    if(getType(x, y, z) != AIR) {return false;}
+                }
+            }
+        }
+        return true;
+    }
+
+    private void assertMatchesBruteForce(SpawnColumnGrid grid, int interiorHeight) {
+        for(int floorY = MIN_Y; floorY < MIN_Y + HEIGHT; floorY++) {
+            grid.selectLayer(floorY, interiorHeight);
+
+            for(int x1 = MIN_X; x1 < MIN_X + WIDTH; x1++) {
+                for(int x2 = x1; x2 < MIN_X + WIDTH; x2++) {
+                    for(int z1 = MIN_Z; z1 < MIN_Z + DEPTH; z1++) {
+                        for(int z2 = z1; z2 < MIN_Z + DEPTH; z2++) {
+                            String area = String.format("floor %d, interior %d, (%d, %d) to (%d, %d)", floorY, interiorHeight, x1, z1, x2, z2);
+                            assertEquals(isFloorSolid(floorY, x1, z1, x2, z2), grid.isFloorSolid(x1, z1, x2, z2), area);
+                            assertEquals(isInteriorAir(floorY, interiorHeight, x1, z1, x2, z2), grid.isInteriorAir(x1, z1, x2, z2), area);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testFlatGround() {
+        // Two layers of ground with air above, and a non-solid block on the surface
+        for(int x = 0; x < WIDTH; x++) {
+            for(int y = 0; y < HEIGHT; y++) {
+                for(int z = 0; z < DEPTH; z++) {
+                    layout[x][y][z] = y < 2 ? SOLID : AIR;
+                }
+            }
+        }
+        layout[3][2][3] = OTHER;
+
+        SpawnColumnGrid grid = createGrid();
+        grid.selectLayer(MIN_Y + 1, 3);
+        assertTrue(grid.isFloorSolid(MIN_X, MIN_Z, MIN_X + WIDTH - 1, MIN_Z + DEPTH - 1));
+        assertTrue(grid.isInteriorAir(MIN_X, MIN_Z, MIN_X + 2, MIN_Z + DEPTH - 1));
+        assertFalse(grid.isInteriorAir(MIN_X + 3, MIN_Z + 3, MIN_X + 3, MIN_Z + 3));
+
+        grid.selectLayer(MIN_Y + 2, 3);
+        assertFalse(grid.isFloorSolid(MIN_X, MIN_Z, MIN_X, MIN_Z));
+
+        assertMatchesBruteForce(grid, 3);
+    }
+
+    @Test
+    public void testMatchesBruteForce() {
+        // Mostly air, so that there are some areas with enough air above the floor
+        Random random = new Random(4321);
+        for(int x = 0; x < WIDTH; x++) {
+            for(int y = 0; y < HEIGHT; y++) {
+                for(int z = 0; z < DEPTH; z++) {
+                    int roll = random.nextInt(10);
+                    layout[x][y][z] = roll < 3 ? SOLID : roll < 4 ? OTHER : AIR;
+                }
+            }
+        }
+
+        SpawnColumnGrid grid = createGrid();
+        for(int interiorHeight = 1; interiorHeight <= 3; interiorHeight++) {
+            assertMatchesBruteForce(grid, interiorHeight);
+        }
+    }
+}
@@ -0,0 +1,153 @@
+import com.lauriethefish.betterportals.api.PortalDirection;
+import com.lauriethefish.betterportals.bukkit.chunk.chunkpos.ChunkPosition;
+import com.lauriethefish.betterportals.bukkit.chunk.chunkpos.SpiralChunkAreaIterator;
+import com.lauriethefish.betterportals.bukkit.portal.spawning.PortalSpawnPosition;
+import com.lauriethefish.betterportals.bukkit.portal.spawning.SnapshotSpawnBlockView;
+import com.lauriethefish.betterportals.bukkit.portal.spawning.SpawnSearch;
+import org.bukkit.Location;
+import org.bukkit.World;
+import org.bukkit.util.Vector;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Proxy;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SpawnSearchTests {
+    private static final double SEARCH_RADIUS = 128.0;
+
+    // Locations only need a world to measure distances, so none of its methods are used
+    private final World world = (World) Proxy.newProxyInstance(World.class.getClassLoader(), new Class<?>[]{World.class}, (proxy, method, args) -> {
+        switch(method.getName()) {
+            case "hashCode": return System.identityHashCode(proxy);
+            case "equals": return proxy == args[0];
+            case "toString": return "world";
+            default: throw new UnsupportedOperationException(method.getName());
+        }
+    });
+    private final Location preferredLocation = new Location(world, 100.0, 128.0, -50.0);
+
+    private SpawnSearch createSearch(int batchSize, int chunkMargin) {
+        Iterator<ChunkPosition> iterator = new SpiralChunkAreaIterator(
+                preferredLocation.clone().subtract(SEARCH_RADIUS, 0.0, SEARCH_RADIUS),
+                preferredLocation.clone().add(SEARCH_RADIUS, 0.0, SEARCH_RADIUS)
+        );
+        return new SpawnSearch(iterator, preferredLocation, batchSize, chunkMargin);
+    }
+
+    // A fixed layout where only some chunks contain a valid position, somewhere in the chunk
+    private PortalSpawnPosition findClosestInChunk(ChunkPosition chunk) {
+        int hash = chunk.getX() * 31 + chunk.getZ() * 17;
+        if(Math.floorMod(hash, 7) != 0) {return null;}
+
+        Location position = new Location(world, chunk.getX() * 16 + Math.floorMod(hash, 16), 128.0, chunk.getZ() * 16 + Math.floorMod(hash * 3, 16));
+        return new PortalSpawnPosition(position, new Vector(2.0, 3.0, 0.0), PortalDirection.EAST);
+    }
+
+    // Runs the search to completion, returning the number of chunks that were checked
+    private int runSearch(SpawnSearch search) {
+        int checkedCount = 0;
+        List<ChunkPosition> batch;
+        while(!(batch = search.nextBatch()).isEmpty()) {
+            List<PortalSpawnPosition> results = new ArrayList<>();
+            for(ChunkPosition chunk : batch) {
+                results.add(findClosestInChunk(chunk));
+            }
+            search.addResults(results);
+            checkedCount += batch.size();
+        }
+        return checkedCount;
+    }
+
+    @Test
+    public void testFindsClosest() {
+        // Check every chunk to find the true closest position
+        PortalSpawnPosition expected = null;
+        double expectedDistance = Double.POSITIVE_INFINITY;
+        Iterator<ChunkPosition> iterator = new SpiralChunkAreaIterator(
+                preferredLocation.clone().subtract(SEARCH_RADIUS, 0.0, SEARCH_RADIUS),
+                preferredLocation.clone().add(SEARCH_RADIUS, 0.0, SEARCH_RADIUS)
+        );
+        int chunkCount = 0;
+        while(iterator.hasNext()) {
+            PortalSpawnPosition position = findClosestInChunk(iterator.next());
+            chunkCount++;
+            if(position == null) {continue;}
+
+            double distance = position.getPosition().distance(preferredLocation);
+            if(distance < expectedDistance) {
+                expected = position;
+                expectedDistance = distance;
+            }
+        }
+        assertNotNull(expected);
+
+        for(int batchSize : new int[]{1, 8, 1000}) {
+            SpawnSearch search = createSearch(batchSize, 1);
+            int checkedCount = runSearch(search);
+
+            assertEquals(expected.getPosition(), Objects.requireNonNull(search.getClosest()).getPosition(), "Batch size " + batchSize);
+            assertEquals(expectedDistance, search.getClosestDistance());
+            // Chunks that can't be closer are skipped once a position has been found
+            if(batchSize < 1000) {
+                assertTrue(checkedCount < chunkCount, "Batch size " + batchSize);
+            }
+        }
+    }
+
+    @Test
+    public void testBatchSize() {
+        SpawnSearch search = createSearch(8, 0);
+        for(int i = 0; i < 3; i++) {
+            List<ChunkPosition> batch = search.nextBatch();
+            assertEquals(8, batch.size());
+            // Without a margin, only the chunks in the batch are needed
+            assertEquals(new HashSet<>(batch), new HashSet<>(search.getNeededChunks()));
+        }
+    }
+
+    @Test
+    public void testNeededChunksIncludeMargin() {
+        SpawnSearch search = createSearch(1, 1);
+        ChunkPosition chunk = search.nextBatch().get(0);
+
+        Set<ChunkPosition> expected = new HashSet<>();
+        for(int x = -1; x <= 1; x++) {
+            for(int z = -1; z <= 1; z++) {
+                expected.add(new ChunkPosition(world, chunk.getX() + x, chunk.getZ() + z));
+            }
+        }
+        assertEquals(expected, new HashSet<>(search.getNeededChunks()));
+    }
+
+    @Test
+    public void testEvictsFinishedBatches() {
+        SpawnSearch search = createSearch(4, 1);
+        Map<Long, Object> snapshots = new HashMap<>();
+
+        Set<Long> previousKeys = new HashSet<>();
+        int maxSnapshots = 0;
+        List<ChunkPosition> batch;
+        while(!(batch = search.nextBatch()).isEmpty()) {
+            search.evictUnneeded(snapshots);
+
+            Set<Long> neededKeys = new HashSet<>();
+            for(ChunkPosition chunk : search.getNeededChunks()) {
+                neededKeys.add(SnapshotSpawnBlockView.getChunkKey(chunk.getX(), chunk.getZ()));
+            }
+
+            // Only the snapshots shared with the previous batch are kept
+            Set<Long> expectedKept = new HashSet<>(previousKeys);
+            expectedKept.retainAll(neededKeys);
+            assertEquals(expectedKept, snapshots.keySet());
+
+            neededKeys.forEach(key -> snapshots.put(key, new Object()));
+            maxSnapshots = Math.max(maxSnapshots, snapshots.size());
+            previousKeys = neededKeys;
+        }
+
+        // A batch of 4 chunks with a margin of 1 needs at most 36 snapshots, far fewer than the whole area
+        assertTrue(maxSnapshots <= 36, "Kept " + maxSnapshots + " snapshots");
+    }
+}
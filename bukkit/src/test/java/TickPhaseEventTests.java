@@ -0,0 +1,48 @@
+import com.lauriethefish.betterportals.bukkit.util.performance.TickPhase;
+import com.lauriethefish.betterportals.bukkit.util.performance.TickPhaseEvent;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+public class TickPhaseEventTests {
+    @Test
+    public void testEventRecorded() throws IOException {
+        assumeTrue(FlightRecorder.isAvailable(), "JFR isn't available");
+
+        UUID portalId = UUID.randomUUID();
+        Path path = Files.createTempFile("trace", ".jfr");
+        try(Recording recording = new Recording()) {
+            recording.enable(TickPhaseEvent.class);
+            recording.start();
+
+            TickPhaseEvent event = TickPhaseEvent.begin(TickPhase.FLOOD_FILL);
+            event.finish(portalId, "player", 1234);
+
+            recording.stop();
+            recording.dump(path);
+
+            List<RecordedEvent> events = RecordingFile.readAllEvents(path);
+            RecordedEvent recorded = events.stream()
+                    .filter(e -> e.getEventType().getName().equals("betterportals.TickPhase"))
+                    .findFirst().orElseThrow();
+
+            assertEquals("FLOOD_FILL", recorded.getString("phase"));
+            assertEquals(portalId.toString(), recorded.getString("portalId"));
+            assertEquals("player", recorded.getString("player"));
+            assertEquals(1234, recorded.getLong("size"));
+        }   finally     {
+            Files.delete(path);
+        }
+    }
+}
@@ -0,0 +1,109 @@
+import com.lauriethefish.betterportals.api.PortalDirection;
+import com.lauriethefish.betterportals.api.PortalPosition;
+import com.lauriethefish.betterportals.bukkit.portal.UnloadedPortalStore;
+import com.lauriethefish.betterportals.bukkit.portal.storage.PortalRecord;
+import org.bukkit.util.Vector;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class UnloadedPortalStoreTests {
+    private final UnloadedPortalStore store = new UnloadedPortalStore();
+
+    private PortalRecord createRecord(UUID id, String worldName, double x, double z) {
+        PortalPosition originPos = new PortalPosition(new Vector(x, 64.0, z), PortalDirection.EAST, null, worldName);
+        PortalPosition destPos = new PortalPosition(new Vector(x / 8.0, 64.0, z / 8.0), PortalDirection.EAST, null, "world_nether");
+        return new PortalRecord(id, null, null, originPos, destPos, new Vector(2.0, 3.0, 0.0), false, true);
+    }
+
+    private PortalRecord createRecord(String worldName, double x, double z) {
+        return createRecord(UUID.randomUUID(), worldName, x, z);
+    }
+
+    @Test
+    public void testRegionCoordinates() {
+        assertEquals(0, UnloadedPortalStore.getRegionCoordinate(0.0));
+        assertEquals(0, UnloadedPortalStore.getRegionCoordinate(511.9));
+        assertEquals(1, UnloadedPortalStore.getRegionCoordinate(512.0));
+        assertEquals(-1, UnloadedPortalStore.getRegionCoordinate(-0.5));
+        assertEquals(-1, UnloadedPortalStore.getRegionCoordinate(-512.0));
+        assertEquals(-2, UnloadedPortalStore.getRegionCoordinate(-512.5));
+
+        // Regions are 32x32 chunks
+        assertEquals(0, UnloadedPortalStore.getRegionCoordinateOfChunk(31));
+        assertEquals(1, UnloadedPortalStore.getRegionCoordinateOfChunk(32));
+        assertEquals(-1, UnloadedPortalStore.getRegionCoordinateOfChunk(-1));
+    }
+
+    @Test
+    public void testRemoveRegion() {
+        PortalRecord inRegion = createRecord("world", 10.0, 500.0);
+        PortalRecord otherRegion = createRecord("world", 600.0, 10.0);
+        PortalRecord otherWorld = createRecord("world_the_end", 10.0, 10.0);
+        store.add(inRegion);
+        store.add(otherRegion);
+        store.add(otherWorld);
+
+        assertEquals(List.of(inRegion), store.removeRegion("world", 0, 0));
+        assertNull(store.get(inRegion.getId()));
+        assertEquals(2, store.size());
+
+        // The region is now empty
+        assertTrue(store.removeRegion("world", 0, 0).isEmpty());
+        assertTrue(store.removeRegion("world_nether", 0, 0).isEmpty());
+    }
+
+    @Test
+    public void testRemoveById() {
+        PortalRecord record = createRecord("world", -100.0, -100.0);
+        store.add(record);
+
+        assertEquals(record, store.remove(record.getId()));
+        assertNull(store.remove(record.getId()));
+        assertEquals(0, store.size());
+        assertTrue(store.removeRegion("world", -1, -1).isEmpty());
+    }
+
+    @Test
+    public void testAddReplacesExisting() {
+        UUID id = UUID.randomUUID();
+        store.add(createRecord(id, "world", 10.0, 10.0));
+        // The portal was moved to another region since it was last stored
+        PortalRecord moved = createRecord(id, "world", 1000.0, 10.0);
+        store.add(moved);
+
+        assertEquals(1, store.size());
+        assertEquals(moved, store.get(id));
+        assertTrue(store.removeRegion("world", 0, 0).isEmpty());
+        assertEquals(List.of(moved), store.removeRegion("world", 1, 0));
+    }
+
+    @Test
+    public void testRemoveWorld() {
+        PortalRecord first = createRecord("world", 10.0, 10.0);
+        PortalRecord second = createRecord("world", 5000.0, -5000.0);
+        PortalRecord otherWorld = createRecord("world_the_end", 10.0, 10.0);
+        store.add(first);
+        store.add(second);
+        store.add(otherWorld);
+
+        List<PortalRecord> removed = store.removeWorld("world");
+        assertEquals(2, removed.size());
+        assertTrue(removed.containsAll(List.of(first, second)));
+        assertEquals(1, store.size());
+        assertEquals(otherWorld, store.get(otherWorld.getId()));
+    }
+
+    @Test
+    public void testRemoveAll() {
+        store.add(createRecord("world", 10.0, 10.0));
+        store.add(createRecord("world_the_end", 10.0, 10.0));
+
+        assertEquals(2, store.removeAll().size());
+        assertEquals(0, store.size());
+        assertTrue(store.removeWorld("world").isEmpty());
+    }
+}
@@ -0,0 +1,111 @@
+import com.lauriethefish.betterportals.api.IntVector;
+import com.lauriethefish.betterportals.bukkit.portal.spawning.SnapshotSpawnBlockView;
+import com.lauriethefish.betterportals.bukkit.portal.spawning.WorldBlockIndex;
+import org.junit.jupiter.api.Test;
+
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class WorldBlockIndexTests {
+    private static final long CHUNK_KEY = SnapshotSpawnBlockView.getChunkKey(2, -3);
+    private static final IntVector POSITION = new IntVector(35, 64, -40);
+
+    private final WorldBlockIndex index = new WorldBlockIndex();
+
+    private WorldBlockIndex.ChunkEntry createEntry() {
+        WorldBlockIndex.ChunkEntry entry = new WorldBlockIndex.ChunkEntry();
+        entry.addObsidian(POSITION);
+        return entry;
+    }
+
+    @Test
+    public void testPublishedEntryKept() {
+        WorldBlockIndex.ChunkEntry entry = createEntry();
+        assertSame(entry, index.publish(CHUNK_KEY, entry, 10));
+
+        assertSame(entry, index.get(CHUNK_KEY));
+        assertEquals(Set.of(POSITION), index.get(CHUNK_KEY).getObsidianBlocks());
+    }
+
+    @Test
+    public void testFirstEntryUsed() {
+        WorldBlockIndex.ChunkEntry first = createEntry();
+        index.publish(CHUNK_KEY, first, 10);
+
+        assertSame(first, index.publish(CHUNK_KEY, createEntry(), 11));
+    }
+
+    @Test
+    public void testBlockChangesUpdateEntry() {
+        index.publish(CHUNK_KEY, createEntry(), 10);
+
+        index.onBlockChanged(CHUNK_KEY, POSITION, false, true, 11);
+        WorldBlockIndex.ChunkEntry entry = index.get(CHUNK_KEY);
+        assertNotNull(entry);
+        assertTrue(entry.getObsidianBlocks().isEmpty());
+        assertEquals(Set.of(POSITION), entry.getPortalBlocks());
+
+        index.onBlockChanged(CHUNK_KEY, POSITION, false, false, 12);
+        assertTrue(entry.getPortalBlocks().isEmpty());
+    }
+
+    @Test
+    public void testChangeAfterSnapshotNotLost() {
+        // The block changes after the snapshot is taken, but before the entry built from it is published
+        index.onBlockChanged(CHUNK_KEY, POSITION, false, false, 11);
+
+        WorldBlockIndex.ChunkEntry outdated = createEntry();
+        assertSame(outdated, index.publish(CHUNK_KEY, outdated, 10));
+        assertNull(index.get(CHUNK_KEY));
+
+        // A snapshot taken after the change can be stored
+        WorldBlockIndex.ChunkEntry current = new WorldBlockIndex.ChunkEntry();
+        index.publish(CHUNK_KEY, current, 11);
+        assertSame(current, index.get(CHUNK_KEY));
+    }
+
+    @Test
+    public void testUnindexedChangesLimited() {
+        for(int i = 0; i < 10000; i++) {
+            index.onBlockChanged(SnapshotSpawnBlockView.getChunkKey(i, 0), POSITION, true, false, i + 1);
+        }
+        assertTrue(index.getUnindexedChangeCount() <= 4096);
+
+        // Snapshots from before the dropped changes can't be stored, since they might have missed them
+        index.publish(CHUNK_KEY, createEntry(), 5000);
+        assertNull(index.get(CHUNK_KEY));
+        index.publish(CHUNK_KEY, createEntry(), 10000);
+        assertNotNull(index.get(CHUNK_KEY));
+    }
+
+    @Test
+    public void testChangeBeforeSnapshotIgnored() {
+        index.onBlockChanged(CHUNK_KEY, POSITION, true, false, 5);
+
+        WorldBlockIndex.ChunkEntry entry = createEntry();
+        index.publish(CHUNK_KEY, entry, 10);
+        assertSame(entry, index.get(CHUNK_KEY));
+    }
+
+    @Test
+    public void testChangesInOtherChunksIgnored() {
+        index.onBlockChanged(SnapshotSpawnBlockView.getChunkKey(3, -3), POSITION, false, false, 20);
+
+        index.publish(CHUNK_KEY, createEntry(), 10);
+        assertNotNull(index.get(CHUNK_KEY));
+    }
+
+    @Test
+    public void testInvalidate() {
+        index.publish(CHUNK_KEY, createEntry(), 10);
+        index.invalidate(CHUNK_KEY, 11);
+        assertNull(index.get(CHUNK_KEY));
+
+        // Snapshots taken before the invalidation are out of date
+        index.publish(CHUNK_KEY, createEntry(), 10);
+        assertNull(index.get(CHUNK_KEY));
+        index.publish(CHUNK_KEY, createEntry(), 11);
+        assertEquals(1, index.size());
+    }
+}
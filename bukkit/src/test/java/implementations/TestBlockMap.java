@@ -0,0 +1,128 @@
+package implementations;
+
+import com.google.inject.Inject;
+import com.google.inject.assistedinject.Assisted;
+import com.lauriethefish.betterportals.api.IntVector;
+import com.lauriethefish.betterportals.bukkit.block.FloodFillBlockMap;
+import com.lauriethefish.betterportals.bukkit.block.IViewableBlockInfo;
+import com.lauriethefish.betterportals.bukkit.config.RenderConfig;
+import com.lauriethefish.betterportals.bukkit.portal.IPortal;
+import com.lauriethefish.betterportals.bukkit.portal.RenderBudget;
+import com.lauriethefish.betterportals.bukkit.portal.RenderQualityController;
+import com.lauriethefish.betterportals.bukkit.util.performance.OperationRegistry;
+import com.lauriethefish.betterportals.shared.logging.Logger;
+import org.bukkit.Material;
+import org.bukkit.World;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Flood fill block map that reads materials from the (mock) worlds.
+ * The traversal and change checks are the same as <code>BukkitBlockMap</code>, but block data isn't wrapped or rotated, since that needs ProtocolLib running on a real server.
+ */
+public class TestBlockMap extends FloodFillBlockMap {
+    private static class BlockInfo implements IViewableBlockInfo {
+        private final IntVector originPos;
+        private Material baseDestMaterial;
+
+        private BlockInfo(IntVector originPos, Material baseDestMaterial) {
+            this.originPos = originPos;
+            this.baseDestMaterial = baseDestMaterial;
+        }
+
+        @Override
+        public IntVector getOriginPos() {
+            return originPos;
+        }
+    }
+
+    private final World originWorld;
+    private final World destWorld;
+
+    @Inject
+    public TestBlockMap(@Assisted IPortal portal, Logger logger, RenderConfig renderConfig, OperationRegistry operationRegistry, RenderBudget renderBudget, RenderQualityController qualityController) {
+        super(portal, logger, renderConfig, operationRegistry, renderBudget, qualityController);
+        this.originWorld = Objects.requireNonNull(portal.getOriginPos().getWorld(), "Origin world missing");
+        this.destWorld = Objects.requireNonNull(portal.getDestPos().getWorld(), "Destination world missing");
+    }
+
+    @Override
+    protected void searchFromBlock(IntVector start, List<IViewableBlockInfo> statesOutput, @Nullable IViewableBlockInfo firstBlockInfo) {
+        int[] stack = new int[firstUpdate ? renderConfig.getTotalArrayLength() : 16];
+        stack[0] = getArrayMapIndex(start.subtract(centerPos));
+        int stackPos = 0;
+        while(stackPos >= 0) {
+            int positionInt = stack[stackPos];
+            stackPos--;
+
+            int relX = (positionInt % renderConfig.getZMultip());
+            int relY = Math.floorDiv(positionInt, renderConfig.getYMultip());
+            int relZ = Math.floorDiv(positionInt - relY * renderConfig.getYMultip(), renderConfig.getZMultip());
+
+            relX -= renderConfig.getMaxXZ();
+            relY -= renderConfig.getMaxY();
+            relZ -= renderConfig.getMaxXZ();
+
+            IntVector originPos = new IntVector(relX + portalOriginPos.getX(), relY + portalOriginPos.getY(), relZ + portalOriginPos.getZ());
+            IntVector destRelPos = rotateOriginToDest.transform(relX, relY, relZ);
+            Material destMaterial = destRelPos.add(portalDestPos).getBlock(destWorld).getType();
+            Material originMaterial = originPos.getBlock(originWorld).getType();
+            boolean isOccluding = destMaterial.isOccluding();
+
+            BlockInfo blockInfo = firstBlockInfo == null ? new BlockInfo(originPos, destMaterial) : (BlockInfo) firstBlockInfo;
+            if(firstBlockInfo == null) {
+                nonObscuredStates.add(blockInfo);
+            }
+            firstBlockInfo = null;
+
+            boolean isEdge = isOutsideBounds(relX, relY, relZ);
+            boolean canSkip = destMaterial == originMaterial && firstUpdate && !isEdge;
+            if(alreadyReachedMap[positionInt] < 2 && !isInLine(destRelPos) && !canSkip) {
+                alreadyReachedMap[positionInt] = 2;
+                statesOutput.add(blockInfo);
+            }
+
+            if(isOccluding || isEdge) {continue;}
+
+            if(!firstUpdate && (stack.length - (stackPos + 1) < 5)) {
+                int[] newStack = new int[stack.length * 2];
+                System.arraycopy(stack, 0, newStack, 0, stack.length);
+                stack = newStack;
+            }
+
+            for(int offset : renderConfig.getIntOffsets()) {
+                int newPos = positionInt + offset;
+                if(alreadyReachedMap[newPos] == 0) {
+                    alreadyReachedMap[newPos] = 1;
+
+                    stackPos += 1;
+                    stack[stackPos] = newPos;
+                }
+            }
+        }
+    }
+
+    @Override
+    protected void checkForChanges() {
+        List<IViewableBlockInfo> newStates = new ArrayList<>();
+
+        int statesLength = nonObscuredStates.size();
+        for(int i = 0; i < statesLength; i++) {
+            BlockInfo blockInfo = (BlockInfo) nonObscuredStates.get(i);
+
+            IntVector destPos = rotateOriginToDest.transform(blockInfo.getOriginPos().subtract(portalOriginPos)).add(portalDestPos);
+            Material newDestMaterial = destPos.getBlock(destWorld).getType();
+            if(newDestMaterial != blockInfo.baseDestMaterial) {
+                blockInfo.baseDestMaterial = newDestMaterial;
+                searchFromBlock(blockInfo.getOriginPos(), newStates, blockInfo);
+            }
+        }
+
+        if(newStates.size() > 0) {
+            stateQueue.enqueueStates(newStates);
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package implementations;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.lauriethefish.betterportals.bukkit.tasks.BlockUpdateFinisher;
+import com.lauriethefish.betterportals.bukkit.util.performance.OperationRegistry;
+import com.lauriethefish.betterportals.shared.logging.Logger;
+
+/**
+ * Finishes block updates only when asked, so that tests control when the work happens.
+ */
+@Singleton
+public class TestBlockUpdateFinisher extends BlockUpdateFinisher {
+    @Inject
+    public TestBlockUpdateFinisher(Logger logger, OperationRegistry operationRegistry) {
+        super(logger, operationRegistry);
+    }
+
+    @Override
+    public void start() { }
+
+    /**
+     * Finishes every update queued so far on the calling thread.
+     */
+    public void finishUpdates() {
+        finishPendingUpdates();
+    }
+}
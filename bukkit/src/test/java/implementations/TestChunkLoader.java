@@ -0,0 +1,42 @@
+package implementations;
+
+import com.lauriethefish.betterportals.bukkit.chunk.chunkloading.IChunkLoader;
+import com.lauriethefish.betterportals.bukkit.chunk.chunkpos.ChunkPosition;
+import lombok.Getter;
+import org.bukkit.Chunk;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Reference counts force loaded chunks without actually loading anything, since chunk tickets aren't supported by MockBukkit.
+ */
+public class TestChunkLoader implements IChunkLoader {
+    private final Map<ChunkPosition, Integer> referenceCounts = new HashMap<>();
+    @Getter private int forceLoadCount = 0;
+
+    @Override
+    public void setForceLoaded(Chunk chunk) {
+        setForceLoadedAsync(new ChunkPosition(chunk));
+    }
+
+    @Override
+    public void setForceLoadedAsync(@NotNull ChunkPosition chunk) {
+        referenceCounts.merge(chunk, 1, Integer::sum);
+        forceLoadCount++;
+    }
+
+    @Override
+    public void setNotForceLoaded(@NotNull ChunkPosition chunk) {
+        referenceCounts.computeIfPresent(chunk, (key, count) -> count == 1 ? null : count - 1);
+    }
+
+    @Override
+    public boolean isForceLoaded(@NotNull ChunkPosition chunk) {
+        return referenceCounts.containsKey(chunk);
+    }
+
+    @Override
+    public void update() { }
+}
@@ -6,6 +6,7 @@ import org.bukkit.configuration.file.FileConfiguration;
 import org.bukkit.configuration.file.YamlConfiguration;
 
 import java.io.File;
+import java.util.function.Consumer;
 
 public class TestConfigHandler {
     public static void prepareConfig(Injector injector) {
@@ -18,6 +19,14 @@ public class TestConfigHandler {
         injector.getInstance(ConfigManager.class).loadValues(config, null);
     }
 
+    // Loads the default config after letting the test change some of its values
+    public static void prepareConfig(Injector injector, Consumer<FileConfiguration> modifier) {
+        FileConfiguration config = loadConfigFileFromResource("defaultConfig.yml");
+        modifier.accept(config);
+
+        injector.getInstance(ConfigManager.class).loadValues(config, null);
+    }
+
     private static FileConfiguration loadConfigFileFromResource(String name) {
         return YamlConfiguration.loadConfiguration(new File("src/test/resources/" + name));
     }
@@ -0,0 +1,112 @@
+package implementations;
+
+import com.comphenix.protocol.wrappers.EnumWrappers;
+import com.comphenix.protocol.wrappers.WrappedWatchableObject;
+import com.lauriethefish.betterportals.bukkit.entity.faking.EntityInfo;
+import com.lauriethefish.betterportals.bukkit.entity.faking.IEntityPacketManipulator;
+import com.lauriethefish.betterportals.bukkit.nms.AnimationType;
+import lombok.Getter;
+import org.bukkit.entity.Player;
+import org.bukkit.inventory.ItemStack;
+import org.bukkit.util.Vector;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Counts the entity packets that would have been sent to each player, without sending anything.
+ */
+public class TestEntityPacketManipulator implements IEntityPacketManipulator {
+    @Getter private long packetCount = 0;
+
+    private void count(Collection<Player> players) {
+        packetCount += players.size();
+    }
+
+    @Override
+    public void startBatch() { }
+
+    @Override
+    public void flushBatch() { }
+
+    @Override
+    public void showEntity(EntityInfo tracker, Collection<Player> players) {
+        count(players);
+    }
+
+    @Override
+    public void hideEntity(EntityInfo tracker, Collection<Player> players) {
+        count(players);
+    }
+
+    @Override
+    public void sendEntityMove(EntityInfo tracker, Vector offset, Collection<Player> players) {
+        count(players);
+    }
+
+    @Override
+    public void sendEntityMoveLook(EntityInfo tracker, Vector movementOffset, Collection<Player> players) {
+        count(players);
+    }
+
+    @Override
+    public void sendEntityLook(EntityInfo tracker, Collection<Player> players) {
+        count(players);
+    }
+
+    @Override
+    public void sendEntityTeleport(EntityInfo tracker, Collection<Player> players) {
+        count(players);
+    }
+
+    @Override
+    public void sendEntityHeadRotation(EntityInfo tracker, Collection<Player> players) {
+        count(players);
+    }
+
+    @Override
+    public void sendMount(EntityInfo tracker, Collection<EntityInfo> riding, Collection<Player> players) {
+        count(players);
+    }
+
+    @Override
+    public void sendEntityEquipment(EntityInfo tracker, Map<EnumWrappers.ItemSlot, ItemStack> changes, Collection<Player> players) {
+        count(players);
+    }
+
+    @Override
+    public void sendMetadata(EntityInfo tracker, Collection<Player> players) {
+        count(players);
+    }
+
+    @Override
+    public void sendMetadata(EntityInfo tracker, List<WrappedWatchableObject> changes, Collection<Player> players) {
+        count(players);
+    }
+
+    @Override
+    public void sendEntityVelocity(EntityInfo tracker, Vector newVelocity, Collection<Player> players) {
+        count(players);
+    }
+
+    @Override
+    public void sendEntityAnimation(EntityInfo tracker, Collection<Player> players, AnimationType animationType) {
+        count(players);
+    }
+
+    @Override
+    public void sendEntityPickupItem(EntityInfo tracker, EntityInfo pickedUp, Collection<Player> players) {
+        count(players);
+    }
+
+    @Override
+    public void sendAddPlayerProfile(EntityInfo tracker, Collection<Player> players) {
+        count(players);
+    }
+
+    @Override
+    public void sendRemovePlayerProfile(EntityInfo tracker, Collection<Player> players) {
+        count(players);
+    }
+}
@@ -0,0 +1,24 @@
+package implementations;
+
+import com.lauriethefish.betterportals.shared.logging.OverrideLogger;
+import lombok.Getter;
+
+import java.util.logging.Level;
+
+/**
+ * Counts the number of times that a message is formatted, so that tests can check that nothing is formatted for disabled levels.
+ */
+public class TestFormatCountingLogger extends OverrideLogger {
+    @Getter private int formatCount = 0;
+
+    public TestFormatCountingLogger(Level level) {
+        super(getAnonymousLogger());
+        setLevel(level);
+    }
+
+    @Override
+    protected String format(String format, Object... args) {
+        formatCount++;
+        return super.format(format, args);
+    }
+}
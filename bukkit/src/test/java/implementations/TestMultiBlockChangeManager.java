@@ -5,6 +5,7 @@ import com.google.inject.Inject;
 import com.google.inject.assistedinject.Assisted;
 import com.lauriethefish.betterportals.bukkit.block.IMultiBlockChangeManager;
 import com.lauriethefish.betterportals.bukkit.block.IViewableBlockInfo;
+import com.lauriethefish.betterportals.bukkit.util.performance.OperationRegistry;
 import lombok.Getter;
 import org.bukkit.entity.Player;
 import org.bukkit.util.Vector;
@@ -12,32 +13,54 @@ import org.bukkit.util.Vector;
 import java.util.HashMap;
 import java.util.Map;
 
+/**
+ * Collects changes without sending anything.
+ * The packets that would have been sent (one per chunk section) are added to the counters in the {@link OperationRegistry}.
+ */
 public class TestMultiBlockChangeManager implements IMultiBlockChangeManager {
+    // Same estimate as the real implementation
+    private static final int PACKET_HEADER_BYTES = 11;
+    private static final int BYTES_PER_BLOCK = 4;
+
     @Getter private final Player player;
     @Getter private boolean wereChangesSent = false;
+    @Getter private int packetsSent = 0;
+    @Getter private long bytesSent = 0;
+
+    private final OperationRegistry operationRegistry;
+    private final Map<Long, Integer> sectionChangeCounts = new HashMap<>();
 
     @Inject
-    public TestMultiBlockChangeManager(@Assisted Player player) {
+    public TestMultiBlockChangeManager(@Assisted Player player, @Assisted("minChunkY") int minChunkY, @Assisted("maxChunkY") int maxChunkY, OperationRegistry operationRegistry) {
         this.player = player;
+        this.operationRegistry = operationRegistry;
     }
 
     @Override
     public void addChangeOrigin(Vector position, IViewableBlockInfo newData) {
-
+        addChange(position, null);
     }
 
     @Override
     public void addChangeDestination(Vector position, IViewableBlockInfo newData) {
-
+        addChange(position, null);
     }
 
     @Override
     public void addChange(Vector position, WrappedBlockData newData) {
-
+        long sectionKey = ((long) (position.getBlockX() >> 4) << 40) ^ ((long) (position.getBlockZ() >> 4) << 16) ^ (position.getBlockY() >> 4);
+        sectionChangeCounts.merge(sectionKey, 1, Integer::sum);
     }
 
     @Override
     public void sendChanges() {
         wereChangesSent = true;
+        for(int blockCount : sectionChangeCounts.values()) {
+            long bytes = PACKET_HEADER_BYTES + (long) blockCount * BYTES_PER_BLOCK;
+            operationRegistry.getCounter(OperationRegistry.MULTI_BLOCK_CHANGE_PACKETS).increment();
+            operationRegistry.getCounter(OperationRegistry.MULTI_BLOCK_CHANGE_BYTES).add(bytes);
+            packetsSent++;
+            bytesSent += bytes;
+        }
     }
 }
@@ -0,0 +1,28 @@
+package implementations;
+
+import be.seeseemelk.mockbukkit.ServerMock;
+import be.seeseemelk.mockbukkit.entity.PlayerMock;
+
+import java.util.UUID;
+
+/**
+ * A mock player that is hashed by its unique ID like a real player.
+ * The hash code of {@link PlayerMock} changes as it moves, which breaks maps keyed by player.
+ */
+public class TestPlayer extends PlayerMock {
+    public TestPlayer(ServerMock server, String name) {
+        super(server, name, UUID.randomUUID());
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if(!(other instanceof TestPlayer)) {return false;}
+
+        return getUniqueId().equals(((TestPlayer) other).getUniqueId());
+    }
+
+    @Override
+    public int hashCode() {
+        return getUniqueId().hashCode();
+    }
+}
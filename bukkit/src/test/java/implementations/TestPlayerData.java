@@ -3,10 +3,10 @@ package implementations;
 import com.google.inject.Inject;
 import com.google.inject.assistedinject.Assisted;
 import com.lauriethefish.betterportals.bukkit.player.IPlayerData;
+import com.lauriethefish.betterportals.bukkit.player.PlayerPreferences;
 import com.lauriethefish.betterportals.bukkit.portal.selection.ISelectionManager;
 import com.lauriethefish.betterportals.bukkit.portal.IPortal;
 import lombok.Getter;
-import org.bukkit.configuration.file.YamlConfiguration;
 import org.bukkit.entity.Player;
 import org.jetbrains.annotations.NotNull;
 
@@ -16,6 +16,7 @@ import java.util.Collections;
 public class TestPlayerData implements IPlayerData {
     @Getter private final Player player;
     @Getter private int updateTimes = 0;
+    @Getter private final PlayerPreferences preferences = new PlayerPreferences();
 
     @Inject
     public TestPlayerData(@Assisted Player player) {
@@ -30,15 +31,9 @@ public class TestPlayerData implements IPlayerData {
     @Override
     public @NotNull ISelectionManager getSelection() {return null;}
 
-    @Override
-    public void savePermanentData() { }
-
     @Override
     public void freezePortalViews() { }
 
-    @Override
-    public @NotNull YamlConfiguration getPermanentData() { return null;}
-
     @Override
     public void setSelection(@NotNull ISelectionManager selection) { }
 
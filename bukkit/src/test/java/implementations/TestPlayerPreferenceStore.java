@@ -0,0 +1,27 @@
+package implementations;
+
+import com.lauriethefish.betterportals.bukkit.player.IPlayerPreferenceStore;
+import com.lauriethefish.betterportals.bukkit.player.PlayerPreferences;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Keeps preferences in memory only.
+ */
+public class TestPlayerPreferenceStore implements IPlayerPreferenceStore {
+    private final Map<UUID, PlayerPreferences> preferences = new HashMap<>();
+
+    @Override
+    public @NotNull PlayerPreferences getPreferences(@NotNull UUID playerId) {
+        return preferences.computeIfAbsent(playerId, key -> new PlayerPreferences());
+    }
+
+    @Override
+    public void start() { }
+
+    @Override
+    public void stop() { }
+}
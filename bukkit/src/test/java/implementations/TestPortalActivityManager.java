@@ -23,4 +23,19 @@ public class TestPortalActivityManager implements IPortalActivityManager {
     public void resetActivity() {
 
     }
+
+    @Override
+    public boolean isActive(IPortal portal) {
+        return false;
+    }
+
+    @Override
+    public int getActivePortalCount() {
+        return 0;
+    }
+
+    @Override
+    public int getViewedPortalCount() {
+        return 0;
+    }
 }
@@ -0,0 +1,44 @@
+package implementations;
+
+import com.lauriethefish.betterportals.bukkit.net.IPortalClient;
+import com.lauriethefish.betterportals.shared.net.Response;
+import com.lauriethefish.betterportals.shared.net.requests.Request;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.function.Consumer;
+
+/**
+ * A client that is never connected to the proxy.
+ */
+public class TestPortalClient implements IPortalClient {
+    @Override
+    public void connect(boolean printExceptions) { }
+
+    @Override
+    public void shutDown() { }
+
+    @Override
+    public boolean canReceiveRequests() {
+        return false;
+    }
+
+    @Override
+    public boolean isConnectionOpen() {
+        return false;
+    }
+
+    @Override
+    public boolean getShouldReconnect() {
+        return false;
+    }
+
+    @Override
+    public void sendRequestToProxy(@NotNull Request request, @NotNull Consumer<Response> onReceive) {
+        throw new IllegalStateException("Cannot send requests without a proxy");
+    }
+
+    @Override
+    public void sendRequestToServer(Request request, String destinationServer, Consumer<Response> onReceive) {
+        throw new IllegalStateException("Cannot send requests without a proxy");
+    }
+}
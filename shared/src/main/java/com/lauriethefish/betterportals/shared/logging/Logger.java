@@ -1,36 +1,106 @@
 package com.lauriethefish.betterportals.shared.logging;
 
+import java.util.logging.Level;
+
 /**
  * Used to allow guice to inject our own custom logger, since there's no feature to override its default logger
  * This also has some convenient methods for formatting using String.format
+ *
+ * The message is only formatted if the level is loggable, so debug logging is cheap when it's disabled.
+ * The fixed argument overloads of the debug levels avoid allocating a varargs array, and the primitive ones avoid boxing.
+ * For arguments that are expensive to compute, use the {@link java.util.function.Supplier} overloads, or check {@link #isLoggable(Level)} first.
  */
 public abstract class Logger extends java.util.logging.Logger {
     protected Logger(String name, String resourceBundleName) {
         super(name, resourceBundleName);
     }
 
+    /**
+     * Formats a message that is about to be logged. This is only called after the level has been checked.
+     * @param format The format string, used with {@link String#format(String, Object...)}
+     * @param args Arguments to the format string
+     * @return The formatted message
+     */
+    protected String format(String format, Object... args) {
+        return String.format(format, args);
+    }
+
+    private void logFormatted(Level level, String format, Object... args) {
+        if(isLoggable(level)) {
+            log(level, format(format, args));
+        }
+    }
+
     // Convenience methods for logging with formatting
     public void severe(String format, Object... args) {
-        super.severe(String.format(format, args));
+        logFormatted(Level.SEVERE, format, args);
     }
 
     public void warning(String format, Object... args) {
-        super.warning(String.format(format, args));
+        logFormatted(Level.WARNING, format, args);
     }
 
     public void info(String format, Object... args) {
-        super.info(String.format(format, args));
+        logFormatted(Level.INFO, format, args);
     }
 
     public void fine(String format, Object... args) {
-        super.fine(String.format(format, args));
+        logFormatted(Level.FINE, format, args);
+    }
+
+    public void fine(String format, Object arg) {
+        if(isLoggable(Level.FINE)) {log(Level.FINE, format(format, arg));}
+    }
+
+    public void fine(String format, Object arg1, Object arg2) {
+        if(isLoggable(Level.FINE)) {log(Level.FINE, format(format, arg1, arg2));}
+    }
+
+    public void fine(String format, int arg) {
+        if(isLoggable(Level.FINE)) {log(Level.FINE, format(format, arg));}
+    }
+
+    public void fine(String format, boolean arg) {
+        if(isLoggable(Level.FINE)) {log(Level.FINE, format(format, arg));}
     }
 
     public void finer(String format, Object... args) {
-        super.finer(String.format(format, args));
+        logFormatted(Level.FINER, format, args);
+    }
+
+    public void finer(String format, Object arg) {
+        if(isLoggable(Level.FINER)) {log(Level.FINER, format(format, arg));}
+    }
+
+    public void finer(String format, Object arg1, Object arg2) {
+        if(isLoggable(Level.FINER)) {log(Level.FINER, format(format, arg1, arg2));}
+    }
+
+    public void finer(String format, int arg) {
+        if(isLoggable(Level.FINER)) {log(Level.FINER, format(format, arg));}
+    }
+
+    public void finer(String format, boolean arg) {
+        if(isLoggable(Level.FINER)) {log(Level.FINER, format(format, arg));}
     }
 
     public void finest(String format, Object... args) {
-        super.finest(String.format(format, args));
+        logFormatted(Level.FINEST, format, args);
+    }
+
+    public void finest(String format, Object arg) {
+        if(isLoggable(Level.FINEST)) {log(Level.FINEST, format(format, arg));}
+    }
+
+    public void finest(String format, Object arg1, Object arg2) {
+        if(isLoggable(Level.FINEST)) {log(Level.FINEST, format(format, arg1, arg2));}
+    }
+
+    public void finest(String format, int arg) {
+        if(isLoggable(Level.FINEST)) {log(Level.FINEST, format(format, arg));}
+    }
+
+    public void finest(String format, boolean arg) {
+        if(isLoggable(Level.FINEST)) {log(Level.FINEST, format(format, arg));}
     }
 }
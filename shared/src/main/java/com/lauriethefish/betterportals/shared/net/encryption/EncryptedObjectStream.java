@@ -2,6 +2,7 @@ package com.lauriethefish.betterportals.shared.net.encryption;
 
 import com.google.inject.Inject;
 import com.google.inject.assistedinject.Assisted;
+import org.jetbrains.annotations.Nullable;
 
 import javax.crypto.Cipher;
 import javax.crypto.CipherInputStream;
@@ -24,8 +25,11 @@ public class EncryptedObjectStream implements IEncryptedObjectStream    {
     }
 
     @Override
-    public Object readObject() throws GeneralSecurityException, IOException, ClassNotFoundException {
+    public Object readObject(@Nullable Runnable onReceived) throws GeneralSecurityException, IOException, ClassNotFoundException {
         int length = inputStream.readInt();
+        if(onReceived != null) {
+            onReceived.run();
+        }
 
         if(length > MAX_REQUEST_SIZE) {
             throw new IllegalStateException(String.format("Requested length (%d bytes) was greater than the max request size of %d bytes", length, MAX_REQUEST_SIZE));
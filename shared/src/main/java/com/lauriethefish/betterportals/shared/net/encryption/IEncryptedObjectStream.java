@@ -1,5 +1,7 @@
 package com.lauriethefish.betterportals.shared.net.encryption;
 
+import org.jetbrains.annotations.Nullable;
+
 import java.io.IOException;
 import java.security.GeneralSecurityException;
 
@@ -23,7 +25,21 @@ public interface IEncryptedObjectStream {
      * @throws ClassNotFoundException If the object stream encounters an object that is not loaded on the JVM.
      * @throws IllegalStateException If the requested read length is greater than {@link IEncryptedObjectStream#MAX_REQUEST_SIZE}
      */
-    Object readObject() throws GeneralSecurityException, IOException, ClassNotFoundException;
+    default Object readObject() throws GeneralSecurityException, IOException, ClassNotFoundException {
+        return readObject(null);
+    }
+
+    /**
+     * Reads the 4 byte length prefix, then the next object from the stream.
+     * Reading the length prefix blocks until the next object arrives, so <code>onReceived</code> can be used to time only reading, decrypting and deserializing the object.
+     * @param onReceived Called once the length prefix has been read, before the rest of the object. May be null
+     * @return The next read object
+     * @throws GeneralSecurityException If an error occurred during decryption
+     * @throws IOException Any IO related exception in the underlying stream
+     * @throws ClassNotFoundException If the object stream encounters an object that is not loaded on the JVM.
+     * @throws IllegalStateException If the requested read length is greater than {@link IEncryptedObjectStream#MAX_REQUEST_SIZE}
+     */
+    Object readObject(@Nullable Runnable onReceived) throws GeneralSecurityException, IOException, ClassNotFoundException;
 
     /**
      * Writes the 4 byte length prefix, then <code>obj</code> to the underlying output stream.
@@ -10,6 +10,7 @@ import java.io.Serializable;
 import java.security.GeneralSecurityException;
 import java.security.NoSuchAlgorithmException;
 import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 
@@ -58,4 +59,14 @@ public class EncryptedObjectStreamTests {
         assertEquals(obj, result);
     }
 
+    @Test
+    public void testOnReceivedCalledOnce() throws GeneralSecurityException, IOException, ClassNotFoundException {
+        ByteArrayOutputStream testOutput = new ByteArrayOutputStream();
+        new EncryptedObjectStream(null, testOutput, cipherManager).writeObject("Fish man");
+
+        AtomicInteger timesCalled = new AtomicInteger();
+        EncryptedObjectStream testStream = new EncryptedObjectStream(new ByteArrayInputStream(testOutput.toByteArray()), null, cipherManager);
+        assertEquals("Fish man", testStream.readObject(timesCalled::incrementAndGet));
+        assertEquals(1, timesCalled.get());
+    }
 }
@@ -0,0 +1,97 @@
+import com.lauriethefish.betterportals.shared.logging.Logger;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class LoggerTests {
+    private static class RecordingLogger extends Logger {
+        private final List<String> messages = new ArrayList<>();
+        private int formatCount = 0;
+
+        private RecordingLogger() {
+            super("test", null);
+            setUseParentHandlers(false);
+        }
+
+        @Override
+        protected String format(String format, Object... args) {
+            formatCount++;
+            return super.format(format, args);
+        }
+
+        @Override
+        public void log(LogRecord record) {
+            if(isLoggable(record.getLevel())) {
+                messages.add(record.getMessage());
+            }
+        }
+    }
+
+    private RecordingLogger logger;
+
+    @BeforeEach
+    public void setUp() {
+        logger = new RecordingLogger();
+    }
+
+    private void logAtDebugLevels() {
+        logger.fine("Object %s", "value");
+        logger.fine("Two objects %s %s", "a", "b");
+        logger.fine("Int %d", 1000);
+        logger.fine("Boolean %b", true);
+        logger.fine("Varargs %s %d %s", "a", 1000, "c");
+
+        logger.finer("Object %s", "value");
+        logger.finer("Two objects %s %s", "a", "b");
+        logger.finer("Int %d", 1000);
+        logger.finer("Boolean %b", true);
+        logger.finer("Varargs %s %d %s", "a", 1000, "c");
+
+        logger.finest("Object %s", "value");
+        logger.finest("Two objects %s %s", "a", "b");
+        logger.finest("Int %d", 1000);
+        logger.finest("Boolean %b", true);
+        logger.finest("Varargs %s %d %s", "a", 1000, "c");
+    }
+
+    @Test
+    public void testDisabledLevelsAreNotFormatted() {
+        logger.setLevel(Level.INFO);
+        logAtDebugLevels();
+
+        assertEquals(0, logger.formatCount);
+        assertEquals(0, logger.messages.size());
+    }
+
+    @Test
+    public void testEnabledLevelsAreFormatted() {
+        logger.setLevel(Level.FINER);
+        logAtDebugLevels();
+
+        // FINEST is still disabled
+        assertEquals(10, logger.formatCount);
+        assertEquals(10, logger.messages.size());
+        assertEquals("Object value", logger.messages.get(0));
+        assertEquals("Two objects a b", logger.messages.get(1));
+        assertEquals("Int 1000", logger.messages.get(2));
+        assertEquals("Boolean true", logger.messages.get(3));
+        assertEquals("Varargs a 1000 c", logger.messages.get(4));
+    }
+
+    @Test
+    public void testHigherLevelsAreFormatted() {
+        logger.setLevel(Level.WARNING);
+        logger.info("Info %d", 1);
+        logger.warning("Warning %d", 2);
+        logger.severe("Severe %d", 3);
+
+        assertEquals(2, logger.formatCount);
+        assertEquals(List.of("Warning 2", "Severe 3"), logger.messages);
+    }
+}